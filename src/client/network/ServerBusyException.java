@@ -0,0 +1,28 @@
+package client.network;
+
+import java.io.IOException;
+
+/**
+ * The server turned a request away because it, or this client, was sending
+ * it too much. The request was not carried out and can be sent again later.
+ */
+public class ServerBusyException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final long retryAfterMillis;
+
+    /**
+     * @param retryAfterMillis how long the server asked the client to wait, 0 if it did not say
+     */
+    public ServerBusyException(long retryAfterMillis) {
+        super("Server busy" + (retryAfterMillis > 0 ? ", retry after " + retryAfterMillis + " ms" : ""));
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    /**
+     * @return how long the server asked the client to wait, in milliseconds, 0 if it did not say
+     */
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+}
@@ -3,11 +3,14 @@ package client.network;
 import model.helpToLogic.LaptopDataInterface;
 import model.helpToLogic.ReservationsDataInterface;
 import model.helpToLogic.StudentDataInterface;
+import objects.Laptop;
 import objects.Reservation;
 import objects.Student;
+import util.Message;
 import util.PropertyChangeSubjectInterface;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 public interface SocketClient extends LaptopDataInterface, StudentDataInterface, ReservationsDataInterface, PropertyChangeSubjectInterface, Runnable {
 
@@ -33,4 +36,62 @@ public interface SocketClient extends LaptopDataInterface, StudentDataInterface,
     int processQueues();
 
     boolean isConnected();
+
+    /**
+     * Sends a request without waiting for its response, so several requests
+     * can be pipelined over the connection.
+     *
+     * @param type the message type
+     * @param args the message arguments
+     * @return completes with the server's response
+     */
+    CompletableFuture<Object> sendRequestAsync(String type, Object args);
+
+    /**
+     * Limits the server events this client receives to the given topics,
+     * such as "reservation", "laptop.created" or "queue:HIGH". Until the
+     * first call the client receives every event.
+     *
+     * @param topics the topics to add
+     * @return true if the server accepted the topics
+     */
+    boolean subscribe(String... topics);
+
+    /**
+     * Stops receiving events for the given topics.
+     *
+     * @param topics the topics to remove; none removes every topic
+     * @return true if the server accepted the change
+     */
+    boolean unsubscribe(String... topics);
+
+    /**
+     * Sends several requests as one message, answered in one round trip.
+     * The server runs them in order.
+     *
+     * @param commands the requests, such as new Message("create_laptop", laptop)
+     * @param atomic true to run them in one database transaction, so either
+     *               all of them take effect or none do
+     * @return one result per request, in order; a request that failed, was
+     *         rolled back or was not run has an "Error: ..." string
+     */
+    List<Object> sendBatch(List<Message> commands, boolean atomic);
+
+    /**
+     * Creates several laptops in one round trip.
+     *
+     * @param laptops the laptops to create; their ids are assigned by the server
+     * @param atomic true to create all of them or none
+     * @return the created laptops, in order, with null for each that was not created
+     */
+    List<Laptop> createLaptops(List<Laptop> laptops, boolean atomic);
+
+    /**
+     * Creates several students in one round trip.
+     *
+     * @param students the students to create
+     * @param atomic true to create all of them or none
+     * @return the created students, in order, with null for each that was not created
+     */
+    List<Student> createStudents(List<Student> students, boolean atomic);
 }
@@ -4,34 +4,85 @@ import enums.PerformanceTypeEnum;
 import objects.Laptop;
 import objects.Reservation;
 import objects.Student;
+import util.FrameCodec;
 import util.Message;
+import util.MessageCodec;
 import util.PropertyChangeSubjectInterface;
+import util.RoundTripStats;
 
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.net.Socket;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Implementation of the SocketClient interface.
  * Handles communication with the server.
  */
 public class SocketClientImp implements SocketClient {
+    // How long sendMessage waits for a response; also sent to the server as the request deadline
+    private static final long RESPONSE_TIMEOUT_MS = 5000;
+    // Sends the heartbeats of every client in the process
+    private static final ScheduledExecutorService HEARTBEAT_TIMER = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "client-heartbeat");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     // Socket and streams
-    private Socket socket;
-    private ObjectInputStream input;
-    private ObjectOutputStream output;
+    private volatile Socket socket;
+    private DataInputStream input;
+    private DataOutputStream output;
     private boolean connected;
     private Thread listenerThread;
-    private BlockingQueue<Message> responseQueue;
+
+    // Requests sent but not yet answered, by request id
+    private final Map<Long, CompletableFuture<Object>> pendingRequests = new ConcurrentHashMap<>();
+    private final AtomicLong nextRequestId = new AtomicLong();
+    private final Object writeLock = new Object();
+    private volatile MessageCodec codec = FrameCodec.DEFAULT_CODEC;
+
+    // Sequence number of the last server event applied; -1 until the snapshot or replay for this connection arrives
+    private volatile long lastSequence = -1;
+    // Epoch of the server run the sequence numbers come from, sent in its welcome; 0 until then
+    private volatile long serverEpoch;
+    private volatile boolean resyncRequested;
+    private final AtomicLong sequenceGaps = new AtomicLong();
+    private final AtomicLong duplicateEvents = new AtomicLong();
+    // Events the server replaced with a later state of the same entity; their numbers will be missing.
+    // Only used on the listener thread.
+    private long supersededEvents;
+    private long lastSuperseded;
+    // Topics subscribed to, re-sent after a reconnect; null until the first subscribe (every event)
+    private volatile Set<String> subscriptions;
+
+    // Heartbeats every -Dclient.heartbeat.intervalMillis (0 for none); the connection is
+    // given up after -Dclient.heartbeat.maxMissed intervals without hearing from the server
+    private final long heartbeatIntervalMillis = Long.getLong("client.heartbeat.intervalMillis", 10000);
+    private final int heartbeatMaxMissed = Integer.getInteger("client.heartbeat.maxMissed", 3);
+    private volatile ScheduledFuture<?> heartbeat;
+    // When anything last arrived from the server, in System.nanoTime()
+    private volatile long lastHeardNanos;
+    private final RoundTripStats roundTrip = new RoundTripStats();
+    private final AtomicLong heartbeatTimeouts = new AtomicLong();
 
     // Event handling
     private PropertyChangeSupport support;
@@ -50,7 +101,6 @@ public class SocketClientImp implements SocketClient {
         this.host = host;
         this.port = port;
         this.support = new PropertyChangeSupport(this);
-        this.responseQueue = new LinkedBlockingQueue<>();
 
         // Connect to server
         try {
@@ -70,17 +120,39 @@ public class SocketClientImp implements SocketClient {
         try {
             // Open socket and streams
             socket = new Socket(host, port);
-            output = new ObjectOutputStream(socket.getOutputStream());
-            input = new ObjectInputStream(socket.getInputStream());
+            socket.setTcpNoDelay(true);
+            output = FrameCodec.output(socket.getOutputStream());
+            input = FrameCodec.input(socket.getInputStream());
+            codec = FrameCodec.DEFAULT_CODEC;
+            // Untracked until the server says where this connection starts
+            long resumeFrom = lastSequence;
+            long resumeEpoch = serverEpoch;
+            lastSequence = -1;
+            serverEpoch = 0;
+            supersededEvents = 0;
+            lastSuperseded = 0;
+            resyncRequested = false;
+            lastHeardNanos = System.nanoTime();
             connected = true;
 
             // Start listener thread
             listenerThread = new Thread(this);
             listenerThread.setDaemon(true);
             listenerThread.start();
+            startHeartbeat(socket);
+
+            negotiateCodec();
 
-            // Register as new client
-            sendMessage(new Message("new_client", null));
+            // Subscriptions apply to the replay, so they go first
+            Set<String> topics = subscriptions;
+            if (topics != null) {
+                sendMessage(new Message("subscribe", topics.toArray(new String[0])));
+            }
+
+            // Register as new client; after a reconnect, ask for only the events missed. The
+            // server only replays them if it is the same run that numbered them.
+            sendMessage(new Message("new_client",
+                    resumeFrom >= 0 && resumeEpoch != 0 ? new Object[]{resumeEpoch, resumeFrom} : null));
 
         } catch (IOException e) {
             connected = false;
@@ -88,6 +160,119 @@ public class SocketClientImp implements SocketClient {
         }
     }
 
+    /**
+     * Agrees on the codec for this connection. The client offers its codecs,
+     * or only the one named by -Dclient.codec; a server that doesn't know the
+     * request answers with an error, and Java serialization is kept.
+     * With -Dclient.compression=true the deflate variants are offered first,
+     * for desks on slow links.
+     */
+    private void negotiateCodec() {
+        String preferred = System.getProperty("client.codec");
+        String[] offered = preferred != null ? new String[]{preferred}
+                : FrameCodec.codecNames(Boolean.getBoolean("client.compression"));
+
+        Object chosen = sendMessage(new Message("negotiate_codec", offered));
+        MessageCodec negotiated = chosen instanceof String ? FrameCodec.codecNamed((String) chosen) : null;
+        if (negotiated != null) {
+            codec = negotiated;
+        }
+    }
+
+    /**
+     * Pings the server every interval, so a server that has gone away is
+     * noticed even while no request is waiting for it. The heartbeat stops
+     * when the client reconnects or disconnects.
+     *
+     * @param own the connection the heartbeat is for
+     */
+    private void startHeartbeat(Socket own) {
+        stopHeartbeat();
+        if (heartbeatIntervalMillis > 0) {
+            heartbeat = HEARTBEAT_TIMER.scheduleAtFixedRate(() -> heartbeat(own),
+                    heartbeatIntervalMillis, heartbeatIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void stopHeartbeat() {
+        ScheduledFuture<?> running = heartbeat;
+        if (running != null) {
+            running.cancel(false);
+            heartbeat = null;
+        }
+    }
+
+    private void heartbeat(Socket own) {
+        if (!connected || socket != own) {
+            return;
+        }
+        long silentMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastHeardNanos);
+        if (silentMillis > heartbeatIntervalMillis * heartbeatMaxMissed) {
+            // Closing the socket makes the listener report the connection as lost
+            heartbeatTimeouts.incrementAndGet();
+            System.err.println("No heartbeat from the server for " + silentMillis + " ms, closing connection");
+            try {
+                own.close();
+            } catch (IOException e) {
+                System.err.println("Error closing connection: " + e.getMessage());
+            }
+            return;
+        }
+        try {
+            writeMessage(new Message("ping", System.nanoTime()));
+        } catch (IOException e) {
+            System.err.println("Error sending heartbeat: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Gets the round-trip times of the heartbeats to the server.
+     *
+     * @return the round-trip statistics, kept across reconnects
+     */
+    public RoundTripStats getRoundTripStats() {
+        return roundTrip;
+    }
+
+    /**
+     * @return the number of times the connection was given up because the server stopped answering
+     */
+    public long getHeartbeatTimeoutCount() {
+        return heartbeatTimeouts.get();
+    }
+
+    /**
+     * Gets the codec this client sends with.
+     *
+     * @return the negotiated codec name
+     */
+    public String getCodecName() {
+        return codec.getName();
+    }
+
+    /**
+     * Gets the sequence number of the last server event applied.
+     *
+     * @return the sequence number, or -1 before the first snapshot
+     */
+    public long getLastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * @return the number of times events were found missing
+     */
+    public long getSequenceGapCount() {
+        return sequenceGaps.get();
+    }
+
+    /**
+     * @return the number of events received more than once and ignored
+     */
+    public long getDuplicateEventCount() {
+        return duplicateEvents.get();
+    }
+
     /**
      * Disconnects from the server.
      */
@@ -97,10 +282,15 @@ public class SocketClientImp implements SocketClient {
         }
 
         try {
-            connected = false;
+            // Send goodbye message; the server closes without waiting for more
+            writeMessage(new Message("disconnect", null));
+        } catch (IOException e) {
+            System.err.println("Error during disconnect: " + e.getMessage());
+        }
 
-            // Send goodbye message
-            sendMessage(new Message("disconnect", null));
+        try {
+            connected = false;
+            stopHeartbeat();
 
             // Close resources
             if (input != null) input.close();
@@ -112,6 +302,7 @@ public class SocketClientImp implements SocketClient {
                 listenerThread.interrupt();
             }
 
+            failPendingRequests("Disconnected from server");
             support.firePropertyChange("connection_state", true, false);
             System.out.println("Disconnected from server");
 
@@ -121,97 +312,371 @@ public class SocketClientImp implements SocketClient {
     }
 
     /**
-     * Sends a message to the server.
+     * Sends a message to the server and waits for its response.
      *
      * @param message the message to send
      * @return the server's response, or null if no response or error
      */
-    private synchronized Object sendMessage(Message message) {
+    private Object sendMessage(Message message) {
+        try {
+            return sendRequestAsync(message.getType(), message.getArgs()).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            // Timed out or the connection failed
+            return null;
+        }
+    }
+
+    /**
+     * Sends a request without waiting for the response. Each request carries
+     * its own id, so any number can be in flight on the connection and every
+     * response completes the future of the request it answers.
+     *
+     * @param type the message type
+     * @param args the message arguments
+     * @return completes with the server's response, or exceptionally if the
+     *         request times out, the connection fails or the server is too
+     *         busy to take it ({@link ServerBusyException})
+     */
+    @Override
+    public CompletableFuture<Object> sendRequestAsync(String type, Object args) {
+        if (!ensureConnected()) {
+            return CompletableFuture.failedFuture(new IOException("Not connected to server"));
+        }
+
+        long requestId = nextRequestId.incrementAndGet();
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        pendingRequests.put(requestId, future);
+
+        try {
+            // Send our timeout so the server can give up when we do
+            writeMessage(new Message(type, args, RESPONSE_TIMEOUT_MS, requestId));
+        } catch (IOException e) {
+            pendingRequests.remove(requestId);
+            System.err.println("Error sending message: " + e.getMessage());
+            connected = false;
+            support.firePropertyChange("connection_error", null, e.getMessage());
+            future.completeExceptionally(e);
+            return future;
+        }
+
+        future.orTimeout(RESPONSE_TIMEOUT_MS, TimeUnit.MILLISECONDS).whenComplete((response, error) -> {
+            // Still pending means nothing answered it; tell the server to stop working on it
+            if (pendingRequests.remove(requestId) != null && error instanceof TimeoutException) {
+                cancelRequest(requestId);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Reconnects if the connection has been lost.
+     *
+     * @return true if connected
+     */
+    private synchronized boolean ensureConnected() {
         if (!connected) {
             try {
                 connect();
             } catch (IOException e) {
                 System.err.println("Failed to reconnect: " + e.getMessage());
-                return null;
             }
         }
+        return connected;
+    }
 
+    private void cancelRequest(long requestId) {
         try {
-            // Clear any pending responses
-            responseQueue.clear();
+            writeMessage(new Message("cancel", requestId));
+        } catch (IOException e) {
+            System.err.println("Error cancelling request: " + e.getMessage());
+        }
+    }
 
-            // Send message
-            output.writeObject(message);
-            output.flush();
+    /**
+     * Checks a server event's sequence number against the last one applied.
+     * Called on the listener thread.
+     *
+     * @param sequence the event's sequence number
+     * @param type the event type, for logging
+     * @return false if the event has already been applied
+     */
+    private boolean acceptEvent(long sequence, String type) {
+        long last = lastSequence;
+        if (last < 0) {
+            // Sent before the snapshot, which will include it
+            return true;
+        }
+        if (sequence <= last) {
+            duplicateEvents.incrementAndGet();
+            System.out.println("Ignoring duplicate event " + type + " #" + sequence);
+            return false;
+        }
+        long missing = sequence - last - 1;
+        if (missing > 0 && missing <= supersededEvents) {
+            supersededEvents -= missing;
+        } else if (missing > 0 && !isFiltered()) {
+            sequenceGaps.incrementAndGet();
+            System.err.println("Missed events " + (last + 1) + ".." + (sequence - 1) + ", requesting resync");
+            requestResync();
+        }
+        lastSequence = sequence;
+        return true;
+    }
 
-            // Wait for response with timeout
-            try {
-                Message response = responseQueue.poll(5000, java.util.concurrent.TimeUnit.MILLISECONDS);
-                if (response != null) {
-                    return response.getArgs();
-                }
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
+    /**
+     * Checks the events of a batch against the last one applied.
+     * Called on the listener thread.
+     *
+     * @param events the batched events, in sequence order
+     * @return the events not already applied
+     */
+    private List<Message> acceptBatch(List<?> events) {
+        List<Message> applied = new ArrayList<>(events.size());
+        for (Object element : events) {
+            Message event = (Message) element;
+            if ("superseded".equals(event.getType())) {
+                // The event before this one was replaced by later states, whose numbers won't arrive
+                supersededEvents += ((Number) event.getArgs()).longValue();
+                lastSuperseded = Math.max(lastSuperseded, event.getSequence());
+                continue;
+            }
+            if (event.getSequence() == 0 || acceptEvent(event.getSequence(), event.getType())) {
+                applied.add(event);
             }
+        }
+        // Caught up once every number still missing is one that was superseded
+        long last = lastSequence;
+        if (supersededEvents > 0 && last >= 0 && lastSuperseded - last == supersededEvents) {
+            lastSequence = lastSuperseded;
+            supersededEvents = 0;
+        }
+        return applied;
+    }
 
-            return null;
+    /**
+     * Asks the server for a fresh snapshot. Does not wait for it: this runs
+     * on the listener thread, which has to read the response.
+     */
+    private void requestResync() {
+        if (resyncRequested) {
+            return;
+        }
+        resyncRequested = true;
+        sendRequestAsync("resync", null).whenComplete((response, error) -> {
+            if (error != null) {
+                resyncRequested = false;
+            }
+        });
+    }
 
-        } catch (IOException e) {
-            System.err.println("Error sending message: " + e.getMessage());
-            connected = false;
-            support.firePropertyChange("connection_error", null, e.getMessage());
-            return null;
+    /**
+     * Subscribed clients only get some events, so a jump in sequence
+     * numbers is expected rather than a sign of a lost event.
+     */
+    private boolean isFiltered() {
+        Set<String> topics = subscriptions;
+        return topics != null && !topics.contains("*");
+    }
+
+    @Override
+    public boolean subscribe(String... topics) {
+        Object response = sendMessage(new Message("subscribe", topics));
+        if (!(response instanceof Object[])) {
+            System.err.println("Subscribe failed: " + response);
+            return false;
+        }
+        subscriptions = currentTopics((Object[]) response);
+        return true;
+    }
+
+    @Override
+    public boolean unsubscribe(String... topics) {
+        Object response = sendMessage(new Message("unsubscribe", topics.length > 0 ? topics : null));
+        if (!(response instanceof Object[])) {
+            System.err.println("Unsubscribe failed: " + response);
+            return false;
+        }
+        subscriptions = currentTopics((Object[]) response);
+        return true;
+    }
+
+    @Override
+    public List<Object> sendBatch(List<Message> commands, boolean atomic) {
+        if (commands.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Object response = sendMessage(new Message("batch", new Object[] { atomic, new ArrayList<>(commands) }));
+        if (response instanceof List<?> && ((List<?>) response).size() == commands.size()) {
+            return new ArrayList<>((List<?>) response);
+        }
+        // No answer, or the server rejected the whole batch
+        System.err.println("Batch failed: " + response);
+        List<Object> failed = new ArrayList<>(commands.size());
+        for (int i = 0; i < commands.size(); i++) {
+            failed.add("Error: " + response);
+        }
+        return failed;
+    }
+
+    @Override
+    public List<Laptop> createLaptops(List<Laptop> laptops, boolean atomic) {
+        List<Message> commands = new ArrayList<>(laptops.size());
+        for (Laptop laptop : laptops) {
+            // Only the fields being set; the server assigns the id and state
+            commands.add(new Message("create_laptop", new Object[] { laptop.getBrand(), laptop.getModel(),
+                    laptop.getGigabyte(), laptop.getRam(), laptop.getPerformanceType() }));
+        }
+        List<Laptop> created = new ArrayList<>(laptops.size());
+        for (Object result : sendBatch(commands, atomic)) {
+            created.add(result instanceof Laptop ? (Laptop) result : null);
+        }
+        return created;
+    }
+
+    @Override
+    public List<Student> createStudents(List<Student> students, boolean atomic) {
+        List<Message> commands = new ArrayList<>(students.size());
+        for (Student student : students) {
+            commands.add(new Message("create_student", new Object[] { student.getName(),
+                    student.getDegreeEndDate(), student.getDegreeTitle(), student.getViaId(), student.getEmail(),
+                    student.getPhoneNumber(), student.getPerformanceNeeded() }));
+        }
+        List<Student> created = new ArrayList<>(students.size());
+        for (Object result : sendBatch(commands, atomic)) {
+            created.add(result instanceof Student ? (Student) result : null);
+        }
+        return created;
+    }
+
+    private static Set<String> currentTopics(Object[] topics) {
+        Set<String> current = new LinkedHashSet<>();
+        for (Object topic : topics) {
+            current.add(String.valueOf(topic));
+        }
+        return current;
+    }
+
+    private void writeMessage(Message message) throws IOException {
+        synchronized (writeLock) {
+            FrameCodec.writeFrame(output, message, codec);
+            output.flush();
         }
     }
 
+    private void failPendingRequests(String reason) {
+        IOException error = new IOException(reason);
+        for (Long requestId : pendingRequests.keySet()) {
+            CompletableFuture<Object> future = pendingRequests.remove(requestId);
+            if (future != null) {
+                future.completeExceptionally(error);
+            }
+        }
+    }
 
     @Override
     public void run() {
-        while (connected) {
+        // Each connection has its own listener; once the client has reconnected, this one must stop
+        Socket own = socket;
+        DataInputStream in = input;
+        while (connected && socket == own) {
             try {
-                Object receivedObject = input.readObject();
+                // A frame that does not hold a Message fails with an IOException and drops the connection
+                Message message = FrameCodec.readFrame(in);
 
-                // Make sure we got a Message object
-                if (!(receivedObject instanceof Message)) {
-                    System.err.println("Received non-Message object: " +
-                            (receivedObject == null ? "null" : receivedObject.getClass().getName()));
+                if (message == null) {
                     continue;
                 }
+                lastHeardNanos = System.nanoTime();
 
-                Message message = (Message) receivedObject;
+                String type = message.getType();
 
-                if (message == null) {
+                // The server checks that the client is still there
+                if ("ping".equals(type)) {
+                    writeMessage(new Message("pong", message.getArgs()));
+                    continue;
+                }
+                if ("pong".equals(type)) {
+                    if (message.getArgs() instanceof Long) {
+                        roundTrip.record(System.nanoTime() - (Long) message.getArgs());
+                    }
                     continue;
                 }
-
-                String type = message.getType();
 
                 // Handle response to a request
                 if ("response".equals(type)) {
-                    // Add to response queue for synchronous requests
-                    responseQueue.add(message);
+                    CompletableFuture<Object> future = pendingRequests.remove(message.getRequestId());
+                    if (future != null) {
+                        future.complete(message.getArgs());
+                    } else {
+                        // The request timed out and was cancelled
+                        System.out.println("Ignoring late response to request " + message.getRequestId());
+                    }
+                    continue;
+                }
+
+                // The server turned the request away; it was not carried out
+                if ("busy".equals(type)) {
+                    CompletableFuture<Object> future = pendingRequests.remove(message.getRequestId());
+                    if (future != null) {
+                        long retryAfter = message.getArgs() instanceof Long ? (Long) message.getArgs() : 0;
+                        future.completeExceptionally(new ServerBusyException(retryAfter));
+                    }
                     continue;
                 }
 
                 // Handle disconnect
                 if ("disconnect".equals(type)) {
                     connected = false;
+                    failPendingRequests("Server closed the connection");
                     support.firePropertyChange("disconnected", null, message.getArgs());
                     break;
                 }
 
+                if ("event_batch".equals(type)) {
+                    // Applied as one change: listeners hear about the whole batch once
+                    List<Message> applied = acceptBatch((List<?>) message.getArgs());
+                    if (applied.size() == 1) {
+                        // A single event, such as the latest of several states the server conflated
+                        support.firePropertyChange(applied.get(0).getType(), null, applied.get(0).getArgs());
+                    } else if (!applied.isEmpty()) {
+                        support.firePropertyChange(type, null, applied);
+                    }
+                    continue;
+                }
+
+                if ("welcome".equals(type)) {
+                    Object[] welcome = message.getArgs() instanceof Object[] ? (Object[]) message.getArgs() : null;
+                    if (welcome != null && welcome.length == 2 && welcome[1] instanceof Long) {
+                        serverEpoch = (Long) welcome[1];
+                    }
+                } else if ("initial_sync".equals(type)) {
+                    // The snapshot replaces everything up to its sequence number
+                    lastSequence = message.getSequence();
+                    supersededEvents = 0;
+                    lastSuperseded = 0;
+                    resyncRequested = false;
+                } else if ("resumed".equals(type)) {
+                    // The events missed while disconnected have been replayed
+                    lastSequence = message.getSequence();
+                    System.out.println("Caught up on " + message.getArgs() + " missed events");
+                } else if (message.getSequence() != 0 && !acceptEvent(message.getSequence(), type)) {
+                    continue;
+                }
+
                 // For all other messages, fire property change events
                 support.firePropertyChange(type, null, message.getArgs());
 
             } catch (IOException e) {
-                if (connected) {
+                if (connected && socket == own) {
                     System.err.println("Connection lost: " + e.getMessage());
                     connected = false;
+                    failPendingRequests("Connection lost: " + e.getMessage());
                     support.firePropertyChange("connection_lost", null, e.getMessage());
                 }
                 break;
-            } catch (ClassNotFoundException e) {
-                System.err.println("Error reading message: " + e.getMessage());
             } catch (ClassCastException e) {
                 System.err.println("Error casting received object: " + e.getMessage());
             } catch (Exception e) {
@@ -389,7 +854,8 @@ public class SocketClientImp implements SocketClient {
 
     @Override
     public Reservation createReservation(Student student, Laptop laptop) {
-        Object[] reservationData = new Object[] { student, laptop };
+        // The server looks both up by key and decides from its own data
+        Object[] reservationData = new Object[] { student.getViaId(), laptop.getId() };
         Object response = sendMessage(new Message("create_reservation", reservationData));
         if (response instanceof Reservation) {
             return (Reservation) response;
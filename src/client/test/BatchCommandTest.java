@@ -0,0 +1,166 @@
+package client.test;
+
+import client.network.SocketClientImp;
+import enums.PerformanceTypeEnum;
+import objects.Laptop;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import server.model.ServerModel;
+import server.network.SocketServer;
+import server.network.TransportMode;
+import server.test.FakeServerModel;
+import util.Message;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tester batch-beskeden: at mange kommandoer sendes og besvares i én
+ * omgang, i rækkefølge, og at en atomisk batch stopper ved den første fejl
+ * og meldes rullet tilbage. Kræver ikke en database; modellen her opretter
+ * laptops i hukommelsen og fejler for mærket "fejl".
+ */
+public class BatchCommandTest {
+    private static final int TEST_PORT = 7840;
+
+    private SocketServer server;
+    private SocketClientImp client;
+    private final List<Laptop> created = new CopyOnWriteArrayList<>();
+    private final AtomicInteger createCalls = new AtomicInteger();
+    private final AtomicInteger transactions = new AtomicInteger();
+    private final AtomicInteger rollbacks = new AtomicInteger();
+
+    @Before
+    public void setUp() throws Exception {
+        server = new SocketServer(model(), TEST_PORT, TransportMode.NIO);
+        server.startServer();
+        client = new SocketClientImp("localhost", TEST_PORT);
+    }
+
+    @After
+    public void tearDown() {
+        if (client != null) {
+            client.disconnect();
+        }
+        if (server != null) {
+            server.stopServer();
+        }
+    }
+
+    private ServerModel model() {
+        ServerModel fake = FakeServerModel.create();
+        return (ServerModel) Proxy.newProxyInstance(ServerModel.class.getClassLoader(),
+                new Class<?>[]{ServerModel.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "createLaptop": {
+                            createCalls.incrementAndGet();
+                            if ("fejl".equals(args[0])) {
+                                return null;
+                            }
+                            Laptop laptop = new Laptop((String) args[0], (String) args[1], (int) args[2],
+                                    (int) args[3], (PerformanceTypeEnum) args[4]);
+                            created.add(laptop);
+                            return laptop;
+                        }
+                        case "runInTransaction": {
+                            transactions.incrementAndGet();
+                            boolean success = ((BooleanSupplier) args[0]).getAsBoolean();
+                            if (!success) {
+                                rollbacks.incrementAndGet();
+                            }
+                            return success;
+                        }
+                        default:
+                            return method.invoke(fake, args);
+                    }
+                });
+    }
+
+    private static List<Laptop> delivery(int count) {
+        List<Laptop> laptops = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            laptops.add(new Laptop("Dell", "Latitude " + i, 512, 16, PerformanceTypeEnum.HIGH));
+        }
+        return laptops;
+    }
+
+    @Test
+    public void testDeliveryIsCreatedInOneRequest() {
+        List<Laptop> laptops = client.createLaptops(delivery(40), false);
+
+        assertEquals(40, laptops.size());
+        assertEquals(40, created.size());
+        for (int i = 0; i < 40; i++) {
+            assertEquals("Latitude " + i, laptops.get(i).getModel());
+            assertEquals(created.get(i).getId(), laptops.get(i).getId());
+        }
+        assertEquals(0, transactions.get());
+    }
+
+    @Test
+    public void testFailedCommandDoesNotStopNonAtomicBatch() {
+        List<Laptop> laptops = delivery(3);
+        laptops.set(1, new Laptop("fejl", "X", 1, 1, PerformanceTypeEnum.LOW));
+
+        List<Laptop> result = client.createLaptops(laptops, false);
+
+        assertNotNull(result.get(0));
+        assertNull(result.get(1));
+        assertNotNull(result.get(2));
+        assertEquals(3, createCalls.get());
+    }
+
+    @Test
+    public void testAtomicBatchStopsAtFirstFailure() {
+        List<Laptop> laptops = delivery(5);
+        laptops.set(2, new Laptop("fejl", "X", 1, 1, PerformanceTypeEnum.LOW));
+        List<Message> commands = new ArrayList<>();
+        for (Laptop laptop : laptops) {
+            commands.add(new Message("create_laptop", laptop));
+        }
+
+        List<Object> results = client.sendBatch(commands, true);
+
+        assertEquals(5, results.size());
+        assertEquals(1, transactions.get());
+        assertEquals(1, rollbacks.get());
+        // Kun de tre første blev forsøgt; alle melder fejl
+        assertEquals(3, createCalls.get());
+        for (Object result : results) {
+            assertTrue(String.valueOf(result), result instanceof String && ((String) result).startsWith("Error:"));
+        }
+        assertEquals("Error: Rolled back", results.get(0));
+
+        for (Laptop laptop : client.createLaptops(laptops, true)) {
+            assertNull(laptop);
+        }
+    }
+
+    @Test
+    public void testMixedCommandsAnsweredInOrder() {
+        List<Message> commands = new ArrayList<>();
+        commands.add(new Message("create_laptop", new Object[]{"Lenovo", "T14", 256, 8, PerformanceTypeEnum.LOW}));
+        commands.add(new Message("get_all_laptops", null));
+        commands.add(new Message("get_laptop_by_uuid", new UUID(1, 1)));
+        commands.add(new Message("new_client", null));
+        commands.add(new Message("no_such_command", null));
+
+        List<Object> results = client.sendBatch(commands, false);
+
+        assertEquals(5, results.size());
+        assertEquals("T14", ((Laptop) results.get(0)).getModel());
+        assertTrue(results.get(1) instanceof List);
+        // Ingen laptop med det id
+        assertNull(results.get(2));
+        assertTrue(String.valueOf(results.get(3)).startsWith("Error:"));
+        assertTrue(String.valueOf(results.get(4)).startsWith("Error: Unknown message type"));
+    }
+}
@@ -0,0 +1,157 @@
+package client.test;
+
+import client.network.SocketClientImp;
+import enums.PerformanceTypeEnum;
+import objects.Laptop;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import server.network.ConnectionPool;
+import server.network.SlowConsumerPolicy;
+import server.network.SocketServer;
+import server.network.TransportMode;
+import server.test.FakeServerModel;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tester at en klient der midlertidigt er holdt op med at læse kun får
+ * den seneste tilstand for hver laptop, i stedet for at blive afbrudt
+ * fordi dens kø løber fuld, og at de sprungne sekvensnumre ikke opfattes
+ * som tabte events. Kræver ikke en database.
+ */
+public class ConflationTest {
+    private static final int TEST_PORT = 7838;
+    private static final int LAPTOPS = 4;
+    // Nok til at fylde socket-buffere og mere end den udgående køs grænse på 1024 beskeder
+    private static final int UPDATES = 100_000;
+
+    private SocketServer server;
+    private SocketClientImp client;
+    private final Map<UUID, String> latestModel = new ConcurrentHashMap<>();
+    private final AtomicInteger received = new AtomicInteger();
+    private final AtomicBoolean stalled = new AtomicBoolean();
+    private final CountDownLatch stalling = new CountDownLatch(1);
+    private final CountDownLatch resume = new CountDownLatch(1);
+
+    @Before
+    public void setUp() throws Exception {
+        server = new SocketServer(FakeServerModel.create(), TEST_PORT, TransportMode.NIO);
+        server.startServer();
+        // Uden sammenlægning ville den langsomme klient blive afbrudt
+        server.getConnectionPool().setSlowConsumerPolicy(SlowConsumerPolicy.DISCONNECT);
+        client = new SocketClientImp("localhost", TEST_PORT);
+        client.addListener("laptop_state_changed", evt -> {
+            Laptop laptop = (Laptop) evt.getNewValue();
+            latestModel.put(laptop.getId(), laptop.getModel());
+            received.incrementAndGet();
+            // Den første ændring holder klientens lyttetråd an, så intet bliver læst
+            if (stalled.compareAndSet(false, true)) {
+                stalling.countDown();
+                try {
+                    resume.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        client.addListener("laptop_updated", evt -> {
+            Laptop laptop = (Laptop) evt.getNewValue();
+            latestModel.put(laptop.getId(), laptop.getModel());
+            received.incrementAndGet();
+        });
+        waitFor(() -> client.getLastSequence() == 0);
+    }
+
+    @After
+    public void tearDown() {
+        resume.countDown();
+        if (client != null) {
+            client.disconnect();
+        }
+        if (server != null) {
+            server.stopServer();
+        }
+    }
+
+    private static Laptop laptop(int index, int version) {
+        return new Laptop(new UUID(0, index), "Dell", "version " + version, 512, 16, PerformanceTypeEnum.HIGH);
+    }
+
+    @Test
+    public void testStalledClientGetsLatestStatePerLaptop() throws Exception {
+        ConnectionPool pool = server.getConnectionPool();
+        pool.broadcastEvent("laptop_state_changed", laptop(0, 0));
+        assertTrue(stalling.await(5, TimeUnit.SECONDS));
+
+        for (int version = 1; version <= UPDATES; version++) {
+            pool.broadcastEvent("laptop_state_changed", laptop(version % LAPTOPS, version));
+        }
+        assertTrue("Ændringer burde være lagt sammen i køen", pool.getConflatedBroadcastCount() > 0);
+        assertEquals(0, pool.getSlowConsumerDisconnectCount());
+        assertEquals(0, pool.getDroppedBroadcastCount());
+
+        resume.countDown();
+        long last = pool.getLastSequence();
+        waitFor(() -> client.getLastSequence() == last);
+
+        assertEquals(last, client.getLastSequence());
+        assertTrue("Klienten burde have fået færre beskeder end der blev sendt: " + received.get(),
+                received.get() < UPDATES);
+        for (int index = 0; index < LAPTOPS; index++) {
+            int newest = UPDATES;
+            while (newest % LAPTOPS != index) {
+                newest--;
+            }
+            assertEquals("version " + newest, latestModel.get(new UUID(0, index)));
+        }
+        assertEquals("Sammenlagte events burde ikke opfattes som tabte", 0, client.getSequenceGapCount());
+
+        // Events efter indhentningen nummereres videre som før
+        pool.broadcastEvent("laptop_state_changed", laptop(0, UPDATES + 1));
+        waitFor(() -> client.getLastSequence() == last + 1);
+        assertEquals("version " + (UPDATES + 1), latestModel.get(new UUID(0, 0)));
+        assertEquals(0, client.getSequenceGapCount());
+    }
+
+    @Test
+    public void testDifferentStateEventsForOneLaptopKeepTheirOrder() throws Exception {
+        ConnectionPool pool = server.getConnectionPool();
+        pool.broadcastEvent("laptop_state_changed", laptop(0, 0));
+        assertTrue(stalling.await(5, TimeUnit.SECONDS));
+
+        // Andre laptops fylder socket-bufferne, så de næste events bliver liggende i køen
+        for (int version = 1; version <= UPDATES; version++) {
+            pool.broadcastEvent("laptop_state_changed", laptop(1 + version % (LAPTOPS - 1), version));
+        }
+        // Begge typer bærer hele laptoppen; den sidste af dem er den gældende
+        pool.broadcastEvent("laptop_state_changed", laptop(0, UPDATES + 1));
+        pool.broadcastEvent("laptop_updated", laptop(0, UPDATES + 2));
+        pool.broadcastEvent("laptop_state_changed", laptop(0, UPDATES + 3));
+        assertTrue(pool.getConflatedBroadcastCount() > 0);
+
+        resume.countDown();
+        long last = pool.getLastSequence();
+        waitFor(() -> client.getLastSequence() == last);
+
+        assertEquals(last, client.getLastSequence());
+        assertEquals("version " + (UPDATES + 3), latestModel.get(new UUID(0, 0)));
+        assertEquals(0, client.getSequenceGapCount());
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+}
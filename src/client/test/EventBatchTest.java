@@ -0,0 +1,154 @@
+package client.test;
+
+import client.network.SocketClientImp;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import server.network.ConnectionPool;
+import server.network.SocketServer;
+import server.network.TransportMode;
+import server.test.FakeServerModel;
+import util.Message;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tester at events fra én operation, eller fra et kort tidsvindue, når
+ * klienten som én samlet batch med sekvensnumrene i behold, og at hver
+ * klient kun får de events den abonnerer på. Kræver ikke en database.
+ */
+public class EventBatchTest {
+    private static final int TEST_PORT = 7837;
+
+    private SocketServer server;
+    private SocketClientImp client;
+    private final List<List<Message>> batches = new CopyOnWriteArrayList<>();
+    private final List<Object> single = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        server = new SocketServer(FakeServerModel.create(), TEST_PORT, TransportMode.NIO);
+        server.startServer();
+        client = connect(batches, single);
+        waitFor(() -> client.getLastSequence() == 0);
+    }
+
+    @After
+    public void tearDown() {
+        if (client != null) {
+            client.disconnect();
+        }
+        if (server != null) {
+            server.stopServer();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static SocketClientImp connect(List<List<Message>> batches, List<Object> single) throws Exception {
+        SocketClientImp client = new SocketClientImp("localhost", TEST_PORT);
+        client.addListener("event_batch", evt -> batches.add((List<Message>) evt.getNewValue()));
+        client.addListener("laptop_created", evt -> single.add(evt.getNewValue()));
+        return client;
+    }
+
+    @Test
+    public void testOperationIsSentAsOneBatch() throws Exception {
+        ConnectionPool pool = server.getConnectionPool();
+        long broadcastsBefore = pool.getBroadcastCount();
+
+        pool.beginBatch();
+        for (int i = 1; i <= 200; i++) {
+            pool.broadcastEvent("reservation_created", "reservation " + i);
+            pool.broadcastEvent("laptop_state_changed", "laptop " + i);
+        }
+        pool.endBatch();
+        waitFor(() -> client.getLastSequence() == 400);
+
+        assertEquals("Hele operationen burde komme som én batch", 1, batches.size());
+        List<Message> batch = batches.get(0);
+        assertEquals(400, batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            assertEquals(i + 1, batch.get(i).getSequence());
+        }
+        assertEquals("reservation 1", batch.get(0).getArgs());
+        assertEquals(1, pool.getBroadcastCount() - broadcastsBefore);
+        assertEquals(0, client.getSequenceGapCount());
+    }
+
+    @Test
+    public void testNestedOperationsShareOneBatch() throws Exception {
+        ConnectionPool pool = server.getConnectionPool();
+        pool.beginBatch();
+        pool.broadcastEvent("laptop_created", "laptop 1");
+        pool.beginBatch();
+        pool.broadcastEvent("laptop_created", "laptop 2");
+        pool.endBatch();
+        pool.broadcastEvent("laptop_created", "laptop 3");
+        Thread.sleep(100);
+        assertTrue("Intet burde sendes før den yderste operation slutter", batches.isEmpty());
+        pool.endBatch();
+        waitFor(() -> client.getLastSequence() == 3);
+
+        assertEquals(1, batches.size());
+        assertEquals(3, batches.get(0).size());
+        assertTrue(single.isEmpty());
+    }
+
+    @Test
+    public void testWindowGathersEventsRaisedCloseTogether() throws Exception {
+        ConnectionPool pool = server.getConnectionPool();
+        pool.setBatchWindowMillis(200);
+        for (int i = 1; i <= 50; i++) {
+            pool.broadcastEvent("laptop_created", "laptop " + i);
+        }
+        waitFor(() -> client.getLastSequence() == 50);
+
+        assertEquals(1, batches.size());
+        assertEquals(50, batches.get(0).size());
+
+        // Et enkelt event i vinduet sendes som et almindeligt event
+        pool.broadcastEvent("laptop_created", "laptop 51");
+        waitFor(() -> client.getLastSequence() == 51);
+        assertEquals(List.of("laptop 51"), single);
+        assertEquals(1, batches.size());
+    }
+
+    @Test
+    public void testEachClientGetsItsSubscribedEvents() throws Exception {
+        List<List<Message>> otherBatches = new CopyOnWriteArrayList<>();
+        List<Object> otherSingle = new CopyOnWriteArrayList<>();
+        SocketClientImp other = connect(otherBatches, otherSingle);
+        try {
+            assertTrue(other.subscribe("laptop"));
+
+            ConnectionPool pool = server.getConnectionPool();
+            pool.beginBatch();
+            pool.broadcastEvent("laptop_created", "laptop 1");
+            pool.broadcastEvent("student_created", "student 1");
+            pool.broadcastEvent("laptop_created", "laptop 2");
+            pool.endBatch();
+            waitFor(() -> client.getLastSequence() == 3 && otherBatches.size() == 1);
+
+            assertEquals(3, batches.get(0).size());
+            List<Object> laptops = new ArrayList<>();
+            for (Message event : otherBatches.get(0)) {
+                laptops.add(event.getArgs());
+            }
+            assertEquals(List.of("laptop 1", "laptop 2"), laptops);
+        } finally {
+            other.disconnect();
+        }
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package client.test;
+
+import client.network.SocketClientImp;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import server.network.SocketServer;
+import server.network.TransportMode;
+import server.test.FakeServerModel;
+import util.Message;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tester serverens nummererede events: at klienten følger med i
+ * sekvensnumrene, ignorerer dubletter og beder om et nyt øjebliksbillede,
+ * når den har misset et event, og at en klient der genopretter
+ * forbindelsen kun får de events den har misset. Kræver ikke en database.
+ */
+public class EventSequenceTest {
+    private static final int TEST_PORT = 7835;
+
+    private SocketServer server;
+    private SocketClientImp client;
+    private final List<Object> created = new CopyOnWriteArrayList<>();
+    private final AtomicInteger snapshots = new AtomicInteger();
+
+    @Before
+    public void setUp() throws Exception {
+        server = new SocketServer(FakeServerModel.create(), TEST_PORT, TransportMode.NIO);
+        server.startServer();
+        client = new SocketClientImp("localhost", TEST_PORT);
+        client.addListener("laptop_created", evt -> created.add(evt.getNewValue()));
+        client.addListener("initial_sync", evt -> snapshots.incrementAndGet());
+        // Øjebliksbilledet fra new_client sætter udgangspunktet
+        waitFor(() -> client.getLastSequence() == 0);
+    }
+
+    @After
+    public void tearDown() {
+        if (client != null) {
+            client.disconnect();
+        }
+        if (server != null) {
+            server.stopServer();
+        }
+    }
+
+    @Test
+    public void testEventsAreNumberedInOrder() throws Exception {
+        for (int i = 1; i <= 3; i++) {
+            server.getConnectionPool().broadcastEvent("laptop_created", "laptop " + i);
+        }
+        waitFor(() -> created.size() == 3);
+
+        assertEquals(3, server.getConnectionPool().getLastSequence());
+        assertEquals(3, client.getLastSequence());
+        assertEquals(List.of("laptop 1", "laptop 2", "laptop 3"), created);
+        assertEquals(0, client.getSequenceGapCount());
+    }
+
+    @Test
+    public void testDuplicateEventIsIgnored() throws Exception {
+        server.getConnectionPool().broadcastEvent("laptop_created", "laptop 1");
+        server.broadcastToAllClients(Message.event("laptop_created", "laptop 1", 1));
+        server.getConnectionPool().broadcastEvent("laptop_created", "laptop 2");
+        waitFor(() -> client.getLastSequence() == 2);
+
+        assertEquals(1, client.getDuplicateEventCount());
+        assertEquals(List.of("laptop 1", "laptop 2"), created);
+    }
+
+    @Test
+    public void testGapTriggersResync() throws Exception {
+        server.getConnectionPool().broadcastEvent("laptop_created", "laptop 1");
+        // Et event klienten aldrig får, fordi det kun er talt op på serveren
+        server.broadcastToAllClients(Message.event("laptop_created", "laptop 5", 5));
+        waitFor(() -> client.getSequenceGapCount() == 1);
+
+        // Det nye øjebliksbillede nulstiller klienten til serverens sekvensnummer
+        waitFor(() -> client.getLastSequence() == 1);
+        assertEquals(1, client.getLastSequence());
+
+        server.getConnectionPool().broadcastEvent("laptop_created", "laptop 2");
+        waitFor(() -> client.getLastSequence() == 2);
+        assertEquals(1, client.getSequenceGapCount());
+    }
+
+    @Test
+    public void testReconnectReplaysMissedEvents() throws Exception {
+        server.getConnectionPool().broadcastEvent("laptop_created", "laptop 1");
+        waitFor(() -> client.getLastSequence() == 1);
+        client.disconnect();
+
+        server.getConnectionPool().broadcastEvent("laptop_created", "laptop 2");
+        server.getConnectionPool().broadcastEvent("laptop_created", "laptop 3");
+
+        // Næste forespørgsel genopretter forbindelsen
+        assertTrue(client.getAllLaptops().isEmpty());
+        waitFor(() -> client.getLastSequence() == 3);
+
+        assertEquals(List.of("laptop 1", "laptop 2", "laptop 3"), created);
+        assertEquals("Genforbindelsen burde ikke sende et nyt øjebliksbillede", 0, snapshots.get());
+        assertEquals(1, server.getConnectionPool().getReplayCount());
+
+        server.getConnectionPool().broadcastEvent("laptop_created", "laptop 4");
+        waitFor(() -> client.getLastSequence() == 4);
+        assertEquals(0, client.getSequenceGapCount());
+    }
+
+    @Test
+    public void testReconnectToRestartedServerGetsSnapshot() throws Exception {
+        server.getConnectionPool().broadcastEvent("laptop_created", "laptop 1");
+        server.getConnectionPool().broadcastEvent("laptop_created", "laptop 2");
+        waitFor(() -> client.getLastSequence() == 2);
+
+        // En genstartet server kender ikke klientens sekvensnummer
+        server.stopServer();
+        server = new SocketServer(FakeServerModel.create(), TEST_PORT, TransportMode.NIO);
+        server.startServer();
+        waitFor(() -> !client.isConnected());
+
+        assertTrue(client.getAllLaptops().isEmpty());
+        waitFor(() -> snapshots.get() == 1);
+        assertEquals(1, snapshots.get());
+        assertEquals(0, client.getLastSequence());
+    }
+
+    @Test
+    public void testReconnectToRestartedServerPastClientsNumberGetsSnapshot() throws Exception {
+        server.getConnectionPool().broadcastEvent("laptop_created", "laptop 1");
+        server.getConnectionPool().broadcastEvent("laptop_created", "laptop 2");
+        waitFor(() -> client.getLastSequence() == 2);
+
+        // Den genstartede server har allerede brugt nummer 1..5 til andre events
+        server.stopServer();
+        server = new SocketServer(FakeServerModel.create(), TEST_PORT, TransportMode.NIO);
+        server.startServer();
+        waitFor(() -> !client.isConnected());
+        for (int i = 1; i <= 5; i++) {
+            server.getConnectionPool().broadcastEvent("laptop_created", "ny laptop " + i);
+        }
+
+        assertTrue(client.getAllLaptops().isEmpty());
+        waitFor(() -> snapshots.get() == 1);
+        assertEquals("Klienten burde få et nyt øjebliksbillede, ikke serverens events 3..5", 1, snapshots.get());
+        assertEquals(5, client.getLastSequence());
+        assertEquals(0, server.getConnectionPool().getReplayCount());
+        assertEquals(List.of("laptop 1", "laptop 2"), created);
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+}
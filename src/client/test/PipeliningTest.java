@@ -0,0 +1,96 @@
+package client.test;
+
+import client.network.SocketClientImp;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import server.network.SocketServer;
+import server.network.TransportMode;
+import server.test.FakeServerModel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tester at flere forespørgsler kan være undervejs på én forbindelse, og at
+ * hvert svar havner hos den forespørgsel det hører til.
+ * Serveren får en falsk ServerModel, så der ikke kræves en database.
+ */
+public class PipeliningTest {
+    private static final int TEST_PORT = 7833;
+
+    private SocketServer server;
+    private SocketClientImp client;
+
+    @Before
+    public void setUp() throws Exception {
+        // Hvert modelkald tager 20 ms, så svarene ikke kommer med det samme
+        server = new SocketServer(FakeServerModel.create(20), TEST_PORT, TransportMode.NIO);
+        server.startServer();
+        client = new SocketClientImp("localhost", TEST_PORT);
+        assertTrue(client.isConnected());
+    }
+
+    @After
+    public void tearDown() {
+        if (client != null) {
+            client.disconnect();
+        }
+        if (server != null) {
+            server.stopServer();
+        }
+    }
+
+    @Test
+    public void testPipelinedResponsesMatchTheirRequests() throws Exception {
+        List<CompletableFuture<Object>> futures = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            // Skiftevis et langsomt modelkald og en ukendt type der svares på med det samme
+            if (i % 2 == 0) {
+                futures.add(client.sendRequestAsync("get_all_laptops", null));
+            } else {
+                futures.add(client.sendRequestAsync("echo_" + i, null));
+            }
+        }
+
+        for (int i = 0; i < futures.size(); i++) {
+            Object response = futures.get(i).get(10, TimeUnit.SECONDS);
+            if (i % 2 == 0) {
+                assertTrue("Svar " + i + " burde være en liste", response instanceof List);
+            } else {
+                assertEquals("Unknown message type: echo_" + i, response);
+            }
+        }
+    }
+
+    @Test
+    public void testConcurrentCallersGetTheirOwnResponses() throws Exception {
+        List<Thread> callers = new ArrayList<>();
+        List<AssertionError> failures = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            int caller = t;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 10; i++) {
+                    Object response = client.sendRequestAsync("caller_" + caller + "_" + i, null).join();
+                    if (!("Unknown message type: caller_" + caller + "_" + i).equals(response)) {
+                        synchronized (failures) {
+                            failures.add(new AssertionError("Forkert svar til kalder " + caller + ": " + response));
+                        }
+                    }
+                }
+            });
+            callers.add(thread);
+            thread.start();
+        }
+        for (Thread thread : callers) {
+            thread.join(10000);
+        }
+
+        assertTrue(failures.toString(), failures.isEmpty());
+        assertEquals(0, client.getStudentCount());
+    }
+}
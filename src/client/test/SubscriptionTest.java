@@ -0,0 +1,126 @@
+package client.test;
+
+import client.network.SocketClientImp;
+import enums.PerformanceTypeEnum;
+import objects.Laptop;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import server.network.SocketServer;
+import server.network.TransportMode;
+import server.test.FakeServerModel;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tester emne-abonnementer: en klient der abonnerer får kun de events der
+ * matcher dens emner, mens andre klienter stadig får alle.
+ * Kræver ikke en database.
+ */
+public class SubscriptionTest {
+    private static final int TEST_PORT = 7836;
+
+    private SocketServer server;
+    private SocketClientImp kiosk;
+    private SocketClientImp desk;
+    private final List<String> kioskEvents = new CopyOnWriteArrayList<>();
+    private final List<String> deskEvents = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        server = new SocketServer(FakeServerModel.create(), TEST_PORT, TransportMode.NIO);
+        server.startServer();
+        kiosk = connect(kioskEvents);
+        desk = connect(deskEvents);
+    }
+
+    @After
+    public void tearDown() {
+        for (SocketClientImp client : new SocketClientImp[]{kiosk, desk}) {
+            if (client != null) {
+                client.disconnect();
+            }
+        }
+        if (server != null) {
+            server.stopServer();
+        }
+    }
+
+    private SocketClientImp connect(List<String> events) throws InterruptedException {
+        SocketClientImp client = new SocketClientImp("localhost", TEST_PORT);
+        for (String type : new String[]{"laptop_created", "reservation_created", "reservation_completed",
+                "queue_updated"}) {
+            client.addListener(type, evt -> events.add(evt.getPropertyName() + ":" + evt.getNewValue()));
+        }
+        waitFor(() -> client.getLastSequence() >= 0);
+        return client;
+    }
+
+    private void broadcastSampleEvents() {
+        Laptop laptop = new Laptop(new UUID(1, 1), "Dell", "XPS", 512, 16, PerformanceTypeEnum.HIGH);
+        server.getConnectionPool().broadcastEvent("laptop_created", laptop);
+        server.getConnectionPool().broadcastEvent("reservation_created", "r1");
+        server.getConnectionPool().broadcastEvent("queue_updated", PerformanceTypeEnum.LOW);
+        server.getConnectionPool().broadcastEvent("queue_updated", PerformanceTypeEnum.HIGH);
+        server.getConnectionPool().broadcastEvent("reservation_completed", "r1");
+    }
+
+    @Test
+    public void testSubscriberOnlyGetsItsTopics() throws Exception {
+        assertTrue(kiosk.subscribe("reservation", "queue:HIGH"));
+
+        broadcastSampleEvents();
+        waitFor(() -> deskEvents.size() == 5 && kioskEvents.size() == 3);
+
+        assertEquals(List.of("reservation_created:r1", "queue_updated:HIGH", "reservation_completed:r1"), kioskEvents);
+        assertEquals("Klienter uden abonnement burde få alt", 5, deskEvents.size());
+        // Sprunget over pga. filteret, ikke tabt
+        assertEquals(0, kiosk.getSequenceGapCount());
+    }
+
+    @Test
+    public void testEventKindFilterAndUnsubscribe() throws Exception {
+        assertTrue(kiosk.subscribe("reservation.completed"));
+        broadcastSampleEvents();
+        waitFor(() -> kioskEvents.size() == 1 && deskEvents.size() == 5);
+        assertEquals(List.of("reservation_completed:r1"), kioskEvents);
+
+        assertTrue(kiosk.unsubscribe("reservation.completed"));
+        broadcastSampleEvents();
+        waitFor(() -> deskEvents.size() == 10);
+        assertEquals("Uden emner burde klienten ikke få flere events", 1, kioskEvents.size());
+    }
+
+    @Test
+    public void testSubscriptionSurvivesReconnect() throws Exception {
+        assertTrue(kiosk.subscribe("laptop"));
+        broadcastSampleEvents();
+        waitFor(() -> kioskEvents.size() == 1);
+        kiosk.disconnect();
+
+        broadcastSampleEvents();
+        assertTrue(kiosk.getAllLaptops().isEmpty());
+        waitFor(() -> kioskEvents.size() == 2);
+        Thread.sleep(100);
+
+        assertEquals("Kun de missede laptop-events burde genudsendes", 2, kioskEvents.size());
+        assertEquals(1, server.getConnectionPool().getReplayCount());
+    }
+
+    @Test
+    public void testInvalidTopicIsRejected() {
+        assertFalse(kiosk.subscribe("laptop:ULTRA"));
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+}
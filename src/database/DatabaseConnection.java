@@ -27,8 +27,16 @@ public class DatabaseConnection {
     private static boolean initialized = false;
     private static boolean poolClosed = false;
 
-    // Sti til konfigurationsfilen
-    private static final String CONFIG_FILE = "src/main/resources/config/database.properties";
+    // Konfigurationsfilen, som ressource på classpath og som fil når der køres fra projektmappen
+    private static final String CONFIG_RESOURCE = "util/database.properties";
+    private static final String CONFIG_FILE = "src/" + CONFIG_RESOURCE;
+    private static final String PG_PROPERTY_PREFIX = "db.pgProperty.";
+
+    // Indlæst konfiguration, også til indstillinger der ikke vedrører poolen
+    private static Properties configuration;
+
+    // Forsinkelser og fejl til performancetest (null når det er slået fra)
+    private static FaultInjector faultInjector;
 
     // Forbindelsesstatistik
     private static final AtomicInteger connectionCounter = new AtomicInteger(0);
@@ -70,6 +78,8 @@ public class DatabaseConnection {
 
             // Indlæs konfiguration fra properties-fil
             Properties dbProps = loadDatabaseProperties();
+            configuration = dbProps;
+            faultInjector = FaultInjector.fromConfig();
 
             // Sæt database driver
             cpds.setDriverClass(dbProps.getProperty("db.driver"));
@@ -112,6 +122,14 @@ public class DatabaseConnection {
             Properties properties = new Properties();
             properties.setProperty("user", dbProps.getProperty("db.user"));
             properties.setProperty("password", dbProps.getProperty("db.password"));
+
+            // Driver-egenskaber som db.pgProperty.reWriteBatchedInserts, der gør
+            // batchede INSERTs til én multi-row INSERT
+            for (String name : dbProps.stringPropertyNames()) {
+                if (name.startsWith(PG_PROPERTY_PREFIX)) {
+                    properties.setProperty(name.substring(PG_PROPERTY_PREFIX.length()), dbProps.getProperty(name));
+                }
+            }
             cpds.setProperties(properties);
 
             initialized = true;
@@ -137,6 +155,44 @@ public class DatabaseConnection {
         }
     }
 
+    /**
+     * Henter en indstilling fra konfigurationen. En system property med samme
+     * navn har forrang, så indstillinger kan overskrives ved opstart.
+     *
+     * @param key Navnet på indstillingen, f.eks. "db.groupCommit.maxBatchSize"
+     * @param defaultValue Værdien hvis indstillingen ikke findes
+     * @return Indstillingens værdi
+     */
+    public static synchronized String getProperty(String key, String defaultValue) {
+        String override = System.getProperty(key);
+        if (override != null) {
+            return override;
+        }
+        if (configuration == null) {
+            configuration = loadDatabaseProperties();
+        }
+        return configuration.getProperty(key, defaultValue);
+    }
+
+    /**
+     * Henter en heltalsindstilling fra konfigurationen.
+     *
+     * @param key Navnet på indstillingen
+     * @param defaultValue Værdien hvis indstillingen ikke findes eller er ugyldig
+     * @return Indstillingens værdi
+     */
+    public static int getIntProperty(String key, int defaultValue) {
+        String value = getProperty(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
     /**
      * Indlæser database-egenskaber fra konfigurationsfilen.
      *
@@ -146,7 +202,7 @@ public class DatabaseConnection {
         Properties properties = new Properties();
         try {
             // Først forsøg med ClassLoader for at finde filen i classpath
-            InputStream inputStream = DatabaseConnection.class.getClassLoader().getResourceAsStream(CONFIG_FILE);
+            InputStream inputStream = DatabaseConnection.class.getClassLoader().getResourceAsStream(CONFIG_RESOURCE);
 
             // Hvis ikke fundet i classpath, prøv med FileInputStream
             if (inputStream == null) {
@@ -161,6 +217,7 @@ public class DatabaseConnection {
             properties.setProperty("db.url", "jdbc:postgresql://ep-mute-boat-a9rul5u1-pooler.gwc.azure.neon.tech/neondb?sslmode=require");
             properties.setProperty("db.user", "neondb_owner");
             properties.setProperty("db.password", "npg_6oHRbjLDgK8t");
+            properties.setProperty(PG_PROPERTY_PREFIX + "reWriteBatchedInserts", "true");
         }
         return properties;
     }
@@ -211,7 +268,8 @@ public class DatabaseConnection {
     }
 
     /**
-     * Henter en forbindelse fra poolen med retry-mekanisme.
+     * Henter en forbindelse fra poolen med retry-mekanisme. Har tråden en
+     * åben {@link Transaction}, fås dennes forbindelse.
      *
      * @return Database forbindelse
      * @throws SQLException hvis der er problemer med at etablere forbindelsen
@@ -225,12 +283,46 @@ public class DatabaseConnection {
             initializeConnectionPool();
         }
 
+        // Alle kald i en åben transaktion deler dens forbindelse
+        Transaction transaction = Transaction.current();
+        if (transaction != null) {
+            if (!transaction.hasConnection()) {
+                transaction.bind(acquireConnection());
+            }
+            return transaction.getSharedConnection();
+        }
+        return acquireConnection();
+    }
+
+    /**
+     * Henter en ny forbindelse fra poolen med retry-mekanisme.
+     *
+     * @return Database forbindelse
+     * @throws SQLException hvis der er problemer med at etablere forbindelsen
+     */
+    private static Connection acquireConnection() throws SQLException {
+
+        // Deadline for den klientforespørgsel tråden behandler, hvis nogen
+        RequestDeadline deadline = RequestDeadline.current();
+
         int attempts = 0;
         SQLException lastException = null;
 
         while (attempts < MAX_RETRY_ATTEMPTS) {
+            if (deadline != null) {
+                deadline.check();
+            }
             try {
+                if (faultInjector != null) {
+                    faultInjector.beforeConnect();
+                }
                 Connection conn = cpds.getConnection();
+                if (faultInjector != null) {
+                    conn = faultInjector.wrap(conn);
+                }
+                if (deadline != null) {
+                    conn = deadline.wrap(conn);
+                }
 
 
                 // Send besked om forbindelse oprettet
@@ -270,6 +362,15 @@ public class DatabaseConnection {
                 new SQLException(errorMsg);
     }
 
+    /**
+     * Henter statistik om injicerede fejl.
+     *
+     * @return String med statistik, eller null hvis fault injection er slået fra
+     */
+    public static String getFaultStats() {
+        return faultInjector != null ? faultInjector.getStats() : null;
+    }
+
     /**
      * Lukker forbindelsespoolen - kald denne ved programafslutning.
      */
@@ -0,0 +1,391 @@
+package database;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+/**
+ * Eksporterer og importerer hele datasættet (Laptop, Student, Reservation og
+ * QueueEntry) som et binært snapshot, så en ny server eller et testmiljø kan
+ * varmstartes uden at afspille datasættet gennem DAO'erne række for række.
+ *
+ * Eksporten læser alle tabeller i én read-only REPEATABLE READ transaktion, så
+ * snapshot'et er et konsistent øjebliksbillede. Importen indsætter med batchede
+ * INSERTs og committer periodisk.
+ */
+public class DatasetSnapshot {
+    private static final Logger logger = Logger.getLogger(DatasetSnapshot.class.getName());
+
+    private static final int DEFAULT_BATCH_SIZE = 1000;
+    private static final int DEFAULT_COMMIT_INTERVAL = 50_000;
+    private static final int FETCH_SIZE = 5000;
+
+    private final int batchSize;
+    private final int commitInterval;
+
+    /**
+     * Opretter et DatasetSnapshot med standard batchstørrelse.
+     */
+    public DatasetSnapshot() {
+        this(DEFAULT_BATCH_SIZE, DEFAULT_COMMIT_INTERVAL);
+    }
+
+    /**
+     * Opretter et DatasetSnapshot.
+     *
+     * @param batchSize Antal rækker pr. executeBatch ved import
+     * @param commitInterval Antal rækker mellem commits ved import
+     */
+    public DatasetSnapshot(int batchSize, int commitInterval) {
+        if (batchSize <= 0 || commitInterval < batchSize) {
+            throw new IllegalArgumentException("Ugyldig batchstørrelse eller commit-interval");
+        }
+        this.batchSize = batchSize;
+        this.commitInterval = commitInterval;
+    }
+
+    /**
+     * Eksporterer alle tabeller til en fil.
+     *
+     * @param file Filen der skrives
+     * @return Statistik for eksporten
+     * @throws SQLException hvis der er problemer med databasen
+     * @throws IOException hvis filen ikke kan skrives
+     */
+    public Result exportTo(Path file) throws SQLException, IOException {
+        Result result;
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file))) {
+            result = exportTo(out);
+        } catch (SQLException | IOException | RuntimeException e) {
+            // Et afbrudt snapshot må ikke ligge klar til en senere import
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException deleteError) {
+                e.addSuppressed(deleteError);
+            }
+            throw e;
+        }
+        logger.info("Snapshot eksporteret til " + file + ": " + result);
+        return result;
+    }
+
+    /**
+     * Eksporterer alle tabeller til en strøm. Traileren med checksum skrives
+     * kun når alle tabeller er eksporteret, så en afbrudt eksport afvises
+     * ved import.
+     *
+     * @param output Strømmen der skrives til (lukkes af metoden)
+     * @return Statistik for eksporten
+     * @throws SQLException hvis der er problemer med databasen
+     * @throws IOException hvis strømmen ikke kan skrives
+     */
+    public Result exportTo(OutputStream output) throws SQLException, IOException {
+        long start = System.nanoTime();
+        CountingOutputStream counting = new CountingOutputStream(output);
+
+        try (Connection conn = DatabaseConnection.getConnection();
+             SnapshotWriter writer = new SnapshotWriter(counting)) {
+
+            // Et konsistent snapshot på tværs af alle tabeller. autoCommit skal
+            // også være slået fra for at PostgreSQL-driveren streamer med fetchSize.
+            int isolation = conn.getTransactionIsolation();
+            conn.setAutoCommit(false);
+            conn.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+            conn.setReadOnly(true);
+
+            try {
+                for (SnapshotTable table : SnapshotTable.values()) {
+                    exportTable(conn, table, writer);
+                }
+                conn.commit();
+            } catch (SQLException | IOException | RuntimeException e) {
+                // Transaktionen skal afsluttes før flagene kan ændres tilbage
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setReadOnly(false);
+                conn.setTransactionIsolation(isolation);
+                conn.setAutoCommit(true);
+            }
+
+            writer.finish();
+            return new Result(writer.getTotalRows(), counting.count, System.nanoTime() - start);
+        }
+    }
+
+    private void exportTable(Connection conn, SnapshotTable table, SnapshotWriter writer)
+            throws SQLException, IOException {
+        long start = System.nanoTime();
+        long before = writer.getTotalRows();
+        int columns = table.getColumnCount();
+
+        try (Statement stmt = conn.createStatement()) {
+            stmt.setFetchSize(FETCH_SIZE);
+
+            try (ResultSet rs = stmt.executeQuery(table.selectSql())) {
+                writer.beginTable(table);
+                Object[] row = new Object[columns];
+
+                while (rs.next()) {
+                    for (int i = 0; i < columns; i++) {
+                        row[i] = readColumn(rs, i + 1, table.getType(i));
+                    }
+                    writer.writeRow(row);
+                }
+                writer.endTable();
+            }
+        }
+
+        logRate("Eksporteret", table, writer.getTotalRows() - before, System.nanoTime() - start);
+    }
+
+    /**
+     * Importerer et snapshot fra en fil. Tabellerne forventes at være tomme.
+     *
+     * @param file Filen der læses
+     * @return Statistik for importen
+     * @throws SQLException hvis der er problemer med databasen
+     * @throws IOException hvis filen er ødelagt eller ikke kan læses
+     */
+    public Result importFrom(Path file) throws SQLException, IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            Result result = importFrom(in);
+            logger.info("Snapshot importeret fra " + file + ": " + result);
+            return result;
+        }
+    }
+
+    /**
+     * Importerer et snapshot fra en strøm. Tabellerne forventes at være tomme.
+     *
+     * Rækkerne committes for hvert commit-interval. Checksummen kan først
+     * verificeres når hele filen er læst, så opdages en ødelagt fil rulles kun
+     * den igangværende transaktion tilbage, og tabellerne skal tømmes manuelt.
+     *
+     * @param input Strømmen der læses fra
+     * @return Statistik for importen
+     * @throws SQLException hvis der er problemer med databasen
+     * @throws IOException hvis strømmen er ødelagt
+     */
+    public Result importFrom(InputStream input) throws SQLException, IOException {
+        long start = System.nanoTime();
+        CountingInputStream counting = new CountingInputStream(input);
+
+        try (Connection conn = DatabaseConnection.getConnection();
+             SnapshotReader reader = new SnapshotReader(counting)) {
+
+            conn.setAutoCommit(false);
+            try {
+                SnapshotTable table;
+                while ((table = reader.nextTable()) != null) {
+                    importTable(conn, table, reader);
+                }
+                conn.commit();
+            } catch (SQLException | IOException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+
+            return new Result(reader.getRowsRead(), counting.count, System.nanoTime() - start);
+        }
+    }
+
+    private void importTable(Connection conn, SnapshotTable table, SnapshotReader reader)
+            throws SQLException, IOException {
+        long start = System.nanoTime();
+        long rows = 0;
+        int pendingInBatch = 0;
+
+        try (PreparedStatement stmt = conn.prepareStatement(table.insertSql())) {
+            Object[] row;
+            while ((row = reader.nextRow()) != null) {
+                for (int i = 0; i < row.length; i++) {
+                    bindColumn(stmt, i + 1, table.getType(i), row[i]);
+                }
+                stmt.addBatch();
+                pendingInBatch++;
+                rows++;
+
+                if (pendingInBatch == batchSize) {
+                    stmt.executeBatch();
+                    pendingInBatch = 0;
+                }
+                if (rows % commitInterval == 0) {
+                    conn.commit();
+                }
+            }
+            if (pendingInBatch > 0) {
+                stmt.executeBatch();
+            }
+        }
+
+        logRate("Importeret", table, rows, System.nanoTime() - start);
+    }
+
+    private Object readColumn(ResultSet rs, int index, SnapshotTable.ColumnType type) throws SQLException {
+        switch (type) {
+            case UUID:
+                return UUID.fromString(rs.getString(index));
+            case STRING:
+                return rs.getString(index);
+            case INT:
+                return rs.getInt(index);
+            case DATE:
+                java.sql.Date date = rs.getDate(index);
+                return date != null ? date.getTime() : null;
+            case TIMESTAMP:
+                Timestamp timestamp = rs.getTimestamp(index);
+                return timestamp != null ? timestamp.getTime() : null;
+            default:
+                throw new SQLException("Ukendt kolonnetype: " + type);
+        }
+    }
+
+    private void bindColumn(PreparedStatement stmt, int index, SnapshotTable.ColumnType type, Object value)
+            throws SQLException {
+        switch (type) {
+            case UUID:
+                stmt.setString(index, value.toString());
+                break;
+            case STRING:
+                stmt.setString(index, (String) value);
+                break;
+            case INT:
+                stmt.setInt(index, (Integer) value);
+                break;
+            case DATE:
+                stmt.setDate(index, value != null ? new java.sql.Date((Long) value) : null);
+                break;
+            case TIMESTAMP:
+                stmt.setTimestamp(index, value != null ? new Timestamp((Long) value) : null);
+                break;
+            default:
+                throw new SQLException("Ukendt kolonnetype: " + type);
+        }
+    }
+
+    private void logRate(String action, SnapshotTable table, long rows, long nanos) {
+        double seconds = nanos / 1_000_000_000.0;
+        logger.info(String.format("%s %d rækker fra %s på %.2f s (%.0f rækker/s)",
+                action, rows, table.getTableName(), seconds, seconds > 0 ? rows / seconds : 0));
+    }
+
+    /**
+     * Statistik for en eksport eller import.
+     */
+    public static class Result {
+        private final long rows;
+        private final long bytes;
+        private final long nanos;
+
+        Result(long rows, long bytes, long nanos) {
+            this.rows = rows;
+            this.bytes = bytes;
+            this.nanos = nanos;
+        }
+
+        public long getRows() {
+            return rows;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        public double getRowsPerSecond() {
+            return nanos > 0 ? rows / (nanos / 1_000_000_000.0) : 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d rækker, %.1f MB, %.2f s, %.0f rækker/s",
+                    rows, bytes / (1024.0 * 1024.0), nanos / 1_000_000_000.0, getRowsPerSecond());
+        }
+    }
+
+    private static class CountingOutputStream extends java.io.FilterOutputStream {
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    private static class CountingInputStream extends java.io.FilterInputStream {
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+    }
+
+    /**
+     * Kommandolinje: {@code export <fil>} eller {@code import <fil>}.
+     */
+    public static void main(String[] args) {
+        if (args.length != 2 || !(args[0].equals("export") || args[0].equals("import"))) {
+            System.err.println("Brug: DatasetSnapshot export|import <fil>");
+            System.exit(2);
+        }
+
+        DatasetSnapshot snapshot = new DatasetSnapshot();
+        Path file = Paths.get(args[1]);
+        try {
+            Result result = args[0].equals("export") ? snapshot.exportTo(file) : snapshot.importFrom(file);
+            System.out.println(args[0] + ": " + result);
+        } catch (SQLException | IOException e) {
+            System.err.println("Snapshot " + args[0] + " fejlede: " + e.getMessage());
+            System.exit(1);
+        } finally {
+            DatabaseConnection.closePool();
+        }
+    }
+}
@@ -0,0 +1,421 @@
+package database;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+/**
+ * Indsprøjter forsinkelser og fejl i databasekald, så serverens og klientens
+ * opførsel under hale-latens (f.eks. Neon cold starts) kan måles lokalt.
+ *
+ * DAO'erne er konkrete klasser som ServerModelImpl bruger direkte, så
+ * decoratoren sidder i stedet på JDBC-forbindelserne, som alle DAO'er går
+ * igennem. Hvert kald tilskrives den DAO-metode der udfører det, så reglerne
+ * kan angives pr. metode. Opslag går fra det mest specifikke til det mest
+ * generelle:
+ * <pre>
+ *   fault.enabled=true
+ *   fault.seed=42                               (valgfri, for reproducerbare kørsler)
+ *   fault.LaptopDAO.getAll.latency=uniform:50-300
+ *   fault.LaptopDAO.errorRate=0.01
+ *   fault.default.latency=exponential:20
+ *   fault.default.spikeRate=0.001
+ *   fault.default.spikeMillis=4000
+ *   fault.default.timeoutRate=0.001            (hænger til query timeout, derefter SQLTimeoutException)
+ *   fault.default.timeoutMillis=30000          (hvor længe et hæng varer uden query timeout)
+ *   fault.connection.latency=fixed:20
+ *   fault.connection.failureRate=0.01
+ *   fault.connection.coldStartMillis=3000      (forsinkelse efter inaktivitet)
+ *   fault.connection.coldStartIdleMillis=300000
+ * </pre>
+ * Latens angives som fixed:ms, uniform:min-max eller exponential:middel.
+ */
+public class FaultInjector {
+    private static final Logger logger = Logger.getLogger(FaultInjector.class.getName());
+
+    private static final String PREFIX = "fault.";
+    private static final String INJECTED_SQL_STATE = "FI000";
+
+    private final Function<String, String> config;
+    private final Random random;
+    private final Map<String, Rule> rules = new ConcurrentHashMap<>();
+
+    // Forbindelsesregler
+    private final Latency connectionLatency;
+    private final double connectionFailureRate;
+    private final long coldStartMillis;
+    private final long coldStartIdleNanos;
+    private final AtomicLong lastConnectAt = new AtomicLong(System.nanoTime());
+
+    // Statistik
+    private final AtomicLong delayedCalls = new AtomicLong();
+    private final AtomicLong injectedMillis = new AtomicLong();
+    private final AtomicLong injectedErrors = new AtomicLong();
+    private final AtomicLong injectedTimeouts = new AtomicLong();
+    private final AtomicLong connectionFailures = new AtomicLong();
+    private final AtomicLong coldStarts = new AtomicLong();
+
+    /**
+     * Opretter en injector der læser sine regler fra den givne kilde.
+     *
+     * @param config Slår en indstilling op ud fra dens fulde navn, null hvis den ikke findes
+     */
+    public FaultInjector(Function<String, String> config) {
+        this.config = config;
+        String seed = config.apply(PREFIX + "seed");
+        this.random = seed != null ? new Random(Long.parseLong(seed.trim())) : new Random();
+
+        this.connectionLatency = Latency.parse(config.apply(PREFIX + "connection.latency"));
+        this.connectionFailureRate = parseDouble(config.apply(PREFIX + "connection.failureRate"), 0);
+        this.coldStartMillis = parseLong(config.apply(PREFIX + "connection.coldStartMillis"), 0);
+        this.coldStartIdleNanos = TimeUnit.MILLISECONDS.toNanos(
+                parseLong(config.apply(PREFIX + "connection.coldStartIdleMillis"), 300_000));
+    }
+
+    /**
+     * Opretter en injector ud fra databasekonfigurationen.
+     *
+     * @return Injectoren, eller null hvis fault.enabled ikke er sat til true
+     */
+    public static FaultInjector fromConfig() {
+        if (!Boolean.parseBoolean(DatabaseConnection.getProperty(PREFIX + "enabled", "false"))) {
+            return null;
+        }
+        logger.warning("Fault injection er slået til - databasekald forsinkes og fejler med vilje");
+        return new FaultInjector(key -> DatabaseConnection.getProperty(key, null));
+    }
+
+    /**
+     * Kaldes før en forbindelse hentes fra poolen. Simulerer forbindelseslatens,
+     * cold starts efter inaktivitet og mislykkede forbindelsesforsøg.
+     *
+     * @throws SQLException hvis et forbindelsesforsøg skal fejle
+     */
+    public void beforeConnect() throws SQLException {
+        long now = System.nanoTime();
+        long previous = lastConnectAt.getAndSet(now);
+
+        long delay = connectionLatency.sample(random);
+        if (coldStartMillis > 0 && now - previous > coldStartIdleNanos) {
+            coldStarts.incrementAndGet();
+            delay += coldStartMillis;
+        }
+        if (delay > 0) {
+            pause(delay, null);
+        }
+
+        if (chance(connectionFailureRate)) {
+            connectionFailures.incrementAndGet();
+            throw new SQLException("Injiceret forbindelsesfejl", "08001");
+        }
+    }
+
+    /**
+     * Kaldes før en sætning udføres.
+     *
+     * @param site DAO-metoden der udfører sætningen, f.eks. "LaptopDAO.getAll"
+     * @param queryTimeoutSeconds Sætningens query timeout (0 = ingen)
+     * @param cancelled Tælles ned hvis sætningen annulleres, og afbryder så forsinkelsen
+     * @throws SQLException hvis kaldet skal fejle eller time ud
+     */
+    public void beforeStatement(String site, int queryTimeoutSeconds, CountDownLatch cancelled)
+            throws SQLException {
+        Rule rule = rules.computeIfAbsent(site, this::loadRule);
+        long timeoutMillis = queryTimeoutSeconds > 0 ? TimeUnit.SECONDS.toMillis(queryTimeoutSeconds) : 0;
+
+        if (chance(rule.timeoutRate)) {
+            injectedTimeouts.incrementAndGet();
+            pause(timeoutMillis > 0 ? timeoutMillis : rule.timeoutMillis, cancelled);
+            throw new SQLTimeoutException("Injiceret timeout i " + site, "57014");
+        }
+
+        long delay = rule.latency.sample(random);
+        if (chance(rule.spikeRate)) {
+            delay += rule.spikeMillis;
+        }
+        if (delay > 0) {
+            // En rigtig database ville afbryde sætningen ved query timeout
+            if (timeoutMillis > 0 && delay > timeoutMillis) {
+                injectedTimeouts.incrementAndGet();
+                pause(timeoutMillis, cancelled);
+                throw new SQLTimeoutException("Injiceret forsinkelse på " + delay + " ms overskred query timeout i " +
+                        site, "57014");
+            }
+            pause(delay, cancelled);
+        }
+
+        if (chance(rule.errorRate)) {
+            injectedErrors.incrementAndGet();
+            throw new SQLException("Injiceret fejl i " + site, INJECTED_SQL_STATE);
+        }
+    }
+
+    /**
+     * Pakker en forbindelse ind, så alle sætninger oprettet på den går gennem injectoren.
+     *
+     * @param connection Forbindelsen fra poolen
+     * @return Den indpakkede forbindelse
+     */
+    public Connection wrap(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, new ConnectionHandler(connection));
+    }
+
+    /**
+     * Finder den DAO-metode i database-pakken der står bag det aktuelle kald.
+     *
+     * @return F.eks. "LaptopDAO.getAll", eller "unknown" hvis kaldet ikke kommer fra en DAO
+     */
+    static String callSite() {
+        return StackWalker.getInstance().walk(frames -> frames
+                .filter(f -> {
+                    String name = f.getClassName();
+                    return name.startsWith("database.") && !name.startsWith(FaultInjector.class.getName()) &&
+                            !name.equals(DatabaseConnection.class.getName());
+                })
+                .findFirst()
+                .map(f -> {
+                    String name = f.getClassName().substring("database.".length());
+                    int inner = name.indexOf('$');
+                    return (inner >= 0 ? name.substring(0, inner) : name) + "." + f.getMethodName();
+                })
+                .orElse("unknown"));
+    }
+
+    /**
+     * Henter statistik om de injicerede fejl.
+     *
+     * @return String med statistik
+     */
+    public String getStats() {
+        StringBuilder stats = new StringBuilder();
+        stats.append("Fault Injection Status:\n");
+        stats.append("  Forsinkede kald: ").append(delayedCalls.get()).append("\n");
+        stats.append("  Injiceret ventetid: ").append(injectedMillis.get()).append(" ms\n");
+        stats.append("  Injicerede fejl: ").append(injectedErrors.get()).append("\n");
+        stats.append("  Injicerede timeouts: ").append(injectedTimeouts.get()).append("\n");
+        stats.append("  Forbindelsesfejl: ").append(connectionFailures.get()).append("\n");
+        stats.append("  Cold starts: ").append(coldStarts.get());
+        return stats.toString();
+    }
+
+    private Rule loadRule(String site) {
+        int dot = site.indexOf('.');
+        String[] scopes = dot >= 0
+                ? new String[]{site, site.substring(0, dot), "default"}
+                : new String[]{site, "default"};
+
+        Rule rule = new Rule(
+                Latency.parse(lookup(scopes, "latency")),
+                parseDouble(lookup(scopes, "errorRate"), 0),
+                parseDouble(lookup(scopes, "timeoutRate"), 0),
+                parseLong(lookup(scopes, "timeoutMillis"), 30_000),
+                parseDouble(lookup(scopes, "spikeRate"), 0),
+                parseLong(lookup(scopes, "spikeMillis"), 0));
+        logger.fine("Fault-regel for " + site + ": " + rule);
+        return rule;
+    }
+
+    private String lookup(String[] scopes, String attribute) {
+        for (String scope : scopes) {
+            String value = config.apply(PREFIX + scope + "." + attribute);
+            if (value != null) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    private boolean chance(double rate) {
+        if (rate <= 0) {
+            return false;
+        }
+        synchronized (random) {
+            return random.nextDouble() < rate;
+        }
+    }
+
+    private void pause(long millis, CountDownLatch cancelled) throws SQLException {
+        delayedCalls.incrementAndGet();
+        injectedMillis.addAndGet(millis);
+        try {
+            if (cancelled == null) {
+                Thread.sleep(millis);
+            } else if (cancelled.await(millis, TimeUnit.MILLISECONDS)) {
+                throw new SQLException("Sætningen blev annulleret", "57014");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Afbrudt under injiceret forsinkelse", INJECTED_SQL_STATE, e);
+        }
+    }
+
+    private static double parseDouble(String value, double defaultValue) {
+        return value != null ? Double.parseDouble(value.trim()) : defaultValue;
+    }
+
+    private static long parseLong(String value, long defaultValue) {
+        return value != null ? Long.parseLong(value.trim()) : defaultValue;
+    }
+
+    /**
+     * Regler for én DAO-metode.
+     */
+    private static final class Rule {
+        final Latency latency;
+        final double errorRate;
+        final double timeoutRate;
+        final long timeoutMillis;
+        final double spikeRate;
+        final long spikeMillis;
+
+        Rule(Latency latency, double errorRate, double timeoutRate, long timeoutMillis,
+             double spikeRate, long spikeMillis) {
+            this.latency = latency;
+            this.errorRate = errorRate;
+            this.timeoutRate = timeoutRate;
+            this.timeoutMillis = timeoutMillis;
+            this.spikeRate = spikeRate;
+            this.spikeMillis = spikeMillis;
+        }
+
+        @Override
+        public String toString() {
+            return "latency=" + latency + ", errorRate=" + errorRate + ", timeoutRate=" + timeoutRate +
+                    ", spikeRate=" + spikeRate + ", spikeMillis=" + spikeMillis;
+        }
+    }
+
+    /**
+     * En latensfordeling i millisekunder.
+     */
+    static final class Latency {
+        static final Latency NONE = new Latency("none", 0, 0);
+
+        private final String kind;
+        private final double a;
+        private final double b;
+
+        private Latency(String kind, double a, double b) {
+            this.kind = kind;
+            this.a = a;
+            this.b = b;
+        }
+
+        /**
+         * Fortolker "fixed:50", "uniform:10-200" eller "exponential:40".
+         */
+        static Latency parse(String spec) {
+            if (spec == null || spec.isBlank()) {
+                return NONE;
+            }
+            String[] parts = spec.trim().split(":", 2);
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Ugyldig latens: " + spec);
+            }
+            switch (parts[0]) {
+                case "fixed":
+                    return new Latency("fixed", Double.parseDouble(parts[1]), 0);
+                case "uniform":
+                    String[] range = parts[1].split("-", 2);
+                    if (range.length != 2) {
+                        throw new IllegalArgumentException("Ugyldig uniform latens: " + spec);
+                    }
+                    return new Latency("uniform", Double.parseDouble(range[0]), Double.parseDouble(range[1]));
+                case "exponential":
+                    return new Latency("exponential", Double.parseDouble(parts[1]), 0);
+                default:
+                    throw new IllegalArgumentException("Ukendt latensfordeling: " + spec);
+            }
+        }
+
+        long sample(Random random) {
+            double u;
+            switch (kind) {
+                case "fixed":
+                    return (long) a;
+                case "uniform":
+                    synchronized (random) {
+                        u = random.nextDouble();
+                    }
+                    return (long) (a + u * (b - a));
+                case "exponential":
+                    synchronized (random) {
+                        u = random.nextDouble();
+                    }
+                    return (long) (-a * Math.log(1 - u));
+                default:
+                    return 0;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return kind + (kind.equals("none") ? "" : ":" + a + (kind.equals("uniform") ? "-" + b : ""));
+        }
+    }
+
+    private final class ConnectionHandler implements InvocationHandler {
+        private final Connection target;
+
+        ConnectionHandler(Connection target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object result = invokeTarget(target, method, args);
+
+            Class<?> type = method.getReturnType();
+            if (result instanceof Statement &&
+                    (type == Statement.class || type == PreparedStatement.class || type == CallableStatement.class)) {
+                return Proxy.newProxyInstance(Statement.class.getClassLoader(), new Class<?>[]{type},
+                        new StatementHandler((Statement) result));
+            }
+            return result;
+        }
+    }
+
+    private final class StatementHandler implements InvocationHandler {
+        private final Statement target;
+        private final CountDownLatch cancelled = new CountDownLatch(1);
+
+        StatementHandler(Statement target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.startsWith("execute")) {
+                beforeStatement(callSite(), target.getQueryTimeout(), cancelled);
+            } else if (name.equals("cancel")) {
+                cancelled.countDown();
+            }
+            return invokeTarget(target, method, args);
+        }
+    }
+
+    private static Object invokeTarget(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,495 @@
+package database;
+
+import enums.PerformanceTypeEnum;
+import enums.ReservationStatusEnum;
+import objects.Reservation;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Samler samtidige skrivninger af reservationer og køpladser og committer dem
+ * som én transaktion med batchede sætninger, i stedet for én forbindelse og
+ * ét commit pr. kald.
+ *
+ * En samlertråd venter på den første skrivning og samler derefter i op til
+ * maxLatency eller til maxBatchSize er nået. Hver kalder blokerer på sin egen
+ * future og får sit individuelle resultat. Fejler en batch, rulles den tilbage
+ * og skrivningerne udføres én ad gangen, så kun den skrivning der fejler
+ * rammer sin kalder.
+ *
+ * Konfigureres med db.groupCommit.enabled, db.groupCommit.maxBatchSize og
+ * db.groupCommit.maxLatencyMillis.
+ */
+public class GroupCommitPipeline implements AutoCloseable {
+    private static final Logger logger = Logger.getLogger(GroupCommitPipeline.class.getName());
+
+    public static final int DEFAULT_MAX_BATCH_SIZE = 64;
+    public static final int DEFAULT_MAX_LATENCY_MILLIS = 5;
+
+    private static final String INSERT_RESERVATION_SQL =
+            "INSERT INTO Reservation (reservation_uuid, laptop_uuid, student_via_id, status, creation_date) " +
+                    "VALUES (CAST(? AS UUID), CAST(? AS UUID), ?, ?, ?)";
+    private static final String LOAN_LAPTOP_SQL =
+            "UPDATE Laptop SET state = 'LoanedState' WHERE laptop_uuid = CAST(? AS UUID)";
+    private static final String RELEASE_LAPTOP_SQL =
+            "UPDATE Laptop SET state = 'AvailableState' WHERE laptop_uuid = CAST(? AS UUID)";
+    private static final String UPDATE_STATUS_SQL =
+            "UPDATE Reservation SET status = ? WHERE reservation_uuid = CAST(? AS UUID)";
+    // clock_timestamp() frem for CURRENT_TIMESTAMP, som er ens for hele transaktionen,
+    // så rækkefølgen i køen bevares inden for en batch
+    private static final String INSERT_QUEUE_SQL =
+            "INSERT INTO QueueEntry (student_via_id, performance_type, entry_date) " +
+                    "VALUES (?, ?, clock_timestamp())";
+
+    private final int maxBatchSize;
+    private final long maxLatencyNanos;
+    private final BlockingQueue<PendingWrite<?>> queue;
+    private final Thread collector;
+    private volatile boolean running;
+
+    // Statistik
+    private final long startedAt;
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong batchCount = new AtomicLong();
+    private final AtomicLong fallbackCount = new AtomicLong();
+    private final AtomicLong commitNanos = new AtomicLong();
+
+    /**
+     * Opretter en pipeline og starter samlertråden.
+     *
+     * @param maxBatchSize Maksimalt antal skrivninger pr. transaktion
+     * @param maxLatencyMillis Hvor længe der højst ventes på flere skrivninger (0 = ingen ventetid)
+     */
+    public GroupCommitPipeline(int maxBatchSize, long maxLatencyMillis) {
+        if (maxBatchSize <= 0 || maxLatencyMillis < 0) {
+            throw new IllegalArgumentException("Ugyldig batchstørrelse eller ventetid");
+        }
+        this.maxBatchSize = maxBatchSize;
+        this.maxLatencyNanos = TimeUnit.MILLISECONDS.toNanos(maxLatencyMillis);
+        this.queue = new LinkedBlockingQueue<>();
+        this.startedAt = System.nanoTime();
+        this.running = true;
+
+        this.collector = new Thread(this::collectLoop, "group-commit");
+        this.collector.setDaemon(true);
+        this.collector.start();
+    }
+
+    /**
+     * Opretter en pipeline ud fra konfigurationen.
+     *
+     * @return Pipelinen, eller null hvis group commit er slået fra
+     */
+    public static GroupCommitPipeline fromConfig() {
+        if (!Boolean.parseBoolean(DatabaseConnection.getProperty("db.groupCommit.enabled", "true"))) {
+            return null;
+        }
+        int batchSize = DatabaseConnection.getIntProperty("db.groupCommit.maxBatchSize", DEFAULT_MAX_BATCH_SIZE);
+        int latency = DatabaseConnection.getIntProperty("db.groupCommit.maxLatencyMillis", DEFAULT_MAX_LATENCY_MILLIS);
+        return new GroupCommitPipeline(batchSize, latency);
+    }
+
+    /**
+     * Indsætter en reservation og markerer laptoppen som udlånt.
+     *
+     * @param reservation Reservationen der oprettes
+     * @return true når reservationen er committed
+     * @throws SQLException hvis skrivningen fejler
+     */
+    public boolean createReservation(Reservation reservation) throws SQLException {
+        return submit(new CreateReservation(reservation));
+    }
+
+    /**
+     * Opdaterer status på en reservation og frigiver laptoppen hvis en aktiv
+     * reservation afsluttes eller annulleres.
+     *
+     * @param reservation Reservationen med den nye status
+     * @return Den tidligere status, eller null hvis reservationen ikke findes
+     * @throws SQLException hvis skrivningen fejler
+     */
+    public ReservationStatusEnum updateStatus(Reservation reservation) throws SQLException {
+        return submit(new UpdateStatus(reservation));
+    }
+
+    /**
+     * Sætter en student i kø.
+     *
+     * @param studentId Studentens VIA ID
+     * @param performanceType Køens performance type
+     * @return true hvis studenten blev sat i kø
+     * @throws SQLException hvis skrivningen fejler
+     */
+    public boolean addToQueue(int studentId, PerformanceTypeEnum performanceType) throws SQLException {
+        return submit(new AddToQueue(studentId, performanceType));
+    }
+
+    private <T> T submit(PendingWrite<T> write) throws SQLException {
+        if (!running) {
+            throw new SQLException("Group commit pipeline er lukket");
+        }
+        RequestDeadline deadline = RequestDeadline.current();
+        if (deadline != null) {
+            deadline.check();
+        }
+        requestCount.incrementAndGet();
+        queue.add(write);
+
+        try {
+            if (deadline != null && deadline.hasDeadline()) {
+                try {
+                    return write.future.get(Math.max(0, deadline.remainingMillis()), TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    // Kun en skrivning der ikke er samlet op endnu kan trækkes tilbage;
+                    // er den i gang med at blive committed, må vi vente på resultatet
+                    if (queue.remove(write)) {
+                        throw new SQLTimeoutException("Deadline overskredet før skrivningen blev udført", "57014");
+                    }
+                }
+            }
+            return write.future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Afbrudt mens der ventedes på commit", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException) {
+                throw (SQLException) cause;
+            }
+            throw new SQLException("Fejl i group commit: " + cause.getMessage(), cause);
+        }
+    }
+
+    private void collectLoop() {
+        List<PendingWrite<?>> batch = new ArrayList<>(maxBatchSize);
+
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingWrite<?> first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                long deadline = System.nanoTime() + maxLatencyNanos;
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    PendingWrite<?> next = remaining > 0
+                            ? queue.poll(remaining, TimeUnit.NANOSECONDS)
+                            : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                executeBatch(batch);
+            } catch (InterruptedException e) {
+                if (!running) {
+                    break;
+                }
+            } catch (RuntimeException e) {
+                logger.log(Level.SEVERE, "Uventet fejl i group commit", e);
+                for (PendingWrite<?> write : batch) {
+                    write.future.completeExceptionally(e);
+                }
+            } finally {
+                batch.clear();
+            }
+        }
+
+        // Skrivninger der kom ind efter lukning
+        PendingWrite<?> write;
+        while ((write = queue.poll()) != null) {
+            write.future.completeExceptionally(new SQLException("Group commit pipeline er lukket"));
+        }
+    }
+
+    private void executeBatch(List<PendingWrite<?>> batch) {
+        long start = System.nanoTime();
+        List<CreateReservation> creates = new ArrayList<>();
+        List<UpdateStatus> updates = new ArrayList<>();
+        List<AddToQueue> queueEntries = new ArrayList<>();
+
+        for (PendingWrite<?> write : batch) {
+            if (write instanceof CreateReservation) {
+                creates.add((CreateReservation) write);
+            } else if (write instanceof UpdateStatus) {
+                updates.add((UpdateStatus) write);
+            } else {
+                queueEntries.add((AddToQueue) write);
+            }
+        }
+
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                Map<PendingWrite<?>, Object> results = new HashMap<>();
+                writeReservations(conn, creates, results);
+                writeStatusUpdates(conn, updates, results);
+                writeQueueEntries(conn, queueEntries, results);
+                conn.commit();
+
+                batchCount.incrementAndGet();
+                commitNanos.addAndGet(System.nanoTime() - start);
+                for (PendingWrite<?> write : batch) {
+                    write.complete(results.get(write));
+                }
+                return;
+            } catch (SQLException e) {
+                conn.rollback();
+                if (batch.size() == 1) {
+                    batch.get(0).future.completeExceptionally(e);
+                    return;
+                }
+                logger.warning("Batch med " + batch.size() + " skrivninger fejlede, udfører enkeltvis: " +
+                        e.getMessage());
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            // Ingen forbindelse; ingen grund til at prøve hver skrivning for sig
+            for (PendingWrite<?> write : batch) {
+                write.future.completeExceptionally(e);
+            }
+            return;
+        }
+
+        fallbackCount.incrementAndGet();
+        for (PendingWrite<?> write : batch) {
+            executeBatch(Collections.singletonList(write));
+        }
+    }
+
+    private void writeReservations(Connection conn, List<CreateReservation> creates,
+                                   Map<PendingWrite<?>, Object> results) throws SQLException {
+        if (creates.isEmpty()) {
+            return;
+        }
+
+        try (PreparedStatement insert = conn.prepareStatement(INSERT_RESERVATION_SQL);
+             PreparedStatement loan = conn.prepareStatement(LOAN_LAPTOP_SQL)) {
+            for (CreateReservation create : creates) {
+                Reservation reservation = create.reservation;
+                insert.setString(1, reservation.getReservationId().toString());
+                insert.setString(2, reservation.getLaptop().getId().toString());
+                insert.setInt(3, reservation.getStudent().getViaId());
+                insert.setString(4, reservation.getStatus().name());
+                insert.setTimestamp(5, new Timestamp(reservation.getCreationDate().getTime()));
+                insert.addBatch();
+
+                loan.setString(1, reservation.getLaptop().getId().toString());
+                loan.addBatch();
+                results.put(create, Boolean.TRUE);
+            }
+            insert.executeBatch();
+            loan.executeBatch();
+        }
+    }
+
+    private void writeStatusUpdates(Connection conn, List<UpdateStatus> updates,
+                                    Map<PendingWrite<?>, Object> results) throws SQLException {
+        if (updates.isEmpty()) {
+            return;
+        }
+
+        // Nuværende status for alle berørte reservationer i én forespørgsel
+        Map<UUID, ReservationStatusEnum> statuses = readStatuses(conn, updates);
+
+        try (PreparedStatement update = conn.prepareStatement(UPDATE_STATUS_SQL);
+             PreparedStatement release = conn.prepareStatement(RELEASE_LAPTOP_SQL)) {
+            boolean anyRelease = false;
+
+            for (UpdateStatus write : updates) {
+                Reservation reservation = write.reservation;
+                UUID id = reservation.getReservationId();
+                ReservationStatusEnum current = statuses.get(id);
+                results.put(write, current);
+                if (current == null) {
+                    continue; // Reservation findes ikke
+                }
+
+                update.setString(1, reservation.getStatus().name());
+                update.setString(2, id.toString());
+                update.addBatch();
+
+                if (current == ReservationStatusEnum.ACTIVE &&
+                        (reservation.getStatus() == ReservationStatusEnum.COMPLETED ||
+                                reservation.getStatus() == ReservationStatusEnum.CANCELLED)) {
+                    release.setString(1, reservation.getLaptop().getId().toString());
+                    release.addBatch();
+                    anyRelease = true;
+                }
+
+                // Flere opdateringer af samme reservation i én batch ser hinanden
+                statuses.put(id, reservation.getStatus());
+            }
+
+            update.executeBatch();
+            if (anyRelease) {
+                release.executeBatch();
+            }
+        }
+    }
+
+    private Map<UUID, ReservationStatusEnum> readStatuses(Connection conn, List<UpdateStatus> updates)
+            throws SQLException {
+        StringBuilder sql = new StringBuilder(
+                "SELECT reservation_uuid, status FROM Reservation WHERE reservation_uuid IN (");
+        for (int i = 0; i < updates.size(); i++) {
+            sql.append(i == 0 ? "CAST(? AS UUID)" : ", CAST(? AS UUID)");
+        }
+        sql.append(") FOR UPDATE");
+
+        Map<UUID, ReservationStatusEnum> statuses = new HashMap<>();
+        try (PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+            for (int i = 0; i < updates.size(); i++) {
+                stmt.setString(i + 1, updates.get(i).reservation.getReservationId().toString());
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    statuses.put(UUID.fromString(rs.getString("reservation_uuid")),
+                            ReservationStatusEnum.valueOf(rs.getString("status")));
+                }
+            }
+        }
+        return statuses;
+    }
+
+    private void writeQueueEntries(Connection conn, List<AddToQueue> entries,
+                                   Map<PendingWrite<?>, Object> results) throws SQLException {
+        if (entries.isEmpty()) {
+            return;
+        }
+
+        try (PreparedStatement stmt = conn.prepareStatement(INSERT_QUEUE_SQL)) {
+            for (AddToQueue entry : entries) {
+                stmt.setInt(1, entry.studentId);
+                stmt.setString(2, entry.performanceType.name());
+                stmt.addBatch();
+            }
+
+            int[] counts = stmt.executeBatch();
+            for (int i = 0; i < entries.size(); i++) {
+                // SUCCESS_NO_INFO (-2) betyder at driveren ikke kender antallet, men rækken er indsat
+                results.put(entries.get(i), counts[i] != 0);
+            }
+        }
+    }
+
+    /**
+     * @return Maksimalt antal skrivninger pr. transaktion
+     */
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /**
+     * @return Antal skrivninger modtaget
+     */
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * @return Antal committede batches
+     */
+    public long getBatchCount() {
+        return batchCount.get();
+    }
+
+    /**
+     * Henter statistik om pipelinen.
+     *
+     * @return String med statistik
+     */
+    public String getStats() {
+        long requests = requestCount.get();
+        long batches = batchCount.get();
+        double seconds = (System.nanoTime() - startedAt) / 1_000_000_000.0;
+
+        StringBuilder stats = new StringBuilder();
+        stats.append("Group Commit Status:\n");
+        stats.append("  Skrivninger: ").append(requests).append("\n");
+        stats.append("  Batches: ").append(batches).append("\n");
+        stats.append("  Gns. batchstørrelse: ")
+                .append(batches > 0 ? String.format("%.1f", (double) requests / batches) : "-").append("\n");
+        stats.append("  Gns. committid: ")
+                .append(batches > 0 ? String.format("%.1f ms", commitNanos.get() / 1_000_000.0 / batches) : "-")
+                .append("\n");
+        stats.append("  Batches udført enkeltvis: ").append(fallbackCount.get()).append("\n");
+        stats.append("  Gennemløb: ").append(String.format("%.1f skrivninger/s", seconds > 0 ? requests / seconds : 0));
+        return stats.toString();
+    }
+
+    /**
+     * Stopper samlertråden efter at ventende skrivninger er udført.
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            collector.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * En skrivning der venter på at blive committed.
+     */
+    private abstract static class PendingWrite<T> {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+
+        @SuppressWarnings("unchecked")
+        void complete(Object result) {
+            future.complete((T) result);
+        }
+    }
+
+    private static final class CreateReservation extends PendingWrite<Boolean> {
+        final Reservation reservation;
+
+        CreateReservation(Reservation reservation) {
+            this.reservation = reservation;
+        }
+    }
+
+    private static final class UpdateStatus extends PendingWrite<ReservationStatusEnum> {
+        final Reservation reservation;
+
+        UpdateStatus(Reservation reservation) {
+            this.reservation = reservation;
+        }
+    }
+
+    private static final class AddToQueue extends PendingWrite<Boolean> {
+        final int studentId;
+        final PerformanceTypeEnum performanceType;
+
+        AddToQueue(int studentId, PerformanceTypeEnum performanceType) {
+            this.studentId = studentId;
+            this.performanceType = performanceType;
+        }
+    }
+}
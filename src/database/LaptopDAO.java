@@ -44,11 +44,24 @@ public class LaptopDAO implements GenericDAO<Laptop, UUID> {
      */
     @Override
     public List<Laptop> getAll() throws SQLException {
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            return getAll(conn);
+        }
+    }
+
+    /**
+     * Henter alle laptops på en given forbindelse, f.eks. inden for en
+     * igangværende snapshot-transaktion. Forbindelsen lukkes ikke.
+     *
+     * @param conn Forbindelsen der skal bruges
+     * @return Liste af laptops
+     * @throws SQLException hvis der er problemer med databasen
+     */
+    public List<Laptop> getAll(Connection conn) throws SQLException {
         List<Laptop> laptops = new ArrayList<>();
         String sql = "SELECT laptop_uuid, brand, model, gigabyte, ram, performance_type, state FROM Laptop";
 
-        try (Connection conn = DatabaseConnection.getConnection();
-             Statement stmt = conn.createStatement();
+        try (Statement stmt = conn.createStatement();
              ResultSet rs = stmt.executeQuery(sql)) {
 
             while (rs.next()) {
@@ -414,7 +427,15 @@ public class LaptopDAO implements GenericDAO<Laptop, UUID> {
     }
 
 
-    private Laptop mapResultSetToLaptop(ResultSet rs) throws SQLException {
+    /**
+     * Konverterer den aktuelle række til et Laptop objekt. Bruges også af
+     * ReservationDAO når laptop-kolonnerne hentes med en JOIN.
+     *
+     * @param rs ResultSet med laptop-kolonnerne
+     * @return Laptop objektet
+     * @throws SQLException hvis der er problemer med databasen
+     */
+    Laptop mapResultSetToLaptop(ResultSet rs) throws SQLException {
         UUID laptopId = UUID.fromString(rs.getString("laptop_uuid"));
         String brand = rs.getString("brand");
         String model = rs.getString("model");
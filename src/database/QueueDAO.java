@@ -20,6 +20,9 @@ public class QueueDAO {
     private static final Logger logger = Logger.getLogger(QueueDAO.class.getName());
     private final PropertyChangeSupport support;
 
+    // Optional pipeline that groups queue inserts into shared commits
+    private GroupCommitPipeline groupCommit;
+
     // Message types
     public static final String QUEUE_UPDATED = "QUEUE_UPDATED";
     public static final String DATABASE_ERROR = "DATABASE_ERROR";
@@ -31,6 +34,16 @@ public class QueueDAO {
         support = new PropertyChangeSupport(this);
     }
 
+    /**
+     * Routes addToQueue through a group commit pipeline instead of one
+     * connection and commit per call.
+     *
+     * @param groupCommit The pipeline, or null to write directly
+     */
+    public void setGroupCommitPipeline(GroupCommitPipeline groupCommit) {
+        this.groupCommit = groupCommit;
+    }
+
     /**
      * Gets all students in a queue for a specific performance type.
      *
@@ -39,14 +52,29 @@ public class QueueDAO {
      * @throws SQLException If a database error occurs
      */
     public List<Student> getQueueByPerformanceType(PerformanceTypeEnum performanceType) throws SQLException {
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            return getQueueByPerformanceType(conn, performanceType);
+        }
+    }
+
+    /**
+     * Gets all students in a queue using the given connection, e.g. inside an
+     * ongoing snapshot transaction. The connection is not closed.
+     *
+     * @param conn Connection to use
+     * @param performanceType Performance type to get queue for
+     * @return List of students in the queue
+     * @throws SQLException If a database error occurs
+     */
+    public List<Student> getQueueByPerformanceType(Connection conn, PerformanceTypeEnum performanceType)
+            throws SQLException {
         List<Student> studentsInQueue = new ArrayList<>();
         String sql = "SELECT s.* FROM Student s " +
                 "JOIN QueueEntry q ON s.via_id = q.student_via_id " +
                 "WHERE q.performance_type = ? " +
                 "ORDER BY q.entry_date ASC";
 
-        try (Connection conn = DatabaseConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
 
             stmt.setString(1, performanceType.name());
 
@@ -74,6 +102,21 @@ public class QueueDAO {
      * @throws SQLException If a database error occurs
      */
     public boolean addToQueue(int studentId, PerformanceTypeEnum performanceType) throws SQLException {
+        // The pipeline commits on its own connection; inside a transaction, write directly
+        if (groupCommit != null && Transaction.current() == null) {
+            try {
+                boolean success = groupCommit.addToQueue(studentId, performanceType);
+                if (success) {
+                    Message message = new Message(QUEUE_UPDATED, performanceType);
+                    support.firePropertyChange(QUEUE_UPDATED, null, message);
+                }
+                return success;
+            } catch (SQLException e) {
+                handleSQLException("Error adding student to queue: " + studentId, e);
+                throw e;
+            }
+        }
+
         String sql = "INSERT INTO QueueEntry (student_via_id, performance_type, entry_date) " +
                 "VALUES (?, ?, CURRENT_TIMESTAMP)";
 
@@ -0,0 +1,215 @@
+package database;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Deadline og annullering for den forespørgsel den aktuelle tråd behandler.
+ *
+ * ClientHandler binder en deadline til tråden mens en klientforespørgsel
+ * behandles. DatabaseConnection pakker så de forbindelser tråden henter ind,
+ * så hver sætning får en query timeout svarende til den resterende tid, og
+ * så {@link #cancel()} kan afbryde de sætninger der kører lige nu. Dermed
+ * frigives poolens forbindelser når klienten har opgivet at vente.
+ */
+public final class RequestDeadline implements AutoCloseable {
+    private static final Logger logger = Logger.getLogger(RequestDeadline.class.getName());
+    private static final ThreadLocal<RequestDeadline> CURRENT = new ThreadLocal<>();
+
+    // SQLState for "query_canceled" i PostgreSQL
+    private static final String CANCELLED_SQL_STATE = "57014";
+
+    private final long deadlineNanos;
+    private final RequestDeadline previous;
+    private final Set<Statement> running = ConcurrentHashMap.newKeySet();
+    private volatile boolean cancelled;
+
+    private RequestDeadline(long deadlineNanos, RequestDeadline previous) {
+        this.deadlineNanos = deadlineNanos;
+        this.previous = previous;
+    }
+
+    /**
+     * Binder en deadline til den aktuelle tråd. Skal lukkes med close(),
+     * typisk i en try-with-resources.
+     *
+     * @param deadlineNanos Tidspunkt i System.nanoTime() hvor forespørgslen opgives, 0 for ingen deadline
+     * @return Den bundne deadline
+     */
+    public static RequestDeadline start(long deadlineNanos) {
+        RequestDeadline deadline = new RequestDeadline(deadlineNanos, CURRENT.get());
+        CURRENT.set(deadline);
+        return deadline;
+    }
+
+    /**
+     * @return Deadlinen bundet til den aktuelle tråd, eller null
+     */
+    public static RequestDeadline current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Omregner en relativ timeout til en deadline målt fra nu.
+     *
+     * @param timeoutMillis Timeout i millisekunder, 0 eller negativ for ingen
+     * @return Deadline til {@link #start(long)}, eller 0
+     */
+    public static long deadlineFromNow(long timeoutMillis) {
+        return timeoutMillis > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis) : 0;
+    }
+
+    public boolean hasDeadline() {
+        return deadlineNanos != 0;
+    }
+
+    /**
+     * @return Resterende tid i millisekunder, Long.MAX_VALUE hvis der ingen deadline er
+     */
+    public long remainingMillis() {
+        if (!hasDeadline()) {
+            return Long.MAX_VALUE;
+        }
+        return TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime());
+    }
+
+    public boolean isExpired() {
+        return hasDeadline() && deadlineNanos - System.nanoTime() <= 0;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Fejler hvis forespørgslen er annulleret eller deadlinen er overskredet.
+     *
+     * @throws SQLException hvis arbejdet skal opgives
+     */
+    public void check() throws SQLException {
+        if (cancelled) {
+            throw new SQLException("Forespørgslen blev annulleret af klienten", CANCELLED_SQL_STATE);
+        }
+        if (isExpired()) {
+            throw new SQLTimeoutException("Forespørgslens deadline er overskredet", CANCELLED_SQL_STATE);
+        }
+    }
+
+    /**
+     * Annullerer forespørgslen. Kan kaldes fra en anden tråd; sætninger der
+     * kører lige nu afbrydes med Statement.cancel().
+     */
+    public void cancel() {
+        cancelled = true;
+        for (Statement statement : running) {
+            try {
+                statement.cancel();
+            } catch (SQLException e) {
+                logger.fine("Kunne ikke annullere sætning: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Fjerner deadlinen fra tråden.
+     */
+    @Override
+    public void close() {
+        if (previous != null) {
+            CURRENT.set(previous);
+        } else {
+            CURRENT.remove();
+        }
+    }
+
+    /**
+     * Pakker en forbindelse ind, så sætninger oprettet på den arver deadlinen.
+     *
+     * @param connection Forbindelsen fra poolen
+     * @return Den indpakkede forbindelse
+     */
+    public Connection wrap(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, new ConnectionHandler(connection));
+    }
+
+    private void applyQueryTimeout(Statement statement) throws SQLException {
+        if (!hasDeadline()) {
+            return;
+        }
+        long remaining = deadlineNanos - System.nanoTime();
+        // Query timeout angives i hele sekunder; rund op så der ikke afbrydes for tidligt
+        int seconds = (int) Math.max(1, (TimeUnit.NANOSECONDS.toMillis(remaining) + 999) / 1000);
+        int current = statement.getQueryTimeout();
+        if (current == 0 || seconds < current) {
+            statement.setQueryTimeout(seconds);
+        }
+    }
+
+    private final class ConnectionHandler implements InvocationHandler {
+        private final Connection target;
+
+        ConnectionHandler(Connection target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object result = invokeTarget(target, method, args);
+
+            Class<?> type = method.getReturnType();
+            if (result instanceof Statement &&
+                    (type == Statement.class || type == PreparedStatement.class || type == CallableStatement.class)) {
+                return Proxy.newProxyInstance(Statement.class.getClassLoader(), new Class<?>[]{type},
+                        new StatementHandler((Statement) result));
+            }
+            return result;
+        }
+    }
+
+    private final class StatementHandler implements InvocationHandler {
+        private final Statement target;
+
+        StatementHandler(Statement target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (!method.getName().startsWith("execute")) {
+                return invokeTarget(target, method, args);
+            }
+
+            check();
+            applyQueryTimeout(target);
+            running.add(target);
+            try {
+                // cancel() kan være kaldt mellem check() og add()
+                check();
+                return invokeTarget(target, method, args);
+            } finally {
+                running.remove(target);
+            }
+        }
+    }
+
+    private static Object invokeTarget(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
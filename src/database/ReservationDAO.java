@@ -28,6 +28,9 @@ public class ReservationDAO implements GenericDAO<Reservation, UUID> {
     private final LaptopDAO laptopDAO;
     private final StudentDAO studentDAO;
 
+    // Valgfri pipeline der samler transaktionelle skrivninger i fælles commits
+    private GroupCommitPipeline groupCommit;
+
     // Besked typer
     public static final String RESERVATION_CREATED = "RESERVATION_CREATED";
     public static final String RESERVATION_UPDATED = "RESERVATION_UPDATED";
@@ -44,6 +47,16 @@ public class ReservationDAO implements GenericDAO<Reservation, UUID> {
         this.studentDAO = new StudentDAO();
     }
 
+    /**
+     * Sender createReservationWithTransaction og updateStatusWithTransaction
+     * gennem en group commit pipeline i stedet for én transaktion pr. kald.
+     *
+     * @param groupCommit Pipelinen, eller null for at skrive direkte
+     */
+    public void setGroupCommitPipeline(GroupCommitPipeline groupCommit) {
+        this.groupCommit = groupCommit;
+    }
+
     /**
      * Henter alle reservationer fra databasen.
      *
@@ -80,21 +93,39 @@ public class ReservationDAO implements GenericDAO<Reservation, UUID> {
      * @throws SQLException hvis der er problemer med databasen
      */
     public List<Reservation> getAllActive() throws SQLException {
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            return getAllActive(conn);
+        }
+    }
+
+    /**
+     * Henter alle aktive reservationer på en given forbindelse, f.eks. inden for
+     * en igangværende snapshot-transaktion. Forbindelsen lukkes ikke.
+     *
+     * Laptop og student hentes med i samme forespørgsel, så der ikke laves et
+     * opslag pr. reservation, og alle tre dele kommer fra samme snapshot.
+     *
+     * @param conn Forbindelsen der skal bruges
+     * @return Liste af aktive reservationer
+     * @throws SQLException hvis der er problemer med databasen
+     */
+    public List<Reservation> getAllActive(Connection conn) throws SQLException {
         List<Reservation> reservations = new ArrayList<>();
-        String sql = "SELECT reservation_uuid, laptop_uuid, student_via_id, status, creation_date " +
-                "FROM Reservation WHERE status = ?";
+        String sql = "SELECT r.reservation_uuid, r.status, r.creation_date, " +
+                "l.laptop_uuid, l.brand, l.model, l.gigabyte, l.ram, l.performance_type, l.state, " +
+                "s.via_id, s.name, s.degree_end_date, s.degree_title, s.email, s.phone_number, s.performance_needed " +
+                "FROM Reservation r " +
+                "JOIN Laptop l ON l.laptop_uuid = r.laptop_uuid " +
+                "JOIN Student s ON s.via_id = r.student_via_id " +
+                "WHERE r.status = ?";
 
-        try (Connection conn = DatabaseConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
 
             stmt.setString(1, ReservationStatusEnum.ACTIVE.name());
 
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
-                    Reservation reservation = mapResultSetToReservation(rs);
-                    if (reservation != null) {
-                        reservations.add(reservation);
-                    }
+                    reservations.add(mapJoinedResultSetToReservation(rs));
                 }
             }
         } catch (SQLException e) {
@@ -184,6 +215,19 @@ public class ReservationDAO implements GenericDAO<Reservation, UUID> {
      * @throws SQLException hvis der er problemer med databasen
      */
     public boolean createReservationWithTransaction(Reservation reservation) throws SQLException {
+        // Pipelinen committer på sin egen forbindelse; i en åben transaktion skrives direkte
+        if (groupCommit != null && Transaction.current() == null) {
+            try {
+                groupCommit.createReservation(reservation);
+            } catch (SQLException e) {
+                handleSQLException("Fejl ved oprettelse af reservation med transaktion: " +
+                        reservation.getReservationId(), e);
+                throw e;
+            }
+            reservationCreatedWithTransaction(reservation);
+            return true;
+        }
+
         Connection conn = null;
         try {
             conn = DatabaseConnection.getConnection();
@@ -211,14 +255,7 @@ public class ReservationDAO implements GenericDAO<Reservation, UUID> {
             // Commit transaktionen
             conn.commit();
 
-            logger.info("Reservation [ID: " + reservation.getReservationId() + "] oprettet med transaktion: " +
-                    reservation.getStudent().getName() + " -> " +
-                    reservation.getLaptop().getBrand() + " " + reservation.getLaptop().getModel());
-
-            // Send besked om at reservation er oprettet
-            Message message = new Message(RESERVATION_CREATED, reservation);
-            support.firePropertyChange(RESERVATION_CREATED, null, message);
-
+            reservationCreatedWithTransaction(reservation);
             return true;
         } catch (SQLException e) {
             if (conn != null) {
@@ -244,6 +281,16 @@ public class ReservationDAO implements GenericDAO<Reservation, UUID> {
         }
     }
 
+    private void reservationCreatedWithTransaction(Reservation reservation) {
+        logger.info("Reservation [ID: " + reservation.getReservationId() + "] oprettet med transaktion: " +
+                reservation.getStudent().getName() + " -> " +
+                reservation.getLaptop().getBrand() + " " + reservation.getLaptop().getModel());
+
+        // Send besked om at reservation er oprettet
+        Message message = new Message(RESERVATION_CREATED, reservation);
+        support.firePropertyChange(RESERVATION_CREATED, null, message);
+    }
+
     /**
      * Opdaterer en eksisterende reservation.
      *
@@ -290,6 +337,22 @@ public class ReservationDAO implements GenericDAO<Reservation, UUID> {
      * @throws SQLException hvis der er problemer med databasen
      */
     public boolean updateStatusWithTransaction(Reservation reservation) throws SQLException {
+        if (groupCommit != null && Transaction.current() == null) {
+            ReservationStatusEnum previousStatus;
+            try {
+                previousStatus = groupCommit.updateStatus(reservation);
+            } catch (SQLException e) {
+                handleSQLException("Fejl ved opdatering af reservationsstatus med transaktion: " +
+                        reservation.getReservationId(), e);
+                throw e;
+            }
+            if (previousStatus == null) {
+                return false; // Reservation findes ikke
+            }
+            statusChangedWithTransaction(reservation, previousStatus);
+            return true;
+        }
+
         Connection conn = null;
         try {
             conn = DatabaseConnection.getConnection();
@@ -332,14 +395,7 @@ public class ReservationDAO implements GenericDAO<Reservation, UUID> {
             // Commit transaktionen
             conn.commit();
 
-            logger.info("Reservation [ID: " + reservation.getReservationId() + "] status ændret fra " +
-                    currentStatus.name() + " til " + reservation.getStatus().name());
-
-            // Send besked om statusændring
-            Message message = new Message(RESERVATION_STATUS_CHANGED,
-                    new Object[]{reservation, currentStatus, reservation.getStatus()});
-            support.firePropertyChange(RESERVATION_STATUS_CHANGED, null, message);
-
+            statusChangedWithTransaction(reservation, currentStatus);
             return true;
         } catch (SQLException e) {
             if (conn != null) {
@@ -365,6 +421,16 @@ public class ReservationDAO implements GenericDAO<Reservation, UUID> {
         }
     }
 
+    private void statusChangedWithTransaction(Reservation reservation, ReservationStatusEnum previousStatus) {
+        logger.info("Reservation [ID: " + reservation.getReservationId() + "] status ændret fra " +
+                previousStatus.name() + " til " + reservation.getStatus().name());
+
+        // Send besked om statusændring
+        Message message = new Message(RESERVATION_STATUS_CHANGED,
+                new Object[]{reservation, previousStatus, reservation.getStatus()});
+        support.firePropertyChange(RESERVATION_STATUS_CHANGED, null, message);
+    }
+
     /**
      * Sletter en reservation fra databasen.
      *
@@ -653,6 +719,33 @@ public class ReservationDAO implements GenericDAO<Reservation, UUID> {
         return new Reservation(reservationId, student, laptop, status, creationDate);
     }
 
+    /**
+     * Konverterer en række fra en JOIN med Laptop og Student til Reservation objekt.
+     *
+     * @param rs ResultSet med reservations-, laptop- og student-kolonner
+     * @return Reservation objektet
+     * @throws SQLException hvis der er problemer med databasen
+     */
+    private Reservation mapJoinedResultSetToReservation(ResultSet rs) throws SQLException {
+        UUID reservationId = UUID.fromString(rs.getString("reservation_uuid"));
+        String statusStr = rs.getString("status");
+        Timestamp creationTimestamp = rs.getTimestamp("creation_date");
+
+        ReservationStatusEnum status;
+        try {
+            status = ReservationStatusEnum.valueOf(statusStr);
+        } catch (IllegalArgumentException e) {
+            logger.warning("Ukendt reservationsstatus i databasen: " + statusStr + ". Bruger ACTIVE som standard.");
+            status = ReservationStatusEnum.ACTIVE;
+        }
+
+        Laptop laptop = laptopDAO.mapResultSetToLaptop(rs);
+        Student student = studentDAO.mapResultSetToStudent(rs);
+        Date creationDate = creationTimestamp != null ? new Date(creationTimestamp.getTime()) : new Date();
+
+        return new Reservation(reservationId, student, laptop, status, creationDate);
+    }
+
     /**
      * Håndterer SQLException ved at logge den og sende en besked om fejlen.
      *
@@ -0,0 +1,204 @@
+package database;
+
+import util.VarInts;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+
+/**
+ * Læser et snapshot skrevet af {@link SnapshotWriter}.
+ * Rækker læses som en strøm, så hele filen aldrig skal ligge i hukommelsen.
+ * Checksummen verificeres når den sidste tabel er læst.
+ */
+public class SnapshotReader implements Closeable {
+    // Beskytter mod at en ødelagt længde får os til at allokere gigabytes
+    private static final int MAX_RECORD_SIZE = 1024 * 1024;
+
+    private final InputStream rawIn;
+    private final CRC32 crc;
+    private final DataInputStream in;
+    private final long createdAt;
+
+    private final List<String> dictionary;
+    private byte[] recordBuffer;
+    private SnapshotTable currentTable;
+    private long rowsRead;
+    private boolean finished;
+
+    /**
+     * Opretter en reader og validerer filens header.
+     *
+     * @param input Strømmen snapshot'et læses fra
+     * @throws IOException hvis headeren er ugyldig eller versionen ukendt
+     */
+    public SnapshotReader(InputStream input) throws IOException {
+        this.rawIn = new BufferedInputStream(input, 64 * 1024);
+        this.crc = new CRC32();
+        this.in = new DataInputStream(new CheckedInputStream(rawIn, crc));
+        this.dictionary = new ArrayList<>();
+        this.recordBuffer = new byte[256];
+
+        int magic = in.readInt();
+        if (magic != SnapshotWriter.MAGIC) {
+            throw new IOException("Ikke en snapshot-fil (ukendt magic: " + Integer.toHexString(magic) + ")");
+        }
+        int version = in.readUnsignedByte();
+        if (version != SnapshotWriter.VERSION) {
+            throw new IOException("Ikke-understøttet snapshot-version: " + version);
+        }
+        this.createdAt = in.readLong();
+    }
+
+    /**
+     * @return Tidspunktet snapshot'et blev oprettet (epoch millisekunder)
+     */
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    /**
+     * Går videre til næste tabelsektion. Eventuelle ulæste rækker i den
+     * aktuelle tabel springes over.
+     *
+     * @return Næste tabel, eller null når snapshot'et er slut og checksummen er verificeret
+     * @throws IOException hvis filen er ødelagt
+     */
+    public SnapshotTable nextTable() throws IOException {
+        while (currentTable != null) {
+            nextRow();
+        }
+        if (finished) {
+            return null;
+        }
+
+        int id = in.readUnsignedByte();
+        if (id == SnapshotWriter.END_OF_SNAPSHOT) {
+            verifyTrailer();
+            return null;
+        }
+
+        SnapshotTable table = SnapshotTable.fromId(id);
+        if (table == null) {
+            throw new IOException("Ukendt tabel-id i snapshot: " + id);
+        }
+        currentTable = table;
+        return table;
+    }
+
+    /**
+     * Læser næste række i den aktuelle tabel.
+     *
+     * @return Kolonneværdierne, eller null når tabellen er slut
+     * @throws IOException hvis filen er ødelagt
+     */
+    public Object[] nextRow() throws IOException {
+        if (currentTable == null) {
+            return null;
+        }
+
+        int length = VarInts.readVarInt(in);
+        if (length == 0) {
+            currentTable = null;
+            return null;
+        }
+        if (length < 0 || length > MAX_RECORD_SIZE) {
+            throw new IOException("Ugyldig rækkelængde: " + length);
+        }
+
+        if (recordBuffer.length < length) {
+            recordBuffer = new byte[Math.max(length, recordBuffer.length * 2)];
+        }
+        in.readFully(recordBuffer, 0, length);
+        ByteBuffer record = ByteBuffer.wrap(recordBuffer, 0, length);
+
+        Object[] values = new Object[currentTable.getColumnCount()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = readValue(currentTable.getType(i), record);
+        }
+        if (record.hasRemaining()) {
+            throw new IOException("Række i " + currentTable + " har " + record.remaining() + " ulæste bytes");
+        }
+
+        rowsRead++;
+        return values;
+    }
+
+    /**
+     * @return Antal rækker læst indtil videre
+     */
+    public long getRowsRead() {
+        return rowsRead;
+    }
+
+    @Override
+    public void close() throws IOException {
+        rawIn.close();
+    }
+
+    private void verifyTrailer() throws IOException {
+        long expectedRows = VarInts.readVarLong(in);
+        long computed = crc.getValue();
+        int stored = new DataInputStream(rawIn).readInt();
+        finished = true;
+
+        if ((int) computed != stored) {
+            throw new IOException("Snapshot checksum passer ikke - filen er ødelagt");
+        }
+        if (expectedRows != rowsRead) {
+            throw new IOException("Snapshot indeholder " + rowsRead + " rækker, trailer angiver " + expectedRows);
+        }
+    }
+
+    private Object readValue(SnapshotTable.ColumnType type, ByteBuffer record) throws IOException {
+        switch (type) {
+            case UUID:
+                if (record.remaining() < 16) {
+                    throw new IOException("Afkortet UUID");
+                }
+                return new UUID(record.getLong(), record.getLong());
+            case STRING:
+                return readString(record);
+            case INT:
+                return VarInts.unZigZag(VarInts.readVarInt(record));
+            case DATE:
+            case TIMESTAMP:
+                long encoded = VarInts.readVarLong(record);
+                return encoded == 0 ? null : VarInts.unZigZag(encoded - 1);
+            default:
+                throw new IOException("Ukendt kolonnetype: " + type);
+        }
+    }
+
+    private String readString(ByteBuffer record) throws IOException {
+        int index = VarInts.readVarInt(record);
+        if (index == 0) {
+            return null;
+        }
+        if (index <= dictionary.size()) {
+            return dictionary.get(index - 1);
+        }
+        if (index != dictionary.size() + 1) {
+            throw new IOException("Ugyldigt ordbogsindeks: " + index);
+        }
+
+        int length = VarInts.readVarInt(record);
+        if (length < 0 || length > record.remaining()) {
+            throw new IOException("Ugyldig strenglængde: " + length);
+        }
+        String value = new String(record.array(), record.arrayOffset() + record.position(), length,
+                StandardCharsets.UTF_8);
+        record.position(record.position() + length);
+        dictionary.add(value);
+        return value;
+    }
+}
@@ -0,0 +1,108 @@
+package database;
+
+/**
+ * Beskriver de tabeller der indgår i et datasæt-snapshot.
+ * Rækkefølgen af konstanterne er den rækkefølge tabellerne eksporteres og
+ * importeres i, så fremmednøgler altid peger på rækker der allerede findes.
+ */
+public enum SnapshotTable {
+    LAPTOP(1, "Laptop",
+            new String[]{"laptop_uuid", "brand", "model", "gigabyte", "ram", "performance_type", "state"},
+            new ColumnType[]{ColumnType.UUID, ColumnType.STRING, ColumnType.STRING, ColumnType.INT,
+                    ColumnType.INT, ColumnType.STRING, ColumnType.STRING}),
+
+    STUDENT(2, "Student",
+            new String[]{"via_id", "name", "degree_end_date", "degree_title", "email", "phone_number",
+                    "performance_needed"},
+            new ColumnType[]{ColumnType.INT, ColumnType.STRING, ColumnType.DATE, ColumnType.STRING,
+                    ColumnType.STRING, ColumnType.INT, ColumnType.STRING}),
+
+    RESERVATION(3, "Reservation",
+            new String[]{"reservation_uuid", "laptop_uuid", "student_via_id", "status", "creation_date"},
+            new ColumnType[]{ColumnType.UUID, ColumnType.UUID, ColumnType.INT, ColumnType.STRING,
+                    ColumnType.TIMESTAMP}),
+
+    QUEUE_ENTRY(4, "QueueEntry",
+            new String[]{"student_via_id", "performance_type", "entry_date"},
+            new ColumnType[]{ColumnType.INT, ColumnType.STRING, ColumnType.TIMESTAMP});
+
+    /**
+     * Kolonnetyper og hvordan de kodes i snapshot-filen.
+     */
+    public enum ColumnType {
+        /** 16 bytes: mest og mindst betydende long. */
+        UUID,
+        /** Varint-indeks i filens strengordbog (0 betyder null). */
+        STRING,
+        /** Zigzag-varint. */
+        INT,
+        /** Millisekunder som zigzag-varlong forskudt med 1 (0 betyder null). */
+        DATE,
+        /** Som DATE, men læses og skrives som Timestamp. */
+        TIMESTAMP
+    }
+
+    private final int id;
+    private final String tableName;
+    private final String[] columns;
+    private final ColumnType[] types;
+
+    SnapshotTable(int id, String tableName, String[] columns, ColumnType[] types) {
+        this.id = id;
+        this.tableName = tableName;
+        this.columns = columns;
+        this.types = types;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public int getColumnCount() {
+        return columns.length;
+    }
+
+    public ColumnType getType(int column) {
+        return types[column];
+    }
+
+    /**
+     * Finder tabellen med et givent id fra snapshot-filen.
+     *
+     * @param id Tabellens id
+     * @return Tabellen eller null hvis id'et er ukendt
+     */
+    public static SnapshotTable fromId(int id) {
+        for (SnapshotTable table : values()) {
+            if (table.id == id) {
+                return table;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return SELECT-sætning der henter alle kolonner i snapshot-rækkefølge
+     */
+    public String selectSql() {
+        return "SELECT " + String.join(", ", columns) + " FROM " + tableName;
+    }
+
+    /**
+     * @return INSERT-sætning med én parameter pr. kolonne
+     */
+    public String insertSql() {
+        StringBuilder values = new StringBuilder();
+        for (int i = 0; i < types.length; i++) {
+            if (i > 0) {
+                values.append(", ");
+            }
+            values.append(types[i] == ColumnType.UUID ? "CAST(? AS UUID)" : "?");
+        }
+        return "INSERT INTO " + tableName + " (" + String.join(", ", columns) + ") VALUES (" + values + ")";
+    }
+}
@@ -0,0 +1,204 @@
+package database;
+
+import util.VarInts;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Skriver et datasæt-snapshot i et kompakt binært format.
+ *
+ * Filformat (version 1):
+ * <pre>
+ *   header   : magic "LMSS" (int), version (byte), oprettelsestid (long)
+ *   sektion  : tabel-id (byte), rækker..., 0 (varint) som slutmarkør
+ *   række    : længde (varint, altid &gt; 0) efterfulgt af kolonneværdierne
+ *   trailer  : 0xFF (byte), antal rækker i alt (varlong), CRC32 af alt foregående (int)
+ * </pre>
+ * Strenge ordbogskodes for hele filen: første forekomst skrives som det næste
+ * ledige indeks efterfulgt af UTF-8 bytes, senere forekomster kun som indeks.
+ */
+public class SnapshotWriter implements Closeable {
+    public static final int MAGIC = 0x4C4D5353; // "LMSS"
+    public static final int VERSION = 1;
+    static final int END_OF_SNAPSHOT = 0xFF;
+
+    private final OutputStream rawOut;
+    private final CRC32 crc;
+    private final DataOutputStream out;
+
+    // Genbruges for hver række så længden kan skrives foran værdierne
+    private final ByteArrayOutputStream recordBytes;
+    private final DataOutputStream record;
+
+    private final Map<String, Integer> dictionary;
+    private SnapshotTable currentTable;
+    private long totalRows;
+    private boolean finished;
+
+    /**
+     * Opretter en writer og skriver filens header.
+     *
+     * @param output Strømmen snapshot'et skrives til
+     * @throws IOException hvis headeren ikke kan skrives
+     */
+    public SnapshotWriter(OutputStream output) throws IOException {
+        this.rawOut = new BufferedOutputStream(output, 64 * 1024);
+        this.crc = new CRC32();
+        this.out = new DataOutputStream(new CheckedOutputStream(rawOut, crc));
+        this.recordBytes = new ByteArrayOutputStream(256);
+        this.record = new DataOutputStream(recordBytes);
+        this.dictionary = new HashMap<>();
+
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeLong(System.currentTimeMillis());
+    }
+
+    /**
+     * Starter en ny tabelsektion.
+     *
+     * @param table Tabellen hvis rækker skrives herefter
+     * @throws IOException hvis der skrives fejl
+     */
+    public void beginTable(SnapshotTable table) throws IOException {
+        if (currentTable != null) {
+            throw new IllegalStateException("Tabellen " + currentTable + " er ikke afsluttet");
+        }
+        currentTable = table;
+        out.writeByte(table.getId());
+    }
+
+    /**
+     * Skriver én række i den aktuelle tabel.
+     * Værdierne skal følge tabellens kolonnerækkefølge: UUID, String, Integer,
+     * og Long (millisekunder) eller null for DATE/TIMESTAMP.
+     *
+     * @param values Kolonneværdierne
+     * @throws IOException hvis der skrives fejl
+     */
+    public void writeRow(Object[] values) throws IOException {
+        if (currentTable == null) {
+            throw new IllegalStateException("beginTable skal kaldes før writeRow");
+        }
+        if (values.length != currentTable.getColumnCount()) {
+            throw new IllegalArgumentException("Forventede " + currentTable.getColumnCount() +
+                    " kolonner for " + currentTable + ", fik " + values.length);
+        }
+
+        recordBytes.reset();
+        for (int i = 0; i < values.length; i++) {
+            writeValue(currentTable.getType(i), values[i]);
+        }
+
+        VarInts.writeVarInt(out, recordBytes.size());
+        recordBytes.writeTo(out);
+        totalRows++;
+    }
+
+    /**
+     * Afslutter den aktuelle tabelsektion.
+     *
+     * @throws IOException hvis der skrives fejl
+     */
+    public void endTable() throws IOException {
+        if (currentTable == null) {
+            throw new IllegalStateException("Ingen tabel er startet");
+        }
+        VarInts.writeVarInt(out, 0);
+        currentTable = null;
+    }
+
+    /**
+     * @return Antal rækker skrevet indtil videre
+     */
+    public long getTotalRows() {
+        return totalRows;
+    }
+
+    /**
+     * Skriver trailer med checksum og tømmer bufferen, uden at lukke strømmen.
+     * Der kan ikke skrives flere rækker bagefter.
+     *
+     * @throws IOException hvis der skrives fejl
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        if (currentTable != null) {
+            endTable();
+        }
+        out.writeByte(END_OF_SNAPSHOT);
+        VarInts.writeVarLong(out, totalRows);
+        out.flush();
+
+        // Checksummen er ikke selv en del af det der checksummes
+        new DataOutputStream(rawOut).writeInt((int) crc.getValue());
+        rawOut.flush();
+    }
+
+    /**
+     * Lukker strømmen. Er {@link #finish()} ikke kaldt, får filen ingen
+     * trailer, så en eksport der fejlede undervejs afvises ved import.
+     */
+    @Override
+    public void close() throws IOException {
+        rawOut.close();
+    }
+
+    private void writeValue(SnapshotTable.ColumnType type, Object value) throws IOException {
+        switch (type) {
+            case UUID:
+                UUID uuid = (UUID) value;
+                record.writeLong(uuid.getMostSignificantBits());
+                record.writeLong(uuid.getLeastSignificantBits());
+                break;
+            case STRING:
+                writeString((String) value);
+                break;
+            case INT:
+                VarInts.writeVarInt(record, VarInts.zigZag((Integer) value));
+                break;
+            case DATE:
+            case TIMESTAMP:
+                // 0 er reserveret til null, så alle andre værdier forskydes med 1
+                VarInts.writeVarLong(record, value == null ? 0 : VarInts.zigZag((Long) value) + 1);
+                break;
+            default:
+                throw new IllegalArgumentException("Ukendt kolonnetype: " + type);
+        }
+    }
+
+    private void writeString(String value) throws IOException {
+        if (value == null) {
+            VarInts.writeVarInt(record, 0);
+            return;
+        }
+
+        Integer index = dictionary.get(value);
+        if (index != null) {
+            VarInts.writeVarInt(record, index);
+            return;
+        }
+
+        // Ny streng: næste ledige indeks efterfulgt af selve strengen
+        int newIndex = dictionary.size() + 1;
+        dictionary.put(value, newIndex);
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        VarInts.writeVarInt(record, newIndex);
+        VarInts.writeVarInt(record, bytes.length);
+        record.write(bytes);
+    }
+}
@@ -42,12 +42,25 @@ public class StudentDAO implements GenericDAO<Student, Integer> {
      */
     @Override
     public List<Student> getAll() throws SQLException {
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            return getAll(conn);
+        }
+    }
+
+    /**
+     * Henter alle studerende på en given forbindelse, f.eks. inden for en
+     * igangværende snapshot-transaktion. Forbindelsen lukkes ikke.
+     *
+     * @param conn Forbindelsen der skal bruges
+     * @return Liste af studerende
+     * @throws SQLException hvis der er problemer med databasen
+     */
+    public List<Student> getAll(Connection conn) throws SQLException {
         List<Student> students = new ArrayList<>();
         String sql = "SELECT via_id, name, degree_end_date, degree_title, email, phone_number, " +
                 "performance_needed FROM Student";
 
-        try (Connection conn = DatabaseConnection.getConnection();
-             Statement stmt = conn.createStatement();
+        try (Statement stmt = conn.createStatement();
              ResultSet rs = stmt.executeQuery(sql)) {
 
             while (rs.next()) {
@@ -0,0 +1,285 @@
+package database;
+
+import enums.PerformanceTypeEnum;
+import objects.Laptop;
+import objects.Reservation;
+import objects.Student;
+import util.SyncBundle;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * Henter den samlede starttilstand til en ny klient som ét konsistent snapshot.
+ *
+ * Koordinator-forbindelsen starter en read-only REPEATABLE READ transaktion og
+ * eksporterer dens snapshot med pg_export_snapshot(). De øvrige forespørgsler
+ * kører parallelt på hver sin forbindelse, som importerer samme snapshot med
+ * SET TRANSACTION SNAPSHOT, så alle lister viser præcis samme tidspunkt.
+ * Understøtter databasen ikke eksport, køres forespørgslerne i stedet efter
+ * hinanden i koordinatorens transaktion, hvilket er lige så konsistent.
+ *
+ * Samtidige kald slås sammen: et kald der ankommer mens et snapshot hentes,
+ * venter på det næste snapshot, som så deles af alle der ventede. En storm af
+ * genforbindelser koster derfor højst to indlæsninger ad gangen.
+ */
+public class SyncSnapshotLoader {
+    private static final Logger logger = Logger.getLogger(SyncSnapshotLoader.class.getName());
+
+    // Laptops hentes af koordinatoren selv, resten parallelt
+    private static final int PARALLEL_QUERIES = 4;
+    private static final Pattern SNAPSHOT_ID = Pattern.compile("[0-9A-Fa-f-]+");
+
+    private final LaptopDAO laptopDAO;
+    private final StudentDAO studentDAO;
+    private final ReservationDAO reservationDAO;
+    private final QueueDAO queueDAO;
+    private final ExecutorService queryExecutor;
+
+    private final Object roundLock = new Object();
+    private CompletableFuture<SyncBundle> pendingRound;
+    private CompletableFuture<SyncBundle> runningRound;
+
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong loadCount = new AtomicLong();
+
+    /**
+     * Opretter en loader der bruger de givne DAO'er.
+     */
+    public SyncSnapshotLoader(LaptopDAO laptopDAO, StudentDAO studentDAO,
+                              ReservationDAO reservationDAO, QueueDAO queueDAO) {
+        this.laptopDAO = laptopDAO;
+        this.studentDAO = studentDAO;
+        this.reservationDAO = reservationDAO;
+        this.queueDAO = queueDAO;
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.queryExecutor = Executors.newFixedThreadPool(PARALLEL_QUERIES, r -> {
+            Thread thread = new Thread(r, "sync-query-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Henter et konsistent snapshot taget efter at kaldet er startet.
+     * Kald der overlapper deler det samme snapshot.
+     *
+     * @return Starttilstanden
+     * @throws SQLException hvis der er problemer med databasen
+     */
+    public SyncBundle load() throws SQLException {
+        requestCount.incrementAndGet();
+
+        CompletableFuture<SyncBundle> round;
+        CompletableFuture<SyncBundle> previous = null;
+        boolean leader = false;
+
+        synchronized (roundLock) {
+            if (pendingRound == null) {
+                pendingRound = new CompletableFuture<>();
+                previous = runningRound;
+                leader = true;
+            }
+            round = pendingRound;
+        }
+
+        if (leader) {
+            // Runden må først starte når den forrige er færdig, ellers kan den
+            // ikke garantere at være taget efter alle der har tilsluttet sig
+            if (previous != null) {
+                previous.handle((result, error) -> null).join();
+            }
+            synchronized (roundLock) {
+                pendingRound = null;
+                runningRound = round;
+            }
+            try {
+                round.complete(loadSnapshot());
+            } catch (SQLException | RuntimeException e) {
+                round.completeExceptionally(e);
+            }
+        }
+
+        try {
+            return round.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException) {
+                throw new SQLException(cause.getMessage(), ((SQLException) cause).getSQLState(), cause);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @return Antal kald til load()
+     */
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * @return Antal snapshots der faktisk er hentet fra databasen
+     */
+    public long getLoadCount() {
+        return loadCount.get();
+    }
+
+    /**
+     * Lukker trådene til de parallelle forespørgsler.
+     */
+    public void shutdown() {
+        queryExecutor.shutdownNow();
+    }
+
+    private SyncBundle loadSnapshot() throws SQLException {
+        long start = System.nanoTime();
+        loadCount.incrementAndGet();
+
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            int isolation = conn.getTransactionIsolation();
+            conn.setAutoCommit(false);
+            conn.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+            conn.setReadOnly(true);
+
+            try {
+                long snapshotTime = System.currentTimeMillis();
+                String snapshotId = exportSnapshot(conn);
+                SyncBundle bundle;
+
+                if (snapshotId != null) {
+                    Future<List<Student>> students = submit(snapshotId, studentDAO::getAll);
+                    Future<List<Reservation>> reservations = submit(snapshotId, reservationDAO::getAllActive);
+                    Future<List<Student>> highQueue = submit(snapshotId,
+                            c -> queueDAO.getQueueByPerformanceType(c, PerformanceTypeEnum.HIGH));
+                    Future<List<Student>> lowQueue = submit(snapshotId,
+                            c -> queueDAO.getQueueByPerformanceType(c, PerformanceTypeEnum.LOW));
+
+                    // Det eksporterede snapshot er kun gyldigt så længe koordinatorens
+                    // transaktion er åben, så den committes først når alle er færdige
+                    List<Laptop> laptops = laptopDAO.getAll(conn);
+                    bundle = new SyncBundle(snapshotTime, laptops, await(students), await(reservations),
+                            await(highQueue), await(lowQueue));
+                } else {
+                    bundle = new SyncBundle(snapshotTime,
+                            laptopDAO.getAll(conn),
+                            studentDAO.getAll(conn),
+                            reservationDAO.getAllActive(conn),
+                            queueDAO.getQueueByPerformanceType(conn, PerformanceTypeEnum.HIGH),
+                            queueDAO.getQueueByPerformanceType(conn, PerformanceTypeEnum.LOW));
+                }
+
+                conn.commit();
+                logger.fine(String.format("Sync-snapshot hentet på %.1f ms (%s, %s)",
+                        (System.nanoTime() - start) / 1_000_000.0,
+                        snapshotId != null ? "parallelt" : "sekventielt", bundle));
+                return bundle;
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setReadOnly(false);
+                conn.setAutoCommit(true);
+                conn.setTransactionIsolation(isolation);
+            }
+        }
+    }
+
+    /**
+     * Eksporterer den aktuelle transaktions snapshot.
+     *
+     * @return Snapshot-id eller null hvis databasen ikke understøtter det
+     */
+    private String exportSnapshot(Connection conn) throws SQLException {
+        if (!"PostgreSQL".equalsIgnoreCase(conn.getMetaData().getDatabaseProductName())) {
+            return null;
+        }
+
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT pg_export_snapshot()")) {
+            if (rs.next()) {
+                String id = rs.getString(1);
+                if (id != null && SNAPSHOT_ID.matcher(id).matches()) {
+                    return id;
+                }
+            }
+        } catch (SQLException e) {
+            logger.log(Level.WARNING, "Kunne ikke eksportere snapshot, henter sekventielt: " + e.getMessage());
+        }
+
+        // Den fejlede forespørgsel har afbrudt transaktionen; start forfra
+        conn.rollback();
+        return null;
+    }
+
+    private <T> Future<T> submit(String snapshotId, SnapshotQuery<T> query) {
+        return queryExecutor.submit(() -> queryInSnapshot(snapshotId, query));
+    }
+
+    private <T> T queryInSnapshot(String snapshotId, SnapshotQuery<T> query) throws SQLException {
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            int isolation = conn.getTransactionIsolation();
+            conn.setAutoCommit(false);
+            conn.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+            conn.setReadOnly(true);
+
+            try {
+                // Skal være den første sætning i transaktionen
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("SET TRANSACTION SNAPSHOT '" + snapshotId + "'");
+                }
+                T result = query.run(conn);
+                conn.commit();
+                return result;
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setReadOnly(false);
+                conn.setAutoCommit(true);
+                conn.setTransactionIsolation(isolation);
+            }
+        }
+    }
+
+    private <T> T await(Future<T> future) throws SQLException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Afbrudt under hentning af sync-snapshot", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException) {
+                throw (SQLException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new SQLException("Fejl under hentning af sync-snapshot", cause);
+        }
+    }
+
+    /**
+     * En forespørgsel der køres på en forbindelse med importeret snapshot.
+     */
+    @FunctionalInterface
+    private interface SnapshotQuery<T> {
+        T run(Connection conn) throws SQLException;
+    }
+}
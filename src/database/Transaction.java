@@ -0,0 +1,195 @@
+package database;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * En databasetransaktion bundet til den aktuelle tråd, så flere DAO-kald
+ * kan committes eller rulles tilbage samlet.
+ *
+ * Mens transaktionen er åben, giver DatabaseConnection.getConnection() den
+ * samme forbindelse til alle kald på tråden. DAO'ernes egne commit, rollback,
+ * setAutoCommit og close på den forbindelse indgår i den ydre transaktion:
+ * commit og close gør intet, og rollback markerer transaktionen, så den
+ * rulles tilbage til sidst. Åbnes en transaktion inde i en anden, deles den.
+ *
+ * Hændelser der kun må sendes hvis ændringerne gemmes, registreres med
+ * {@link #runAfterCommit(Runnable)}.
+ */
+public final class Transaction implements AutoCloseable {
+    private static final Logger logger = Logger.getLogger(Transaction.class.getName());
+    private static final ThreadLocal<Transaction> CURRENT = new ThreadLocal<>();
+
+    private final List<Runnable> afterCommit = new ArrayList<>();
+    private Connection connection;
+    private Connection shared;
+    private int depth = 1;
+    private boolean rollbackOnly;
+    private boolean committed;
+
+    private Transaction() {
+    }
+
+    /**
+     * Åbner en transaktion på den aktuelle tråd, eller deltager i den der
+     * allerede er åben. Skal lukkes med close(), typisk i en try-with-resources.
+     *
+     * @return Transaktionen
+     */
+    public static Transaction begin() {
+        Transaction current = CURRENT.get();
+        if (current != null) {
+            current.depth++;
+            return current;
+        }
+        Transaction transaction = new Transaction();
+        CURRENT.set(transaction);
+        return transaction;
+    }
+
+    /**
+     * @return Transaktionen åben på den aktuelle tråd, eller null
+     */
+    public static Transaction current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Kører en handling når den yderste transaktion er committet. Uden en
+     * åben transaktion køres den med det samme, og ved tilbagerulning kasseres den.
+     *
+     * @param action Handlingen, f.eks. at sende en hændelse
+     */
+    public static void runAfterCommit(Runnable action) {
+        Transaction current = CURRENT.get();
+        if (current != null) {
+            current.afterCommit.add(action);
+        } else {
+            action.run();
+        }
+    }
+
+    /**
+     * Sørger for at transaktionen rulles tilbage i stedet for at blive committet.
+     */
+    public void setRollbackOnly() {
+        rollbackOnly = true;
+    }
+
+    public boolean isRollbackOnly() {
+        return rollbackOnly;
+    }
+
+    /**
+     * Committer transaktionen. I en indlejret transaktion sker det først når
+     * den yderste committes.
+     *
+     * @throws SQLException hvis transaktionen er markeret til tilbagerulning eller commit fejler
+     */
+    public void commit() throws SQLException {
+        if (rollbackOnly) {
+            throw new SQLException("Transaktionen er markeret til tilbagerulning");
+        }
+        if (depth > 1) {
+            return;
+        }
+        if (connection != null) {
+            connection.commit();
+        }
+        committed = true;
+    }
+
+    /**
+     * Afslutter transaktionen. Er den yderste ikke committet, rulles den
+     * tilbage, og forbindelsen går tilbage til poolen.
+     */
+    @Override
+    public void close() {
+        if (--depth > 0) {
+            return;
+        }
+        CURRENT.remove();
+
+        if (connection != null) {
+            try {
+                if (!committed) {
+                    connection.rollback();
+                }
+                connection.setAutoCommit(true);
+            } catch (SQLException e) {
+                logger.log(Level.SEVERE, "Fejl ved afslutning af transaktion: " + e.getMessage(), e);
+            } finally {
+                try {
+                    connection.close();
+                } catch (SQLException e) {
+                    logger.fine("Kunne ikke lukke forbindelse: " + e.getMessage());
+                }
+            }
+        }
+
+        if (committed) {
+            for (Runnable action : afterCommit) {
+                action.run();
+            }
+        }
+    }
+
+    boolean hasConnection() {
+        return connection != null;
+    }
+
+    /**
+     * Binder transaktionens forbindelse, hentet fra poolen ved første brug.
+     *
+     * @param connection Forbindelsen
+     * @throws SQLException hvis transaktionen ikke kan startes på den
+     */
+    void bind(Connection connection) throws SQLException {
+        connection.setAutoCommit(false);
+        this.connection = connection;
+        this.shared = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, new SharedConnectionHandler());
+    }
+
+    /**
+     * @return Forbindelsen som DAO'erne får, hvor commit og close indgår i transaktionen
+     */
+    Connection getSharedConnection() {
+        return shared;
+    }
+
+    private final class SharedConnectionHandler implements InvocationHandler {
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                case "commit":
+                case "setAutoCommit":
+                    return null;
+                case "rollback":
+                    if (args == null) {
+                        rollbackOnly = true;
+                        return null;
+                    }
+                    break;
+                case "getAutoCommit":
+                    return false;
+                default:
+                    break;
+            }
+            try {
+                return method.invoke(connection, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
@@ -6,6 +6,7 @@ import enums.ReservationStatusEnum;
 import model.helpToLogic.LaptopDataInterface;
 import model.helpToLogic.ReservationsDataInterface;
 import model.helpToLogic.StudentDataInterface;
+import objects.Laptop;
 import objects.Reservation;
 import objects.Student;
 import util.PropertyChangeSubjectInterface;
@@ -36,6 +37,12 @@ public interface Model extends LaptopDataInterface, StudentDataInterface, Reserv
     boolean cancelReservation(UUID reservationId);
     Student createStudent(String name, Date degreeEndDate, String degreeTitle, int viaId, String email, int phoneNumber, PerformanceTypeEnum performanceNeeded);
 
+    // ========== Bulk Methods ==========
+    // One round trip for the whole list; atomic creates all of them or none.
+    // The result has null for each one that was not created.
+    List<Laptop> createLaptops(List<Laptop> laptops, boolean atomic);
+    List<Student> createStudents(List<Student> students, boolean atomic);
+
     // ========== Process Queues Method ==========
     int processQueues();
 
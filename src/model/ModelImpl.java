@@ -8,6 +8,7 @@ import model.helpToLogic.*;
 import objects.Laptop;
 import objects.Reservation;
 import objects.Student;
+import util.Message;
 import util.PropertyChangeSubjectInterface;
 
 import java.beans.PropertyChangeEvent;
@@ -37,6 +38,8 @@ public class ModelImpl implements Model {
     public static final String EVENT_RESERVATION_CANCELLED = "model_reservation_cancelled";
     public static final String EVENT_ACTIVE_RESERVATIONS_CHANGED = "model_active_reservations_changed";
 
+    public static final String EVENT_INITIAL_SYNC = "model_initial_sync";
+
     // Class variables
     private static ModelImpl INSTANCE;
     private LaptopData laptopData;
@@ -154,6 +157,26 @@ public class ModelImpl implements Model {
         else if (propertyName.equals("reservation_cancelled")) {
             support.firePropertyChange(EVENT_RESERVATION_CANCELLED, null, evt.getNewValue());
         }
+        else if (propertyName.equals("initial_sync")) {
+            // Complete state from one consistent snapshot (SyncBundle)
+            support.firePropertyChange(EVENT_INITIAL_SYNC, null, evt.getNewValue());
+        }
+        else if (propertyName.equals("event_batch")) {
+            handleEventBatch((List<?>) evt.getNewValue());
+        }
+    }
+
+    /**
+     * Forwards a batch of server events one by one, in the order the server
+     * sent them, so a listener sees every event's value just as if the
+     * events had arrived separately.
+     */
+    private void handleEventBatch(List<?> events) {
+        for (Object element : events) {
+            Message event = (Message) element;
+            handleClientEvents(event.getType(),
+                    new PropertyChangeEvent(client, event.getType(), null, event.getArgs()));
+        }
     }
 
     // Handle events from LaptopData
@@ -284,6 +307,11 @@ public class ModelImpl implements Model {
         return client.createLaptop(brand, model, gigabyte, ram, performanceType);
     }
 
+    @Override
+    public List<Laptop> createLaptops(List<Laptop> laptops, boolean atomic) {
+        return client.createLaptops(laptops, atomic);
+    }
+
     @Override
     public Laptop updateLaptopState(UUID id) {
         return client.updateLaptopState(id);
@@ -336,6 +364,11 @@ public class ModelImpl implements Model {
         return client.createStudent(name, degreeEndDate, degreeTitle, viaId, email, phoneNumber, performanceNeeded);
     }
 
+    @Override
+    public List<Student> createStudents(List<Student> students, boolean atomic) {
+        return client.createStudents(students, atomic);
+    }
+
     @Override
     public boolean deleteStudent(int viaId) {
         return client.deleteStudent(viaId);
@@ -8,6 +8,7 @@ import java.beans.PropertyChangeSupport;
 import java.io.Serializable;
 import java.util.Date;
 import java.util.Objects;
+import java.util.regex.Pattern;
 
 /**
  * Represents a student in the loan system.
@@ -16,6 +17,11 @@ import java.util.Objects;
 public class Student implements PropertyChangeSubjectInterface, Serializable {
     private static final long serialVersionUID = 2L;
 
+    // Compiled once; validation runs for every student read from the database or the network
+    private static final Pattern EMAIL_PATTERN = Pattern.compile("^[A-Za-z0-9+_.-]+@(.+)$");
+    private static final Pattern VIA_ID_PATTERN = Pattern.compile("^[0-9]{4,8}$");
+    private static final Pattern PHONE_PATTERN = Pattern.compile("^[0-9]{8,12}$");
+
     private int viaId;
     private String name;
     private Date degreeEndDate;
@@ -83,19 +89,19 @@ public class Student implements PropertyChangeSubjectInterface, Serializable {
 
 
     private boolean isValidEmail(String email) {
-        return email != null && email.matches("^[A-Za-z0-9+_.-]+@(.+)$");
+        return email != null && EMAIL_PATTERN.matcher(email).matches();
     }
 
 
     private boolean isValidViaId(int viaId) {
         String viaIdStr = String.valueOf(viaId);
-        return viaIdStr.matches("^[0-9]{4,8}$");
+        return VIA_ID_PATTERN.matcher(viaIdStr).matches();
     }
 
 
     private boolean isValidPhoneNumber(int phoneNumber) {
         String phoneStr = String.valueOf(phoneNumber);
-        return phoneStr.matches("^[0-9]{8,12}$");
+        return PHONE_PATTERN.matcher(phoneStr).matches();
     }
 
     // Getters
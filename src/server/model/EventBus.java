@@ -0,0 +1,229 @@
+package server.model;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
+
+/**
+ * Delivers model events on a dedicated thread. Producers claim a slot in a
+ * bounded ring buffer with a single atomic increment and return at once;
+ * the dispatcher thread hands the events to the subscriber in the order
+ * they were published.
+ *
+ * A full ring makes producers wait for the dispatcher instead of dropping
+ * events, so a stalled subscriber slows writers rather than losing updates.
+ */
+public class EventBus {
+    // Capacity can be tuned with -Dserver.eventBus.capacity (rounded up to a power of two)
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    private static final long IDLE_PARK_NANOS = 50_000;
+
+    private final String name;
+    private final BiConsumer<String, Object> subscriber;
+    private final int mask;
+    private final String[] types;
+    private final Object[] values;
+    private final long[] publishNanos;
+    // The sequence a slot holds once published: a slot with sequence s is readable when it holds s + 1
+    private final AtomicLongArray published;
+    // Next sequence to claim and next sequence to deliver
+    private final AtomicLong claimed = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+    private final Thread dispatcher;
+    private volatile boolean dispatcherParked;
+    private volatile boolean running = true;
+
+    // Metrics, written only by the dispatcher
+    private final AtomicLong handled = new AtomicLong();
+    private final AtomicLong totalLatencyNanos = new AtomicLong();
+    private volatile long maxLatencyNanos;
+    private volatile long maxDepth;
+    private final AtomicLong producerWaits = new AtomicLong();
+
+    /**
+     * @param name the dispatcher thread's name
+     * @param capacity the number of events that can wait for delivery
+     * @param subscriber receives each event's type and value on the dispatcher thread
+     */
+    public EventBus(String name, int capacity, BiConsumer<String, Object> subscriber) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.name = name;
+        this.subscriber = subscriber;
+        this.mask = size - 1;
+        this.types = new String[size];
+        this.values = new Object[size];
+        this.publishNanos = new long[size];
+        this.published = new AtomicLongArray(size);
+
+        dispatcher = new Thread(this::dispatch, name);
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    /**
+     * Creates a bus with the capacity from -Dserver.eventBus.capacity.
+     *
+     * @param name the dispatcher thread's name
+     * @param subscriber receives each event's type and value on the dispatcher thread
+     */
+    public EventBus(String name, BiConsumer<String, Object> subscriber) {
+        this(name, Integer.getInteger("server.eventBus.capacity", DEFAULT_CAPACITY), subscriber);
+    }
+
+    /**
+     * Queues an event for delivery. Returns as soon as the event is in the
+     * ring, unless the ring is full.
+     *
+     * @param type the event type
+     * @param value the event value
+     */
+    public void publish(String type, Object value) {
+        if (!running) {
+            return;
+        }
+        long sequence = claimed.getAndIncrement();
+        int slot = (int) sequence & mask;
+
+        // Wait until the dispatcher has delivered the event that last used this slot
+        if (sequence - delivered.get() > mask) {
+            producerWaits.incrementAndGet();
+            while (sequence - delivered.get() > mask) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+
+        types[slot] = type;
+        values[slot] = value;
+        publishNanos[slot] = System.nanoTime();
+        // Publishes the fields above to the dispatcher
+        published.set(slot, sequence + 1);
+
+        if (dispatcherParked) {
+            LockSupport.unpark(dispatcher);
+        }
+    }
+
+    private void dispatch() {
+        long next = 0;
+        while (running || next < claimed.get()) {
+            int slot = (int) next & mask;
+            if (published.get(slot) != next + 1) {
+                if (!running && next >= claimed.get()) {
+                    break;
+                }
+                dispatcherParked = true;
+                // Re-check after announcing, so a publish in between isn't missed
+                if (published.get(slot) != next + 1) {
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                }
+                dispatcherParked = false;
+                continue;
+            }
+
+            String type = types[slot];
+            Object value = values[slot];
+            long publishedAt = publishNanos[slot];
+            long depth = claimed.get() - next;
+            types[slot] = null;
+            values[slot] = null;
+            // Frees the slot before delivering, so producers don't wait on the subscriber
+            delivered.set(++next);
+            if (depth > maxDepth) {
+                maxDepth = depth;
+            }
+
+            try {
+                subscriber.accept(type, value);
+            } catch (RuntimeException e) {
+                System.err.println("Error delivering event " + type + " on " + name + ": " + e.getMessage());
+            }
+
+            long latency = System.nanoTime() - publishedAt;
+            totalLatencyNanos.addAndGet(latency);
+            handled.incrementAndGet();
+            if (latency > maxLatencyNanos) {
+                maxLatencyNanos = latency;
+            }
+        }
+    }
+
+    /**
+     * Delivers the events already published, then stops the dispatcher.
+     */
+    public void close() {
+        running = false;
+        LockSupport.unpark(dispatcher);
+        try {
+            dispatcher.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return the number of slots in the ring
+     */
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    /**
+     * @return the number of events published but not yet delivered, including publishes waiting for a slot
+     */
+    public long getQueueDepth() {
+        return Math.max(0, claimed.get() - delivered.get());
+    }
+
+    /**
+     * @return the largest queue depth seen by the dispatcher
+     */
+    public long getMaxQueueDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * @return the number of events published
+     */
+    public long getPublishedCount() {
+        return claimed.get();
+    }
+
+    /**
+     * @return the number of events taken by the dispatcher, including the one being delivered
+     */
+    public long getDeliveredCount() {
+        return delivered.get();
+    }
+
+    /**
+     * @return the number of publishes that had to wait for a full ring
+     */
+    public long getProducerWaitCount() {
+        return producerWaits.get();
+    }
+
+    /**
+     * @return the mean time from publish until the subscriber had handled the event, in microseconds
+     */
+    public double getAverageLatencyMicros() {
+        long count = handled.get();
+        return count == 0 ? 0 : totalLatencyNanos.get() / 1000.0 / count;
+    }
+
+    /**
+     * @return the longest time from publish until the subscriber had handled an event, in microseconds
+     */
+    public double getMaxLatencyMicros() {
+        return maxLatencyNanos / 1000.0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: published=%d delivered=%d depth=%d maxDepth=%d waits=%d " +
+                        "latency avg=%.1fµs max=%.1fµs", name, getPublishedCount(), getDeliveredCount(),
+                getQueueDepth(), getMaxQueueDepth(), getProducerWaitCount(),
+                getAverageLatencyMicros(), getMaxLatencyMicros());
+    }
+}
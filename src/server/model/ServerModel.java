@@ -9,9 +9,11 @@ import objects.Laptop;
 import objects.Reservation;
 import objects.Student;
 import util.PropertyChangeSubjectInterface;
+import util.SyncBundle;
 
 import java.util.List;
 import java.util.UUID;
+import java.util.function.BooleanSupplier;
 
 /**
  * Server-side model interface for the laptop management system.
@@ -61,4 +63,28 @@ public interface ServerModel extends LaptopDataInterface, StudentDataInterface,
     boolean canAssignLaptop(PerformanceTypeEnum performanceType);
 
     int processQueues();
+
+    /**
+     * Runs several operations as one database transaction: either all of
+     * their changes are kept, or none are. Events for the changes are only
+     * published once they are committed.
+     *
+     * @param work The operations; returns false to roll them all back
+     * @return True if the work succeeded and was committed
+     */
+    boolean runInTransaction(BooleanSupplier work);
+
+    /**
+     * Gets the complete state a newly connected client needs, taken from one
+     * consistent snapshot.
+     *
+     * @return The sync bundle, or null if it could not be loaded
+     */
+    SyncBundle getSyncBundle();
+
+    /**
+     * Finishes the writes and delivers the events already under way, then
+     * stops the model's background threads. Called when the server stops.
+     */
+    void close();
 }
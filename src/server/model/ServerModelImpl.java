@@ -1,15 +1,20 @@
 package server.model;
 
+import database.GroupCommitPipeline;
 import database.LaptopDAO;
 import database.QueueDAO;
+import database.RequestDeadline;
 import database.ReservationDAO;
 import database.StudentDAO;
+import database.SyncSnapshotLoader;
+import database.Transaction;
 import enums.PerformanceTypeEnum;
 import enums.ReservationStatusEnum;
 import objects.Laptop;
 import objects.Reservation;
 import objects.Student;
 import util.Message;
+import util.SyncBundle;
 
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
@@ -18,13 +23,15 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.UUID;
+import java.util.function.BooleanSupplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * Implementation of the ServerModel interface.
  * Manages data access and provides a facade to the underlying DAOs.
- * Implements the Observer pattern to notify clients of changes.
+ * Implements the Observer pattern to notify clients of changes; listeners
+ * are notified asynchronously on the model's {@link EventBus}.
  */
 public class ServerModelImpl implements ServerModel {
     private static final Logger logger = Logger.getLogger(ServerModelImpl.class.getName());
@@ -34,9 +41,14 @@ public class ServerModelImpl implements ServerModel {
     private final StudentDAO studentDAO;
     private final ReservationDAO reservationDAO;
     private final QueueDAO queueDAO;
+    private final SyncSnapshotLoader syncLoader;
 
     // Property change support for observer pattern
     private final PropertyChangeSupport support;
+    // Events from the DAOs reach the listeners on the bus's thread, after the writer has returned
+    private final EventBus eventBus;
+    // Shared by the reservation and queue DAOs; null when group commit is disabled
+    private final GroupCommitPipeline groupCommit;
 
     // Event types for notifications
     public static final String EVENT_LAPTOP_CREATED = "server_laptop_created";
@@ -59,6 +71,10 @@ public class ServerModelImpl implements ServerModel {
 
     public static final String EVENT_ERROR = "server_error";
 
+    // Bracket the events of one operation, so they can reach clients as one batch
+    public static final String EVENT_BATCH_BEGIN = "server_batch_begin";
+    public static final String EVENT_BATCH_END = "server_batch_end";
+
     /**
      * Creates a new ServerModelImpl instance.
      * Initializes the DAOs and sets up event listeners.
@@ -68,7 +84,17 @@ public class ServerModelImpl implements ServerModel {
         this.studentDAO = new StudentDAO();
         this.reservationDAO = new ReservationDAO();
         this.queueDAO = new QueueDAO();
+
+        // Reservation and queue writes share commits when group commit is enabled
+        this.groupCommit = GroupCommitPipeline.fromConfig();
+        if (groupCommit != null) {
+            reservationDAO.setGroupCommitPipeline(groupCommit);
+            queueDAO.setGroupCommitPipeline(groupCommit);
+        }
+
+        this.syncLoader = new SyncSnapshotLoader(laptopDAO, studentDAO, reservationDAO, queueDAO);
         this.support = new PropertyChangeSupport(this);
+        this.eventBus = new EventBus("model-events", (type, value) -> support.firePropertyChange(type, null, value));
 
         // Set up listeners for DAO events
         setupDAOListeners();
@@ -83,49 +109,49 @@ public class ServerModelImpl implements ServerModel {
         // LaptopDAO listeners
         laptopDAO.addListener(LaptopDAO.LAPTOP_CREATED, evt -> {
             Message msg = (Message) evt.getNewValue();
-            support.firePropertyChange(EVENT_LAPTOP_CREATED, null, msg);
+            publishChange(EVENT_LAPTOP_CREATED, msg);
         });
 
         laptopDAO.addListener(LaptopDAO.LAPTOP_UPDATED, evt -> {
             Message msg = (Message) evt.getNewValue();
-            support.firePropertyChange(EVENT_LAPTOP_UPDATED, null, msg);
+            publishChange(EVENT_LAPTOP_UPDATED, msg);
         });
 
         laptopDAO.addListener(LaptopDAO.LAPTOP_DELETED, evt -> {
             Message msg = (Message) evt.getNewValue();
-            support.firePropertyChange(EVENT_LAPTOP_DELETED, null, msg);
+            publishChange(EVENT_LAPTOP_DELETED, msg);
         });
 
         laptopDAO.addListener(LaptopDAO.LAPTOP_STATE_CHANGED, evt -> {
             Message msg = (Message) evt.getNewValue();
-            support.firePropertyChange(EVENT_LAPTOP_STATE_CHANGED, null, msg);
+            publishChange(EVENT_LAPTOP_STATE_CHANGED, msg);
         });
 
         // StudentDAO listeners
         studentDAO.addListener(StudentDAO.STUDENT_CREATED, evt -> {
             Message msg = (Message) evt.getNewValue();
-            support.firePropertyChange(EVENT_STUDENT_CREATED, null, msg);
+            publishChange(EVENT_STUDENT_CREATED, msg);
         });
 
         studentDAO.addListener(StudentDAO.STUDENT_UPDATED, evt -> {
             Message msg = (Message) evt.getNewValue();
-            support.firePropertyChange(EVENT_STUDENT_UPDATED, null, msg);
+            publishChange(EVENT_STUDENT_UPDATED, msg);
         });
 
         studentDAO.addListener(StudentDAO.STUDENT_DELETED, evt -> {
             Message msg = (Message) evt.getNewValue();
-            support.firePropertyChange(EVENT_STUDENT_DELETED, null, msg);
+            publishChange(EVENT_STUDENT_DELETED, msg);
         });
 
         // ReservationDAO listeners
         reservationDAO.addListener(ReservationDAO.RESERVATION_CREATED, evt -> {
             Message msg = (Message) evt.getNewValue();
-            support.firePropertyChange(EVENT_RESERVATION_CREATED, null, msg);
+            publishChange(EVENT_RESERVATION_CREATED, msg);
         });
 
         reservationDAO.addListener(ReservationDAO.RESERVATION_UPDATED, evt -> {
             Message msg = (Message) evt.getNewValue();
-            support.firePropertyChange(EVENT_RESERVATION_UPDATED, null, msg);
+            publishChange(EVENT_RESERVATION_UPDATED, msg);
         });
 
         reservationDAO.addListener(ReservationDAO.RESERVATION_STATUS_CHANGED, evt -> {
@@ -136,40 +162,63 @@ public class ServerModelImpl implements ServerModel {
             ReservationStatusEnum newStatus = (ReservationStatusEnum) args[2];
 
             if (newStatus == ReservationStatusEnum.COMPLETED) {
-                support.firePropertyChange(EVENT_RESERVATION_COMPLETED, null, reservation);
+                publishChange(EVENT_RESERVATION_COMPLETED, reservation);
             } else if (newStatus == ReservationStatusEnum.CANCELLED) {
-                support.firePropertyChange(EVENT_RESERVATION_CANCELLED, null, reservation);
+                publishChange(EVENT_RESERVATION_CANCELLED, reservation);
             }
         });
 
         // QueueDAO listeners
         queueDAO.addListener(QueueDAO.QUEUE_UPDATED, evt -> {
             Message msg = (Message) evt.getNewValue();
-            support.firePropertyChange(EVENT_QUEUE_UPDATED, null, msg);
+            publishChange(EVENT_QUEUE_UPDATED, msg);
         });
 
         // Error listeners from all DAOs
         laptopDAO.addListener(LaptopDAO.DATABASE_ERROR, evt -> {
+            if (isAbandonedRequest()) {
+                return;
+            }
             Message msg = (Message) evt.getNewValue();
-            support.firePropertyChange(EVENT_ERROR, null, msg);
+            eventBus.publish(EVENT_ERROR, msg);
         });
 
         studentDAO.addListener(StudentDAO.DATABASE_ERROR, evt -> {
+            if (isAbandonedRequest()) {
+                return;
+            }
             Message msg = (Message) evt.getNewValue();
-            support.firePropertyChange(EVENT_ERROR, null, msg);
+            eventBus.publish(EVENT_ERROR, msg);
         });
 
         reservationDAO.addListener(ReservationDAO.DATABASE_ERROR, evt -> {
+            if (isAbandonedRequest()) {
+                return;
+            }
             Message msg = (Message) evt.getNewValue();
-            support.firePropertyChange(EVENT_ERROR, null, msg);
+            eventBus.publish(EVENT_ERROR, msg);
         });
 
         queueDAO.addListener(QueueDAO.DATABASE_ERROR, evt -> {
+            if (isAbandonedRequest()) {
+                return;
+            }
             Message msg = (Message) evt.getNewValue();
-            support.firePropertyChange(EVENT_ERROR, null, msg);
+            eventBus.publish(EVENT_ERROR, msg);
         });
     }
 
+    /**
+     * Publishes a change event. A change made in a transaction is published
+     * once the transaction commits, and never if it is rolled back.
+     *
+     * @param type The event type
+     * @param value The event value
+     */
+    private void publishChange(String type, Object value) {
+        Transaction.runAfterCommit(() -> eventBus.publish(type, value));
+    }
+
     /**
      * Handles errors by logging them and firing a property change event.
      *
@@ -177,9 +226,34 @@ public class ServerModelImpl implements ServerModel {
      * @param e The exception that occurred
      */
     private void handleError(String message, Exception e) {
+        if (isAbandonedRequest()) {
+            // The client gave up on this request; not an error worth broadcasting
+            logger.fine(message + " (request cancelled or past its deadline): " + e.getMessage());
+            return;
+        }
         logger.log(Level.SEVERE, message, e);
         Message errorMsg = new Message(EVENT_ERROR, message + ": " + e.getMessage());
-        support.firePropertyChange(EVENT_ERROR, null, errorMsg);
+        eventBus.publish(EVENT_ERROR, errorMsg);
+    }
+
+    /**
+     * Checks whether the client request being handled on this thread has been
+     * cancelled or has passed its deadline, so failures are expected.
+     *
+     * @return True if the current request was abandoned
+     */
+    private boolean isAbandonedRequest() {
+        RequestDeadline deadline = RequestDeadline.current();
+        return deadline != null && (deadline.isCancelled() || deadline.isExpired());
+    }
+
+    /**
+     * Gets the bus that delivers model events to listeners, for its metrics.
+     *
+     * @return the model's event bus
+     */
+    public EventBus getEventBus() {
+        return eventBus;
     }
 
     // ========== PropertyChangeListener Methods ==========
@@ -871,6 +945,8 @@ public class ServerModelImpl implements ServerModel {
     public int processQueues() {
         int assigned = 0;
 
+        // Every assignment raises several events; clients get them all at once
+        publishChange(EVENT_BATCH_BEGIN, null);
         try {
             // First process high performance queue
             List<Student> highQueue = getHighPerformanceQueue();
@@ -912,8 +988,62 @@ public class ServerModelImpl implements ServerModel {
         } catch (Exception e) {
             handleError("Error processing queues", e);
             return assigned;
+        } finally {
+            publishChange(EVENT_BATCH_END, null);
         }
     }
 
+    /**
+     * Runs the work in one database transaction. Its events are published
+     * after the commit, to clients as one batch.
+     *
+     * @param work The operations; returns false to roll them all back
+     * @return True if the work succeeded and was committed
+     */
+    @Override
+    public boolean runInTransaction(BooleanSupplier work) {
+        try (Transaction transaction = Transaction.begin()) {
+            publishChange(EVENT_BATCH_BEGIN, null);
+            boolean success = work.getAsBoolean();
+            publishChange(EVENT_BATCH_END, null);
+            if (!success || transaction.isRollbackOnly()) {
+                transaction.setRollbackOnly();
+                return false;
+            }
+            transaction.commit();
+            return true;
+        } catch (SQLException e) {
+            handleError("Error committing transaction", e);
+            return false;
+        }
+    }
 
+    /**
+     * Gets the initial client state from one consistent snapshot.
+     * Concurrent callers share snapshots, see {@link SyncSnapshotLoader}.
+     *
+     * @return The sync bundle, or null if it could not be loaded
+     */
+    public SyncBundle getSyncBundle() {
+        try {
+            return syncLoader.load();
+        } catch (SQLException e) {
+            handleError("Error loading sync snapshot", e);
+            return null;
+        }
+    }
+
+    /**
+     * Commits the writes waiting in the group-commit pipeline, then delivers
+     * the events already published and stops the event bus.
+     */
+    @Override
+    public void close() {
+        // The pipeline's last commits publish events, so it goes first
+        if (groupCommit != null) {
+            groupCommit.close();
+        }
+        eventBus.close();
+        logger.info("ServerModelImpl closed");
+    }
 }
@@ -0,0 +1,112 @@
+package server.network;
+
+import database.RequestDeadline;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides which client requests the server takes on, so one client sending
+ * requests in a loop can't starve the others.
+ *
+ * Each connection gets a token bucket of -Dserver.rateLimit.perSecond
+ * requests (default 100, 0 for no limit) with bursts of
+ * -Dserver.rateLimit.burst (default 200), and at most
+ * -Dserver.maxQueuedRequests (default 256) requests waiting. Commands the
+ * registry marks as expensive, such as reads of whole tables, run at most
+ * -Dserver.expensive.maxConcurrent (default 8) at a time across all clients;
+ * one waits up to -Dserver.expensive.maxWaitMillis (default 250) for its
+ * turn. A request turned away gets a "busy" response rather than silence.
+ *
+ * Fairness between clients comes from each client's {@link OrderedExecutor}:
+ * it hands the worker pool at most a few requests at a time, and queues
+ * behind every other client again as each one finishes.
+ */
+public class AdmissionControl {
+    private final double ratePerSecond = Double.parseDouble(System.getProperty("server.rateLimit.perSecond", "100"));
+    private final double burst = Double.parseDouble(System.getProperty("server.rateLimit.burst", "200"));
+    private final int maxQueuedRequests = Integer.getInteger("server.maxQueuedRequests", 256);
+    private final long expensiveWaitMillis = Long.getLong("server.expensive.maxWaitMillis", 250);
+    private final Semaphore expensivePermits =
+            new Semaphore(Integer.getInteger("server.expensive.maxConcurrent", 8), true);
+
+    private final LongAdder rateLimited = new LongAdder();
+    private final LongAdder queueFull = new LongAdder();
+    private final LongAdder expensiveBusy = new LongAdder();
+
+    /**
+     * @return a rate limiter for a new connection, or null if requests are not rate limited
+     */
+    TokenBucket newRateLimiter() {
+        return ratePerSecond > 0 ? new TokenBucket(ratePerSecond, burst) : null;
+    }
+
+    int getMaxQueuedRequests() {
+        return maxQueuedRequests;
+    }
+
+    void recordRateLimited() {
+        rateLimited.increment();
+    }
+
+    void recordQueueFull() {
+        queueFull.increment();
+    }
+
+    /**
+     * Waits for a turn to run an expensive command, no longer than the
+     * configured wait or the request's deadline.
+     *
+     * @param deadline the request's deadline
+     * @return true if the caller may run the command and must call {@link #releaseExpensive()}
+     * @throws InterruptedException if the worker is interrupted while waiting
+     */
+    boolean acquireExpensive(RequestDeadline deadline) throws InterruptedException {
+        long waitMillis = Math.min(expensiveWaitMillis, deadline.remainingMillis());
+        if (expensivePermits.tryAcquire(Math.max(0, waitMillis), TimeUnit.MILLISECONDS)) {
+            return true;
+        }
+        expensiveBusy.increment();
+        return false;
+    }
+
+    void releaseExpensive() {
+        expensivePermits.release();
+    }
+
+    /**
+     * @return how long a client turned away for an expensive command should wait, in milliseconds
+     */
+    long getExpensiveRetryMillis() {
+        return expensiveWaitMillis;
+    }
+
+    /**
+     * @return requests turned away because their client exceeded its rate
+     */
+    public long getRateLimitedCount() {
+        return rateLimited.sum();
+    }
+
+    /**
+     * @return requests turned away because their client already had too many waiting
+     */
+    public long getQueueFullCount() {
+        return queueFull.sum();
+    }
+
+    /**
+     * @return expensive commands turned away because too many were running
+     */
+    public long getExpensiveBusyCount() {
+        return expensiveBusy.sum();
+    }
+
+    /**
+     * @return expensive commands that may start right now
+     */
+    public int getAvailableExpensivePermits() {
+        return expensivePermits.availablePermits();
+    }
+}
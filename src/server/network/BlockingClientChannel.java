@@ -0,0 +1,189 @@
+package server.network;
+
+import util.FrameCodec;
+import util.Message;
+import util.MessageCodec;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Thread-per-connection transport: a thread blocks reading frames from the
+ * socket and hands each message to the client handler. Outgoing frames are
+ * queued and written by a writer task, so a client that stops reading
+ * blocks its own writer rather than the thread that sent to it.
+ */
+class BlockingClientChannel implements ClientChannel, Runnable {
+    private final Socket socket;
+    private final DataInputStream input;
+    // Frames are encoded up front, so they are written unbuffered; a
+    // synchronized stream would pin a virtual writer thread blocked on a slow client
+    private final OutputStream output;
+    private final Executor writers;
+    private final OutboundQueue outbound = new OutboundQueue();
+    // Set while a writer task is queued or running
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private ClientHandler handler;
+    private volatile MessageCodec codec = FrameCodec.DEFAULT_CODEC;
+    private volatile boolean open = true;
+    private volatile boolean closing;
+
+    /**
+     * @param socket the accepted connection
+     * @param writers runs the tasks that write queued frames
+     * @throws IOException if the socket's streams cannot be opened
+     */
+    BlockingClientChannel(Socket socket, Executor writers) throws IOException {
+        this.socket = socket;
+        this.writers = writers;
+        this.output = socket.getOutputStream();
+        this.input = FrameCodec.input(socket.getInputStream());
+    }
+
+    void setHandler(ClientHandler handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * Reads messages until the connection closes.
+     */
+    @Override
+    public void run() {
+        handler.onConnected();
+        try {
+            while (open) {
+                handler.onMessage(FrameCodec.readFrame(input));
+            }
+        } catch (EOFException e) {
+            // Client closed the connection
+        } catch (IOException e) {
+            if (open) {
+                System.err.println("Client connection lost: " + e.getMessage());
+            }
+        } finally {
+            handler.onClosed();
+        }
+    }
+
+    @Override
+    public void send(Message message) {
+        if (closing) {
+            return;
+        }
+        try {
+            outbound.add(ByteBuffer.wrap(FrameCodec.encode(message, codec)));
+        } catch (IOException e) {
+            System.err.println("Error encoding message " + message.getType() + ": " + e.getMessage());
+            return;
+        }
+        scheduleDrain();
+    }
+
+    @Override
+    public boolean broadcast(SharedFrame frame) {
+        if (closing) {
+            return true;
+        }
+        try {
+            if (!outbound.offerBroadcast(frame, codec)) {
+                return false;
+            }
+        } catch (IOException e) {
+            System.err.println("Error encoding message " + frame.getMessage().getType() + ": " + e.getMessage());
+            return true;
+        }
+        scheduleDrain();
+        return true;
+    }
+
+    @Override
+    public int dropQueuedBroadcasts() {
+        return outbound.dropBroadcasts();
+    }
+
+    @Override
+    public long getConflatedCount() {
+        return outbound.getConflatedCount();
+    }
+
+    @Override
+    public int getQueuedBytes() {
+        return outbound.getQueuedBytes();
+    }
+
+    @Override
+    public void setCodec(MessageCodec codec) {
+        this.codec = codec;
+    }
+
+    @Override
+    public void close() {
+        closing = true;
+        scheduleDrain();
+    }
+
+    @Override
+    public void abort() {
+        closing = true;
+        outbound.clear();
+        closeSocket();
+    }
+
+    private void scheduleDrain() {
+        if (draining.compareAndSet(false, true)) {
+            try {
+                writers.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                // The server is shutting down
+                abort();
+            }
+        }
+    }
+
+    /**
+     * Writes queued frames until the queue is empty, then closes the socket
+     * if the channel is closing. Runs on a writer thread.
+     */
+    private void drain() {
+        do {
+            try {
+                ByteBuffer frame;
+                while (open && (frame = outbound.peek()) != null) {
+                    output.write(frame.array(), frame.arrayOffset() + frame.position(), frame.remaining());
+                    outbound.remove();
+                }
+            } catch (IOException e) {
+                if (open) {
+                    System.err.println("Error sending message to client: " + e.getMessage());
+                }
+                abort();
+            }
+            if (closing) {
+                closeSocket();
+            }
+            draining.set(false);
+            // A sender may have queued a frame after the queue looked empty
+        } while (open && !outbound.isEmpty() && draining.compareAndSet(false, true));
+    }
+
+    private void closeSocket() {
+        open = false;
+        try {
+            socket.close();
+        } catch (IOException e) {
+            System.err.println("Error closing client socket: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public String getRemoteAddress() {
+        return String.valueOf(socket.getInetAddress());
+    }
+}
@@ -0,0 +1,69 @@
+package server.network;
+
+import util.Message;
+import util.MessageCodec;
+
+/**
+ * The transport under a {@link ClientHandler}. The server's transports
+ * (blocking sockets or NIO event loops) read frames off the connection and
+ * hand the messages to the handler; the handler writes back through this.
+ */
+interface ClientChannel {
+
+    /**
+     * Sends a message to the client. The message is encoded on the calling
+     * thread and queued; the transport writes it.
+     *
+     * @param message the message to send
+     */
+    void send(Message message);
+
+    /**
+     * Queues a broadcast unless the client is too far behind. The frame is
+     * shared with the other clients and must not be modified.
+     *
+     * @param frame the broadcast, encoded once for all clients
+     * @return false if the client's outbound queue is full and the broadcast was not queued
+     */
+    boolean broadcast(SharedFrame frame);
+
+    /**
+     * Discards broadcasts that are queued but not yet being written.
+     *
+     * @return the number of broadcasts discarded
+     */
+    int dropQueuedBroadcasts();
+
+    /**
+     * @return the number of broadcasts that replaced an older state of the same entity in the queue
+     */
+    long getConflatedCount();
+
+    /**
+     * @return the bytes of the messages queued for the client but not yet written
+     */
+    int getQueuedBytes();
+
+    /**
+     * Sets the codec for messages sent from now on. Frames name their codec,
+     * so the client can decode messages sent before and after the switch.
+     *
+     * @param codec the negotiated codec
+     */
+    void setCodec(MessageCodec codec);
+
+    /**
+     * Closes the connection once queued messages have been written.
+     */
+    void close();
+
+    /**
+     * Closes the connection immediately, discarding queued messages.
+     */
+    void abort();
+
+    /**
+     * @return the client's address, for logging
+     */
+    String getRemoteAddress();
+}
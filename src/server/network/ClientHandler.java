@@ -1,427 +1,547 @@
 package server.network;
 
+import database.RequestDeadline;
 import server.model.ServerModel;
 import util.Message;
-import enums.PerformanceTypeEnum;
-import objects.Laptop;
-import objects.Reservation;
-import objects.Student;
-
-import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.net.Socket;
-import java.util.UUID;
+import util.MessageCodec;
+import util.RoundTripStats;
+import util.SyncBundle;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Handles communication with a specific client.
- * Runs in its own thread and processes client messages.
+ * The server's transport delivers the client's messages; requests are
+ * processed on the shared worker pool. Its reads run side by side, its
+ * other requests one at a time and in the order they were sent; responses
+ * carry the request's id.
  */
-public class ClientHandler extends Thread {
-    private Socket socket;
+public class ClientHandler {
+    // Most commands one "batch" request may carry
+    private static final int MAX_BATCH_COMMANDS = Integer.getInteger("server.batch.maxCommands", 1000);
+    // Commands about the connection itself, which make no sense inside a batch
+    private static final Set<String> NOT_BATCHABLE = new HashSet<>(Arrays.asList(
+            "batch", "new_client", "resync", "negotiate_codec", "disconnect"));
+    // Most of one client's reads that run at once
+    private static final int MAX_CONCURRENT_READS = Integer.getInteger("server.client.maxConcurrentReads", 4);
+
+    private final ClientChannel channel;
     private ServerModel serverModel;
     private SocketServer server;
-    private ObjectInputStream input;
-    private ObjectOutputStream output;
-    private boolean running;
+    private volatile boolean running;
     private ConnectionPool connectionPool;
+    private final CommandRegistry commands;
+    private final AdmissionControl admission;
+    // Null if requests are not rate limited
+    private final TokenBucket rateLimiter;
+    // Requests read but not yet processed or turned away
+    private final AtomicInteger queuedRequests = new AtomicInteger();
+
+    // Requests run on the worker pool so the transport still delivers a
+    // "cancel" while a request is being processed. Reads run side by side;
+    // everything else in the order it was sent.
+    private final OrderedExecutor requestExecutor;
+    // The deadlines of the requests being processed, with their request ids
+    private final Map<RequestDeadline, Long> activeRequests = new ConcurrentHashMap<>();
+    private final AtomicLong cancelGeneration = new AtomicLong();
+    // Requests with an id that have been read but not yet answered; true once the client cancels one
+    private final Map<Long, Boolean> pendingRequests = new ConcurrentHashMap<>();
+    // Set from when a slow client's broadcasts are discarded until its fresh snapshot is queued
+    private final AtomicBoolean resyncPending = new AtomicBoolean();
+
+    // When anything last arrived from the client, in System.nanoTime()
+    private volatile long lastHeardNanos = System.nanoTime();
+    // Set once the client has sent or answered a heartbeat
+    private volatile boolean answersHeartbeats;
+    private final RoundTripStats roundTrip = new RoundTripStats();
 
     /**
      * Creates a new client handler.
      *
-     * @param socket the client socket
+     * @param channel the connection to the client
      * @param serverModel the server model
      * @param server the socket server
      * @param connectionPool the connection pool for broadcasting
+     * @param commands the commands the client can send
+     * @param admission decides which of the client's requests are taken on
+     * @param workers the pool that runs client requests
      */
-    public ClientHandler(Socket socket, ServerModel serverModel, SocketServer server, ConnectionPool connectionPool) {
-        this.socket = socket;
+    ClientHandler(ClientChannel channel, ServerModel serverModel, SocketServer server,
+                  ConnectionPool connectionPool, CommandRegistry commands, AdmissionControl admission,
+                  Executor workers) {
+        this.channel = channel;
+        this.commands = commands;
+        this.admission = admission;
+        this.rateLimiter = admission.newRateLimiter();
         this.serverModel = serverModel;
         this.server = server;
         this.connectionPool = connectionPool;
         this.running = true;
+        this.requestExecutor = new OrderedExecutor(workers, MAX_CONCURRENT_READS);
+    }
 
-        try {
-            // Initialize streams - output first to avoid deadlock
-            this.output = new ObjectOutputStream(socket.getOutputStream());
-            this.input = new ObjectInputStream(socket.getInputStream());
-        } catch (IOException e) {
-            System.err.println("Error initializing client handler: " + e.getMessage());
-            disconnect();
-        }
+    /**
+     * Called by the transport once the connection is ready.
+     */
+    void onConnected() {
+        System.out.println("Client handler started for client: " + channel.getRemoteAddress());
+
+        // Send welcome message to client, with the epoch it must send back to resume after a reconnect
+        sendMessage(new Message("welcome",
+                new Object[]{"Connected to Laptop Management System Server", connectionPool.getEpoch()}));
     }
 
     /**
-     * Thread's run method - processes client messages.
+     * Called by the transport for every message read from the client.
+     * Must not block: the transport may be serving other clients on this thread.
+     *
+     * @param message the message from the client
      */
-    @Override
-    public void run() {
-        try {
-            System.out.println("Client handler started for client: " + socket.getInetAddress());
+    void onMessage(Message message) {
+        if (message == null || !running) {
+            return;
+        }
+        lastHeardNanos = System.nanoTime();
 
-            // Send welcome message to client
-            sendMessage(new Message("welcome", "Connected to Laptop Management System Server"));
+        // Heartbeats are answered here and never queued, so a busy client still answers them
+        if ("ping".equals(message.getType())) {
+            answersHeartbeats = true;
+            sendMessage(new Message("pong", message.getArgs()));
+            return;
+        }
+        if ("pong".equals(message.getType())) {
+            answersHeartbeats = true;
+            if (message.getArgs() instanceof Long) {
+                roundTrip.record(System.nanoTime() - (Long) message.getArgs());
+            }
+            return;
+        }
 
-            // Main message processing loop
-            while (running) {
-                try {
-                    // Read message from client
-                    Message message = (Message) input.readObject();
-                    if (message == null) {
-                        continue;
-                    }
+        // The client has stopped waiting; handled here rather than
+        // queued behind the request it cancels
+        if ("cancel".equals(message.getType())) {
+            if (message.getArgs() instanceof Long) {
+                cancelRequest((Long) message.getArgs());
+            } else {
+                cancelRequests();
+            }
+            return;
+        }
 
-                    System.out.println("Received message: " + message.getType());
+        if (rateLimiter != null && !rateLimiter.tryAcquire()) {
+            admission.recordRateLimited();
+            sendBusy(message, rateLimiter.millisUntilToken());
+            return;
+        }
+        if (queuedRequests.incrementAndGet() > admission.getMaxQueuedRequests()) {
+            queuedRequests.decrementAndGet();
+            admission.recordQueueFull();
+            sendBusy(message, 0);
+            return;
+        }
 
-                    // Process message and get response
-                    Object response = processMessage(message);
+        if (message.getRequestId() != 0) {
+            pendingRequests.put(message.getRequestId(), Boolean.FALSE);
+        }
 
-                    // If there's a response to send back, send it
-                    if (response != null) {
-                        // Send response back to client
-                        sendMessage(new Message("response", response));
-                    }
-                } catch (ClassNotFoundException e) {
-                    System.err.println("Error reading message: " + e.getMessage());
-                }
-            }
-        } catch (IOException e) {
-            // Handle client disconnection
-            if (running) {
-                System.err.println("Client connection lost: " + e.getMessage());
-            }
-        } finally {
-            disconnect();
+        // The deadline is measured from when the request is read
+        long deadlineNanos = RequestDeadline.deadlineFromNow(message.getTimeoutMillis());
+        long generation = cancelGeneration.get();
+        Runnable request = () -> handleRequest(message, deadlineNanos, generation);
+        // Clients that don't tag requests match responses by order, so theirs stay in order
+        if (message.getRequestId() != 0 && commands.isReadOnly(message.getType())) {
+            requestExecutor.executeRead(request);
+        } else {
+            requestExecutor.execute(request);
         }
     }
 
     /**
-     * Processes a message from the client and returns a response.
-     *
-     * @param message the message from the client
-     * @return the response to send back, or null if no response needed
+     * Called by the transport when the connection has closed.
      */
-    private Object processMessage(Message message) {
-        String type = message.getType();
-        Object args = message.getArgs();
+    void onClosed() {
+        disconnect();
+    }
 
+    /**
+     * Processes one request and sends the response, unless the client has
+     * cancelled the request or its deadline passed in the meantime.
+     *
+     * @param message the request
+     * @param deadlineNanos the request deadline in System.nanoTime(), 0 for none
+     * @param generation the cancel generation when the request was read
+     */
+    private void handleRequest(Message message, long deadlineNanos, long generation) {
+        long requestId = message.getRequestId();
         try {
-            // Process message based on type
-            switch (type) {
-                case "new_client":
-                    // Handle new client connection
-                    connectionPool.addConnection(this);
-                    sendInitialData();
-                    return "Connected and synchronized";
-
-                // ===== Laptop-related messages =====
-                case "get_all_laptops":
-                    return serverModel.getAllLaptops();
-
-                case "get_available_laptops":
-                    return serverModel.getAvailableLaptops();
-
-                case "get_loaned_laptops":
-                    return serverModel.getLoanedLaptops();
-
-                case "get_next_available_laptop":
-                    if (args instanceof PerformanceTypeEnum) {
-                        return serverModel.seeNextAvailableLaptop((PerformanceTypeEnum) args);
-                    }
-                    break;
+            if (isCancelled(requestId, generation)) {
+                System.out.println("Skipping cancelled request: " + message.getType());
+                return;
+            }
+            if (deadlineNanos != 0 && System.nanoTime() - deadlineNanos >= 0) {
+                System.out.println("Skipping expired request: " + message.getType());
+                return;
+            }
 
-                case "get_laptop_by_uuid":
-                    if (args instanceof UUID) {
-                        return serverModel.getLaptopByUUID((UUID) args);
-                    }
-                    break;
-
-                case "create_laptop":
-                    if (args instanceof Object[]) {
-                        Object[] laptopData = (Object[]) args;
-                        if (laptopData.length == 5) {
-                            String brand = (String) laptopData[0];
-                            String model = (String) laptopData[1];
-                            int gigabyte = (int) laptopData[2];
-                            int ram = (int) laptopData[3];
-                            PerformanceTypeEnum performanceType = (PerformanceTypeEnum) laptopData[4];
-
-                            Laptop laptop = serverModel.createLaptop(brand, model, gigabyte, ram, performanceType);
-                            if (laptop != null) {
-                                // Broadcast to all clients
-                                connectionPool.broadcastToAll(new Message("laptop_created", laptop));
-                                return laptop;
-                            }
-                        }
-                    } else if (args instanceof Laptop) {
-                        // Alternative version accepting a Laptop object directly
-                        Laptop laptop = (Laptop) args;
-                        Laptop created = serverModel.createLaptop(
-                                laptop.getBrand(),
-                                laptop.getModel(),
-                                laptop.getGigabyte(),
-                                laptop.getRam(),
-                                laptop.getPerformanceType());
-
-                        if (created != null) {
-                            // Broadcast to all clients
-                            connectionPool.broadcastToAll(new Message("laptop_created", created));
-                            return created;
-                        }
-                    }
-                    break;
-
-                case "update_laptop_state":
-                    if (args instanceof UUID) {
-                        Laptop laptop = serverModel.updateLaptopState((UUID) args);
-                        if (laptop != null) {
-                            // Broadcast to all clients
-                            connectionPool.broadcastToAll(new Message("laptop_state_changed", laptop));
-                            return laptop;
-                        }
+            Object response;
+            try (RequestDeadline deadline = RequestDeadline.start(deadlineNanos)) {
+                activeRequests.put(deadline, requestId);
+                // A cancel may have arrived between the check above and publishing the deadline
+                if (isCancelled(requestId, generation)) {
+                    deadline.cancel();
+                }
+
+                // Only so many whole-table reads at once, whichever clients send them
+                boolean expensive = commands.isExpensive(message.getType());
+                try {
+                    if (expensive && !admission.acquireExpensive(deadline)) {
+                        sendBusy(message, admission.getExpensiveRetryMillis());
+                        return;
                     }
-                    break;
-
-                case "delete_laptop":
-                    if (args instanceof UUID) {
-                        Laptop laptop = serverModel.deleteLaptop((UUID) args);
-                        if (laptop != null) {
-                            // Broadcast to all clients
-                            connectionPool.broadcastToAll(new Message("laptop_deleted", laptop));
-                            return true;
+                    try {
+                        response = processMessage(message);
+                    } finally {
+                        if (expensive) {
+                            admission.releaseExpensive();
                         }
                     }
-                    break;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } finally {
+                    activeRequests.remove(deadline);
+                }
 
-                // ===== Student-related messages =====
-                case "get_all_students":
-                    return serverModel.getAllStudents();
+                if (deadline.isCancelled() || deadline.isExpired()) {
+                    // Nobody is waiting for this response any more
+                    return;
+                }
+            }
 
-                case "get_student_count":
-                    return serverModel.getStudentCount();
+            // If there's a response to send back, send it with the request's id
+            if (response != null) {
+                sendMessage(new Message("response", response, 0, requestId));
+            }
+        } finally {
+            queuedRequests.decrementAndGet();
+            if (requestId != 0) {
+                pendingRequests.remove(requestId);
+            }
+        }
+    }
 
-                case "get_student_by_id":
-                    if (args instanceof Integer) {
-                        return serverModel.getStudentByID((Integer) args);
-                    }
-                    break;
-
-                case "get_high_power_students":
-                    return serverModel.getStudentWithHighPowerNeeds();
-
-                case "get_low_power_students":
-                    return serverModel.getStudentWithLowPowerNeeds();
-
-                case "create_student":
-                    if (args instanceof Object[]) {
-                        Object[] studentData = (Object[]) args;
-                        if (studentData.length == 7) {
-                            String name = (String) studentData[0];
-                            java.util.Date degreeEndDate = (java.util.Date) studentData[1];
-                            String degreeTitle = (String) studentData[2];
-                            int viaId = (int) studentData[3];
-                            String email = (String) studentData[4];
-                            int phoneNumber = (int) studentData[5];
-                            PerformanceTypeEnum performanceNeeded = (PerformanceTypeEnum) studentData[6];
-
-                            Student student = serverModel.createStudent(
-                                    name, degreeEndDate, degreeTitle, viaId,
-                                    email, phoneNumber, performanceNeeded);
-
-                            if (student != null) {
-                                // Broadcast to all clients
-                                connectionPool.broadcastToAll(new Message("student_created", student));
-                                return student;
-                            }
-                        }
-                    } else if (args instanceof Student) {
-                        // Alternative version accepting a Student object directly
-                        Student student = (Student) args;
-                        Student created = serverModel.createStudent(
-                                student.getName(),
-                                student.getDegreeEndDate(),
-                                student.getDegreeTitle(),
-                                student.getViaId(),
-                                student.getEmail(),
-                                student.getPhoneNumber(),
-                                student.getPerformanceNeeded());
-
-                        if (created != null) {
-                            // Broadcast to all clients
-                            connectionPool.broadcastToAll(new Message("student_created", created));
-                            return created;
-                        }
-                    }
-                    break;
-
-                case "delete_student":
-                    if (args instanceof Integer) {
-                        boolean success = serverModel.deleteStudent((Integer) args);
-                        if (success) {
-                            // Broadcast to all clients
-                            connectionPool.broadcastToAll(new Message("student_deleted", args));
-                            return true;
-                        }
-                    }
-                    break;
-
-                // ===== Reservation-related messages =====
-                case "create_reservation":
-                    if (args instanceof Object[]) {
-                        Object[] reservationData = (Object[]) args;
-                        if (reservationData.length == 2 &&
-                                reservationData[0] instanceof Student &&
-                                reservationData[1] instanceof Laptop) {
-
-                            Student student = (Student) reservationData[0];
-                            Laptop laptop = (Laptop) reservationData[1];
-                            Reservation reservation = serverModel.createReservation(student, laptop);
-
-                            if (reservation != null) {
-                                // Broadcast to all clients
-                                connectionPool.broadcastToAll(new Message("reservation_created", reservation));
-                                return reservation;
-                            }
-                        }
-                    }
-                    break;
+    /**
+     * Tells the client its request was turned away and when to try again.
+     *
+     * @param request the request
+     * @param retryAfterMillis how long the client should wait, 0 if unknown
+     */
+    private void sendBusy(Message request, long retryAfterMillis) {
+        sendMessage(new Message("busy", retryAfterMillis, 0, request.getRequestId()));
+    }
 
-                case "get_active_reservations":
-                    return serverModel.getActiveReservations();
+    private boolean isCancelled(long requestId, long generation) {
+        return generation != cancelGeneration.get() ||
+                (requestId != 0 && Boolean.TRUE.equals(pendingRequests.get(requestId)));
+    }
 
-                case "get_all_reservations":
-                    return serverModel.getAllReservations();
+    /**
+     * Cancels one request, whether it is queued or being processed.
+     * Unknown ids belong to requests that have already been answered.
+     *
+     * @param requestId the id of the request to cancel
+     */
+    private void cancelRequest(long requestId) {
+        if (pendingRequests.computeIfPresent(requestId, (id, cancelled) -> Boolean.TRUE) == null) {
+            return;
+        }
+        activeRequests.forEach((deadline, id) -> {
+            if (id == requestId) {
+                deadline.cancel();
+            }
+        });
+    }
 
-                case "complete_reservation":
-                    if (args instanceof UUID) {
-                        boolean success = serverModel.completeReservation((UUID) args);
-                        if (success) {
-                            // Broadcast to all clients
-                            connectionPool.broadcastToAll(new Message("reservation_completed", args));
-                            return true;
-                        }
-                    }
-                    break;
-
-                // ===== Queue-related messages =====
-                case "get_high_performance_queue":
-                    return serverModel.getHighPerformanceQueue();
-
-                case "get_low_performance_queue":
-                    return serverModel.getLowPerformanceQueue();
-
-                case "add_to_high_queue":
-                    if (args instanceof Integer) {
-                        boolean success = serverModel.addToHighPerformanceQueue((Integer) args);
-                        if (success) {
-                            // Broadcast to all clients
-                            connectionPool.broadcastToAll(new Message("student_added_to_high_queue", args));
-                            return true;
-                        }
-                    }
-                    break;
-
-                case "add_to_low_queue":
-                    if (args instanceof Integer) {
-                        boolean success = serverModel.addToLowPerformanceQueue((Integer) args);
-                        if (success) {
-                            // Broadcast to all clients
-                            connectionPool.broadcastToAll(new Message("student_added_to_low_queue", args));
-                            return true;
-                        }
-                    }
-                    break;
+    /**
+     * Cancels the requests being processed, including their running database
+     * statements, and every request read before the cancel.
+     */
+    private void cancelRequests() {
+        cancelGeneration.incrementAndGet();
+        activeRequests.keySet().forEach(RequestDeadline::cancel);
+    }
+
+    /**
+     * Processes a message from the client and returns a response.
+     *
+     * @param message the message from the client
+     * @return the response to send back, or null if no response needed
+     */
+    private Object processMessage(Message message) {
+        return commands.dispatch(this, message);
+    }
 
-                case "process_queues":
-                    int processed = serverModel.processQueues();
-                    return processed;
+    /**
+     * Runs the commands of a "batch" request in order, so a client can send
+     * many operations in one round trip. The args are the list of command
+     * messages, or {atomic, commands}. An atomic batch runs in one database
+     * transaction and stops at the first command that fails, rolling back
+     * the ones before it.
+     *
+     * @param args the commands, optionally preceded by the atomic flag
+     * @return one result per command, in order; a command that failed, was
+     *         rolled back or was not run has an "Error: ..." string
+     */
+    Object processBatch(Object args) {
+        boolean atomic = false;
+        Object commands = args;
+        if (args instanceof Object[] && ((Object[]) args).length == 2 && ((Object[]) args)[0] instanceof Boolean) {
+            atomic = (Boolean) ((Object[]) args)[0];
+            commands = ((Object[]) args)[1];
+        }
+        if (!(commands instanceof List)) {
+            return "Error: batch expects a list of commands";
+        }
+        List<?> batch = (List<?>) commands;
+        if (batch.size() > MAX_BATCH_COMMANDS) {
+            return "Error: batch has " + batch.size() + " commands, at most " + MAX_BATCH_COMMANDS + " allowed";
+        }
 
-                case "disconnect":
-                    disconnect();
-                    return "Disconnected";
+        List<Object> results = new ArrayList<>(batch.size());
+        if (!atomic) {
+            for (Object command : batch) {
+                results.add(processCommand(command));
+            }
+            return results;
+        }
 
-                default:
-                    System.err.println("Unknown message type: " + type);
-                    return "Unknown message type: " + type;
+        boolean committed = serverModel.runInTransaction(() -> {
+            for (Object command : batch) {
+                Object result = processCommand(command);
+                results.add(result);
+                if (isFailure(result)) {
+                    return false;
+                }
             }
-        } catch (Exception e) {
-            System.err.println("Error processing message: " + e.getMessage());
-            e.printStackTrace();
-            return "Error: " + e.getMessage();
+            return true;
+        });
+        if (!committed) {
+            for (int i = 0; i < results.size(); i++) {
+                if (!isFailure(results.get(i))) {
+                    results.set(i, "Error: Rolled back");
+                }
+            }
+            while (results.size() < batch.size()) {
+                results.add("Error: Not run, an earlier command failed");
+            }
+        }
+        return results;
+    }
+
+    private Object processCommand(Object command) {
+        if (!(command instanceof Message)) {
+            return "Error: batch commands must be messages";
+        }
+        Message message = (Message) command;
+        if (message.getType() == null || NOT_BATCHABLE.contains(message.getType())) {
+            return "Error: " + message.getType() + " cannot be part of a batch";
         }
+        // The whole batch shares the request's deadline
+        RequestDeadline deadline = RequestDeadline.current();
+        if (deadline != null && (deadline.isCancelled() || deadline.isExpired())) {
+            return "Error: Not run, the request was cancelled or timed out";
+        }
+        Object result = processMessage(message);
+        // Every kind of failure is reported the same way within a batch
+        if (CommandRegistry.NO_RESPONSE_DATA.equals(result)) {
+            return "Error: " + message.getType() + " failed";
+        }
+        if (result instanceof String && ((String) result).startsWith("Unknown message type: ")) {
+            return "Error: " + result;
+        }
+        return result;
+    }
 
-        return "Message processed but no response data";
+    private static boolean isFailure(Object result) {
+        return result instanceof String && ((String) result).startsWith("Error: ");
     }
 
     /**
-     * Sends initial data to the client upon connection.
+     * Sends the initial state to the client upon connection.
      */
-    private void sendInitialData() {
+    void sendInitialData() {
         try {
-            // Send all laptops
-            sendMessage(new Message("all_laptops", serverModel.getAllLaptops()));
-
-            // Send all students
-            sendMessage(new Message("all_students", serverModel.getAllStudents()));
-
-            // Send all active reservations
-            sendMessage(new Message("active_reservations", serverModel.getActiveReservations()));
-
-            // Send queue information
-            sendMessage(new Message("high_performance_queue", serverModel.getHighPerformanceQueue()));
-            sendMessage(new Message("low_performance_queue", serverModel.getLowPerformanceQueue()));
+            // Read before the snapshot, so the snapshot covers at least the
+            // events up to here; later events reach the client after it
+            long sequence = connectionPool.getLastSequence();
+
+            // Laptops, students, active reservations and both queues from one
+            // consistent snapshot, sent as a single message
+            SyncBundle bundle = serverModel.getSyncBundle();
+            if (bundle != null) {
+                sendMessage(Message.event("initial_sync", bundle, sequence));
+            } else {
+                System.err.println("Error sending initial data: snapshot could not be loaded");
+            }
 
         } catch (Exception e) {
             System.err.println("Error sending initial data: " + e.getMessage());
         }
     }
 
+    ServerModel getServerModel() {
+        return serverModel;
+    }
+
+    ConnectionPool getConnectionPool() {
+        return connectionPool;
+    }
+
+    /**
+     * Switches the codec of the messages sent to the client.
+     *
+     * @param codec the codec the client negotiated
+     */
+    void setCodec(MessageCodec codec) {
+        channel.setCodec(codec);
+    }
+
     /**
      * Sends a message to the client.
      *
      * @param message the message to send
      */
     public void sendMessage(Message message) {
-        try {
-            if (output != null && message != null) {
-                output.writeObject(message);
-                output.flush();
-            }
-        } catch (IOException e) {
-            System.err.println("Error sending message to client: " + e.getMessage());
-            disconnect();
+        if (message != null) {
+            channel.send(message);
+        }
+    }
+
+    /**
+     * Queues a broadcast for this client.
+     *
+     * @param frame the broadcast, encoded once for all clients
+     * @return false if the client is too far behind to take it
+     */
+    boolean sendBroadcast(SharedFrame frame) {
+        return !running || channel.broadcast(frame);
+    }
+
+    /**
+     * @return the number of broadcasts to this client that replaced an older queued state
+     */
+    long getConflatedCount() {
+        return channel.getConflatedCount();
+    }
+
+    /**
+     * @return the bytes queued for this client but not yet written
+     */
+    int getQueuedBytes() {
+        return channel.getQueuedBytes();
+    }
+
+    /**
+     * Replaces the client's queued broadcasts with a fresh snapshot, which
+     * covers everything it has missed. The snapshot is loaded on the
+     * client's request executor, after requests already queued.
+     *
+     * @return false if a resync was already pending
+     */
+    boolean resync() {
+        if (!running || !resyncPending.compareAndSet(false, true)) {
+            return false;
         }
+        channel.dropQueuedBroadcasts();
+        requestExecutor.execute(() -> {
+            resyncPending.set(false);
+            sendInitialData();
+        });
+        return true;
+    }
+
+    /**
+     * Sends a heartbeat carrying the time it was sent; the client echoes it
+     * back in a "pong".
+     */
+    void sendPing() {
+        if (running) {
+            sendMessage(new Message("ping", System.nanoTime()));
+        }
+    }
+
+    /**
+     * @return milliseconds since anything arrived from the client
+     */
+    long getMillisSinceHeard() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastHeardNanos);
+    }
+
+    /**
+     * @return true once the client has sent or answered a heartbeat
+     */
+    boolean answersHeartbeats() {
+        return answersHeartbeats;
+    }
+
+    /**
+     * @return the round-trip times of the heartbeats to this client
+     */
+    public RoundTripStats getRoundTripStats() {
+        return roundTrip;
+    }
+
+    /**
+     * @return the client's address, for logging
+     */
+    String getRemoteAddress() {
+        return channel.getRemoteAddress();
     }
 
     /**
      * Disconnects the client.
      */
     public void disconnect() {
+        disconnect(true);
+    }
+
+    /**
+     * Disconnects a client that has stopped reading, without waiting for
+     * queued messages to be written.
+     */
+    void abort() {
+        disconnect(false);
+    }
+
+    private void disconnect(boolean graceful) {
         if (!running) {
             return;
         }
 
         running = false;
-        System.out.println("Disconnecting client: " + (socket != null ? socket.getInetAddress() : "unknown"));
+        cancelRequests();
+        requestExecutor.shutdown();
+        System.out.println("Disconnecting client: " + channel.getRemoteAddress());
 
         try {
-            // Send goodbye message
-            if (output != null) {
+            if (graceful) {
+                // Send goodbye message, then close once it has been written
                 sendMessage(new Message("disconnect", "Goodbye"));
+                channel.close();
+            } else {
+                channel.abort();
             }
-
-            // Close resources
-            if (input != null) {
-                input.close();
-            }
-            if (output != null) {
-                output.close();
-            }
-            if (socket != null && !socket.isClosed()) {
-                socket.close();
-            }
-        } catch (IOException e) {
-            System.err.println("Error during client disconnect: " + e.getMessage());
         } finally {
             // Remove from connection pool
             connectionPool.removeConnection(this);
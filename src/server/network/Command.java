@@ -0,0 +1,19 @@
+package server.network;
+
+/**
+ * Handles one type of client request, registered in a {@link CommandRegistry}.
+ *
+ * @param <A> the type of the request's args; requests whose args are not of
+ *            this type are rejected before the command runs
+ */
+@FunctionalInterface
+public interface Command<A> {
+    /**
+     * @param client the client that sent the request
+     * @param args the request's args
+     * @return the response; null to send none, or
+     *         {@link CommandRegistry#NO_RESPONSE_DATA} if the request failed
+     * @throws Exception if the request failed; the client gets an error response
+     */
+    Object execute(ClientHandler client, A args) throws Exception;
+}
@@ -0,0 +1,104 @@
+package server.network;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Count, errors and latency of one command. Latencies are kept in
+ * power-of-two microsecond buckets, so recording costs a few atomic adds and
+ * percentiles are accurate to within a factor of two.
+ */
+public class CommandMetrics {
+    private static final int BUCKETS = 32;
+
+    private final LongAdder count = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+    // Bucket i holds latencies below 2^i microseconds and at least 2^(i-1)
+    private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+
+    void record(long nanos, boolean failed) {
+        count.increment();
+        if (failed) {
+            errors.increment();
+        }
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+        histogram.incrementAndGet(bucket(TimeUnit.NANOSECONDS.toMicros(nanos)));
+    }
+
+    private static int bucket(long micros) {
+        return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getErrorCount() {
+        return errors.sum();
+    }
+
+    /**
+     * @return the fraction of requests that failed, 0 if there were none
+     */
+    public double getErrorRate() {
+        long total = count.sum();
+        return total == 0 ? 0 : (double) errors.sum() / total;
+    }
+
+    /**
+     * @return the time spent on the command in total, in milliseconds
+     */
+    public double getTotalMillis() {
+        return totalNanos.sum() / 1_000_000.0;
+    }
+
+    public double getMeanMicros() {
+        long total = count.sum();
+        return total == 0 ? 0 : totalNanos.sum() / 1000.0 / total;
+    }
+
+    public long getMaxMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(maxNanos.get());
+    }
+
+    /**
+     * @param percentile between 0 and 100, e.g. 99
+     * @return the upper bound of the bucket the percentile falls in, in
+     *         microseconds, at most the slowest request seen; 0 if there were no requests
+     */
+    public long getPercentileMicros(double percentile) {
+        long[] buckets = getHistogram();
+        long total = 0;
+        for (long bucket : buckets) {
+            total += bucket;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(total * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i];
+            if (seen >= Math.max(1, rank)) {
+                return Math.min(1L << i, getMaxMicros());
+            }
+        }
+        return getMaxMicros();
+    }
+
+    /**
+     * @return request counts per bucket; bucket i holds latencies below 2^i microseconds
+     */
+    public long[] getHistogram() {
+        long[] buckets = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = histogram.get(i);
+        }
+        return buckets;
+    }
+}
@@ -0,0 +1,229 @@
+package server.network;
+
+import database.Transaction;
+import util.EncodedValue;
+import util.Message;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The commands a client can send, by message type. Every request is looked
+ * up in one hash map and run through the command's timing, so the server
+ * knows the count, error rate and latency of each command.
+ *
+ * Commands are registered before the server starts; the registry is only
+ * read once clients are connected.
+ */
+public class CommandRegistry {
+    /** The response to a request that could not be carried out, e.g. because its args were wrong. */
+    public static final String NO_RESPONSE_DATA = "Message processed but no response data";
+
+    private final Map<String, Registration<?>> commands = new HashMap<>();
+    private final Set<String> expensive = new HashSet<>();
+    private final Set<String> readOnly = new HashSet<>();
+    private final ResponseCache responseCache = new ResponseCache();
+
+    /**
+     * Registers the command for a message type, replacing any earlier one.
+     *
+     * @param type the message type
+     * @param argType the type the request's args must have
+     * @param command the command
+     * @param <A> the type of the args
+     */
+    public <A> void register(String type, Class<A> argType, Command<? super A> command) {
+        commands.put(type, new Registration<>(argType, command));
+    }
+
+    /**
+     * Registers a command that accepts any args, including none.
+     *
+     * @param type the message type
+     * @param command the command
+     */
+    public void register(String type, Command<Object> command) {
+        register(type, Object.class, command);
+    }
+
+    /**
+     * Marks commands whose cost grows with the data, such as reads of whole
+     * tables. Only a limited number of them run at once, see {@link AdmissionControl}.
+     *
+     * @param types the message types
+     */
+    public void markExpensive(String... types) {
+        Collections.addAll(expensive, types);
+    }
+
+    /**
+     * @param type a message type
+     * @return true if its command is marked as expensive
+     */
+    public boolean isExpensive(String type) {
+        return type != null && expensive.contains(type);
+    }
+
+    /**
+     * Marks commands that only read. A client's reads may run at the same
+     * time as each other, while its other commands run one at a time in the
+     * order they were sent.
+     *
+     * @param types the message types
+     */
+    public void markReadOnly(String... types) {
+        Collections.addAll(readOnly, types);
+    }
+
+    /**
+     * @param type a message type
+     * @return true if its command is marked as read-only
+     */
+    public boolean isReadOnly(String type) {
+        return type != null && readOnly.contains(type);
+    }
+
+    /**
+     * Caches the responses of a read-only command until one of the entities
+     * it reads changes, see {@link ResponseCache}.
+     *
+     * @param type the message type
+     * @param entities the entities the command reads: "laptop", "student", "reservation", "queue"
+     */
+    public void cacheResponses(String type, String... entities) {
+        responseCache.cache(type, entities);
+    }
+
+    /**
+     * Declares the entities a command that isn't read-only changes, so only
+     * the cached responses that read them are dropped when it runs.
+     *
+     * @param type the message type
+     * @param entities the entities it changes; none if it changes no data
+     */
+    public void markChanges(String type, String... entities) {
+        responseCache.changes(type, entities);
+    }
+
+    /**
+     * @return the cache of read responses
+     */
+    public ResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    /**
+     * Runs the command for a request and records how it went.
+     *
+     * @param client the client that sent the request
+     * @param message the request
+     * @return the response to send back, or null if none
+     */
+    Object dispatch(ClientHandler client, Message message) {
+        String type = message.getType();
+        Registration<?> registration = type != null ? commands.get(type) : null;
+        if (registration == null) {
+            System.err.println("Unknown message type: " + type);
+            return "Unknown message type: " + type;
+        }
+
+        long start = System.nanoTime();
+        Object response = null;
+        boolean failed = true;
+        // Inside a batch's transaction a read may see changes that are later rolled back
+        boolean cached = responseCache.isCached(type) && Transaction.current() == null;
+        try {
+            long[] generations = null;
+            if (cached) {
+                EncodedValue hit = responseCache.get(type, message.getArgs());
+                if (hit != null) {
+                    failed = false;
+                    return hit;
+                }
+                generations = responseCache.generations(type);
+            }
+            response = registration.execute(client, message.getArgs());
+            failed = NO_RESPONSE_DATA.equals(response);
+            if (cached && !failed) {
+                response = responseCache.put(type, message.getArgs(), generations, response);
+            }
+            return response;
+        } catch (Exception e) {
+            System.err.println("Error processing message: " + e.getMessage());
+            e.printStackTrace();
+            return "Error: " + e.getMessage();
+        } finally {
+            // Before the response is sent, so the client's next read sees its change
+            if (!readOnly.contains(type)) {
+                responseCache.invalidateAfter(type);
+            }
+            registration.metrics.record(System.nanoTime() - start, failed);
+        }
+    }
+
+    /**
+     * @return the registered message types
+     */
+    public Set<String> getCommandTypes() {
+        return Collections.unmodifiableSet(commands.keySet());
+    }
+
+    /**
+     * @param type a message type
+     * @return the metrics of its command, or null if no command is registered for it
+     */
+    public CommandMetrics getMetrics(String type) {
+        Registration<?> registration = commands.get(type);
+        return registration != null ? registration.metrics : null;
+    }
+
+    /**
+     * @return one line per command that has run, the ones the server spent
+     *         the most time on first: count, error rate and latency
+     */
+    public String report() {
+        List<Map.Entry<String, Registration<?>>> used = new ArrayList<>();
+        for (Map.Entry<String, Registration<?>> entry : commands.entrySet()) {
+            if (entry.getValue().metrics.getCount() > 0) {
+                used.add(entry);
+            }
+        }
+        used.sort(Comparator.comparingDouble(
+                (Map.Entry<String, Registration<?>> entry) -> entry.getValue().metrics.getTotalMillis()).reversed());
+
+        StringBuilder report = new StringBuilder(String.format("%-28s %8s %7s %10s %9s %9s %9s %10s%n",
+                "command", "count", "errors", "mean µs", "p50 µs", "p99 µs", "max µs", "total ms"));
+        for (Map.Entry<String, Registration<?>> entry : used) {
+            CommandMetrics metrics = entry.getValue().metrics;
+            report.append(String.format("%-28s %8d %6.1f%% %10.1f %9d %9d %9d %10.1f%n", entry.getKey(),
+                    metrics.getCount(), metrics.getErrorRate() * 100, metrics.getMeanMicros(),
+                    metrics.getPercentileMicros(50), metrics.getPercentileMicros(99), metrics.getMaxMicros(),
+                    metrics.getTotalMillis()));
+        }
+        return report.toString();
+    }
+
+    private static final class Registration<A> {
+        final Class<A> argType;
+        final Command<? super A> command;
+        final CommandMetrics metrics = new CommandMetrics();
+
+        Registration(Class<A> argType, Command<? super A> command) {
+            this.argType = argType;
+            this.command = command;
+        }
+
+        Object execute(ClientHandler client, Object args) throws Exception {
+            if (argType != Object.class && !argType.isInstance(args)) {
+                return NO_RESPONSE_DATA;
+            }
+            return command.execute(client, argType.cast(args));
+        }
+    }
+}
@@ -1,23 +1,83 @@
 package server.network;
 
+import enums.PerformanceTypeEnum;
 import util.Message;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Manages all active client connections to the server.
  * Provides methods for adding, removing and broadcasting messages to all clients.
+ * A broadcast is encoded once and queued for every client; clients whose
+ * queue is full are handled by the slow consumer policy. Events only go to
+ * the clients subscribed to their topic. Events raised close together, or
+ * within one operation, can be sent to each client as one batch.
  */
 public class ConnectionPool {
     private final List<ClientHandler> connections;
+    private volatile SlowConsumerPolicy slowConsumerPolicy;
+    // Sequence number of the last event broadcast; assigned and broadcast under the lock so numbers go out in order
+    private final Object sequenceLock = new Object();
+    private long lastSequence;
+    // Identifies this run of the server; sequence numbers start again at 0 in the next one
+    private final long epoch = newEpoch();
+    // Recent events for clients that reconnect; capacity can be tuned with -Dserver.eventLog.capacity
+    private final EventLog eventLog = new EventLog(Integer.getInteger("server.eventLog.capacity", 10000));
+
+    // Events held back to be sent as one batch; guarded by the sequence lock
+    private static final int MAX_BATCH_EVENTS = Integer.getInteger("server.eventBatch.maxEvents", 500);
+    private final List<Message> pendingEvents = new ArrayList<>();
+    // Number of operations currently batching their events, see beginBatch
+    private int batchDepth;
+    // How long an event may wait for others to share its batch; 0 sends each event at once
+    private volatile long batchWindowMillis = Long.getLong("server.eventBatch.windowMillis", 0);
+    private ScheduledExecutorService batchTimer;
+    private ScheduledFuture<?> scheduledFlush;
+
+    // Topics each client has subscribed to; a client without an entry gets every event
+    private final Object subscriptionLock = new Object();
+    private final Map<ClientHandler, Set<Topic>> subscriptions = new HashMap<>();
+    // Registered clients by the entity of each of their topics, so an event only visits interested clients
+    private final Map<String, Set<ClientHandler>> subscribersByEntity = new HashMap<>();
+    private final Set<ClientHandler> indexed = new HashSet<>();
+
+    private final AtomicLong broadcasts = new AtomicLong();
+    private final AtomicLong droppedBroadcasts = new AtomicLong();
+    private final AtomicLong slowConsumerDisconnects = new AtomicLong();
+    private final AtomicLong resyncs = new AtomicLong();
+    private final AtomicLong replays = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
 
     /**
      * Creates a new ConnectionPool with an empty list of connections.
      */
     public ConnectionPool() {
+        this(SlowConsumerPolicy.fromSystemProperty());
+    }
+
+    /**
+     * Creates a new ConnectionPool with an empty list of connections.
+     *
+     * @param slowConsumerPolicy what to do with clients that fall behind on broadcasts
+     */
+    public ConnectionPool(SlowConsumerPolicy slowConsumerPolicy) {
         // Use a synchronized list to ensure thread safety
         connections = Collections.synchronizedList(new ArrayList<>());
+        this.slowConsumerPolicy = slowConsumerPolicy;
     }
 
     /**
@@ -28,6 +88,9 @@ public class ConnectionPool {
     public void addConnection(ClientHandler connection) {
         if (connection != null) {
             connections.add(connection);
+            synchronized (subscriptionLock) {
+                index(connection);
+            }
             System.out.println("Client added to connection pool. Total connections: " + connections.size());
         }
     }
@@ -40,6 +103,10 @@ public class ConnectionPool {
     public void removeConnection(ClientHandler connection) {
         if (connection != null) {
             connections.remove(connection);
+            synchronized (subscriptionLock) {
+                unindex(connection);
+                subscriptions.remove(connection);
+            }
             System.out.println("Client removed from connection pool. Remaining connections: " + connections.size());
         }
     }
@@ -50,17 +117,23 @@ public class ConnectionPool {
      * @param message The message to broadcast
      */
     public void broadcastToAll(Message message) {
-        System.out.println("Broadcasting message type: " + message.getType() + " to " + connections.size() + " clients");
-
         // Create a copy of the connection list to avoid concurrent modification issues
         List<ClientHandler> connectionsCopy;
         synchronized (connections) {
             connectionsCopy = new ArrayList<>(connections);
         }
+        broadcastTo(connectionsCopy, message);
+    }
 
-        for (ClientHandler connection : connectionsCopy) {
+    private void broadcastTo(Collection<ClientHandler> recipients, Message message) {
+        broadcasts.incrementAndGet();
+        // Encoded on first use for each codec, then shared by every client using it
+        SharedFrame frame = new SharedFrame(message);
+        for (ClientHandler connection : recipients) {
             try {
-                connection.sendMessage(message);
+                if (!connection.sendBroadcast(frame)) {
+                    handleSlowConsumer(connection);
+                }
             } catch (Exception e) {
                 System.err.println("Error sending broadcast to client: " + e.getMessage());
                 // If sending fails, remove the client
@@ -69,6 +142,439 @@ public class ConnectionPool {
         }
     }
 
+    /**
+     * Broadcasts a state change as the next event in the server's event
+     * stream. Every change is broadcast once, from here, so clients can
+     * detect missed and repeated events by their sequence numbers.
+     *
+     * @param type The event type
+     * @param payload The changed object
+     */
+    public void broadcastEvent(String type, Object payload) {
+        synchronized (sequenceLock) {
+            Message event = Message.event(type, payload, ++lastSequence);
+            eventLog.append(event);
+            if (batchDepth == 0 && batchWindowMillis <= 0) {
+                broadcastTo(subscribersOf(event), event);
+                return;
+            }
+            pendingEvents.add(event);
+            if (pendingEvents.size() >= MAX_BATCH_EVENTS) {
+                flushBatch();
+            } else if (batchDepth == 0 && scheduledFlush == null) {
+                scheduleFlush();
+            }
+        }
+    }
+
+    /**
+     * Starts holding back events so they go out as one batch when the
+     * operation raising them calls {@link #endBatch()}. Operations may
+     * overlap; the batch is sent when the last of them ends.
+     */
+    public void beginBatch() {
+        synchronized (sequenceLock) {
+            batchDepth++;
+        }
+    }
+
+    /**
+     * Ends an operation started with {@link #beginBatch()} and sends the
+     * held-back events if no other operation is still batching.
+     */
+    public void endBatch() {
+        synchronized (sequenceLock) {
+            if (batchDepth > 0 && --batchDepth == 0) {
+                flushBatch();
+            }
+        }
+    }
+
+    private void scheduleFlush() {
+        if (batchTimer == null) {
+            batchTimer = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "event-batch");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        scheduledFlush = batchTimer.schedule(() -> {
+            synchronized (sequenceLock) {
+                scheduledFlush = null;
+                // An open operation sends the batch when it ends
+                if (batchDepth == 0) {
+                    flushBatch();
+                }
+            }
+        }, batchWindowMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Sends the held-back events. Each client gets the events it subscribes
+     * to in one "event_batch" message; clients subscribed to the same events
+     * share its encoding. The events inside keep their own sequence numbers.
+     * Called with the sequence lock held.
+     */
+    private void flushBatch() {
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        if (pendingEvents.isEmpty()) {
+            return;
+        }
+        List<Message> events = new ArrayList<>(pendingEvents);
+        pendingEvents.clear();
+
+        Map<ClientHandler, List<Message>> eventsByClient = new LinkedHashMap<>();
+        for (Message event : events) {
+            for (ClientHandler connection : subscribersOf(event)) {
+                eventsByClient.computeIfAbsent(connection, c -> new ArrayList<>()).add(event);
+            }
+        }
+        Map<List<Message>, List<ClientHandler>> clientsByEvents = new LinkedHashMap<>();
+        for (Map.Entry<ClientHandler, List<Message>> entry : eventsByClient.entrySet()) {
+            clientsByEvents.computeIfAbsent(entry.getValue(), e -> new ArrayList<>()).add(entry.getKey());
+        }
+
+        batches.incrementAndGet();
+        for (Map.Entry<List<Message>, List<ClientHandler>> group : clientsByEvents.entrySet()) {
+            List<Message> selected = group.getKey();
+            Message message = selected.size() == 1 ? selected.get(0) : new Message("event_batch", selected);
+            broadcastTo(group.getValue(), message);
+        }
+    }
+
+    /**
+     * Adds a reconnecting client and sends it the events it missed, if they
+     * are all still in the event log, followed by a "resumed" marker carrying
+     * the current sequence number. Both happen under the sequence lock, so
+     * the client gets every later event after the marker and none twice.
+     * A client whose sequence number comes from another run of the server
+     * needs a snapshot, since the same numbers now stand for other events.
+     *
+     * @param connection The ClientHandler to add
+     * @param epoch The epoch of the server the client's sequence number came from
+     * @param lastSequence The sequence number of the last event the client applied
+     * @return true if the missed events were sent; false if the client needs a snapshot
+     */
+    public boolean addConnection(ClientHandler connection, long epoch, long lastSequence) {
+        synchronized (sequenceLock) {
+            // Held-back events are in the log; send them first so the client doesn't get them twice
+            flushBatch();
+            addConnection(connection);
+            List<Message> missed = epoch == this.epoch ? eventLog.since(lastSequence) : null;
+            if (missed == null) {
+                return false;
+            }
+            for (Message event : missed) {
+                if (isSubscribed(connection, event)) {
+                    connection.sendMessage(event);
+                }
+            }
+            connection.sendMessage(Message.event("resumed", missed.size(), this.lastSequence));
+            replays.incrementAndGet();
+            System.out.println("Replayed " + missed.size() + " missed events to reconnecting client");
+            return true;
+        }
+    }
+
+    /**
+     * Gets the epoch of this run of the server, sent to each client on
+     * connecting. A reconnecting client sends it back with its sequence number.
+     *
+     * @return The epoch, never 0
+     */
+    public long getEpoch() {
+        return epoch;
+    }
+
+    private static long newEpoch() {
+        long epoch;
+        do {
+            epoch = ThreadLocalRandom.current().nextLong();
+        } while (epoch == 0);
+        return epoch;
+    }
+
+    /**
+     * Subscribes a client to more topics. A client that has never subscribed
+     * gets every event; its first subscription narrows that to the topics
+     * named.
+     *
+     * @param connection The client
+     * @param topics The topics to add
+     */
+    void subscribe(ClientHandler connection, Collection<Topic> topics) {
+        synchronized (subscriptionLock) {
+            boolean registered = unindex(connection);
+            subscriptions.computeIfAbsent(connection, c -> new LinkedHashSet<>()).addAll(topics);
+            if (registered) {
+                index(connection);
+            }
+        }
+    }
+
+    /**
+     * Removes topics from a client's subscription. A client left with no
+     * topics gets no events until it subscribes again.
+     *
+     * @param connection The client
+     * @param topics The topics to remove, or null for all of them
+     */
+    void unsubscribe(ClientHandler connection, Collection<Topic> topics) {
+        synchronized (subscriptionLock) {
+            boolean registered = unindex(connection);
+            Set<Topic> current = subscriptions.computeIfAbsent(connection, c -> new LinkedHashSet<>());
+            if (topics == null) {
+                current.clear();
+            } else {
+                current.removeAll(topics);
+            }
+            if (registered) {
+                index(connection);
+            }
+        }
+    }
+
+    /**
+     * Gets a client's topics.
+     *
+     * @param connection The client
+     * @return The topics, as the client would write them
+     */
+    String[] getSubscriptions(ClientHandler connection) {
+        synchronized (subscriptionLock) {
+            Set<Topic> topics = subscriptions.get(connection);
+            if (topics == null) {
+                return new String[]{Topic.ALL.toString()};
+            }
+            return topics.stream().map(Topic::toString).toArray(String[]::new);
+        }
+    }
+
+    private Set<Topic> topicsOf(ClientHandler connection) {
+        Set<Topic> topics = subscriptions.get(connection);
+        return topics != null ? topics : Collections.singleton(Topic.ALL);
+    }
+
+    private void index(ClientHandler connection) {
+        indexed.add(connection);
+        for (Topic topic : topicsOf(connection)) {
+            subscribersByEntity.computeIfAbsent(topic.getEntity(), e -> new LinkedHashSet<>()).add(connection);
+        }
+    }
+
+    /**
+     * @return true if the client was registered
+     */
+    private boolean unindex(ClientHandler connection) {
+        if (!indexed.remove(connection)) {
+            return false;
+        }
+        for (Topic topic : topicsOf(connection)) {
+            Set<ClientHandler> subscribers = subscribersByEntity.get(topic.getEntity());
+            if (subscribers != null) {
+                subscribers.remove(connection);
+                if (subscribers.isEmpty()) {
+                    subscribersByEntity.remove(topic.getEntity());
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds the registered clients subscribed to an event. Only clients
+     * indexed under the event's entity or under "*" are checked.
+     */
+    private Set<ClientHandler> subscribersOf(Message event) {
+        String entity = Topic.entityOf(event.getType());
+        String kind = Topic.kindOf(event.getType());
+        PerformanceTypeEnum performance = Topic.performanceOf(event.getArgs());
+
+        Set<ClientHandler> recipients = new LinkedHashSet<>();
+        synchronized (subscriptionLock) {
+            addMatching(subscribersByEntity.get(Topic.ANY_ENTITY), entity, kind, performance, recipients);
+            addMatching(subscribersByEntity.get(entity), entity, kind, performance, recipients);
+        }
+        return recipients;
+    }
+
+    private void addMatching(Set<ClientHandler> candidates, String entity, String kind,
+                             PerformanceTypeEnum performance, Set<ClientHandler> recipients) {
+        if (candidates == null) {
+            return;
+        }
+        for (ClientHandler candidate : candidates) {
+            for (Topic topic : topicsOf(candidate)) {
+                if (topic.matches(entity, kind, performance)) {
+                    recipients.add(candidate);
+                    break;
+                }
+            }
+        }
+    }
+
+    private boolean isSubscribed(ClientHandler connection, Message event) {
+        String entity = Topic.entityOf(event.getType());
+        String kind = Topic.kindOf(event.getType());
+        PerformanceTypeEnum performance = Topic.performanceOf(event.getArgs());
+        synchronized (subscriptionLock) {
+            for (Topic topic : topicsOf(connection)) {
+                if (topic.matches(entity, kind, performance)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Gets the sequence number of the last event broadcast. A snapshot read
+     * after this call includes at least the events up to this number.
+     *
+     * @return The last sequence number, 0 if no event has been broadcast
+     */
+    public long getLastSequence() {
+        synchronized (sequenceLock) {
+            return lastSequence;
+        }
+    }
+
+    /**
+     * Applies the slow consumer policy to a client whose outbound queue is full.
+     *
+     * @param connection the client that could not take the broadcast
+     */
+    private void handleSlowConsumer(ClientHandler connection) {
+        droppedBroadcasts.incrementAndGet();
+        switch (slowConsumerPolicy) {
+            case DISCONNECT:
+                System.err.println("Disconnecting slow client: " + connection.getRemoteAddress());
+                slowConsumerDisconnects.incrementAndGet();
+                connection.abort();
+                break;
+            case RESYNC:
+                if (connection.resync()) {
+                    System.err.println("Resynchronizing slow client: " + connection.getRemoteAddress());
+                    resyncs.incrementAndGet();
+                }
+                break;
+            case DROP:
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Sets what happens to clients that fall behind on broadcasts.
+     *
+     * @param slowConsumerPolicy the policy for future broadcasts
+     */
+    public void setSlowConsumerPolicy(SlowConsumerPolicy slowConsumerPolicy) {
+        this.slowConsumerPolicy = slowConsumerPolicy;
+    }
+
+    /**
+     * @return the policy for clients that fall behind on broadcasts
+     */
+    public SlowConsumerPolicy getSlowConsumerPolicy() {
+        return slowConsumerPolicy;
+    }
+
+    /**
+     * @return the number of broadcasts sent since the pool was created
+     */
+    public long getBroadcastCount() {
+        return broadcasts.get();
+    }
+
+    /**
+     * @return the number of times a broadcast was not queued because a client was too far behind
+     */
+    public long getDroppedBroadcastCount() {
+        return droppedBroadcasts.get();
+    }
+
+    /**
+     * @return the number of broadcasts to connected clients that replaced an older queued state of the same entity
+     */
+    public long getConflatedBroadcastCount() {
+        List<ClientHandler> connectionsCopy;
+        synchronized (connections) {
+            connectionsCopy = new ArrayList<>(connections);
+        }
+        long conflated = 0;
+        for (ClientHandler connection : connectionsCopy) {
+            conflated += connection.getConflatedCount();
+        }
+        return conflated;
+    }
+
+    /**
+     * The memory a connection holds on the server is its outbound queue;
+     * messages are encoded per frame, so nothing else grows with the
+     * number of messages sent.
+     *
+     * @return the bytes queued but not yet written, by client address
+     */
+    public Map<String, Integer> getQueuedBytesByClient() {
+        List<ClientHandler> connectionsCopy;
+        synchronized (connections) {
+            connectionsCopy = new ArrayList<>(connections);
+        }
+        Map<String, Integer> queued = new LinkedHashMap<>();
+        for (ClientHandler connection : connectionsCopy) {
+            queued.merge(connection.getRemoteAddress(), connection.getQueuedBytes(), Integer::sum);
+        }
+        return queued;
+    }
+
+    /**
+     * @return the number of clients disconnected for falling behind
+     */
+    public long getSlowConsumerDisconnectCount() {
+        return slowConsumerDisconnects.get();
+    }
+
+    /**
+     * @return the number of reconnecting clients that were sent their missed events instead of a snapshot
+     */
+    public long getReplayCount() {
+        return replays.get();
+    }
+
+    /**
+     * Sets how long an event may wait for others to share its batch.
+     *
+     * @param batchWindowMillis the window for future events; 0 sends each event at once
+     */
+    public void setBatchWindowMillis(long batchWindowMillis) {
+        this.batchWindowMillis = batchWindowMillis;
+    }
+
+    /**
+     * @return how long an event may wait for others to share its batch, in milliseconds
+     */
+    public long getBatchWindowMillis() {
+        return batchWindowMillis;
+    }
+
+    /**
+     * @return the number of batches of held-back events sent
+     */
+    public long getBatchCount() {
+        return batches.get();
+    }
+
+    /**
+     * @return the number of fresh snapshots sent to clients that fell behind
+     */
+    public long getResyncCount() {
+        return resyncs.get();
+    }
+
     /**
      * Returns the number of active connections.
      *
@@ -85,6 +591,14 @@ public class ConnectionPool {
     public void closeAllConnections() {
         System.out.println("Closing all client connections (" + connections.size() + ")");
 
+        synchronized (sequenceLock) {
+            flushBatch();
+            if (batchTimer != null) {
+                batchTimer.shutdownNow();
+                batchTimer = null;
+            }
+        }
+
         // Create a copy of the connection list to avoid concurrent modification issues
         List<ClientHandler> connectionsCopy;
         synchronized (connections) {
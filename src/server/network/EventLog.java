@@ -0,0 +1,68 @@
+package server.network;
+
+import util.Message;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The most recent sequenced events, kept so a client that reconnects after
+ * a short break can be sent the events it missed instead of a full
+ * snapshot. Once full, each new event replaces the oldest.
+ *
+ * Not thread-safe; {@link ConnectionPool} guards it with its sequence lock.
+ */
+class EventLog {
+    private final Message[] events;
+    private long lastSequence;
+
+    /**
+     * @param capacity the number of events kept
+     */
+    EventLog(int capacity) {
+        this.events = new Message[Math.max(1, capacity)];
+    }
+
+    /**
+     * Adds the next event. Sequence numbers must follow on from the last one.
+     *
+     * @param event the event, carrying its sequence number
+     */
+    void append(Message event) {
+        lastSequence = event.getSequence();
+        events[(int) (lastSequence % events.length)] = event;
+    }
+
+    /**
+     * Gets the events after a sequence number.
+     *
+     * @param sequence the last event the client has applied
+     * @return the events after it, oldest first, or null if some of them are no longer kept
+     */
+    List<Message> since(long sequence) {
+        if (sequence < 0 || sequence > lastSequence) {
+            // The client has never synced, or knew a server that has since restarted
+            return null;
+        }
+        if (sequence + 1 < getOldestSequence()) {
+            return null;
+        }
+
+        List<Message> result = new ArrayList<>((int) (lastSequence - sequence));
+        for (long next = sequence + 1; next <= lastSequence; next++) {
+            result.add(events[(int) (next % events.length)]);
+        }
+        return result;
+    }
+
+    /**
+     * @return the sequence number of the oldest event kept, or 1 if none has been dropped yet
+     */
+    long getOldestSequence() {
+        return Math.max(1, lastSequence - events.length + 1);
+    }
+
+    int getCapacity() {
+        return events.length;
+    }
+}
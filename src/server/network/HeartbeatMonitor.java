@@ -0,0 +1,115 @@
+package server.network;
+
+import util.RoundTripStats;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Pings every connection at a fixed interval and closes the ones that have
+ * gone quiet, such as a laptop that went to sleep without closing its
+ * socket. Such a connection would otherwise keep its handler and keep
+ * receiving broadcasts until TCP gave up on it, which can take hours.
+ *
+ * The interval is -Dserver.heartbeat.intervalMillis (default 10000, 0 to
+ * turn heartbeats off). A connection the server hasn't heard anything from,
+ * pong or request, for -Dserver.heartbeat.maxMissed (default 3) intervals
+ * is closed. Connections that have never answered a ping are left alone,
+ * since clients from before heartbeats don't know the message.
+ */
+public class HeartbeatMonitor {
+    private final long intervalMillis = Long.getLong("server.heartbeat.intervalMillis", 10000);
+    private final int maxMissed = Integer.getInteger("server.heartbeat.maxMissed", 3);
+    private final Supplier<List<ClientHandler>> connections;
+    private ScheduledExecutorService timer;
+
+    private final LongAdder pings = new LongAdder();
+    private final LongAdder reaped = new LongAdder();
+
+    /**
+     * @param connections the server's current connections, registered or not
+     */
+    HeartbeatMonitor(Supplier<List<ClientHandler>> connections) {
+        this.connections = connections;
+    }
+
+    synchronized void start() {
+        if (intervalMillis <= 0 || timer != null) {
+            return;
+        }
+        timer = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "heartbeat-monitor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.scheduleAtFixedRate(this::check, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    synchronized void stop() {
+        if (timer != null) {
+            timer.shutdownNow();
+            timer = null;
+        }
+    }
+
+    /**
+     * Closes the connections that have missed too many heartbeats and pings the rest.
+     */
+    private void check() {
+        long silentLimit = intervalMillis * maxMissed;
+        for (ClientHandler connection : connections.get()) {
+            try {
+                if (connection.answersHeartbeats() && connection.getMillisSinceHeard() > silentLimit) {
+                    reaped.increment();
+                    System.out.println("Closing " + connection.getRemoteAddress() + ": no heartbeat for " +
+                            connection.getMillisSinceHeard() + " ms");
+                    connection.abort();
+                } else {
+                    pings.increment();
+                    connection.sendPing();
+                }
+            } catch (RuntimeException e) {
+                // One broken connection must not stop the checks for the others
+                System.err.println("Heartbeat failed for " + connection.getRemoteAddress() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return the heartbeat interval in milliseconds, 0 if heartbeats are off
+     */
+    public long getIntervalMillis() {
+        return Math.max(0, intervalMillis);
+    }
+
+    /**
+     * @return the number of pings sent
+     */
+    public long getPingCount() {
+        return pings.sum();
+    }
+
+    /**
+     * @return the number of connections closed for missing heartbeats
+     */
+    public long getReapedCount() {
+        return reaped.sum();
+    }
+
+    /**
+     * @return the round-trip times of the current connections, by client address
+     */
+    public Map<String, RoundTripStats> getRoundTripStats() {
+        Map<String, RoundTripStats> stats = new LinkedHashMap<>();
+        for (ClientHandler connection : connections.get()) {
+            stats.put(connection.getRemoteAddress(), connection.getRoundTripStats());
+        }
+        return stats;
+    }
+}
@@ -0,0 +1,433 @@
+package server.network;
+
+import util.FrameCodec;
+import util.Message;
+import util.MessageCodec;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * Non-blocking transport. An acceptor thread hands new connections round-robin
+ * to a small number of event loops, each multiplexing its connections on one
+ * Selector. The loops only move bytes and decode frames; requests are run by
+ * the client handlers on the server's worker pool, so an idle client costs a
+ * registered channel and a few small objects rather than a thread.
+ */
+class NioServer {
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final int ACCEPT_BACKLOG = 1024;
+
+    private final int port;
+    private final Function<ClientChannel, ClientHandler> handlerFactory;
+    private final EventLoop[] eventLoops;
+    private ServerSocketChannel serverChannel;
+    private Thread acceptor;
+    private volatile boolean running;
+
+    /**
+     * @param port the port to listen on
+     * @param eventLoopCount the number of selector threads
+     * @param handlerFactory creates the client handler for a new connection
+     */
+    NioServer(int port, int eventLoopCount, Function<ClientChannel, ClientHandler> handlerFactory) {
+        this.port = port;
+        this.handlerFactory = handlerFactory;
+        this.eventLoops = new EventLoop[Math.max(1, eventLoopCount)];
+    }
+
+    /**
+     * Binds the port and starts the acceptor and event loops.
+     *
+     * @throws IOException if the port cannot be bound
+     */
+    void start() throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        try {
+            serverChannel.bind(new InetSocketAddress(port), ACCEPT_BACKLOG);
+            for (int i = 0; i < eventLoops.length; i++) {
+                eventLoops[i] = new EventLoop(i);
+            }
+        } catch (IOException e) {
+            stop();
+            throw e;
+        }
+
+        running = true;
+        for (EventLoop loop : eventLoops) {
+            loop.start();
+        }
+        acceptor = new Thread(this::acceptClients, "nio-acceptor");
+        acceptor.start();
+    }
+
+    /**
+     * Stops accepting, closes every connection and stops the event loops.
+     */
+    void stop() {
+        running = false;
+        try {
+            if (serverChannel != null) {
+                serverChannel.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Error closing server socket: " + e.getMessage());
+        }
+        // The port is only released once the thread blocked in accept() has left it
+        if (acceptor != null) {
+            try {
+                acceptor.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        for (EventLoop loop : eventLoops) {
+            if (loop != null) {
+                loop.shutdown();
+            }
+        }
+    }
+
+    int getEventLoopCount() {
+        return eventLoops.length;
+    }
+
+    private void acceptClients() {
+        System.out.println("Client connection listener started (" + eventLoops.length + " event loops)");
+        int next = 0;
+
+        while (running) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                eventLoops[next].register(channel);
+                next = (next + 1) % eventLoops.length;
+            } catch (ClosedChannelException e) {
+                // Server is shutting down
+                break;
+            } catch (IOException e) {
+                if (running) {
+                    System.err.println("Error accepting client: " + e.getMessage());
+                }
+            }
+        }
+
+        System.out.println("Client connection listener stopped");
+    }
+
+    /**
+     * One selector thread and the connections registered with it.
+     */
+    private final class EventLoop extends Thread {
+        private final Selector selector;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        // Shared by all connections on this loop; each read is decoded before the next
+        private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+        private volatile boolean open = true;
+
+        EventLoop(int index) throws IOException {
+            super("nio-event-loop-" + index);
+            setDaemon(true);
+            this.selector = Selector.open();
+        }
+
+        void register(SocketChannel socketChannel) {
+            execute(() -> {
+                Connection connection = new Connection(socketChannel, this);
+                try {
+                    connection.key = socketChannel.register(selector, SelectionKey.OP_READ, connection);
+                } catch (IOException e) {
+                    System.err.println("Error registering client: " + e.getMessage());
+                    closeQuietly(socketChannel);
+                    return;
+                }
+                System.out.println("Client connected from " + connection.getRemoteAddress());
+                connection.handler = handlerFactory.apply(connection);
+                connection.handler.onConnected();
+            });
+        }
+
+        /**
+         * Runs a task on this loop's thread.
+         */
+        void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        void shutdown() {
+            open = false;
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            while (open) {
+                try {
+                    selector.select();
+                    runTasks();
+
+                    Iterator<SelectionKey> selected = selector.selectedKeys().iterator();
+                    while (selected.hasNext()) {
+                        SelectionKey key = selected.next();
+                        selected.remove();
+                        Connection connection = (Connection) key.attachment();
+                        try {
+                            if (!key.isValid()) {
+                                connection.closeNow();
+                                continue;
+                            }
+                            if (key.isReadable()) {
+                                connection.read(readBuffer);
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                connection.flush();
+                            }
+                        } catch (RuntimeException e) {
+                            // Only this connection is lost; the loop keeps serving the others
+                            System.err.println("Error on client connection " + connection.getRemoteAddress()
+                                    + ": " + e);
+                            connection.closeNow();
+                        }
+                    }
+                } catch (IOException e) {
+                    System.err.println("Event loop error: " + e.getMessage());
+                }
+            }
+
+            for (SelectionKey key : selector.keys()) {
+                ((Connection) key.attachment()).closeNow();
+            }
+            closeQuietly(selector);
+        }
+
+        private void runTasks() {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    System.err.println("Error in event loop task: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * A non-blocking client connection. Frames are encoded on the sending
+     * thread, or once per broadcast, and written by the event loop.
+     */
+    private static final class Connection implements ClientChannel {
+        private final SocketChannel channel;
+        private final EventLoop loop;
+        private final FrameCodec.Decoder decoder = new FrameCodec.Decoder();
+        private final OutboundQueue outbound = new OutboundQueue();
+        // Set while a flush is queued on the loop or waiting for OP_WRITE
+        private final AtomicBoolean flushScheduled = new AtomicBoolean();
+        private final String remoteAddress;
+        private SelectionKey key;
+        private ClientHandler handler;
+        private volatile MessageCodec codec = FrameCodec.DEFAULT_CODEC;
+        private volatile boolean closing;
+        private boolean closed;
+
+        Connection(SocketChannel channel, EventLoop loop) {
+            this.channel = channel;
+            this.loop = loop;
+            String address;
+            try {
+                address = String.valueOf(channel.getRemoteAddress());
+            } catch (IOException e) {
+                address = "unknown";
+            }
+            this.remoteAddress = address;
+        }
+
+        @Override
+        public void send(Message message) {
+            if (closing) {
+                return;
+            }
+            try {
+                outbound.add(ByteBuffer.wrap(FrameCodec.encode(message, codec)));
+            } catch (IOException e) {
+                System.err.println("Error encoding message " + message.getType() + ": " + e.getMessage());
+                return;
+            }
+            scheduleFlush();
+        }
+
+        @Override
+        public boolean broadcast(SharedFrame frame) {
+            if (closing) {
+                return true;
+            }
+            try {
+                if (!outbound.offerBroadcast(frame, codec)) {
+                    return false;
+                }
+            } catch (IOException e) {
+                System.err.println("Error encoding message " + frame.getMessage().getType() + ": " + e.getMessage());
+                return true;
+            }
+            scheduleFlush();
+            return true;
+        }
+
+        @Override
+        public int dropQueuedBroadcasts() {
+            return outbound.dropBroadcasts();
+        }
+
+        @Override
+        public long getConflatedCount() {
+            return outbound.getConflatedCount();
+        }
+
+        @Override
+        public int getQueuedBytes() {
+            return outbound.getQueuedBytes();
+        }
+
+        private void scheduleFlush() {
+            if (flushScheduled.compareAndSet(false, true)) {
+                loop.execute(this::flush);
+            }
+        }
+
+        @Override
+        public void setCodec(MessageCodec codec) {
+            this.codec = codec;
+        }
+
+        @Override
+        public void close() {
+            closing = true;
+            loop.execute(() -> {
+                if (outbound.isEmpty()) {
+                    closeNow();
+                }
+            });
+        }
+
+        @Override
+        public void abort() {
+            closing = true;
+            loop.execute(this::closeNow);
+        }
+
+        @Override
+        public String getRemoteAddress() {
+            return remoteAddress;
+        }
+
+        /**
+         * Reads what is available and passes complete messages to the handler.
+         * Called on the event loop.
+         */
+        void read(ByteBuffer buffer) {
+            buffer.clear();
+            try {
+                int count = channel.read(buffer);
+                if (count < 0) {
+                    closeNow();
+                    return;
+                }
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    Message message = decoder.next(buffer);
+                    if (message != null) {
+                        handler.onMessage(message);
+                    }
+                }
+            } catch (IOException e) {
+                if (!closing) {
+                    System.err.println("Client connection lost: " + e.getMessage());
+                }
+                closeNow();
+            } catch (RuntimeException | StackOverflowError e) {
+                // A frame the codec or handler could not cope with, e.g. nested too deeply
+                System.err.println("Error handling frame from " + remoteAddress + ": " + e);
+                closeNow();
+            }
+        }
+
+        /**
+         * Writes queued frames until the socket buffer is full. Called on the event loop.
+         */
+        void flush() {
+            if (closed) {
+                return;
+            }
+            try {
+                while (true) {
+                    ByteBuffer head;
+                    while ((head = outbound.peek()) != null) {
+                        channel.write(head);
+                        if (head.hasRemaining()) {
+                            // Socket buffer is full; continue when it drains
+                            key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                            return;
+                        }
+                        outbound.remove();
+                    }
+
+                    key.interestOps(SelectionKey.OP_READ);
+                    flushScheduled.set(false);
+                    // A sender may have queued a frame after the queue looked empty
+                    if (outbound.isEmpty() || !flushScheduled.compareAndSet(false, true)) {
+                        break;
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Error sending message to client: " + e.getMessage());
+                closeNow();
+                return;
+            }
+
+            if (closing && outbound.isEmpty()) {
+                closeNow();
+            }
+        }
+
+        /**
+         * Closes the socket immediately and tells the handler. Called on the event loop.
+         */
+        void closeNow() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            closing = true;
+            outbound.clear();
+            if (key != null) {
+                key.cancel();
+            }
+            closeQuietly(channel);
+            if (handler != null) {
+                handler.onClosed();
+            }
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // Nothing more to do
+        }
+    }
+}
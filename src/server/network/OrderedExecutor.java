@@ -0,0 +1,141 @@
+package server.network;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Runs one client's tasks on a shared executor in submission order, the way
+ * a dedicated thread would, without the thread: a connection with nothing
+ * queued holds no worker at all.
+ *
+ * Tasks submitted with {@link #executeRead(Runnable)} only read, so
+ * consecutive reads run at the same time, up to a limit. Any other task
+ * waits for everything submitted before it and holds up everything after
+ * it. A slow read therefore doesn't delay the client's other reads, while
+ * its changes, and reads of what they changed, stay in order.
+ */
+class OrderedExecutor implements Executor {
+    private final Executor workers;
+    private final int maxConcurrentReads;
+    private final Queue<Task> tasks = new ArrayDeque<>();
+    private int runningReads;
+    private boolean exclusiveRunning;
+    private boolean shutdown;
+
+    /**
+     * @param workers the executor the tasks run on
+     * @param maxConcurrentReads the most reads of this client that run at once
+     */
+    OrderedExecutor(Executor workers, int maxConcurrentReads) {
+        this.workers = workers;
+        this.maxConcurrentReads = Math.max(1, maxConcurrentReads);
+    }
+
+    /**
+     * Runs a task once every task submitted before it has finished, and
+     * before any task submitted after it starts.
+     */
+    @Override
+    public void execute(Runnable task) {
+        submit(new Task(task, false));
+    }
+
+    /**
+     * Runs a read-only task once the exclusive tasks submitted before it
+     * have finished, alongside other reads.
+     *
+     * @param task the task
+     */
+    void executeRead(Runnable task) {
+        submit(new Task(task, true));
+    }
+
+    private void submit(Task task) {
+        synchronized (tasks) {
+            if (shutdown) {
+                return;
+            }
+            tasks.add(task);
+        }
+        startReady();
+    }
+
+    /**
+     * Starts the tasks at the head of the queue that may run now.
+     */
+    private void startReady() {
+        List<Task> ready = new ArrayList<>();
+        synchronized (tasks) {
+            while (!exclusiveRunning && !tasks.isEmpty()) {
+                Task next = tasks.peek();
+                if (next.read) {
+                    if (runningReads >= maxConcurrentReads) {
+                        break;
+                    }
+                    runningReads++;
+                } else {
+                    if (runningReads > 0) {
+                        break;
+                    }
+                    exclusiveRunning = true;
+                }
+                ready.add(tasks.poll());
+            }
+        }
+        for (Task task : ready) {
+            try {
+                workers.execute(() -> run(task));
+            } catch (RejectedExecutionException e) {
+                // The worker pool is shutting down; drop what is left
+                synchronized (tasks) {
+                    tasks.clear();
+                    finished(task);
+                }
+            }
+        }
+    }
+
+    private void run(Task task) {
+        try {
+            task.runnable.run();
+        } finally {
+            synchronized (tasks) {
+                finished(task);
+            }
+            // Go back to the pool between tasks so one busy client can't hold a worker
+            startReady();
+        }
+    }
+
+    private void finished(Task task) {
+        if (task.read) {
+            runningReads--;
+        } else {
+            exclusiveRunning = false;
+        }
+    }
+
+    /**
+     * Drops queued tasks and refuses new ones. Running tasks finish.
+     */
+    void shutdown() {
+        synchronized (tasks) {
+            shutdown = true;
+            tasks.clear();
+        }
+    }
+
+    private static final class Task {
+        final Runnable runnable;
+        final boolean read;
+
+        Task(Runnable runnable, boolean read) {
+            this.runnable = runnable;
+            this.read = read;
+        }
+    }
+}
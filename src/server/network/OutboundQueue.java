@@ -0,0 +1,202 @@
+package server.network;
+
+import util.FrameCodec;
+import util.Message;
+import util.MessageCodec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Frames waiting to be written to one client. Responses are always queued;
+ * broadcasts are refused once the client is too far behind, so a slow
+ * client can't make the server buffer without bound.
+ *
+ * A broadcast carrying the new state of an entity replaces an older state
+ * of the same entity that is still waiting, so a client that falls behind
+ * catches up on the latest state rather than every step to it. The
+ * replaced frame tells the client how many events it stands in for, so
+ * the missing sequence numbers aren't taken for lost events.
+ *
+ * Limits can be tuned with -Dserver.outbound.maxFrames and -Dserver.outbound.maxBytes;
+ * -Dserver.outbound.conflate=false queues every state change.
+ */
+class OutboundQueue {
+    static final int MAX_FRAMES = Integer.getInteger("server.outbound.maxFrames", 1024);
+    static final int MAX_BYTES = Integer.getInteger("server.outbound.maxBytes", 4 * 1024 * 1024);
+    static final boolean CONFLATE = Boolean.parseBoolean(System.getProperty("server.outbound.conflate", "true"));
+
+    private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+    // The queued broadcast holding each entity's latest state
+    private final Map<String, Entry> latestState = new HashMap<>();
+    private final int maxFrames;
+    private final int maxBytes;
+    private int queuedBytes;
+    private long conflated;
+
+    OutboundQueue() {
+        this(MAX_FRAMES, MAX_BYTES);
+    }
+
+    OutboundQueue(int maxFrames, int maxBytes) {
+        this.maxFrames = maxFrames;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Queues a frame that must reach the client, such as a response.
+     */
+    synchronized void add(ByteBuffer frame) {
+        entries.add(new Entry(frame, false));
+        queuedBytes += frame.remaining();
+    }
+
+    /**
+     * Queues a broadcast unless the client is too far behind. A newer state
+     * of an entity whose older state is still waiting replaces it in place,
+     * which always succeeds.
+     *
+     * @param broadcast the broadcast, encoded once for all clients
+     * @param codec the client's codec
+     * @return false if the queue is full and the frame was not queued
+     * @throws IOException if the broadcast cannot be encoded
+     */
+    synchronized boolean offerBroadcast(SharedFrame broadcast, MessageCodec codec) throws IOException {
+        String key = CONFLATE ? broadcast.getConflationKey() : null;
+        if (key != null) {
+            Entry older = latestState.get(key);
+            // The head may be being written, so it is never replaced
+            if (older != null && older != entries.peek()) {
+                queuedBytes -= older.size;
+                older.conflate(broadcast.getMessage(), codec);
+                queuedBytes += older.size;
+                conflated++;
+                return true;
+            }
+        }
+
+        ByteBuffer frame = ByteBuffer.wrap(broadcast.bytes(codec));
+        if (entries.size() >= maxFrames || queuedBytes + frame.remaining() > maxBytes) {
+            return false;
+        }
+        Entry entry = new Entry(frame, true);
+        if (key != null) {
+            entry.key = key;
+            entry.event = broadcast.getMessage();
+            latestState.put(key, entry);
+        }
+        entries.add(entry);
+        queuedBytes += entry.size;
+        return true;
+    }
+
+    /**
+     * @return the frame to write next, or null if the queue is empty
+     */
+    synchronized ByteBuffer peek() {
+        Entry head = entries.peek();
+        return head != null ? head.frame : null;
+    }
+
+    /**
+     * Removes the head once it has been written completely.
+     */
+    synchronized void remove() {
+        Entry head = entries.poll();
+        if (head != null) {
+            queuedBytes -= head.size;
+            forget(head);
+        }
+    }
+
+    private void forget(Entry entry) {
+        if (entry.key != null) {
+            latestState.remove(entry.key, entry);
+        }
+    }
+
+    /**
+     * Drops queued broadcasts, except one that is partly written.
+     *
+     * @return the number of frames dropped
+     */
+    synchronized int dropBroadcasts() {
+        int dropped = 0;
+        Iterator<Entry> iterator = entries.iterator();
+        boolean head = true;
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            boolean started = head && entry.frame.position() > 0;
+            head = false;
+            if (entry.broadcast && !started) {
+                iterator.remove();
+                queuedBytes -= entry.size;
+                forget(entry);
+                dropped++;
+            }
+        }
+        return dropped;
+    }
+
+    synchronized void clear() {
+        entries.clear();
+        latestState.clear();
+        queuedBytes = 0;
+    }
+
+    synchronized boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    synchronized int getQueuedBytes() {
+        return queuedBytes;
+    }
+
+    /**
+     * @return the number of broadcasts that replaced an older state still in the queue
+     */
+    synchronized long getConflatedCount() {
+        return conflated;
+    }
+
+    private static final class Entry {
+        ByteBuffer frame;
+        final boolean broadcast;
+        int size;
+        // Set for a broadcast of an entity's state: its key and the event first queued
+        String key;
+        Message event;
+        // The number of later events this frame now stands in for
+        int superseded;
+
+        Entry(ByteBuffer frame, boolean broadcast) {
+            this.frame = frame;
+            this.broadcast = broadcast;
+            this.size = frame.remaining();
+        }
+
+        /**
+         * Replaces the queued state with a newer one. The frame keeps the
+         * place and sequence number of the first event, so the client still
+         * sees the events around it in order.
+         */
+        void conflate(Message newer, MessageCodec codec) throws IOException {
+            superseded++;
+            Message latest = Message.event(newer.getType(), newer.getArgs(), event.getSequence());
+            // Tells the client how many numbers up to the newer event's it won't get
+            Message marker = Message.event("superseded", superseded, newer.getSequence());
+            Message batch = new Message("event_batch", Arrays.asList(latest, marker));
+            frame = ByteBuffer.wrap(FrameCodec.encode(batch, codec));
+            size = frame.remaining();
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package server.network;
+
+import util.EncodedValue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Responses to read commands that every desk sends after every event, kept
+ * until a change they depend on is broadcast. A repeated read then costs a
+ * map lookup instead of a database query; clients using the binary codec
+ * also get the response's bytes encoded once and copied.
+ *
+ * Each cached command names the entities it reads, such as "laptop". Any
+ * event for one of them ("laptop_created", "reservation_completed", ...)
+ * drops every cached response that read it. Events reach the server's
+ * listeners asynchronously, so the commands that change data also drop
+ * what they change as soon as they return, before their client gets the
+ * response and reads again. A response computed while either happened is
+ * not cached, since it may predate the change.
+ *
+ * At most -Dserver.responseCache.maxEntries (default 1024) responses are
+ * kept; -Dserver.responseCache.enabled=false turns the cache off.
+ */
+public class ResponseCache {
+    private final boolean enabled = Boolean.parseBoolean(System.getProperty("server.responseCache.enabled", "true"));
+    private final int maxEntries = Integer.getInteger("server.responseCache.maxEntries", 1024);
+
+    // The entities each cached command reads; only written before the server starts
+    private final Map<String, Set<String>> entitiesByCommand = new HashMap<>();
+    // The entities each command changes; commands not listed may change any of them
+    private final Map<String, Set<String>> changesByCommand = new HashMap<>();
+    // Bumped by every event, so a response can tell whether one went out while it was computed
+    private final Map<String, AtomicLong> generations = new HashMap<>();
+    private final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * Caches the responses of a read command.
+     *
+     * @param type the message type
+     * @param entities the entities the command reads, as in event types: "laptop", "student", "reservation", "queue"
+     */
+    void cache(String type, String... entities) {
+        entitiesByCommand.put(type, Collections.unmodifiableSet(new HashSet<>(Arrays.asList(entities))));
+        for (String entity : entities) {
+            generations.computeIfAbsent(entity, e -> new AtomicLong());
+        }
+    }
+
+    /**
+     * Declares which entities a command that isn't read-only changes, so
+     * it only drops the responses that read them. Without an entry such a
+     * command drops every cached response.
+     *
+     * @param type the message type
+     * @param entities the entities the command changes; none for commands about the connection itself
+     */
+    void changes(String type, String... entities) {
+        changesByCommand.put(type, Collections.unmodifiableSet(new HashSet<>(Arrays.asList(entities))));
+    }
+
+    /**
+     * @param type a message type
+     * @return true if responses to the command are cached
+     */
+    boolean isCached(String type) {
+        return enabled && type != null && entitiesByCommand.containsKey(type);
+    }
+
+    /**
+     * @param type a cached command
+     * @param args the request's args
+     * @return the cached response, or null if there is none
+     */
+    EncodedValue get(String type, Object args) {
+        Entry entry = entries.get(new Key(type, args));
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.response;
+    }
+
+    /**
+     * @param type a cached command
+     * @return the generations of the entities it reads, to pass to {@link #put}
+     */
+    long[] generations(String type) {
+        Set<String> entities = entitiesByCommand.get(type);
+        long[] current = new long[entities.size()];
+        int i = 0;
+        for (String entity : entities) {
+            current[i++] = generations.get(entity).get();
+        }
+        return current;
+    }
+
+    /**
+     * Caches a response unless an event for what it read went out since
+     * {@link #generations} was called.
+     *
+     * @param type a cached command
+     * @param args the request's args
+     * @param generationsBefore the generations from before the command ran
+     * @param response the response
+     * @return the response to send, wrapped so it is encoded once
+     */
+    EncodedValue put(String type, Object args, long[] generationsBefore, Object response) {
+        EncodedValue encoded = new EncodedValue(response);
+        if (entries.size() >= maxEntries) {
+            return encoded;
+        }
+        Entry entry = new Entry(encoded, entitiesByCommand.get(type));
+        Key key = new Key(type, args);
+        entries.put(key, entry);
+        // Checked after the entry is visible, so an event either sees it or is seen here
+        if (!Arrays.equals(generationsBefore, generations(type))) {
+            entries.remove(key, entry);
+        }
+        return encoded;
+    }
+
+    /**
+     * Drops the cached responses that read the entity of an event.
+     *
+     * @param eventType an event type such as "laptop_state_changed"
+     */
+    void invalidate(String eventType) {
+        invalidateEntity(Topic.entityOf(eventType));
+    }
+
+    /**
+     * Drops the cached responses that read what a command that isn't
+     * read-only may have changed. Called once the command has returned.
+     *
+     * @param type the message type of the command
+     */
+    void invalidateAfter(String type) {
+        Set<String> changed = changesByCommand.get(type);
+        for (String entity : changed != null ? changed : generations.keySet()) {
+            invalidateEntity(entity);
+        }
+    }
+
+    private void invalidateEntity(String entity) {
+        AtomicLong generation = generations.get(entity);
+        if (generation == null) {
+            return;
+        }
+        generation.incrementAndGet();
+        if (entries.values().removeIf(entry -> entry.entities.contains(entity))) {
+            invalidations.increment();
+        }
+    }
+
+    /**
+     * @return the number of reads answered from the cache
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of reads of cached commands that ran the command
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the number of events that dropped cached responses
+     */
+    public long getInvalidationCount() {
+        return invalidations.sum();
+    }
+
+    /**
+     * @return the number of responses cached now
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    private static final class Key {
+        final String type;
+        final Object args;
+
+        Key(String type, Object args) {
+            this.type = type;
+            this.args = args;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return type.equals(key.type) && Objects.equals(args, key.args);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * type.hashCode() + Objects.hashCode(args);
+        }
+    }
+
+    private static final class Entry {
+        final EncodedValue response;
+        final Set<String> entities;
+
+        Entry(EncodedValue response, Set<String> entities) {
+            this.response = response;
+            this.entities = entities;
+        }
+    }
+}
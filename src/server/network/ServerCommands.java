@@ -0,0 +1,268 @@
+package server.network;
+
+import enums.PerformanceTypeEnum;
+import objects.Laptop;
+import objects.Reservation;
+import objects.Student;
+import server.model.ServerModel;
+import util.FrameCodec;
+import util.MessageCodec;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+import static server.network.CommandRegistry.NO_RESPONSE_DATA;
+
+/**
+ * The commands the server understands, registered in a new registry.
+ */
+final class ServerCommands {
+
+    private ServerCommands() {
+    }
+
+    /**
+     * @return a registry with every built-in command
+     */
+    static CommandRegistry create() {
+        CommandRegistry registry = new CommandRegistry();
+        registerConnectionCommands(registry);
+        registerLaptopCommands(registry);
+        registerStudentCommands(registry);
+        registerReservationCommands(registry);
+        registerQueueCommands(registry);
+
+        // Which commands dominate server time, for operators
+        registry.register("get_command_metrics", (client, args) -> registry.report());
+
+        // Reads of whole tables and commands that run many others; limited in
+        // how many run at once. Snapshots for connecting clients are not.
+        registry.markExpensive("get_all_laptops", "get_all_students", "get_all_reservations",
+                "get_active_reservations", "get_high_performance_queue", "get_low_performance_queue",
+                "process_queues", "batch");
+
+        // Commands that change nothing, so one client's reads needn't wait for each other
+        registry.markReadOnly("get_all_laptops", "get_available_laptops", "get_loaned_laptops",
+                "get_next_available_laptop", "get_laptop_by_uuid", "get_all_students", "get_student_count",
+                "get_student_by_id", "get_high_power_students", "get_low_power_students",
+                "get_active_reservations", "get_all_reservations", "get_high_performance_queue",
+                "get_low_performance_queue", "get_command_metrics");
+
+        // Reads every desk repeats after each event, by the entities they read
+        registry.cacheResponses("get_all_laptops", "laptop", "reservation");
+        registry.cacheResponses("get_available_laptops", "laptop", "reservation");
+        registry.cacheResponses("get_loaned_laptops", "laptop", "reservation");
+        registry.cacheResponses("get_next_available_laptop", "laptop", "reservation");
+        registry.cacheResponses("get_laptop_by_uuid", "laptop", "reservation");
+        registry.cacheResponses("get_active_reservations", "reservation", "laptop", "student");
+        registry.cacheResponses("get_all_reservations", "reservation", "laptop", "student");
+
+        // What the other commands change; "batch" and any command not listed may change anything
+        registry.markChanges("new_client");
+        registry.markChanges("resync");
+        registry.markChanges("subscribe");
+        registry.markChanges("unsubscribe");
+        registry.markChanges("negotiate_codec");
+        registry.markChanges("disconnect");
+        registry.markChanges("create_laptop", "laptop");
+        registry.markChanges("update_laptop_state", "laptop");
+        registry.markChanges("delete_laptop", "laptop");
+        registry.markChanges("create_student", "student");
+        registry.markChanges("delete_student", "student");
+        registry.markChanges("create_reservation", "reservation", "laptop", "student", "queue");
+        registry.markChanges("complete_reservation", "reservation", "laptop");
+        registry.markChanges("add_to_high_queue", "queue");
+        registry.markChanges("add_to_low_queue", "queue");
+        registry.markChanges("process_queues", "queue", "reservation", "laptop");
+        return registry;
+    }
+
+    private static void registerConnectionCommands(CommandRegistry registry) {
+        registry.register("new_client", (client, args) -> {
+            // A reconnecting client sends {epoch, sequence number} of the last event it applied
+            Object[] resume = args instanceof Object[] ? (Object[]) args : null;
+            if (resume != null && resume.length == 2 && resume[0] instanceof Long && resume[1] instanceof Long) {
+                if (client.getConnectionPool().addConnection(client, (Long) resume[0], (Long) resume[1])) {
+                    return "Reconnected and caught up";
+                }
+            } else {
+                client.getConnectionPool().addConnection(client);
+            }
+            client.sendInitialData();
+            return "Connected and synchronized";
+        });
+
+        registry.register("resync", (client, args) -> {
+            // The client has missed events; send a fresh snapshot
+            client.sendInitialData();
+            return "Resynchronized";
+        });
+
+        // Topic filters such as "reservation", "laptop.created" or "queue:HIGH"
+        registry.register("subscribe", (client, args) -> {
+            client.getConnectionPool().subscribe(client, topics(args));
+            return client.getConnectionPool().getSubscriptions(client);
+        });
+
+        registry.register("unsubscribe", (client, args) -> {
+            List<Topic> topics = topics(args);
+            client.getConnectionPool().unsubscribe(client, topics.isEmpty() ? null : topics);
+            return client.getConnectionPool().getSubscriptions(client);
+        });
+
+        registry.register("negotiate_codec", (client, args) -> {
+            // The client lists the codecs it can use, most preferred first
+            MessageCodec codec = FrameCodec.negotiate(args instanceof String[] ? (String[]) args : null);
+            client.setCodec(codec);
+            return codec.getName();
+        });
+
+        registry.register("batch", ClientHandler::processBatch);
+
+        registry.register("disconnect", (client, args) -> {
+            client.disconnect();
+            return "Disconnected";
+        });
+    }
+
+    private static List<Topic> topics(Object args) {
+        List<Topic> topics = new ArrayList<>();
+        for (Object pattern : args instanceof Object[] ? (Object[]) args : new Object[]{args}) {
+            if (pattern != null) {
+                topics.add(Topic.parse(pattern.toString()));
+            }
+        }
+        return topics;
+    }
+
+    private static void registerLaptopCommands(CommandRegistry registry) {
+        registry.register("get_all_laptops", (client, args) -> model(client).getAllLaptops());
+        registry.register("get_available_laptops", (client, args) -> model(client).getAvailableLaptops());
+        registry.register("get_loaned_laptops", (client, args) -> model(client).getLoanedLaptops());
+
+        registry.register("get_next_available_laptop", PerformanceTypeEnum.class,
+                (client, performanceType) -> model(client).seeNextAvailableLaptop(performanceType));
+
+        registry.register("get_laptop_by_uuid", UUID.class,
+                (client, id) -> model(client).getLaptopByUUID(id));
+
+        registry.register("create_laptop", (client, args) -> {
+            Laptop created = null;
+            if (args instanceof Object[] && ((Object[]) args).length == 5) {
+                Object[] laptopData = (Object[]) args;
+                created = model(client).createLaptop((String) laptopData[0], (String) laptopData[1],
+                        (int) laptopData[2], (int) laptopData[3], (PerformanceTypeEnum) laptopData[4]);
+            } else if (args instanceof Laptop) {
+                // Older clients send the whole Laptop; only the fields being set are used
+                Laptop laptop = (Laptop) args;
+                created = model(client).createLaptop(laptop.getBrand(), laptop.getModel(),
+                        laptop.getGigabyte(), laptop.getRam(), laptop.getPerformanceType());
+            }
+            return created != null ? created : NO_RESPONSE_DATA;
+        });
+
+        registry.register("update_laptop_state", UUID.class, (client, id) -> {
+            Laptop laptop = model(client).updateLaptopState(id);
+            return laptop != null ? laptop : NO_RESPONSE_DATA;
+        });
+
+        registry.register("delete_laptop", UUID.class, (client, id) ->
+                model(client).deleteLaptop(id) != null ? Boolean.TRUE : NO_RESPONSE_DATA);
+    }
+
+    private static void registerStudentCommands(CommandRegistry registry) {
+        registry.register("get_all_students", (client, args) -> model(client).getAllStudents());
+        registry.register("get_student_count", (client, args) -> model(client).getStudentCount());
+
+        registry.register("get_student_by_id", Integer.class,
+                (client, id) -> model(client).getStudentByID(id));
+
+        registry.register("get_high_power_students",
+                (client, args) -> model(client).getStudentWithHighPowerNeeds());
+        registry.register("get_low_power_students",
+                (client, args) -> model(client).getStudentWithLowPowerNeeds());
+
+        registry.register("create_student", (client, args) -> {
+            Student created = null;
+            if (args instanceof Object[] && ((Object[]) args).length == 7) {
+                Object[] studentData = (Object[]) args;
+                created = model(client).createStudent((String) studentData[0], (Date) studentData[1],
+                        (String) studentData[2], (int) studentData[3], (String) studentData[4],
+                        (int) studentData[5], (PerformanceTypeEnum) studentData[6]);
+            } else if (args instanceof Student) {
+                // Older clients send the whole Student; only the fields being set are used
+                Student student = (Student) args;
+                created = model(client).createStudent(student.getName(), student.getDegreeEndDate(),
+                        student.getDegreeTitle(), student.getViaId(), student.getEmail(),
+                        student.getPhoneNumber(), student.getPerformanceNeeded());
+            }
+            return created != null ? created : NO_RESPONSE_DATA;
+        });
+
+        registry.register("delete_student", Integer.class, (client, viaId) ->
+                model(client).deleteStudent(viaId) ? Boolean.TRUE : NO_RESPONSE_DATA);
+    }
+
+    private static void registerReservationCommands(CommandRegistry registry) {
+        // Args are {viaId, laptop UUID}; the student and laptop are looked up here, so a
+        // client's stale copy of either never decides whether the reservation is made
+        registry.register("create_reservation", Object[].class, (client, reservationData) -> {
+            if (reservationData.length != 2) {
+                return NO_RESPONSE_DATA;
+            }
+            Student student = student(client, reservationData[0]);
+            Laptop laptop = laptop(client, reservationData[1]);
+            Reservation reservation = student != null && laptop != null
+                    ? model(client).createReservation(student, laptop) : null;
+            return reservation != null ? reservation : NO_RESPONSE_DATA;
+        });
+
+        registry.register("get_active_reservations", (client, args) -> model(client).getActiveReservations());
+        registry.register("get_all_reservations", (client, args) -> model(client).getAllReservations());
+
+        registry.register("complete_reservation", UUID.class, (client, id) ->
+                model(client).completeReservation(id) ? Boolean.TRUE : NO_RESPONSE_DATA);
+    }
+
+    private static void registerQueueCommands(CommandRegistry registry) {
+        registry.register("get_high_performance_queue",
+                (client, args) -> model(client).getHighPerformanceQueue());
+        registry.register("get_low_performance_queue",
+                (client, args) -> model(client).getLowPerformanceQueue());
+
+        registry.register("add_to_high_queue", Integer.class, (client, studentId) ->
+                model(client).addToHighPerformanceQueue(studentId) ? Boolean.TRUE : NO_RESPONSE_DATA);
+        registry.register("add_to_low_queue", Integer.class, (client, studentId) ->
+                model(client).addToLowPerformanceQueue(studentId) ? Boolean.TRUE : NO_RESPONSE_DATA);
+
+        registry.register("process_queues", (client, args) -> model(client).processQueues());
+    }
+
+    /**
+     * @param reference a student's VIA id, or for older clients the student itself
+     * @return the server's own copy of the student, or null if there is none
+     */
+    private static Student student(ClientHandler client, Object reference) {
+        if (reference instanceof Student) {
+            reference = ((Student) reference).getViaId();
+        }
+        return reference instanceof Integer ? model(client).getStudentByID((Integer) reference) : null;
+    }
+
+    /**
+     * @param reference a laptop's UUID, or for older clients the laptop itself
+     * @return the server's own copy of the laptop, or null if there is none
+     */
+    private static Laptop laptop(ClientHandler client, Object reference) {
+        if (reference instanceof Laptop) {
+            reference = ((Laptop) reference).getId();
+        }
+        return reference instanceof UUID ? model(client).getLaptopByUUID((UUID) reference) : null;
+    }
+
+    private static ServerModel model(ClientHandler client) {
+        return client.getServerModel();
+    }
+}
@@ -0,0 +1,74 @@
+package server.network;
+
+import objects.Laptop;
+import objects.Student;
+import util.FrameCodec;
+import util.Message;
+import util.MessageCodec;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A broadcast message encoded at most once per codec and shared by every
+ * client it is sent to. The frame bytes are never modified after encoding;
+ * each client writes them through its own ByteBuffer view.
+ */
+class SharedFrame {
+    // Codec ids, including those of the deflate variants, are below this
+    private static final int MAX_CODECS = 128;
+    // Events that carry an entity's whole new state, so a later one makes an earlier one redundant,
+    // whichever of them it is. Created, deleted and reservation events are steps the client has to
+    // apply, so they are never replaced.
+    private static final Set<String> STATE_EVENTS = Set.of("laptop_updated", "laptop_state_changed", "student_updated");
+
+    private final Message message;
+    private final String conflationKey;
+    private final AtomicReferenceArray<byte[]> frames = new AtomicReferenceArray<>(MAX_CODECS);
+
+    SharedFrame(Message message) {
+        this.message = message;
+        this.conflationKey = conflationKey(message);
+    }
+
+    Message getMessage() {
+        return message;
+    }
+
+    /**
+     * @return the entity whose state this event carries, or null if the event must not be replaced
+     */
+    String getConflationKey() {
+        return conflationKey;
+    }
+
+    private static String conflationKey(Message message) {
+        if (message.getSequence() == 0 || !STATE_EVENTS.contains(message.getType())) {
+            return null;
+        }
+        Object payload = message.getArgs();
+        if (payload instanceof Laptop) {
+            return "laptop:" + ((Laptop) payload).getId();
+        }
+        if (payload instanceof Student) {
+            return "student:" + ((Student) payload).getViaId();
+        }
+        return null;
+    }
+
+    /**
+     * @param codec the codec the receiving client uses
+     * @return the encoded frame, length prefix included
+     * @throws IOException if the message cannot be encoded
+     */
+    byte[] bytes(MessageCodec codec) throws IOException {
+        byte[] frame = frames.get(codec.getId());
+        if (frame == null) {
+            // Two clients may race to encode; both results are identical
+            frame = FrameCodec.encode(message, codec);
+            frames.compareAndSet(codec.getId(), null, frame);
+        }
+        return frame;
+    }
+}
@@ -0,0 +1,36 @@
+package server.network;
+
+/**
+ * What the server does with a client whose outbound queue is full when a
+ * broadcast arrives.
+ */
+public enum SlowConsumerPolicy {
+    /** Skip the broadcast for that client; it misses the update. */
+    DROP,
+
+    /** Disconnect the client; it reconnects and loads fresh state. */
+    DISCONNECT,
+
+    /**
+     * Discard the client's queued broadcasts and send it a fresh snapshot
+     * instead, which replaces everything it missed.
+     */
+    RESYNC;
+
+    /**
+     * Reads the policy from the "server.slowConsumerPolicy" system property.
+     *
+     * @return the configured policy, RESYNC if none or unknown
+     */
+    public static SlowConsumerPolicy fromSystemProperty() {
+        String value = System.getProperty("server.slowConsumerPolicy");
+        if (value != null) {
+            try {
+                return valueOf(value.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                System.err.println("Unknown server.slowConsumerPolicy '" + value + "', using " + RESYNC);
+            }
+        }
+        return RESYNC;
+    }
+}
@@ -1,6 +1,7 @@
 package server.network;
 
 import server.model.ServerModel;
+import util.DeflateCodec;
 import util.Message;
 
 import java.io.IOException;
@@ -11,20 +12,37 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Main server class that listens for client connections.
- * Creates and manages ClientHandler threads for connected clients.
+ * Creates and manages ClientHandlers for connected clients; requests from
+ * all clients are processed on a shared worker pool.
  */
 public class SocketServer {
     private static final int DEFAULT_PORT = 8888;
-    private static final int THREAD_POOL_SIZE = 20; // Maximum number of concurrent clients
+    private static final int THREAD_POOL_SIZE = 20; // Maximum number of concurrent clients (THREAD_POOL mode)
+
+    // Event loop and worker counts can be tuned with -Dserver.eventLoops and -Dserver.workers
+    private static final int DEFAULT_EVENT_LOOPS =
+            Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+    private static final int DEFAULT_WORKERS = 16;
+    private static final int ACCEPT_BACKLOG = 1024;
 
     private ServerModel serverModel;
     private ServerSocket serverSocket;
-    private boolean running;
+    private volatile boolean running;
     private ConnectionPool connectionPool;
+    private final CommandRegistry commands;
+    private final AdmissionControl admission;
+    private final HeartbeatMonitor heartbeats;
     private ExecutorService threadPool;
+    private ExecutorService writerPool;
+    private final ExecutorService workerPool;
+    private NioServer nioServer;
+    private final TransportMode transportMode;
     private List<ClientHandler> activeHandlers;
     private int port;
 
@@ -44,11 +62,33 @@ public class SocketServer {
      * @param port the port to listen on
      */
     public SocketServer(ServerModel serverModel, int port) {
+        this(serverModel, port, TransportMode.fromSystemProperty());
+    }
+
+    /**
+     * Creates a socket server with a specific port and transport.
+     *
+     * @param serverModel the server model
+     * @param port the port to listen on
+     * @param transportMode how client connections are read
+     */
+    public SocketServer(ServerModel serverModel, int port, TransportMode transportMode) {
         this.serverModel = serverModel;
         this.port = port;
+        this.transportMode = transportMode;
         this.connectionPool = new ConnectionPool();
+        this.commands = ServerCommands.create();
+        this.admission = new AdmissionControl();
         this.activeHandlers = new ArrayList<>();
-        this.threadPool = Executors.newFixedThreadPool(THREAD_POOL_SIZE);
+        this.heartbeats = new HeartbeatMonitor(this::getActiveHandlers);
+        if (transportMode == TransportMode.VIRTUAL_THREADS) {
+            // Requests blocked on JDBC park their virtual thread instead of holding a worker
+            this.workerPool = Executors.newThreadPerTaskExecutor(
+                    Thread.ofVirtual().name("request-worker-", 1).factory());
+        } else {
+            this.workerPool = Executors.newFixedThreadPool(
+                    Integer.getInteger("server.workers", DEFAULT_WORKERS), daemonThreads("request-worker-"));
+        }
 
         // Register model listeners to broadcast changes to clients
         setupModelListeners();
@@ -56,76 +96,125 @@ public class SocketServer {
 
     /**
      * Sets up listeners for model events to broadcast changes to clients.
+     * This is the only place state changes are broadcast from.
      */
     private void setupModelListeners() {
         // Laptop events
         serverModel.addListener("server_laptop_created", evt -> {
-            connectionPool.broadcastToAll(new Message("laptop_created", evt.getNewValue()));
+            broadcastEvent("laptop_created", evt.getNewValue());
         });
 
         serverModel.addListener("server_laptop_updated", evt -> {
-            connectionPool.broadcastToAll(new Message("laptop_updated", evt.getNewValue()));
+            broadcastEvent("laptop_updated", evt.getNewValue());
         });
 
         serverModel.addListener("server_laptop_deleted", evt -> {
-            connectionPool.broadcastToAll(new Message("laptop_deleted", evt.getNewValue()));
+            broadcastEvent("laptop_deleted", evt.getNewValue());
         });
 
         serverModel.addListener("server_laptop_state_changed", evt -> {
-            connectionPool.broadcastToAll(new Message("laptop_state_changed", evt.getNewValue()));
+            broadcastEvent("laptop_state_changed", evt.getNewValue());
         });
 
         // Student events
         serverModel.addListener("server_student_created", evt -> {
-            connectionPool.broadcastToAll(new Message("student_created", evt.getNewValue()));
+            broadcastEvent("student_created", evt.getNewValue());
         });
 
         serverModel.addListener("server_student_updated", evt -> {
-            connectionPool.broadcastToAll(new Message("student_updated", evt.getNewValue()));
+            broadcastEvent("student_updated", evt.getNewValue());
         });
 
         serverModel.addListener("server_student_deleted", evt -> {
-            connectionPool.broadcastToAll(new Message("student_deleted", evt.getNewValue()));
+            broadcastEvent("student_deleted", evt.getNewValue());
         });
 
         // Reservation events
         serverModel.addListener("server_reservation_created", evt -> {
-            connectionPool.broadcastToAll(new Message("reservation_created", evt.getNewValue()));
+            broadcastEvent("reservation_created", evt.getNewValue());
         });
 
         serverModel.addListener("server_reservation_completed", evt -> {
-            connectionPool.broadcastToAll(new Message("reservation_completed", evt.getNewValue()));
+            broadcastEvent("reservation_completed", evt.getNewValue());
         });
 
         serverModel.addListener("server_reservation_cancelled", evt -> {
-            connectionPool.broadcastToAll(new Message("reservation_cancelled", evt.getNewValue()));
+            broadcastEvent("reservation_cancelled", evt.getNewValue());
         });
 
         // Queue events
         serverModel.addListener("server_queue_updated", evt -> {
-            connectionPool.broadcastToAll(new Message("queue_updated", evt.getNewValue()));
+            broadcastEvent("queue_updated", evt.getNewValue());
         });
 
+        // Operations whose events go out as one batch
+        serverModel.addListener("server_batch_begin", evt -> connectionPool.beginBatch());
+        serverModel.addListener("server_batch_end", evt -> connectionPool.endBatch());
+
         // Error events
         serverModel.addListener("server_error", evt -> {
-            connectionPool.broadcastToAll(new Message("server_error", evt.getNewValue()));
+            connectionPool.broadcastToAll(new Message("server_error", payload(evt.getNewValue())));
         });
     }
 
+    /**
+     * Broadcasts a model change as the next event in the event stream.
+     *
+     * @param type the event type clients listen for
+     * @param value the model event's value
+     */
+    private void broadcastEvent(String type, Object value) {
+        // Also changes made by this server's other parts, such as queue processing
+        commands.getResponseCache().invalidate(type);
+        connectionPool.broadcastEvent(type, payload(value));
+    }
+
+    /**
+     * The DAOs wrap the changed object in a Message; clients get the object itself.
+     */
+    private static Object payload(Object value) {
+        return value instanceof Message ? ((Message) value).getArgs() : value;
+    }
+
     /**
      * Starts the server.
      *
      * @throws IOException if there's an error starting the server
      */
     public void startServer() throws IOException {
-        serverSocket = new ServerSocket(port);
-        running = true;
+        switch (transportMode) {
+            case THREAD_POOL:
+                serverSocket = new ServerSocket(port);
+                threadPool = Executors.newFixedThreadPool(THREAD_POOL_SIZE);
+                writerPool = Executors.newCachedThreadPool(daemonThreads("client-writer-"));
+                running = true;
+                // Start a thread to accept clients
+                new Thread(this::acceptClients).start();
+                break;
+
+            case VIRTUAL_THREADS:
+                // A deeper accept backlog than the default 50, so bursts of reconnecting clients aren't dropped
+                serverSocket = new ServerSocket(port, ACCEPT_BACKLOG);
+                // One virtual thread per connection; a blocked read costs no platform thread
+                threadPool = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("client-", 1).factory());
+                writerPool = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("client-writer-", 1).factory());
+                running = true;
+                new Thread(this::acceptClients, "client-acceptor").start();
+                break;
+
+            case NIO:
+            default:
+                nioServer = new NioServer(port, Integer.getInteger("server.eventLoops", DEFAULT_EVENT_LOOPS),
+                        this::createHandler);
+                nioServer.start();
+                running = true;
+                break;
+        }
 
-        System.out.println("Server started on port " + port);
-        System.out.println("Waiting for client connections...");
+        heartbeats.start();
 
-        // Start a thread to accept clients
-        new Thread(this::acceptClients).start();
+        System.out.println("Server started on port " + port + " (" + transportMode + " transport)");
+        System.out.println("Waiting for client connections...");
     }
 
     /**
@@ -133,12 +222,37 @@ public class SocketServer {
      */
     public void stopServer() {
         running = false;
+        heartbeats.stop();
 
-        // Disconnect all clients
+        // Requests already running finish, and the events of their changes are
+        // broadcast before the clients are disconnected
+        workerPool.shutdown();
+        try {
+            if (!workerPool.awaitTermination(5, TimeUnit.SECONDS)) {
+                System.err.println("Requests still running at shutdown");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        serverModel.close();
+
+        // Disconnect all clients, including those that never registered with the pool
         connectionPool.closeAllConnections();
+        for (ClientHandler handler : getActiveHandlers()) {
+            handler.disconnect();
+        }
+
+        if (nioServer != null) {
+            nioServer.stop();
+        }
 
-        // Shutdown thread pool
-        threadPool.shutdown();
+        // Shutdown thread pools
+        if (threadPool != null) {
+            threadPool.shutdown();
+        }
+        if (writerPool != null) {
+            writerPool.shutdown();
+        }
 
         // Close server socket
         try {
@@ -149,11 +263,22 @@ public class SocketServer {
             System.err.println("Error closing server socket: " + e.getMessage());
         }
 
+        System.out.print("Commands by server time:\n" + commands.report());
+        System.out.println("Requests turned away: " + admission.getRateLimitedCount() + " over rate, " +
+                admission.getQueueFullCount() + " queue full, " + admission.getExpensiveBusyCount() +
+                " expensive commands busy");
+        System.out.println("Connections closed for missed heartbeats: " + heartbeats.getReapedCount());
+        ResponseCache responseCache = commands.getResponseCache();
+        System.out.println("Response cache: " + responseCache.getHitCount() + " hits, " +
+                responseCache.getMissCount() + " misses, " + responseCache.getInvalidationCount() + " invalidations");
+        if (!DeflateCodec.getStatistics().isEmpty()) {
+            System.out.print("Compression by message type:\n" + DeflateCodec.getStatistics());
+        }
         System.out.println("Server stopped");
     }
 
     /**
-     * Continuously accepts client connections.
+     * Continuously accepts client connections (THREAD_POOL and VIRTUAL_THREADS modes).
      */
     private void acceptClients() {
         System.out.println("Client connection listener started");
@@ -163,16 +288,18 @@ public class SocketServer {
                 Socket clientSocket = serverSocket.accept();
                 System.out.println("Client connected from " + clientSocket.getInetAddress());
 
-                // Create handler for this client
-                ClientHandler clientHandler = new ClientHandler(clientSocket, serverModel, this, connectionPool);
-
-                // Add to active handlers
-                synchronized (activeHandlers) {
-                    activeHandlers.add(clientHandler);
+                BlockingClientChannel channel;
+                try {
+                    channel = new BlockingClientChannel(clientSocket, writerPool);
+                } catch (IOException e) {
+                    System.err.println("Error initializing client connection: " + e.getMessage());
+                    clientSocket.close();
+                    continue;
                 }
+                channel.setHandler(createHandler(channel));
 
-                // Start client handler in the thread pool
-                threadPool.execute(clientHandler);
+                // Start the reader in the thread pool, or on its own virtual thread
+                threadPool.execute(channel);
 
             } catch (SocketException e) {
                 if (!running) {
@@ -190,6 +317,39 @@ public class SocketServer {
         System.out.println("Client connection listener stopped");
     }
 
+    /**
+     * Creates the handler for a new connection and adds it to the active handlers.
+     *
+     * @param channel the connection to the client
+     * @return the new handler
+     */
+    private ClientHandler createHandler(ClientChannel channel) {
+        ClientHandler clientHandler = new ClientHandler(channel, serverModel, this, connectionPool, commands, admission,
+                workerPool);
+        synchronized (activeHandlers) {
+            activeHandlers.add(clientHandler);
+        }
+        return clientHandler;
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * @return a copy of the active handlers, including those that never registered with the pool
+     */
+    private List<ClientHandler> getActiveHandlers() {
+        synchronized (activeHandlers) {
+            return new ArrayList<>(activeHandlers);
+        }
+    }
+
     /**
      * Removes a client handler from the list of active handlers.
      *
@@ -210,6 +370,44 @@ public class SocketServer {
         return connectionPool.getConnectionCount();
     }
 
+    /**
+     * Gets the pool that tracks registered clients and broadcasts to them.
+     *
+     * @return the connection pool
+     */
+    public ConnectionPool getConnectionPool() {
+        return connectionPool;
+    }
+
+    /**
+     * Gets the commands clients can send, with their count, error rate and latency.
+     *
+     * @return the command registry
+     */
+    public CommandRegistry getCommandRegistry() {
+        return commands;
+    }
+
+    /**
+     * Gets the limits on which client requests the server takes on, with
+     * counts of the requests turned away.
+     *
+     * @return the admission control
+     */
+    public AdmissionControl getAdmissionControl() {
+        return admission;
+    }
+
+    /**
+     * Gets the heartbeats that detect dead connections, with the round-trip
+     * time of each connection.
+     *
+     * @return the heartbeat monitor
+     */
+    public HeartbeatMonitor getHeartbeatMonitor() {
+        return heartbeats;
+    }
+
     /**
      * Broadcasts a message to all connected clients.
      *
@@ -228,6 +426,15 @@ public class SocketServer {
         return port;
     }
 
+    /**
+     * Gets how the server reads client connections.
+     *
+     * @return the transport mode
+     */
+    public TransportMode getTransportMode() {
+        return transportMode;
+    }
+
     /**
      * Checks if the server is running.
      *
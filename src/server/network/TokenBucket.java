@@ -0,0 +1,54 @@
+package server.network;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A token bucket: requests take one token each, tokens come back at a fixed
+ * rate, and the bucket holds at most a burst's worth.
+ */
+final class TokenBucket {
+    private final double tokensPerNano;
+    private final double capacity;
+    private double tokens;
+    private long refilledAt;
+
+    /**
+     * @param perSecond the tokens added per second
+     * @param burst the most tokens the bucket holds; it starts full
+     */
+    TokenBucket(double perSecond, double burst) {
+        this.tokensPerNano = perSecond / TimeUnit.SECONDS.toNanos(1);
+        this.capacity = Math.max(1, burst);
+        this.tokens = capacity;
+        this.refilledAt = System.nanoTime();
+    }
+
+    /**
+     * @return true if a token was taken, false if the bucket is empty
+     */
+    synchronized boolean tryAcquire() {
+        refill();
+        if (tokens < 1) {
+            return false;
+        }
+        tokens--;
+        return true;
+    }
+
+    /**
+     * @return how long until the next token, in milliseconds, 0 if one is available
+     */
+    synchronized long millisUntilToken() {
+        refill();
+        if (tokens >= 1) {
+            return 0;
+        }
+        return (long) Math.ceil((1 - tokens) / tokensPerNano / 1_000_000);
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - refilledAt) * tokensPerNano);
+        refilledAt = now;
+    }
+}
@@ -0,0 +1,132 @@
+package server.network;
+
+import enums.PerformanceTypeEnum;
+import objects.Laptop;
+import objects.Reservation;
+import objects.Student;
+
+import java.util.Objects;
+
+/**
+ * A subscription filter over the server's events, written as
+ * {@code entity[.kind][:PERFORMANCE]}: "reservation" for every reservation
+ * event, "laptop.created" for new laptops only, "queue:HIGH" for changes to
+ * the high performance queue, and "*" for everything.
+ *
+ * An event's entity and kind come from its type ("laptop_state_changed" is
+ * entity "laptop", kind "state_changed") and its performance type from the
+ * payload. Events whose payload has no performance type, such as a deleted
+ * student's id, match every performance filter.
+ */
+final class Topic {
+    static final String ANY_ENTITY = "*";
+    static final Topic ALL = new Topic(ANY_ENTITY, null, null);
+
+    private final String entity;
+    private final String kind;
+    private final PerformanceTypeEnum performance;
+
+    private Topic(String entity, String kind, PerformanceTypeEnum performance) {
+        this.entity = entity;
+        this.kind = kind;
+        this.performance = performance;
+    }
+
+    /**
+     * @param pattern the filter as sent by the client
+     * @return the parsed topic
+     * @throws IllegalArgumentException if the pattern is malformed or names an unknown performance type
+     */
+    static Topic parse(String pattern) {
+        if (pattern == null || pattern.isBlank()) {
+            throw new IllegalArgumentException("Empty topic");
+        }
+        String rest = pattern.trim().toLowerCase();
+        PerformanceTypeEnum performance = null;
+        int colon = rest.indexOf(':');
+        if (colon >= 0) {
+            performance = PerformanceTypeEnum.valueOf(rest.substring(colon + 1).toUpperCase());
+            rest = rest.substring(0, colon);
+        }
+        String kind = null;
+        int dot = rest.indexOf('.');
+        if (dot >= 0) {
+            kind = rest.substring(dot + 1);
+            rest = rest.substring(0, dot);
+        }
+        if (rest.isEmpty() || (kind != null && kind.isEmpty())) {
+            throw new IllegalArgumentException("Invalid topic: " + pattern);
+        }
+        return new Topic(rest, kind, performance);
+    }
+
+    /**
+     * @param type an event type such as "laptop_created"
+     * @return the entity part, "laptop"
+     */
+    static String entityOf(String type) {
+        int underscore = type.indexOf('_');
+        return underscore > 0 ? type.substring(0, underscore) : type;
+    }
+
+    /**
+     * @param type an event type such as "laptop_state_changed"
+     * @return the kind part, "state_changed", or null if there is none
+     */
+    static String kindOf(String type) {
+        int underscore = type.indexOf('_');
+        return underscore > 0 ? type.substring(underscore + 1) : null;
+    }
+
+    /**
+     * @param payload an event payload
+     * @return the performance type it concerns, or null if it has none
+     */
+    static PerformanceTypeEnum performanceOf(Object payload) {
+        if (payload instanceof PerformanceTypeEnum) {
+            return (PerformanceTypeEnum) payload;
+        }
+        if (payload instanceof Laptop) {
+            return ((Laptop) payload).getPerformanceType();
+        }
+        if (payload instanceof Student) {
+            return ((Student) payload).getPerformanceNeeded();
+        }
+        if (payload instanceof Reservation && ((Reservation) payload).getLaptop() != null) {
+            return ((Reservation) payload).getLaptop().getPerformanceType();
+        }
+        return null;
+    }
+
+    String getEntity() {
+        return entity;
+    }
+
+    boolean matches(String eventEntity, String eventKind, PerformanceTypeEnum eventPerformance) {
+        return (entity.equals(ANY_ENTITY) || entity.equals(eventEntity)) &&
+                (kind == null || kind.equals(eventKind)) &&
+                (performance == null || eventPerformance == null || performance == eventPerformance);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Topic)) {
+            return false;
+        }
+        Topic topic = (Topic) o;
+        return entity.equals(topic.entity) && Objects.equals(kind, topic.kind) && performance == topic.performance;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(entity, kind, performance);
+    }
+
+    @Override
+    public String toString() {
+        return entity + (kind != null ? "." + kind : "") + (performance != null ? ":" + performance : "");
+    }
+}
@@ -0,0 +1,36 @@
+package server.network;
+
+/**
+ * How the server reads from its client connections.
+ */
+public enum TransportMode {
+    /** A few selector threads multiplex all connections. */
+    NIO,
+
+    /** One blocking reader per connection on a fixed pool of 20 threads. */
+    THREAD_POOL,
+
+    /**
+     * One blocking reader per connection on its own virtual thread, and a
+     * virtual thread per request. Blocking reads and JDBC calls park the
+     * virtual thread, so neither caps the number of clients.
+     */
+    VIRTUAL_THREADS;
+
+    /**
+     * Reads the mode from the "server.transport" system property.
+     *
+     * @return the configured mode, NIO if none or unknown
+     */
+    public static TransportMode fromSystemProperty() {
+        String value = System.getProperty("server.transport");
+        if (value != null) {
+            try {
+                return valueOf(value.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                System.err.println("Unknown server.transport '" + value + "', using " + NIO);
+            }
+        }
+        return NIO;
+    }
+}
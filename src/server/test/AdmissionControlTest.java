@@ -0,0 +1,144 @@
+package server.test;
+
+import client.network.ServerBusyException;
+import client.network.SocketClientImp;
+import org.junit.After;
+import org.junit.Test;
+import server.network.SocketServer;
+import server.network.TransportMode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tester at serveren beskytter sig mod en klient der sender for meget: en
+ * hastighedsgrænse pr. forbindelse, et loft over samtidige dyre kommandoer
+ * og at andre klienters forespørgsler ikke venter bag en travl klients kø.
+ * Afviste forespørgsler får et eksplicit "busy"-svar. Kræver ikke en database.
+ */
+public class AdmissionControlTest {
+    private static final int TEST_PORT = 7842;
+    private static final String[] PROPERTIES = {
+            "server.rateLimit.perSecond", "server.rateLimit.burst", "server.expensive.maxConcurrent",
+            "server.expensive.maxWaitMillis", "server.workers"
+    };
+
+    private SocketServer server;
+    private final List<SocketClientImp> clients = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        for (SocketClientImp client : clients) {
+            client.disconnect();
+        }
+        if (server != null) {
+            server.stopServer();
+        }
+        for (String property : PROPERTIES) {
+            System.clearProperty(property);
+        }
+    }
+
+    private void start(long latencyMillis) throws Exception {
+        server = new SocketServer(FakeServerModel.create(latencyMillis), TEST_PORT, TransportMode.NIO);
+        server.startServer();
+    }
+
+    private SocketClientImp connect() throws Exception {
+        SocketClientImp client = new SocketClientImp("localhost", TEST_PORT);
+        clients.add(client);
+        return client;
+    }
+
+    private static boolean isBusy(CompletableFuture<Object> future) throws Exception {
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            return false;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof ServerBusyException) {
+                return true;
+            }
+            throw e;
+        }
+    }
+
+    @Test
+    public void testClientOverItsRateIsToldBusy() throws Exception {
+        System.setProperty("server.rateLimit.perSecond", "10");
+        System.setProperty("server.rateLimit.burst", "5");
+        start(0);
+        SocketClientImp client = connect();
+        // Forbindelsen har brugt et par tokens på at forhandle og synkronisere
+        Thread.sleep(500);
+
+        List<CompletableFuture<Object>> futures = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            futures.add(client.sendRequestAsync("get_student_count", null));
+        }
+        int busy = 0;
+        for (CompletableFuture<Object> future : futures) {
+            if (isBusy(future)) {
+                busy++;
+            }
+        }
+
+        assertTrue("De fleste burde være afvist: " + busy, busy >= 20 && busy < 30);
+        assertEquals(busy, server.getAdmissionControl().getRateLimitedCount());
+
+        // Bucketten fyldes op igen
+        Thread.sleep(300);
+        assertEquals(0, client.getStudentCount());
+    }
+
+    @Test
+    public void testExpensiveCommandsAreLimitedAcrossClients() throws Exception {
+        System.setProperty("server.expensive.maxConcurrent", "1");
+        System.setProperty("server.expensive.maxWaitMillis", "50");
+        start(300);
+        SocketClientImp first = connect();
+        SocketClientImp second = connect();
+
+        CompletableFuture<Object> running = first.sendRequestAsync("get_all_reservations", null);
+        Thread.sleep(100);
+        CompletableFuture<Object> waiting = second.sendRequestAsync("get_all_laptops", null);
+        // Billige kommandoer er ikke begrænset
+        CompletableFuture<Object> cheap = second.sendRequestAsync("get_student_count", null);
+
+        assertFalse(isBusy(running));
+        assertTrue("Den anden dyre kommando burde være afvist", isBusy(waiting));
+        assertEquals(0, cheap.get(10, TimeUnit.SECONDS));
+        assertEquals(1, server.getAdmissionControl().getExpensiveBusyCount());
+        assertEquals(1, server.getAdmissionControl().getAvailableExpensivePermits());
+    }
+
+    @Test
+    public void testBusyClientDoesNotDelayOthers() throws Exception {
+        System.setProperty("server.rateLimit.perSecond", "0");
+        System.setProperty("server.workers", "1");
+        start(5);
+        SocketClientImp flooder = connect();
+        SocketClientImp other = connect();
+
+        List<CompletableFuture<Object>> flood = new ArrayList<>();
+        for (int i = 0; i < 150; i++) {
+            flood.add(flooder.sendRequestAsync("get_student_count", null));
+        }
+        Thread.sleep(50);
+
+        long start = System.nanoTime();
+        assertEquals(0, other.getStudentCount());
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        System.out.println("Svartid bag 150 forespørgsler fra en anden klient: " + millis + " ms");
+
+        // Uden skiftevis afvikling ville svaret vente på omkring 150 * 5 ms
+        assertTrue("Svartid: " + millis + " ms", millis < 200);
+        for (CompletableFuture<Object> future : flood) {
+            assertEquals(0, future.get(10, TimeUnit.SECONDS));
+        }
+    }
+}
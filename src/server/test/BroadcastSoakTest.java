@@ -0,0 +1,169 @@
+package server.test;
+
+import enums.PerformanceTypeEnum;
+import objects.Laptop;
+import org.junit.After;
+import org.junit.Test;
+import server.network.SocketServer;
+import server.network.TransportMode;
+import util.FrameCodec;
+import util.Message;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Sender mange broadcasts til nogle få klienter og måler heapen
+ * undervejs. Hver besked serialiseres for sig, så hverken serveren eller
+ * klienterne må vokse med antallet af sendte beskeder. Den samme laptop
+ * sendes igen efter hver ændring og skal hver gang ankomme med sin nye
+ * tilstand, ikke som en henvisning til en tidligere udgave.
+ *
+ * Som standard sendes 20.000 broadcasts, så testen kan køre med de andre.
+ * En rigtig soak-kørsel vælges med -Dsoak.broadcasts=1000000, og antallet
+ * af klienter med -Dsoak.clients.
+ */
+public class BroadcastSoakTest {
+    private static final int TEST_PORT = 7845;
+    // Broadcasts der højst må være på vej, så køerne aldrig løber fulde
+    private static final int WINDOW = 256;
+    private static final long MAX_GROWTH_BYTES = 32L * 1024 * 1024;
+
+    private SocketServer server;
+    private final List<SoakClient> clients = new ArrayList<>();
+
+    @After
+    public void tearDown() throws IOException {
+        for (SoakClient client : clients) {
+            client.socket.close();
+        }
+        if (server != null) {
+            server.stopServer();
+        }
+    }
+
+    @Test
+    public void testMemoryStaysFlat() throws Exception {
+        int broadcasts = Integer.getInteger("soak.broadcasts", 20_000);
+        int clientCount = Integer.getInteger("soak.clients", 2);
+
+        server = new SocketServer(FakeServerModel.create(), TEST_PORT, TransportMode.NIO);
+        server.startServer();
+        for (int i = 0; i < clientCount; i++) {
+            clients.add(new SoakClient());
+        }
+        long deadline = System.currentTimeMillis() + 5000;
+        while (server.getConnectedClientCount() < clientCount && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(clientCount, server.getConnectedClientCount());
+
+        Laptop laptop = new Laptop("Dell", "XPS", 1, 16, PerformanceTypeEnum.HIGH);
+        long start = System.nanoTime();
+        long heapAfterWarmup = 0;
+        long maxQueuedBytes = 0;
+        for (int i = 0; i < broadcasts; i++) {
+            // Samme objekt, ny tilstand
+            laptop.setGigabyte(1 + i % 4000);
+            server.getConnectionPool().broadcastEvent("laptop_created", laptop);
+
+            if (i % WINDOW == WINDOW - 1) {
+                awaitReceived(i + 1 - WINDOW);
+            }
+            if (i == broadcasts / 10) {
+                awaitReceived(i + 1);
+                heapAfterWarmup = usedHeap();
+            }
+            if (i % 10_000 == 0) {
+                for (int queued : server.getConnectionPool().getQueuedBytesByClient().values()) {
+                    maxQueuedBytes = Math.max(maxQueuedBytes, queued);
+                }
+            }
+        }
+        awaitReceived(broadcasts);
+        long seconds = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start));
+        long heapAtEnd = usedHeap();
+
+        System.out.printf("%d broadcasts til %d klienter på %d s; heap efter opvarmning %d MB, til sidst %d MB; " +
+                        "højst %d KB i kø pr. klient%n", broadcasts, clientCount, seconds,
+                heapAfterWarmup / (1024 * 1024), heapAtEnd / (1024 * 1024), maxQueuedBytes / 1024);
+
+        for (SoakClient client : clients) {
+            assertNull(client.error);
+            assertEquals(broadcasts, client.received.get());
+            assertEquals("Laptops ankom med en gammel tilstand", 0, client.stale.get());
+        }
+        assertEquals(0, server.getConnectionPool().getDroppedBroadcastCount());
+        assertTrue("Heapen voksede med " + (heapAtEnd - heapAfterWarmup) / (1024 * 1024) + " MB",
+                heapAtEnd - heapAfterWarmup < MAX_GROWTH_BYTES);
+    }
+
+    private void awaitReceived(long count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        for (SoakClient client : clients) {
+            while (client.received.get() < count) {
+                assertNull(client.error);
+                assertTrue("Klienten modtog kun " + client.received.get() + " af " + count,
+                        System.currentTimeMillis() < deadline);
+                Thread.sleep(1);
+            }
+        }
+    }
+
+    private static long usedHeap() {
+        System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * En klient der læser og afkoder hver besked på sin egen tråd.
+     */
+    private static final class SoakClient implements Runnable {
+        final Socket socket;
+        final DataInputStream in;
+        final AtomicLong received = new AtomicLong();
+        final AtomicLong stale = new AtomicLong();
+        volatile Exception error;
+
+        SoakClient() throws IOException {
+            socket = new Socket("localhost", TEST_PORT);
+            in = FrameCodec.input(socket.getInputStream());
+            DataOutputStream out = FrameCodec.output(socket.getOutputStream());
+            FrameCodec.writeFrame(out, new Message("new_client", null, 0, 1));
+            out.flush();
+            Thread reader = new Thread(this, "soak-client");
+            reader.setDaemon(true);
+            reader.start();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    Message message = FrameCodec.readFrame(in);
+                    if (!"laptop_created".equals(message.getType())) {
+                        continue;
+                    }
+                    long index = received.get();
+                    if (((Laptop) message.getArgs()).getGigabyte() != 1 + index % 4000) {
+                        stale.incrementAndGet();
+                    }
+                    received.set(index + 1);
+                }
+            } catch (IOException e) {
+                if (!socket.isClosed()) {
+                    error = e;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package server.test;
+
+import client.network.SocketClientImp;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import server.network.CommandMetrics;
+import server.network.CommandRegistry;
+import server.network.SocketServer;
+import server.network.TransportMode;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tester kommandoregistret: at alle kendte beskedtyper er registreret, at
+ * hver kommando tælles og tidsmåles, at fejl tælles med i fejlraten, og at
+ * tallene kan hentes med en admin-besked. Kræver ikke en database.
+ */
+public class CommandMetricsTest {
+    private static final int TEST_PORT = 7841;
+    private static final long LATENCY_MILLIS = 2;
+
+    private SocketServer server;
+    private SocketClientImp client;
+
+    @Before
+    public void setUp() throws Exception {
+        // Hvert modelkald tager et par millisekunder, så latenserne er målbare
+        server = new SocketServer(FakeServerModel.create(LATENCY_MILLIS), TEST_PORT, TransportMode.NIO);
+        server.startServer();
+        client = new SocketClientImp("localhost", TEST_PORT);
+    }
+
+    @After
+    public void tearDown() {
+        if (client != null) {
+            client.disconnect();
+        }
+        if (server != null) {
+            server.stopServer();
+        }
+    }
+
+    @Test
+    public void testEveryMessageTypeHasACommand() {
+        CommandRegistry registry = server.getCommandRegistry();
+        String[] types = {
+                "new_client", "resync", "subscribe", "unsubscribe", "negotiate_codec", "batch", "disconnect",
+                "get_all_laptops", "get_available_laptops", "get_loaned_laptops", "get_next_available_laptop",
+                "get_laptop_by_uuid", "create_laptop", "update_laptop_state", "delete_laptop",
+                "get_all_students", "get_student_count", "get_student_by_id", "get_high_power_students",
+                "get_low_power_students", "create_student", "delete_student", "create_reservation",
+                "get_active_reservations", "get_all_reservations", "complete_reservation",
+                "get_high_performance_queue", "get_low_performance_queue", "add_to_high_queue",
+                "add_to_low_queue", "process_queues", "get_command_metrics"
+        };
+        for (String type : types) {
+            assertNotNull("Ingen kommando for " + type, registry.getMetrics(type));
+        }
+    }
+
+    @Test
+    public void testCommandsAreCountedAndTimed() throws Exception {
+        // Studerende caches ikke, så hvert kald når modellen
+        for (int i = 0; i < 20; i++) {
+            client.getAllStudents();
+        }
+        // Forkert type argument; afvises uden at kalde modellen
+        assertEquals("Message processed but no response data",
+                client.sendRequestAsync("get_laptop_by_uuid", "ikke et uuid").get(5, TimeUnit.SECONDS));
+        // Modellen svarer false, så kommandoen fejler
+        client.sendRequestAsync("complete_reservation", new UUID(1, 1)).get(5, TimeUnit.SECONDS);
+
+        CommandRegistry registry = server.getCommandRegistry();
+        CommandMetrics students = registry.getMetrics("get_all_students");
+        assertEquals(20, students.getCount());
+        assertEquals(0, students.getErrorCount());
+        assertTrue("Gennemsnit: " + students.getMeanMicros(), students.getMeanMicros() >= LATENCY_MILLIS * 1000);
+        long p50 = students.getPercentileMicros(50);
+        assertTrue("p50: " + p50, p50 >= LATENCY_MILLIS * 1000 && p50 <= students.getMaxMicros());
+        assertTrue(students.getPercentileMicros(99) >= p50);
+
+        assertEquals(1.0, registry.getMetrics("get_laptop_by_uuid").getErrorRate(), 0);
+        assertEquals(1.0, registry.getMetrics("complete_reservation").getErrorRate(), 0);
+    }
+
+    @Test
+    public void testMetricsAvailableThroughAdminMessage() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            client.getActiveReservations();
+        }
+
+        Object report = client.sendRequestAsync("get_command_metrics", null).get(5, TimeUnit.SECONDS);
+        System.out.print(report);
+        assertTrue(report instanceof String);
+        assertTrue((String) report, ((String) report).contains("get_active_reservations"));
+        assertFalse("Kommandoer der ikke er kørt, udelades", ((String) report).contains("delete_student"));
+    }
+
+    @Test
+    public void testUnknownTypeIsRejected() throws Exception {
+        assertEquals("Unknown message type: no_such_command",
+                client.sendRequestAsync("no_such_command", null).get(5, TimeUnit.SECONDS));
+        assertNull(server.getCommandRegistry().getMetrics("no_such_command"));
+    }
+}
@@ -0,0 +1,131 @@
+package server.test;
+
+import client.network.SocketClientImp;
+import org.junit.After;
+import org.junit.Test;
+import server.model.ServerModel;
+import server.network.SocketServer;
+import server.network.TransportMode;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tester at en klients læsninger afvikles samtidigt, så den langsomste
+ * kommando ikke bestemmer hvor mange svar klienten kan få, mens dens
+ * ændringer stadig udføres én ad gangen og i den rækkefølge de blev sendt.
+ * Kræver ikke en database.
+ */
+public class ConcurrentReadsTest {
+    private static final int TEST_PORT = 7843;
+    private static final String[] PROPERTIES = {"server.client.maxConcurrentReads", "server.workers"};
+
+    private SocketServer server;
+    private SocketClientImp client;
+    // "start:" og "end:" for hvert kald til modellen, i den rækkefølge de skete
+    private final List<String> calls = new CopyOnWriteArrayList<>();
+
+    @After
+    public void tearDown() {
+        if (client != null) {
+            client.disconnect();
+        }
+        if (server != null) {
+            server.stopServer();
+        }
+        for (String property : PROPERTIES) {
+            System.clearProperty(property);
+        }
+    }
+
+    private void start(ServerModel model) throws Exception {
+        server = new SocketServer(model, TEST_PORT, TransportMode.NIO);
+        server.startServer();
+        client = new SocketClientImp("localhost", TEST_PORT);
+    }
+
+    /**
+     * @param slowMethod Navnet på det kald der tager slowMillis
+     * @param slowMillis Forsinkelsen på det langsomme kald
+     * @param otherMillis Forsinkelsen på alle andre kald
+     * @return En model der logger start og slut på hvert kald
+     */
+    private ServerModel model(String slowMethod, long slowMillis, long otherMillis) {
+        ServerModel fake = FakeServerModel.create();
+        return (ServerModel) Proxy.newProxyInstance(ServerModel.class.getClassLoader(),
+                new Class<?>[]{ServerModel.class}, (proxy, method, args) -> {
+                    String name = method.getName();
+                    if (name.startsWith("add") && name.endsWith("Listener")) {
+                        return method.invoke(fake, args);
+                    }
+                    calls.add("start:" + name + (args != null ? Arrays.toString(args) : ""));
+                    Thread.sleep(name.equals(slowMethod) ? slowMillis : otherMillis);
+                    calls.add("end:" + name + (args != null ? Arrays.toString(args) : ""));
+                    return method.invoke(fake, args);
+                });
+    }
+
+    @Test
+    public void testReadsFromOneClientRunConcurrently() throws Exception {
+        System.setProperty("server.client.maxConcurrentReads", "8");
+        System.setProperty("server.workers", "16");
+        start(model(null, 0, 200));
+
+        long start = System.nanoTime();
+        List<CompletableFuture<Object>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            futures.add(client.sendRequestAsync("get_student_count", null));
+        }
+        for (CompletableFuture<Object> future : futures) {
+            assertEquals(0, future.get(10, TimeUnit.SECONDS));
+        }
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // Én ad gangen ville tage 8 * 200 ms
+        assertTrue("Svartid: " + millis + " ms", millis < 800);
+    }
+
+    @Test
+    public void testSlowReadDoesNotDelayOtherReads() throws Exception {
+        start(model("getAllReservations", 1500, 0));
+
+        CompletableFuture<Object> slow = client.sendRequestAsync("get_all_reservations", null);
+        long start = System.nanoTime();
+        assertEquals(0, client.getStudentCount());
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue("Svartid bag en langsom læsning: " + millis + " ms", millis < 750);
+        assertFalse(slow.isDone());
+        assertNotNull(slow.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testChangesStayInOrder() throws Exception {
+        start(model("getAllStudents", 300, 50));
+
+        CompletableFuture<Object> read = client.sendRequestAsync("get_all_students", null);
+        CompletableFuture<Object> first = client.sendRequestAsync("add_to_high_queue", 1);
+        CompletableFuture<Object> second = client.sendRequestAsync("add_to_high_queue", 2);
+        CompletableFuture<Object> after = client.sendRequestAsync("get_student_count", null);
+        CompletableFuture.allOf(read, first, second, after).get(10, TimeUnit.SECONDS);
+
+        // Hver ændring venter på alt der er sendt før den, og læsningen efter venter på dem
+        assertBefore("end:getAllStudents", "start:addToHighPerformanceQueue[1]");
+        assertBefore("end:addToHighPerformanceQueue[1]", "start:addToHighPerformanceQueue[2]");
+        assertBefore("end:addToHighPerformanceQueue[2]", "start:getStudentCount");
+    }
+
+    private void assertBefore(String earlier, String later) {
+        int earlierIndex = calls.indexOf(earlier);
+        int laterIndex = calls.indexOf(later);
+        assertTrue("Mangler kald: " + calls, earlierIndex >= 0 && laterIndex >= 0);
+        assertTrue(earlier + " burde komme før " + later + ": " + calls, earlierIndex < laterIndex);
+    }
+}
@@ -0,0 +1,199 @@
+package server.test;
+
+import org.junit.Assume;
+import org.junit.Test;
+import server.network.SocketServer;
+import server.network.TransportMode;
+import util.FrameCodec;
+import util.Message;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Sammenligner serverens transporter ved mange samtidige klienter, både i
+ * tomgang og aktive. Klienterne kører på virtuelle tråde i samme JVM, og
+ * serveren får en FakeServerModel hvor hvert kald blokerer som et JDBC-kald.
+ *
+ * Kører kun når antal klienter angives med -Dbenchmark.connections,
+ * f.eks. -Dbenchmark.connections=100,1000, så den almindelige testkørsel
+ * ikke venter på den.
+ * Kørslen med 10000 klienter kræver mindst 2 x 10000 filhåndtag
+ * (ulimit -n), da begge ender af forbindelserne ligger i samme proces:
+ * -Dbenchmark.connections=100,1000,10000
+ */
+public class ConnectionScalingBenchmark {
+    private static final int BASE_PORT = 9800;
+    private static final long MODEL_LATENCY_MS = 5;
+    private static final int REQUESTS_PER_CLIENT = 5;
+    private static final long WELCOME_TIMEOUT_MS = 5000;
+    private static final long ACTIVE_TIMEOUT_MS = 60000;
+
+    private int nextPort = BASE_PORT;
+
+    @Test
+    public void testConnectionScaling() throws Exception {
+        String sizes = System.getProperty("benchmark.connections");
+        Assume.assumeTrue("Angiv -Dbenchmark.connections for at køre benchmarken", sizes != null);
+        TransportMode[] modes = {TransportMode.THREAD_POOL, TransportMode.VIRTUAL_THREADS, TransportMode.NIO};
+
+        System.out.printf("%-16s %7s %8s %9s %9s %8s %10s %8s %8s%n", "transport", "clients", "served",
+                "connect", "threads", "heap MB", "req/s", "p50 ms", "p99 ms");
+        for (String size : sizes.split(",")) {
+            int clients = Integer.parseInt(size.trim());
+            for (TransportMode mode : modes) {
+                Result result = run(mode, clients);
+                System.out.println(result);
+
+                if (mode == TransportMode.THREAD_POOL) {
+                    assertTrue("Den faste pool kan højst betjene 20 klienter ad gangen", result.served <= 20);
+                } else {
+                    assertEquals(mode + " burde betjene alle klienter", clients, result.served);
+                }
+            }
+        }
+    }
+
+    private Result run(TransportMode mode, int clients) throws Exception {
+        int port = nextPort++;
+        SocketServer server = new SocketServer(FakeServerModel.create(MODEL_LATENCY_MS), port, mode);
+        server.startServer();
+
+        List<Socket> sockets = Collections.synchronizedList(new ArrayList<>());
+        ExecutorService clientThreads = Executors.newVirtualThreadPerTaskExecutor();
+        Result result = new Result(mode, clients);
+        try {
+            int threadsBefore = Thread.activeCount();
+            long heapBefore = usedHeap();
+
+            // Idle: all clients connect and wait for the welcome message
+            List<Client> served = Collections.synchronizedList(new ArrayList<>());
+            CountDownLatch connected = new CountDownLatch(clients);
+            long start = System.nanoTime();
+            for (int i = 0; i < clients; i++) {
+                clientThreads.execute(() -> {
+                    try {
+                        Socket socket = new Socket("localhost", port);
+                        sockets.add(socket);
+                        socket.setSoTimeout((int) WELCOME_TIMEOUT_MS);
+                        Client client = new Client(socket);
+                        if ("welcome".equals(FrameCodec.readFrame(client.in).getType())) {
+                            served.add(client);
+                        }
+                    } catch (IOException e) {
+                        // Not served within the timeout, or the connection was refused
+                    } finally {
+                        connected.countDown();
+                    }
+                });
+            }
+            connected.await(WELCOME_TIMEOUT_MS * 4, TimeUnit.MILLISECONDS);
+            result.connectMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            result.served = served.size();
+            result.serverThreads = Thread.activeCount() - threadsBefore;
+            result.heapMegabytes = (usedHeap() - heapBefore) / (1024.0 * 1024.0);
+
+            // Active: every served client sends requests back to back
+            ConcurrentLinkedQueue<Long> latencies = new ConcurrentLinkedQueue<>();
+            AtomicInteger completed = new AtomicInteger();
+            CountDownLatch done = new CountDownLatch(served.size());
+            start = System.nanoTime();
+            for (Client client : served) {
+                clientThreads.execute(() -> {
+                    try {
+                        client.socket.setSoTimeout((int) ACTIVE_TIMEOUT_MS);
+                        for (int r = 0; r < REQUESTS_PER_CLIENT; r++) {
+                            long sent = System.nanoTime();
+                            FrameCodec.writeFrame(client.out, new Message("get_all_laptops", null));
+                            client.out.flush();
+                            FrameCodec.readFrame(client.in);
+                            latencies.add(System.nanoTime() - sent);
+                            completed.incrementAndGet();
+                        }
+                    } catch (IOException e) {
+                        // Counted as not completed
+                    } finally {
+                        done.countDown();
+                    }
+                });
+            }
+            done.await(ACTIVE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+            result.requestsPerSecond = completed.get() / seconds;
+
+            List<Long> sorted = new ArrayList<>(latencies);
+            Collections.sort(sorted);
+            result.p50Millis = percentile(sorted, 0.50);
+            result.p99Millis = percentile(sorted, 0.99);
+        } finally {
+            for (Socket socket : new ArrayList<>(sockets)) {
+                socket.close();
+            }
+            clientThreads.shutdownNow();
+            server.stopServer();
+        }
+        return result;
+    }
+
+    private static double percentile(List<Long> sorted, double percentile) {
+        if (sorted.isEmpty()) {
+            return Double.NaN;
+        }
+        int index = Math.min(sorted.size() - 1, (int) Math.ceil(percentile * sorted.size()) - 1);
+        return sorted.get(Math.max(0, index)) / 1_000_000.0;
+    }
+
+    private static long usedHeap() {
+        System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static final class Client {
+        final Socket socket;
+        final DataInputStream in;
+        final DataOutputStream out;
+
+        Client(Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = FrameCodec.input(socket.getInputStream());
+            this.out = FrameCodec.output(socket.getOutputStream());
+        }
+    }
+
+    private static final class Result {
+        final TransportMode mode;
+        final int clients;
+        int served;
+        long connectMillis;
+        int serverThreads;
+        double heapMegabytes;
+        double requestsPerSecond;
+        double p50Millis;
+        double p99Millis;
+
+        Result(TransportMode mode, int clients) {
+            this.mode = mode;
+            this.clients = clients;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-16s %7d %8d %7dms %9d %8.1f %10.0f %8.1f %8.1f", mode, clients, served,
+                    connectMillis, serverThreads, heapMegabytes, requestsPerSecond, p50Millis, p99Millis);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package server.test;
+
+import org.junit.Test;
+import server.model.EventBus;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tester modellens event bus: at events leveres i den rækkefølge de blev
+ * udgivet, at udgiveren ikke venter på en langsom modtager, og at
+ * målingerne stemmer.
+ */
+public class EventBusTest {
+
+    @Test
+    public void testEventsFromEachProducerArriveInOrder() throws Exception {
+        int producers = 4;
+        int perProducer = 50000;
+        List<int[]> received = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(producers * perProducer);
+        EventBus bus = new EventBus("test-events", 1024, (type, value) -> {
+            received.add((int[]) value);
+            done.countDown();
+        });
+
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            int producer = p;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    bus.publish("event", new int[]{producer, i});
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue("Alle events burde leveres", done.await(30, TimeUnit.SECONDS));
+        System.out.println(bus);
+        bus.close();
+
+        int[] last = new int[producers];
+        Arrays.fill(last, -1);
+        for (int[] event : received) {
+            assertEquals("Events fra samme udgiver burde komme i rækkefølge", last[event[0]] + 1, event[1]);
+            last[event[0]] = event[1];
+        }
+        assertEquals(producers * perProducer, bus.getDeliveredCount());
+        assertEquals(0, bus.getQueueDepth());
+        assertTrue(bus.getMaxQueueDepth() > 0);
+    }
+
+    @Test
+    public void testPublishDoesNotWaitForSlowSubscriber() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        EventBus bus = new EventBus("test-events", 64, (type, value) -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 32; i++) {
+            bus.publish("event", i);
+        }
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue("Udgivelse burde ikke vente på modtageren, tog " + millis + " ms", millis < 1000);
+        assertEquals(0, bus.getProducerWaitCount());
+        assertTrue(bus.getQueueDepth() > 0);
+
+        release.countDown();
+        bus.close();
+        assertEquals(32, bus.getDeliveredCount());
+        assertTrue(bus.getAverageLatencyMicros() > 0);
+    }
+
+    @Test
+    public void testFullRingMakesProducerWait() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        List<Object> received = Collections.synchronizedList(new ArrayList<>());
+        EventBus bus = new EventBus("test-events", 8, (type, value) -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            received.add(value);
+        });
+
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < 100; i++) {
+                bus.publish("event", i);
+            }
+        });
+        producer.start();
+        producer.join(500);
+        assertTrue("Udgiveren burde vente, når ringen er fuld", producer.isAlive());
+
+        release.countDown();
+        producer.join(5000);
+        bus.close();
+
+        assertTrue(bus.getProducerWaitCount() > 0);
+        assertEquals("Ingen events burde gå tabt", 100, received.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, received.get(i));
+        }
+    }
+}
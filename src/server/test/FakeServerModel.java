@@ -0,0 +1,54 @@
+package server.test;
+
+import server.model.ServerModel;
+import util.SyncBundle;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * En ServerModel uden database til test af netværkslaget. Alle kald svarer
+ * med tomme lister, 0, false og et tomt øjebliksbillede, eventuelt efter en fast forsinkelse der
+ * efterligner et blokerende JDBC-kald.
+ */
+public final class FakeServerModel {
+
+    private FakeServerModel() {
+    }
+
+    /**
+     * @return En model der svarer med det samme
+     */
+    public static ServerModel create() {
+        return create(0);
+    }
+
+    /**
+     * @param latencyMillis Forsinkelse pr. kald, der ikke blot registrerer en lytter
+     * @return En model der blokerer den kaldende tråd i latencyMillis pr. kald
+     */
+    public static ServerModel create(long latencyMillis) {
+        return (ServerModel) Proxy.newProxyInstance(ServerModel.class.getClassLoader(),
+                new Class<?>[]{ServerModel.class}, (proxy, method, args) -> {
+                    Class<?> type = method.getReturnType();
+                    if (latencyMillis > 0 && type != void.class) {
+                        Thread.sleep(latencyMillis);
+                    }
+                    if (List.class.isAssignableFrom(type)) {
+                        return new ArrayList<>();
+                    }
+                    if (type == int.class) {
+                        return 0;
+                    }
+                    if (type == boolean.class) {
+                        return false;
+                    }
+                    if (type == SyncBundle.class) {
+                        return new SyncBundle(System.currentTimeMillis(), new ArrayList<>(), new ArrayList<>(),
+                                new ArrayList<>(), new ArrayList<>(), new ArrayList<>());
+                    }
+                    return null;
+                });
+    }
+}
@@ -0,0 +1,173 @@
+package server.test;
+
+import client.network.SocketClientImp;
+import org.junit.After;
+import org.junit.Test;
+import server.network.SocketServer;
+import server.network.TransportMode;
+import util.FrameCodec;
+import util.Message;
+import util.RoundTripStats;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tester heartbeats: at begge sider måler rundturstiden, at serveren lukker
+ * en forbindelse der er holdt op med at svare, og at klienten opgiver en
+ * server der er holdt op med at svare. Kræver ikke en database.
+ */
+public class HeartbeatTest {
+    private static final int TEST_PORT = 7844;
+    private static final String[] PROPERTIES = {
+            "server.heartbeat.intervalMillis", "server.heartbeat.maxMissed",
+            "client.heartbeat.intervalMillis", "client.heartbeat.maxMissed"
+    };
+
+    private SocketServer server;
+    private SocketClientImp client;
+    private Socket rawSocket;
+    private ServerSocket fakeServer;
+
+    @After
+    public void tearDown() throws IOException {
+        if (client != null) {
+            client.disconnect();
+        }
+        if (server != null) {
+            server.stopServer();
+        }
+        if (rawSocket != null) {
+            rawSocket.close();
+        }
+        if (fakeServer != null) {
+            fakeServer.close();
+        }
+        for (String property : PROPERTIES) {
+            System.clearProperty(property);
+        }
+    }
+
+    private void startServer() throws Exception {
+        server = new SocketServer(FakeServerModel.create(), TEST_PORT, TransportMode.NIO);
+        server.startServer();
+    }
+
+    @Test
+    public void testRoundTripTimeIsMeasuredOnBothSides() throws Exception {
+        System.setProperty("server.heartbeat.intervalMillis", "100");
+        System.setProperty("client.heartbeat.intervalMillis", "100");
+        startServer();
+        client = new SocketClientImp("localhost", TEST_PORT);
+
+        Thread.sleep(700);
+
+        RoundTripStats clientSide = client.getRoundTripStats();
+        assertTrue("Klienten burde have målt: " + clientSide, clientSide.getSampleCount() >= 3);
+        assertTrue(clientSide.getSmoothedMillis() > 0);
+        assertTrue(clientSide.getMinMillis() <= clientSide.getMaxMillis());
+
+        Map<String, RoundTripStats> serverSide = server.getHeartbeatMonitor().getRoundTripStats();
+        assertEquals(1, serverSide.size());
+        RoundTripStats stats = serverSide.values().iterator().next();
+        assertTrue("Serveren burde have målt: " + stats, stats.getSampleCount() >= 3);
+        assertEquals(0, server.getHeartbeatMonitor().getReapedCount());
+        assertTrue(client.isConnected());
+    }
+
+    @Test
+    public void testServerClosesConnectionThatStopsAnswering() throws Exception {
+        System.setProperty("server.heartbeat.intervalMillis", "100");
+        System.setProperty("server.heartbeat.maxMissed", "3");
+        startServer();
+
+        // En klient der svarer på det første ping og så falder i søvn
+        rawSocket = new Socket("localhost", TEST_PORT);
+        rawSocket.setSoTimeout(5000);
+        DataInputStream in = FrameCodec.input(rawSocket.getInputStream());
+        DataOutputStream out = FrameCodec.output(rawSocket.getOutputStream());
+        Message message;
+        do {
+            message = FrameCodec.readFrame(in);
+        } while (!"ping".equals(message.getType()));
+        FrameCodec.writeFrame(out, new Message("pong", message.getArgs()));
+        out.flush();
+
+        // Serveren lukker forbindelsen; indtil da læses dens pings uden at blive besvaret
+        long start = System.currentTimeMillis();
+        try {
+            while (true) {
+                FrameCodec.readFrame(in);
+            }
+        } catch (EOFException e) {
+            // Forventet
+        } catch (SocketTimeoutException e) {
+            fail("Serveren lukkede ikke forbindelsen");
+        } catch (IOException e) {
+            // Nulstillet forbindelse tæller også som lukket
+        }
+        long millis = System.currentTimeMillis() - start;
+
+        assertTrue("Lukket efter " + millis + " ms", millis < 2000);
+        assertEquals(1, server.getHeartbeatMonitor().getReapedCount());
+    }
+
+    @Test
+    public void testConnectionThatNeverAnsweredIsKept() throws Exception {
+        System.setProperty("server.heartbeat.intervalMillis", "100");
+        System.setProperty("server.heartbeat.maxMissed", "2");
+        startServer();
+
+        // En ældre klient der ikke kender ping
+        rawSocket = new Socket("localhost", TEST_PORT);
+        Thread.sleep(600);
+
+        assertEquals(0, server.getHeartbeatMonitor().getReapedCount());
+        assertTrue(server.getHeartbeatMonitor().getPingCount() >= 3);
+    }
+
+    @Test
+    public void testClientGivesUpOnSilentServer() throws Exception {
+        System.setProperty("client.heartbeat.intervalMillis", "100");
+        System.setProperty("client.heartbeat.maxMissed", "3");
+
+        // En server der besvarer forespørgsler men aldrig et ping, som om den hang
+        fakeServer = new ServerSocket(TEST_PORT);
+        Thread fake = new Thread(() -> {
+            try (Socket socket = fakeServer.accept()) {
+                DataInputStream in = FrameCodec.input(socket.getInputStream());
+                DataOutputStream out = FrameCodec.output(socket.getOutputStream());
+                while (true) {
+                    Message request = FrameCodec.readFrame(in);
+                    if (request.getRequestId() != 0) {
+                        FrameCodec.writeFrame(out, new Message("response", null, 0, request.getRequestId()));
+                        out.flush();
+                    }
+                }
+            } catch (IOException e) {
+                // Klienten har lukket forbindelsen
+            }
+        });
+        fake.setDaemon(true);
+        fake.start();
+
+        client = new SocketClientImp("localhost", TEST_PORT);
+        assertTrue(client.isConnected());
+
+        long deadline = System.currentTimeMillis() + 3000;
+        while (client.isConnected() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+
+        assertFalse("Klienten burde have opgivet serveren", client.isConnected());
+        assertEquals(1, client.getHeartbeatTimeoutCount());
+    }
+}
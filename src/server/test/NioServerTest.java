@@ -0,0 +1,215 @@
+package server.test;
+
+import org.junit.After;
+import org.junit.Test;
+import server.model.ServerModel;
+import server.network.SocketServer;
+import server.network.TransportMode;
+import util.BinaryMessageCodec;
+import util.FrameCodec;
+import util.Message;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test af NIO-transporten og længdepræfikset framing.
+ * Serveren får en falsk ServerModel, så der ikke kræves en database.
+ */
+public class NioServerTest {
+    private static final int TEST_PORT = 9997;
+
+    private SocketServer server;
+    private final List<Socket> sockets = new ArrayList<>();
+
+    @After
+    public void tearDown() throws IOException {
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+        if (server != null && server.isRunning()) {
+            server.stopServer();
+        }
+    }
+
+    private Socket connect() throws IOException {
+        Socket socket = new Socket("localhost", TEST_PORT);
+        socket.setSoTimeout(5000);
+        sockets.add(socket);
+        return socket;
+    }
+
+    @Test
+    public void testDecoderHandlesFragmentedFrames() throws IOException {
+        byte[] first = FrameCodec.encode(new Message("get_all_laptops", null));
+        byte[] second = FrameCodec.encode(new Message("get_student_by_id", 42));
+        ByteBuffer both = ByteBuffer.allocate(first.length + second.length).put(first).put(second);
+        byte[] stream = both.array();
+
+        // Fød decoderen en byte ad gangen, som en langsom forbindelse ville levere dem
+        FrameCodec.Decoder decoder = new FrameCodec.Decoder();
+        List<Message> decoded = new ArrayList<>();
+        for (byte b : stream) {
+            Message message = decoder.next(ByteBuffer.wrap(new byte[]{b}));
+            if (message != null) {
+                decoded.add(message);
+            }
+        }
+
+        assertEquals(2, decoded.size());
+        assertEquals("get_all_laptops", decoded.get(0).getType());
+        assertEquals(42, decoded.get(1).getArgs());
+        assertFalse(decoder.isPartial());
+    }
+
+    @Test(expected = IOException.class)
+    public void testDecoderRejectsInvalidLength() throws IOException {
+        new FrameCodec.Decoder().next(ByteBuffer.wrap(new byte[]{(byte) 0xff, 0, 0, 0}));
+    }
+
+    @Test
+    public void testManyIdleClientsWithFewThreads() throws Exception {
+        server = new SocketServer(FakeServerModel.create(), TEST_PORT, TransportMode.NIO);
+        server.startServer();
+        int threadsBefore = Thread.activeCount();
+
+        // Flere klienter end den gamle pool på 20 tråde kunne betjene
+        int clients = 200;
+        for (int i = 0; i < clients; i++) {
+            Message welcome = FrameCodec.readFrame(FrameCodec.input(connect().getInputStream()));
+            assertEquals("welcome", welcome.getType());
+        }
+
+        assertTrue("Tomgangsklienter burde ikke koste en tråd hver",
+                Thread.activeCount() - threadsBefore < 50);
+
+        // Den sidste klient får stadig svar på en forespørgsel
+        Socket last = sockets.get(sockets.size() - 1);
+        DataOutputStream out = FrameCodec.output(last.getOutputStream());
+        FrameCodec.writeFrame(out, new Message("get_all_laptops", null));
+        out.flush();
+        DataInputStream in = FrameCodec.input(last.getInputStream());
+        Message response = FrameCodec.readFrame(in);
+        assertEquals("response", response.getType());
+        assertTrue(response.getArgs() instanceof List);
+    }
+
+    @Test
+    public void testRequestsFromOneClientAreAnsweredInOrder() throws Exception {
+        server = new SocketServer(FakeServerModel.create(), TEST_PORT, TransportMode.NIO);
+        server.startServer();
+
+        Socket socket = connect();
+        DataInputStream in = FrameCodec.input(socket.getInputStream());
+        DataOutputStream out = FrameCodec.output(socket.getOutputStream());
+        assertEquals("welcome", FrameCodec.readFrame(in).getType());
+
+        FrameCodec.writeFrame(out, new Message("get_student_count", null));
+        FrameCodec.writeFrame(out, new Message("get_all_students", null));
+        FrameCodec.writeFrame(out, new Message("unknown_type", null));
+        out.flush();
+
+        assertEquals(0, FrameCodec.readFrame(in).getArgs());
+        assertTrue(FrameCodec.readFrame(in).getArgs() instanceof List);
+        assertEquals("Unknown message type: unknown_type", FrameCodec.readFrame(in).getArgs());
+    }
+
+    @Test
+    public void testMalformedFrameOnlyClosesItsOwnConnection() throws Exception {
+        // Én event loop, så begge klienter deler den
+        System.setProperty("server.eventLoops", "1");
+        try {
+            server = new SocketServer(FakeServerModel.create(), TEST_PORT, TransportMode.NIO);
+            server.startServer();
+        } finally {
+            System.clearProperty("server.eventLoops");
+        }
+
+        Socket good = connect();
+        DataInputStream goodIn = FrameCodec.input(good.getInputStream());
+        DataOutputStream goodOut = FrameCodec.output(good.getOutputStream());
+        assertEquals("welcome", FrameCodec.readFrame(goodIn).getType());
+
+        // Objektarrays indlejret så dybt at afkodningen løber tør for stak
+        int depth = 200_000;
+        ByteBuffer frame = ByteBuffer.allocate(FrameCodec.HEADER_SIZE + 3 + depth * 2);
+        frame.putInt(frame.capacity() - FrameCodec.HEADER_SIZE).put(BinaryMessageCodec.ID).put((byte) 8).put((byte) 0);
+        for (int i = 0; i < depth; i++) {
+            frame.put((byte) 14).put((byte) 1);
+        }
+        Socket bad = connect();
+        DataInputStream badIn = FrameCodec.input(bad.getInputStream());
+        assertEquals("welcome", FrameCodec.readFrame(badIn).getType());
+        bad.getOutputStream().write(frame.array());
+        bad.getOutputStream().flush();
+        try {
+            FrameCodec.readFrame(badIn);
+            fail("Forbindelsen med den ødelagte ramme burde lukkes");
+        } catch (IOException expected) {
+            // Lukket af serveren
+        }
+
+        // Den anden klient på samme loop betjenes stadig, og nye kan komme til
+        FrameCodec.writeFrame(goodOut, new Message("get_student_count", null));
+        goodOut.flush();
+        assertEquals(0, FrameCodec.readFrame(goodIn).getArgs());
+        assertEquals("welcome", FrameCodec.readFrame(FrameCodec.input(connect().getInputStream())).getType());
+    }
+
+    @Test
+    public void testStopClosesTheModelAfterRunningRequests() throws Exception {
+        ServerModel fake = FakeServerModel.create(200);
+        AtomicInteger countsFinished = new AtomicInteger();
+        AtomicInteger countsWhenClosed = new AtomicInteger(-1);
+        ServerModel model = (ServerModel) Proxy.newProxyInstance(ServerModel.class.getClassLoader(),
+                new Class<?>[]{ServerModel.class}, (proxy, method, args) -> {
+                    if ("close".equals(method.getName())) {
+                        countsWhenClosed.set(countsFinished.get());
+                        return null;
+                    }
+                    Object result = method.invoke(fake, args);
+                    if ("getStudentCount".equals(method.getName())) {
+                        countsFinished.incrementAndGet();
+                    }
+                    return result;
+                });
+        server = new SocketServer(model, TEST_PORT, TransportMode.NIO);
+        server.startServer();
+
+        Socket socket = connect();
+        DataInputStream in = FrameCodec.input(socket.getInputStream());
+        DataOutputStream out = FrameCodec.output(socket.getOutputStream());
+        assertEquals("welcome", FrameCodec.readFrame(in).getType());
+        FrameCodec.writeFrame(out, new Message("get_student_count", null));
+        out.flush();
+        Thread.sleep(50);
+
+        // Modellen lukkes først når den igangværende forespørgsel er færdig
+        server.stopServer();
+        assertEquals(1, countsWhenClosed.get());
+    }
+
+    @Test
+    public void testThreadPoolTransportUsesSameFraming() throws Exception {
+        server = new SocketServer(FakeServerModel.create(), TEST_PORT, TransportMode.THREAD_POOL);
+        server.startServer();
+
+        Socket socket = connect();
+        DataInputStream in = FrameCodec.input(socket.getInputStream());
+        DataOutputStream out = FrameCodec.output(socket.getOutputStream());
+        assertEquals("welcome", FrameCodec.readFrame(in).getType());
+
+        FrameCodec.writeFrame(out, new Message("get_student_count", null));
+        out.flush();
+        assertEquals(0, FrameCodec.readFrame(in).getArgs());
+    }
+}
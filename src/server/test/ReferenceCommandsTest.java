@@ -0,0 +1,148 @@
+package server.test;
+
+import client.network.SocketClientImp;
+import enums.PerformanceTypeEnum;
+import objects.Laptop;
+import objects.Reservation;
+import objects.Student;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import server.model.ServerModel;
+import server.network.SocketServer;
+import server.network.TransportMode;
+import util.BinaryMessageCodec;
+import util.FrameCodec;
+import util.Message;
+
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tester at reservationer og masseoprettelser sender nøgler og felter i
+ * stedet for hele objekter: at serveren slår den studerende og laptoppen op
+ * i sine egne data, at en forældet kopi hos klienten ikke bestemmer noget,
+ * og at beskederne bliver mindre. Kræver ikke en database.
+ */
+public class ReferenceCommandsTest {
+    private static final int TEST_PORT = 7847;
+    private static final Date DEGREE_END = new Date(1893456000000L);
+
+    private SocketServer server;
+    private SocketClientImp client;
+    private final Student student = new Student("Anna", DEGREE_END, "Software Engineering", 123456,
+            "anna@via.dk", 12345678, PerformanceTypeEnum.HIGH);
+    private final Laptop laptop = new Laptop("Dell", "XPS", 512, 16, PerformanceTypeEnum.HIGH);
+    private final List<Object[]> reservationArgs = new CopyOnWriteArrayList<>();
+    private final List<Object[]> studentArgs = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        server = new SocketServer(model(), TEST_PORT, TransportMode.NIO);
+        server.startServer();
+        client = new SocketClientImp("localhost", TEST_PORT);
+    }
+
+    @After
+    public void tearDown() {
+        if (client != null) {
+            client.disconnect();
+        }
+        if (server != null) {
+            server.stopServer();
+        }
+    }
+
+    private ServerModel model() {
+        ServerModel fake = FakeServerModel.create();
+        return (ServerModel) Proxy.newProxyInstance(ServerModel.class.getClassLoader(),
+                new Class<?>[]{ServerModel.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getStudentByID":
+                            return (int) args[0] == student.getViaId() ? student : null;
+                        case "getLaptopByUUID":
+                            return laptop.getId().equals(args[0]) ? laptop : null;
+                        case "createReservation":
+                            reservationArgs.add(args);
+                            return new Reservation((Student) args[0], (Laptop) args[1]);
+                        case "createStudent":
+                            studentArgs.add(args);
+                            return new Student((String) args[0], (Date) args[1], (String) args[2], (int) args[3],
+                                    (String) args[4], (int) args[5], (PerformanceTypeEnum) args[6]);
+                        default:
+                            return method.invoke(fake, args);
+                    }
+                });
+    }
+
+    /**
+     * En kopi som klienten kunne have fra før en ændring på serveren.
+     */
+    private Student staleCopy() {
+        return new Student("Anna Gammelnavn", DEGREE_END, "ICT Engineering", student.getViaId(),
+                "gammel@via.dk", 87654321, PerformanceTypeEnum.LOW);
+    }
+
+    @Test
+    public void testServerResolvesReservationFromItsOwnData() {
+        Laptop staleLaptop = new Laptop(laptop.getId(), "Dell", "XPS", 512, 16, PerformanceTypeEnum.LOW);
+        staleLaptop.setStateFromDatabase("LoanedState");
+
+        Reservation reservation = client.createReservation(staleCopy(), staleLaptop);
+
+        assertNotNull(reservation);
+        assertEquals(1, reservationArgs.size());
+        assertTrue("Serverens egen studerende burde bruges", student == reservationArgs.get(0)[0]);
+        assertTrue("Serverens egen laptop burde bruges", laptop == reservationArgs.get(0)[1]);
+        assertEquals("Anna", reservation.getStudent().getName());
+        assertEquals(PerformanceTypeEnum.HIGH, reservation.getLaptop().getPerformanceType());
+    }
+
+    @Test
+    public void testUnknownKeysAreRejected() throws Exception {
+        Student unknown = new Student("Bo", DEGREE_END, "Data Science", 999999, "bo@via.dk", 11111111,
+                PerformanceTypeEnum.LOW);
+        assertNull(client.createReservation(unknown, laptop));
+        assertNull(client.createReservation(student, new Laptop("HP", "EliteBook", 256, 8, PerformanceTypeEnum.LOW)));
+        assertTrue(reservationArgs.isEmpty());
+
+        // Ældre klienter sender hele objekter; de slås også op på nøglen
+        Object response = client.sendRequestAsync("create_reservation", new Object[]{staleCopy(), laptop})
+                .get(5, TimeUnit.SECONDS);
+        assertTrue(response instanceof Reservation);
+        assertSame(student, reservationArgs.get(0)[0]);
+    }
+
+    @Test
+    public void testBatchCreateSendsOnlyTheFields() {
+        List<Student> students = client.createStudents(Arrays.asList(student, staleCopy()), false);
+
+        assertEquals(2, students.size());
+        assertEquals(2, studentArgs.size());
+        assertEquals("Anna Gammelnavn", studentArgs.get(1)[0]);
+        assertEquals(87654321, studentArgs.get(1)[5]);
+    }
+
+    @Test
+    public void testReferencesAreSmallerThanObjects() throws Exception {
+        BinaryMessageCodec codec = new BinaryMessageCodec();
+        int objects = FrameCodec.encode(new Message("create_reservation", new Object[]{student, laptop}), codec).length;
+        int references = FrameCodec.encode(new Message("create_reservation",
+                new Object[]{student.getViaId(), laptop.getId()}), codec).length;
+
+        int laptopObject = FrameCodec.encode(new Message("create_laptop", laptop), codec).length;
+        int laptopFields = FrameCodec.encode(new Message("create_laptop", new Object[]{laptop.getBrand(),
+                laptop.getModel(), laptop.getGigabyte(), laptop.getRam(), laptop.getPerformanceType()}), codec).length;
+
+        System.out.printf("create_reservation: %d B som objekter, %d B som nøgler%n", objects, references);
+        System.out.printf("create_laptop: %d B som objekt, %d B som felter%n", laptopObject, laptopFields);
+        assertTrue(references < objects);
+        assertTrue(laptopFields < laptopObject);
+    }
+}
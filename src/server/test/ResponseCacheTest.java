@@ -0,0 +1,128 @@
+package server.test;
+
+import client.network.SocketClientImp;
+import enums.PerformanceTypeEnum;
+import objects.Laptop;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import server.model.ServerModel;
+import server.network.ResponseCache;
+import server.network.SocketServer;
+import server.network.TransportMode;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tester cachen af svar på læsninger: at gentagne læsninger ikke når
+ * modellen, at en klients egen ændring er synlig i dens næste læsning, og
+ * at events kun fjerner de svar der læste det ændrede. Kræver ikke en
+ * database; modellen her holder laptops i hukommelsen.
+ */
+public class ResponseCacheTest {
+    private static final int TEST_PORT = 7846;
+
+    private SocketServer server;
+    private SocketClientImp client;
+    private final List<Laptop> laptops = new CopyOnWriteArrayList<>();
+    private final AtomicInteger laptopReads = new AtomicInteger();
+    private final Map<String, PropertyChangeListener> listeners = new ConcurrentHashMap<>();
+
+    @Before
+    public void setUp() throws Exception {
+        laptops.add(new Laptop("Dell", "XPS", 512, 16, PerformanceTypeEnum.HIGH));
+        server = new SocketServer(model(), TEST_PORT, TransportMode.NIO);
+        server.startServer();
+        client = new SocketClientImp("localhost", TEST_PORT);
+    }
+
+    @After
+    public void tearDown() {
+        if (client != null) {
+            client.disconnect();
+        }
+        if (server != null) {
+            server.stopServer();
+        }
+    }
+
+    private ServerModel model() {
+        ServerModel fake = FakeServerModel.create();
+        return (ServerModel) Proxy.newProxyInstance(ServerModel.class.getClassLoader(),
+                new Class<?>[]{ServerModel.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getAllLaptops":
+                            laptopReads.incrementAndGet();
+                            return new ArrayList<>(laptops);
+                        case "createLaptop": {
+                            Laptop laptop = new Laptop((String) args[0], (String) args[1], (int) args[2],
+                                    (int) args[3], (PerformanceTypeEnum) args[4]);
+                            laptops.add(laptop);
+                            return laptop;
+                        }
+                        case "addListener":
+                            listeners.put((String) args[0], (PropertyChangeListener) args[1]);
+                            return null;
+                        default:
+                            return method.invoke(fake, args);
+                    }
+                });
+    }
+
+    /**
+     * Som når en anden del af serveren ændrer data og modellen sender et event.
+     */
+    private void fire(String serverEvent, Object value) {
+        listeners.get(serverEvent).propertyChange(new PropertyChangeEvent(this, serverEvent, null, value));
+    }
+
+    @Test
+    public void testRepeatedReadsAreAnsweredFromTheCache() {
+        for (int i = 0; i < 5; i++) {
+            List<Laptop> received = client.getAllLaptops();
+            assertEquals(1, received.size());
+            assertEquals("Dell", received.get(0).getBrand());
+        }
+
+        ResponseCache cache = server.getCommandRegistry().getResponseCache();
+        assertEquals(1, laptopReads.get());
+        assertEquals(4, cache.getHitCount());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testOwnChangeIsVisibleInTheNextRead() {
+        assertEquals(1, client.getAllLaptops().size());
+
+        // Modellen her sender intet event; ændringen skal alligevel fjerne det gemte svar
+        assertNotNull(client.createLaptop("Lenovo", "T14", 256, 8, PerformanceTypeEnum.LOW));
+        assertEquals(2, client.getAllLaptops().size());
+        assertEquals(2, laptopReads.get());
+    }
+
+    @Test
+    public void testEventsOnlyDropResponsesThatReadWhatChanged() {
+        client.getAllLaptops();
+
+        // Studerende indgår ikke i laptoplisten
+        fire("server_student_created", null);
+        client.getAllLaptops();
+        assertEquals(1, laptopReads.get());
+
+        laptops.add(new Laptop("HP", "EliteBook", 256, 8, PerformanceTypeEnum.LOW));
+        fire("server_laptop_created", laptops.get(1));
+        assertEquals(2, client.getAllLaptops().size());
+        assertEquals(2, laptopReads.get());
+        assertEquals(1, server.getCommandRegistry().getResponseCache().getInvalidationCount());
+    }
+}
@@ -2,18 +2,24 @@ package server.test;
 
 import enums.PerformanceTypeEnum;
 import objects.Laptop;
+import objects.Reservation;
 import objects.Student;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import server.model.ServerModel;
 import server.model.ServerModelImpl;
+import util.SyncBundle;
 
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
@@ -223,4 +229,43 @@ public class ServerModelTest {
             fail("Fejl ved test af reservation: " + e.getMessage());
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testSyncBundleIsConsistent() {
+        SyncBundle bundle = serverModel.getSyncBundle();
+        assertNotNull("Sync-snapshot burde kunne hentes", bundle);
+        assertEquals(SyncBundle.FORMAT_VERSION, bundle.getFormatVersion());
+
+        // Alle dele kommer fra samme snapshot, så en aktiv reservations laptop
+        // skal også stå som udlånt i laptop-listen
+        Map<UUID, Laptop> laptops = new HashMap<>();
+        for (Laptop laptop : bundle.getLaptops()) {
+            laptops.put(laptop.getId(), laptop);
+        }
+        for (Reservation reservation : bundle.getActiveReservations()) {
+            Laptop laptop = laptops.get(reservation.getLaptop().getId());
+            assertNotNull("Reservationens laptop burde være i snapshot'et", laptop);
+            assertTrue("Laptop med aktiv reservation burde være udlånt", laptop.isLoaned());
+        }
+    }
+
+    @Test
+    public void testConcurrentSyncRequests() throws InterruptedException {
+        int clients = 20;
+        CountDownLatch done = new CountDownLatch(clients);
+        List<SyncBundle> bundles = Collections.synchronizedList(new ArrayList<>());
+
+        for (int i = 0; i < clients; i++) {
+            new Thread(() -> {
+                bundles.add(serverModel.getSyncBundle());
+                done.countDown();
+            }).start();
+        }
+
+        assertTrue("Alle sync-forespørgsler burde blive færdige", done.await(60, TimeUnit.SECONDS));
+        assertEquals(clients, bundles.size());
+        for (SyncBundle bundle : bundles) {
+            assertNotNull("Alle klienter burde få et snapshot", bundle);
+        }
+    }
+}
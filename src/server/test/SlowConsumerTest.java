@@ -0,0 +1,168 @@
+package server.test;
+
+import org.junit.After;
+import org.junit.Test;
+import server.network.ConnectionPool;
+import server.network.SlowConsumerPolicy;
+import server.network.SocketServer;
+import server.network.TransportMode;
+import util.FrameCodec;
+import util.Message;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tester at broadcasts ikke bremses af en klient der er holdt op med at
+ * læse: den hurtige klient får alle beskeder, og den langsomme håndteres
+ * efter den valgte politik. Kræver ikke en database.
+ */
+public class SlowConsumerTest {
+    private static final int TEST_PORT = 9996;
+    private static final int BROADCASTS = 2000;
+    private static final int BATCH = 50;
+    // Stort nok til at fylde både socket-buffere og den udgående kø på få hundrede beskeder
+    private static final String PAYLOAD = "x".repeat(16 * 1024);
+
+    private SocketServer server;
+    private final List<Socket> sockets = new ArrayList<>();
+
+    @After
+    public void tearDown() throws IOException {
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+        if (server != null && server.isRunning()) {
+            server.stopServer();
+        }
+    }
+
+    @Test
+    public void testDisconnectPolicy() throws Exception {
+        ConnectionPool pool = run(TransportMode.NIO, SlowConsumerPolicy.DISCONNECT);
+
+        assertEquals(1, pool.getSlowConsumerDisconnectCount());
+        assertEquals("Kun den hurtige klient burde være tilbage", 1, pool.getConnectionCount());
+    }
+
+    @Test
+    public void testResyncPolicy() throws Exception {
+        ConnectionPool pool = run(TransportMode.NIO, SlowConsumerPolicy.RESYNC);
+
+        assertTrue("Den langsomme klient burde være resynkroniseret", pool.getResyncCount() > 0);
+        assertEquals(2, pool.getConnectionCount());
+    }
+
+    @Test
+    public void testDropPolicy() throws Exception {
+        ConnectionPool pool = run(TransportMode.NIO, SlowConsumerPolicy.DROP);
+
+        assertTrue(pool.getDroppedBroadcastCount() > 0);
+        assertEquals(2, pool.getConnectionCount());
+    }
+
+    @Test
+    public void testBlockingTransportDoesNotWaitForSlowClient() throws Exception {
+        ConnectionPool pool = run(TransportMode.VIRTUAL_THREADS, SlowConsumerPolicy.DISCONNECT);
+
+        assertEquals(1, pool.getSlowConsumerDisconnectCount());
+    }
+
+    /**
+     * Forbinder en hurtig og en langsom klient og sender BROADCASTS beskeder.
+     * Den hurtige klient skal modtage dem alle, uden at broadcast venter på
+     * den langsomme.
+     */
+    private ConnectionPool run(TransportMode mode, SlowConsumerPolicy policy) throws Exception {
+        server = new SocketServer(FakeServerModel.create(), TEST_PORT, mode);
+        server.getConnectionPool().setSlowConsumerPolicy(policy);
+        server.startServer();
+
+        Client fast = register(connect(64 * 1024));
+        AtomicInteger received = new AtomicInteger();
+        Thread reader = new Thread(() -> {
+            try {
+                while (true) {
+                    if ("server_error".equals(FrameCodec.readFrame(fast.in).getType())) {
+                        received.incrementAndGet();
+                    }
+                }
+            } catch (IOException e) {
+                // Forbindelsen er lukket
+            }
+        });
+        reader.setDaemon(true);
+        reader.start();
+
+        // Den langsomme klient registrerer sig og læser derefter intet
+        register(connect(4 * 1024));
+        assertEquals(2, server.getConnectedClientCount());
+
+        long start = System.nanoTime();
+        for (int sent = 0; sent < BROADCASTS; ) {
+            for (int i = 0; i < BATCH; i++, sent++) {
+                server.broadcastToAllClients(new Message("server_error", PAYLOAD));
+            }
+            // Den hurtige klient følger med, så dens kø aldrig bliver fuld
+            long deadline = System.currentTimeMillis() + 5000;
+            while (received.get() < sent && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+        }
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        System.out.println(mode + "/" + policy + ": " + BROADCASTS + " broadcasts in " + millis + " ms, dropped "
+                + server.getConnectionPool().getDroppedBroadcastCount());
+
+        assertEquals("Den hurtige klient burde få alle broadcasts", BROADCASTS, received.get());
+        assertTrue("Broadcast burde ikke vente på den langsomme klient", millis < 20000);
+        waitFor(() -> policy != SlowConsumerPolicy.DISCONNECT || server.getConnectedClientCount() == 1);
+        return server.getConnectionPool();
+    }
+
+    private Socket connect(int receiveBuffer) throws IOException {
+        Socket socket = new Socket();
+        // Skal sættes før forbindelsen oprettes for at have virkning
+        socket.setReceiveBufferSize(receiveBuffer);
+        socket.connect(new InetSocketAddress("localhost", TEST_PORT));
+        socket.setSoTimeout(10000);
+        sockets.add(socket);
+        return socket;
+    }
+
+    private Client register(Socket socket) throws IOException {
+        Client client = new Client(socket);
+        assertEquals("welcome", FrameCodec.readFrame(client.in).getType());
+        FrameCodec.writeFrame(client.out, new Message("new_client", null));
+        client.out.flush();
+        // Øjebliksbilledet kommer før svaret
+        assertEquals("initial_sync", FrameCodec.readFrame(client.in).getType());
+        assertEquals("response", FrameCodec.readFrame(client.in).getType());
+        return client;
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static final class Client {
+        final DataInputStream in;
+        final DataOutputStream out;
+
+        Client(Socket socket) throws IOException {
+            this.in = FrameCodec.input(socket.getInputStream());
+            this.out = FrameCodec.output(socket.getOutputStream());
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package test;
+
+import client.network.SocketClientImp;
+import enums.PerformanceTypeEnum;
+import enums.ReservationStatusEnum;
+import objects.Laptop;
+import objects.Reservation;
+import objects.Student;
+import org.junit.Test;
+import server.network.SocketServer;
+import server.network.TransportMode;
+import server.test.FakeServerModel;
+import util.BinaryMessageCodec;
+import util.CompressionStats;
+import util.DeflateCodec;
+import util.FrameCodec;
+import util.Message;
+import util.MessageCodec;
+import util.SyncBundle;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tester den forhandlede komprimering: at store svar og øjebliksbilleder
+ * bliver mindre og kommer uændret igennem, at små beskeder sendes som de
+ * er, og at en klient kan bede serveren om komprimering. Udskriver
+ * komprimeringsgrad og CPU-tid pr. beskedtype. Kræver ikke en database.
+ */
+public class CompressionTest {
+    private static final int TEST_PORT = 7839;
+
+    private final MessageCodec binary = new BinaryMessageCodec();
+    private final MessageCodec deflate = FrameCodec.codecNamed("binary" + DeflateCodec.SUFFIX);
+
+    private static List<Reservation> reservations(int count) {
+        String[] brands = {"Dell", "Lenovo", "HP", "Apple"};
+        List<Reservation> reservations = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Student student = new Student("Student " + i, new Date(1893456000000L), "Software Engineering",
+                    100000 + i, "student" + i + "@via.dk", 12345678 + i, PerformanceTypeEnum.HIGH);
+            Laptop laptop = new Laptop(new UUID(i, i * 31L), brands[i % brands.length], "Model " + (i % 10),
+                    512, 16, PerformanceTypeEnum.HIGH);
+            reservations.add(new Reservation(new UUID(7, i), student, laptop, ReservationStatusEnum.ACTIVE,
+                    new Date(1700000000000L + i * 60000L)));
+        }
+        return reservations;
+    }
+
+    private static Message roundTrip(byte[] frame) throws IOException {
+        return FrameCodec.decode(frame, FrameCodec.HEADER_SIZE, frame.length - FrameCodec.HEADER_SIZE);
+    }
+
+    @Test
+    public void testLargeResponsesShrinkAndSurvive() throws IOException {
+        List<Reservation> original = reservations(300);
+        Message response = new Message("response", original, 0, 9);
+        byte[] plain = FrameCodec.encode(response, binary);
+        byte[] compressed = FrameCodec.encode(response, deflate);
+
+        assertTrue("Komprimeret burde være mindre: " + compressed.length + " mod " + plain.length,
+                compressed.length < plain.length);
+        @SuppressWarnings("unchecked")
+        List<Reservation> decoded = (List<Reservation>) roundTrip(compressed).getArgs();
+        assertEquals(original.size(), decoded.size());
+        assertEquals(original.get(299).getReservationId(), decoded.get(299).getReservationId());
+        assertEquals(original.get(299).getStudent().getEmail(), decoded.get(299).getStudent().getEmail());
+        assertEquals(9, roundTrip(compressed).getRequestId());
+    }
+
+    @Test
+    public void testSmallMessagesAreNotDeflated() throws IOException {
+        Message small = new Message("get_laptop_by_uuid", new UUID(1, 2), 5000, 42);
+        byte[] plain = FrameCodec.encode(small, binary);
+        byte[] wrapped = FrameCodec.encode(small, deflate);
+
+        // Kun én markeringsbyte ekstra
+        assertEquals(plain.length + 1, wrapped.length);
+        assertEquals(new UUID(1, 2), roundTrip(wrapped).getArgs());
+    }
+
+    @Test
+    public void testNegotiation() throws IOException {
+        String[] offered = FrameCodec.codecNames(true);
+        assertEquals("binary" + DeflateCodec.SUFFIX, offered[0]);
+        assertEquals(deflate, FrameCodec.negotiate(offered));
+        assertEquals(BinaryMessageCodec.NAME, FrameCodec.negotiate(FrameCodec.codecNames(false)).getName());
+        assertSame(deflate, FrameCodec.codec(deflate.getId()));
+    }
+
+    @Test(expected = StreamCorruptedException.class)
+    public void testCorruptPayloadIsRejected() throws IOException {
+        byte[] frame = FrameCodec.encode(new Message("response", reservations(50)), deflate);
+        // Ødelæg den komprimerede data efter længdefeltet
+        for (int i = FrameCodec.HEADER_SIZE + 6; i < frame.length; i++) {
+            frame[i] = (byte) 0xFF;
+        }
+        roundTrip(frame);
+    }
+
+    @Test
+    public void testClientAsksServerForCompression() throws Exception {
+        SocketServer server = new SocketServer(FakeServerModel.create(), TEST_PORT, TransportMode.NIO);
+        server.startServer();
+        System.setProperty("client.compression", "true");
+        SocketClientImp client = null;
+        try {
+            client = new SocketClientImp("localhost", TEST_PORT);
+            assertEquals("binary" + DeflateCodec.SUFFIX, client.getCodecName());
+            assertTrue(client.getAllLaptops().isEmpty());
+        } finally {
+            System.clearProperty("client.compression");
+            if (client != null) {
+                client.disconnect();
+            }
+            server.stopServer();
+        }
+    }
+
+    @Test
+    public void testReportPerMessageType() throws IOException {
+        Message[] messages = {
+                new Message("response", reservations(300), 0, 1),
+                Message.event("initial_sync", new SyncBundle(System.currentTimeMillis(), new ArrayList<>(),
+                        new ArrayList<>(), reservations(200), new ArrayList<>(), new ArrayList<>()), 1),
+        };
+        for (Message message : messages) {
+            for (int i = 0; i < 20; i++) {
+                roundTrip(FrameCodec.encode(message, deflate));
+            }
+        }
+
+        CompressionStats stats = DeflateCodec.getStatistics();
+        System.out.print(stats);
+        assertTrue(stats.getCompressedCount("response:List<Reservation>") >= 20);
+        assertTrue(stats.getRatio("response:List<Reservation>") < 0.5);
+        assertTrue(stats.getRatio("initial_sync") < 1);
+        assertTrue(stats.getAverageInflateMicros("initial_sync") > 0);
+    }
+}
@@ -0,0 +1,155 @@
+package test;
+
+import database.FaultInjector;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tester FaultInjector mod en falsk forbindelse, så der ikke kræves en database.
+ */
+public class FaultInjectorTest {
+
+    private FaultInjector injector(String... settings) {
+        Properties properties = new Properties();
+        for (int i = 0; i < settings.length; i += 2) {
+            properties.setProperty(settings[i], settings[i + 1]);
+        }
+        return new FaultInjector(properties::getProperty);
+    }
+
+    /**
+     * En forbindelse hvis sætninger ikke gør noget, men husker deres query timeout.
+     */
+    private Connection fakeConnection() {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("createStatement")) {
+                        int[] timeout = {0};
+                        return Proxy.newProxyInstance(Statement.class.getClassLoader(),
+                                new Class<?>[]{Statement.class}, (p, m, a) -> {
+                                    switch (m.getName()) {
+                                        case "setQueryTimeout":
+                                            timeout[0] = (Integer) a[0];
+                                            return null;
+                                        case "getQueryTimeout":
+                                            return timeout[0];
+                                        case "execute":
+                                            return false;
+                                        case "hashCode":
+                                            return System.identityHashCode(p);
+                                        case "equals":
+                                            return p == a[0];
+                                        default:
+                                            return null;
+                                    }
+                                });
+                    }
+                    return null;
+                });
+    }
+
+    @Test
+    public void testNoRulesMeansNoDelay() throws SQLException {
+        Statement stmt = injector().wrap(fakeConnection()).createStatement();
+
+        long start = System.nanoTime();
+        stmt.execute("SELECT 1");
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 100);
+    }
+
+    @Test
+    public void testFixedLatency() throws SQLException {
+        Statement stmt = injector("fault.default.latency", "fixed:200").wrap(fakeConnection()).createStatement();
+
+        long start = System.nanoTime();
+        stmt.execute("SELECT 1");
+        assertTrue("Kaldet burde være forsinket",
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 200);
+    }
+
+    @Test
+    public void testInjectedError() throws SQLException {
+        Statement stmt = injector("fault.default.errorRate", "1").wrap(fakeConnection()).createStatement();
+
+        try {
+            stmt.execute("SELECT 1");
+            fail("Kaldet burde fejle");
+        } catch (SQLException e) {
+            assertEquals("FI000", e.getSQLState());
+        }
+    }
+
+    @Test
+    public void testLatencyAboveQueryTimeoutTimesOut() throws SQLException {
+        Statement stmt = injector("fault.default.latency", "fixed:10000").wrap(fakeConnection()).createStatement();
+        stmt.setQueryTimeout(1);
+
+        long start = System.nanoTime();
+        try {
+            stmt.execute("SELECT 1");
+            fail("Kaldet burde time ud");
+        } catch (SQLTimeoutException e) {
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertTrue("Timeout burde ske efter query timeout, ikke efter hele forsinkelsen", elapsed < 5000);
+        }
+    }
+
+    @Test
+    public void testCancelInterruptsDelay() throws Exception {
+        Statement stmt = injector("fault.default.latency", "fixed:10000").wrap(fakeConnection()).createStatement();
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        scheduler.schedule(() -> {
+            stmt.cancel();
+            return null;
+        }, 200, TimeUnit.MILLISECONDS);
+
+        long start = System.nanoTime();
+        try {
+            stmt.execute("SELECT 1");
+            fail("Kaldet burde blive annulleret");
+        } catch (SQLException e) {
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 5000);
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void testConnectionFailure() {
+        FaultInjector injector = injector("fault.connection.failureRate", "1");
+        try {
+            injector.beforeConnect();
+            fail("Forbindelsen burde fejle");
+        } catch (SQLException e) {
+            assertEquals("08001", e.getSQLState());
+        }
+    }
+
+    @Test
+    public void testMostSpecificRuleWins() throws SQLException {
+        FaultInjector injector = injector(
+                "fault.default.errorRate", "1",
+                "fault.LaptopDAO.errorRate", "0");
+
+        // Kald fra LaptopDAO følger klassens regel
+        injector.beforeStatement("LaptopDAO.getAll", 0, null);
+
+        try {
+            injector.beforeStatement("StudentDAO.getAll", 0, null);
+            fail("Andre DAO'er burde følge standardreglen");
+        } catch (SQLException e) {
+            assertEquals("FI000", e.getSQLState());
+        }
+    }
+}
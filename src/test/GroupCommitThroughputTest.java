@@ -0,0 +1,118 @@
+package test;
+
+import database.GroupCommitPipeline;
+import database.QueueDAO;
+import database.StudentDAO;
+import enums.PerformanceTypeEnum;
+import objects.Student;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Måler gennemløbet af samtidige addToQueue-kald med og uden group commit.
+ * Hver kørsel sætter de samme studerende i kø og fjerner dem igen bagefter.
+ *
+ * BEMÆRK: Denne test kræver en fungerende database-forbindelse.
+ */
+public class GroupCommitThroughputTest {
+    private static final int STUDENTS = 200;
+    private static final int CALLERS = 32;
+
+    private final StudentDAO studentDAO = new StudentDAO();
+    private final List<Student> students = new ArrayList<>();
+
+    @Before
+    public void setUp() throws SQLException {
+        int baseId = 700000 + (int) (System.currentTimeMillis() % 100000);
+        Date degreeEnd = new Date(System.currentTimeMillis() + 31536000000L);
+
+        for (int i = 0; i < STUDENTS; i++) {
+            Student student = new Student("Group Commit " + i, degreeEnd, "Test", baseId + i,
+                    "groupcommit" + (baseId + i) + "@test.com", 12345678, PerformanceTypeEnum.LOW);
+            if (studentDAO.insert(student)) {
+                students.add(student);
+            }
+        }
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        QueueDAO queueDAO = new QueueDAO();
+        for (Student student : students) {
+            queueDAO.removeFromQueue(student.getViaId(), PerformanceTypeEnum.LOW);
+            studentDAO.delete(student.getViaId());
+        }
+    }
+
+    @Test
+    public void testThroughputWithAndWithoutGroupCommit() throws Exception {
+        QueueDAO direct = new QueueDAO();
+        double directRate = run(direct);
+
+        QueueDAO grouped = new QueueDAO();
+        try (GroupCommitPipeline pipeline = new GroupCommitPipeline(
+                GroupCommitPipeline.DEFAULT_MAX_BATCH_SIZE, GroupCommitPipeline.DEFAULT_MAX_LATENCY_MILLIS)) {
+            grouped.setGroupCommitPipeline(pipeline);
+            double groupedRate = run(grouped);
+
+            System.out.printf("addToQueue med %d samtidige kaldere: direkte %.1f/s, group commit %.1f/s%n",
+                    CALLERS, directRate, groupedRate);
+            System.out.println(pipeline.getStats());
+
+            assertEquals(students.size(), pipeline.getRequestCount());
+            assertTrue("Skrivningerne burde være samlet i færre transaktioner",
+                    pipeline.getBatchCount() < pipeline.getRequestCount());
+        }
+    }
+
+    /**
+     * Sætter alle studerende i kø fra CALLERS tråde og fjerner dem igen.
+     *
+     * @return Antal addToQueue-kald pr. sekund
+     */
+    private double run(QueueDAO queueDAO) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+        CountDownLatch done = new CountDownLatch(students.size());
+        AtomicInteger succeeded = new AtomicInteger();
+
+        long start = System.nanoTime();
+        for (Student student : students) {
+            executor.execute(() -> {
+                try {
+                    if (queueDAO.addToQueue(student.getViaId(), PerformanceTypeEnum.LOW)) {
+                        succeeded.incrementAndGet();
+                    }
+                } catch (SQLException e) {
+                    System.err.println("addToQueue fejlede: " + e.getMessage());
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        assertTrue("Alle kald burde blive færdige", done.await(120, TimeUnit.SECONDS));
+        long elapsed = System.nanoTime() - start;
+        executor.shutdown();
+
+        assertEquals("Alle studerende burde komme i kø", students.size(), succeeded.get());
+
+        QueueDAO cleanup = new QueueDAO();
+        for (Student student : students) {
+            cleanup.removeFromQueue(student.getViaId(), PerformanceTypeEnum.LOW);
+        }
+
+        return students.size() / (elapsed / 1_000_000_000.0);
+    }
+}
@@ -0,0 +1,281 @@
+package test;
+
+import client.network.SocketClientImp;
+import enums.PerformanceTypeEnum;
+import enums.ReservationStatusEnum;
+import objects.Laptop;
+import objects.Reservation;
+import objects.Student;
+import org.junit.Test;
+import server.network.SocketServer;
+import server.network.TransportMode;
+import server.test.FakeServerModel;
+import util.BinaryMessageCodec;
+import util.EncodedValue;
+import util.FrameCodec;
+import util.JavaSerializationCodec;
+import util.Message;
+import util.MessageCodec;
+import util.SyncBundle;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tester den binære codec mod Java-serialisering: at alle værdityper kommer
+ * uændret igennem, og hvor meget mindre og hurtigere typiske svar bliver.
+ * Kræver ikke en database.
+ */
+public class MessageCodecTest {
+    private static final Date DEGREE_END = new Date(1893456000000L);
+
+    private final MessageCodec binary = new BinaryMessageCodec();
+    private final MessageCodec java = new JavaSerializationCodec();
+
+    private static List<Laptop> laptops(int count) {
+        String[] brands = {"Dell", "Lenovo", "HP", "Apple"};
+        List<Laptop> laptops = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Laptop laptop = new Laptop(new UUID(i, i * 31L), brands[i % brands.length], "Model " + (i % 10),
+                    256 + i % 512, 8 + i % 32, i % 2 == 0 ? PerformanceTypeEnum.HIGH : PerformanceTypeEnum.LOW);
+            if (i % 3 == 0) {
+                laptop.setStateFromDatabase("LoanedState");
+            }
+            laptops.add(laptop);
+        }
+        return laptops;
+    }
+
+    private static List<Student> students(int count) {
+        String[] titles = {"Software Engineering", "ICT Engineering", "Data Science"};
+        List<Student> students = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            students.add(new Student("Student " + i, DEGREE_END, titles[i % titles.length], 100000 + i,
+                    "student" + i + "@via.dk", 12345678 + i,
+                    i % 2 == 0 ? PerformanceTypeEnum.HIGH : PerformanceTypeEnum.LOW));
+        }
+        return students;
+    }
+
+    private static List<Reservation> reservations(int count) {
+        List<Student> students = students(count);
+        List<Laptop> laptops = laptops(count);
+        List<Reservation> reservations = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            reservations.add(new Reservation(new UUID(7, i), students.get(i), laptops.get(i),
+                    ReservationStatusEnum.ACTIVE, new Date(1700000000000L + i * 60000L)));
+        }
+        return reservations;
+    }
+
+    private Message roundTrip(Message message, MessageCodec codec) throws IOException {
+        byte[] frame = FrameCodec.encode(message, codec);
+        return FrameCodec.decode(frame, FrameCodec.HEADER_SIZE, frame.length - FrameCodec.HEADER_SIZE);
+    }
+
+    @Test
+    public void testMessageFieldsSurvive() throws IOException {
+        Message decoded = roundTrip(new Message("get_laptop_by_uuid", new UUID(1, 2), 5000, 42), binary);
+        assertEquals("get_laptop_by_uuid", decoded.getType());
+        assertEquals(new UUID(1, 2), decoded.getArgs());
+        assertEquals(5000, decoded.getTimeoutMillis());
+        assertEquals(42, decoded.getRequestId());
+        assertEquals(7, roundTrip(Message.event("laptop_created", null, 7), binary).getSequence());
+
+        // Ukendte typer sendes som streng
+        assertEquals("some_future_type", roundTrip(new Message("some_future_type", null), binary).getType());
+    }
+
+    @Test
+    public void testDomainObjectsSurvive() throws IOException {
+        Reservation original = reservations(1).get(0);
+        Reservation decoded = (Reservation) roundTrip(new Message("response", original), binary).getArgs();
+
+        assertEquals(original.getReservationId(), decoded.getReservationId());
+        assertEquals(original.getStatus(), decoded.getStatus());
+        assertEquals(original.getCreationDate(), decoded.getCreationDate());
+        assertEquals(original.getStudent().getViaId(), decoded.getStudent().getViaId());
+        assertEquals(original.getStudent().getEmail(), decoded.getStudent().getEmail());
+        assertEquals(original.getStudent().getDegreeEndDate(), decoded.getStudent().getDegreeEndDate());
+        assertEquals(original.getLaptop().getId(), decoded.getLaptop().getId());
+        assertEquals(original.getLaptop().getBrand(), decoded.getLaptop().getBrand());
+        assertTrue("Laptoppens tilstand burde følge med", decoded.getLaptop().isLoaned());
+    }
+
+    @Test
+    public void testArgumentArraysAndFallback() throws IOException {
+        Object[] args = {"Dell", "XPS", 512, 16, PerformanceTypeEnum.HIGH, -7L, true, null, new BigDecimal("1.5")};
+        Object[] decoded = (Object[]) roundTrip(new Message("create_laptop", args), binary).getArgs();
+
+        assertArrayEquals(args, decoded);
+    }
+
+    @Test
+    public void testEncodedValueIsSentAsItsValue() throws IOException {
+        List<Laptop> laptops = laptops(6);
+        EncodedValue cached = new EncodedValue(laptops);
+
+        // Første gang kodes værdien, derefter kopieres de gemte bytes
+        for (int i = 1; i <= 2; i++) {
+            Message decoded = roundTrip(new Message("response", cached, 0, i), binary);
+            assertEquals(i, decoded.getRequestId());
+            List<?> received = (List<?>) decoded.getArgs();
+            assertEquals(laptops.size(), received.size());
+            assertEquals(laptops.get(5).getBrand(), ((Laptop) received.get(5)).getBrand());
+            assertEquals(laptops.get(5).getModel(), ((Laptop) received.get(5)).getModel());
+        }
+
+        // Strenge efter de kopierede bytes skal henvise til den samme ordbog som modtagerens
+        Object[] args = {cached, "Dell", "Model 3", "ny streng"};
+        Object[] decoded = (Object[]) roundTrip(new Message("response", args), binary).getArgs();
+        assertEquals(laptops.size(), ((List<?>) decoded[0]).size());
+        assertEquals("Dell", decoded[1]);
+        assertEquals("Model 3", decoded[2]);
+        assertEquals("ny streng", decoded[3]);
+        Object[] afterString = (Object[]) roundTrip(new Message("response", new Object[]{"Dell", cached}), binary)
+                .getArgs();
+        assertEquals("Dell", ((Laptop) ((List<?>) afterString[1]).get(4)).getBrand());
+
+        // Java-serialisering sender værdien, ikke indpakningen
+        Object viaJava = roundTrip(new Message("response", cached), java).getArgs();
+        assertTrue(viaJava instanceof List);
+        assertEquals(laptops.size(), ((List<?>) viaJava).size());
+    }
+
+    @Test
+    public void testTruncatedFramesAreRejected() throws IOException {
+        byte[] frame = FrameCodec.encode(new Message("response", reservations(2), 0, 3), binary);
+        byte[] body = Arrays.copyOfRange(frame, FrameCodec.HEADER_SIZE, frame.length);
+
+        // Hvert afkortet stykke skal give en IOException, aldrig en anden fejl
+        for (int length = 0; length < body.length; length++) {
+            try {
+                FrameCodec.decode(body, 0, length);
+                fail("Afkortet til " + length + " byte burde afvises");
+            } catch (IOException expected) {
+                // Forbindelsen lukkes som ødelagt
+            }
+        }
+    }
+
+    @Test
+    public void testInvalidLengthsAreRejected() {
+        byte[][] bodies = {
+                // Objektarray med længden -1
+                {BinaryMessageCodec.ID, 8, 0, 14, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F},
+                // Objektarray med 2^31 - 1 elementer
+                {BinaryMessageCodec.ID, 8, 0, 14, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07},
+                // Streng med længden -1 og med flere byte end rammen har
+                {BinaryMessageCodec.ID, 8, 0, 5, 1, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F},
+                {BinaryMessageCodec.ID, 8, 0, 5, 1, 10, 'a', 'b'},
+                // Liste og Java-serialiseret værdi med flere elementer end rammen har
+                {BinaryMessageCodec.ID, 8, 0, 13, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07},
+                {BinaryMessageCodec.ID, 8, 0, 17, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07},
+        };
+        for (byte[] body : bodies) {
+            try {
+                FrameCodec.decode(body, 0, body.length);
+                fail("Burde afvises: " + Arrays.toString(body));
+            } catch (StreamCorruptedException expected) {
+                // Afvist før der blev allokeret plads til længden
+            } catch (IOException e) {
+                fail("Forkert undtagelse: " + e);
+            }
+        }
+    }
+
+    @Test
+    public void testSyncBundleSurvives() throws IOException {
+        SyncBundle bundle = new SyncBundle(1234L, laptops(5), students(5), reservations(3),
+                students(2), new ArrayList<>());
+        SyncBundle decoded = (SyncBundle) roundTrip(new Message("initial_sync", bundle), binary).getArgs();
+
+        assertEquals(1234L, decoded.getSnapshotTime());
+        assertEquals(5, decoded.getLaptops().size());
+        assertEquals(3, decoded.getActiveReservations().size());
+        assertEquals(2, decoded.getHighPerformanceQueue().size());
+        assertTrue(decoded.getLowPerformanceQueue().isEmpty());
+    }
+
+    @Test
+    public void testNegotiation() {
+        assertEquals(BinaryMessageCodec.NAME, FrameCodec.codecNames()[0]);
+        assertEquals(BinaryMessageCodec.NAME, FrameCodec.negotiate(new String[]{"zstd", "binary", "java"}).getName());
+        assertEquals(JavaSerializationCodec.NAME, FrameCodec.negotiate(new String[]{"zstd"}).getName());
+        assertEquals(JavaSerializationCodec.NAME, FrameCodec.negotiate(null).getName());
+    }
+
+    @Test
+    public void testClientNegotiatesBinaryWithServer() throws Exception {
+        SocketServer server = new SocketServer(FakeServerModel.create(), 7834, TransportMode.NIO);
+        server.startServer();
+        SocketClientImp client = new SocketClientImp("localhost", 7834);
+        try {
+            assertEquals(BinaryMessageCodec.NAME, client.getCodecName());
+            assertTrue(client.getAllLaptops().isEmpty());
+        } finally {
+            client.disconnect();
+            server.stopServer();
+        }
+    }
+
+    @Test
+    public void testSizeAndSpeedComparedToJavaSerialization() throws IOException {
+        Object[][] responses = {
+                {"200 laptops", laptops(200)},
+                {"500 studerende", students(500)},
+                {"300 reservationer", reservations(300)},
+                {"initial_sync", new SyncBundle(System.currentTimeMillis(), laptops(200), students(500),
+                        reservations(300), students(50), students(50))},
+                {"én laptop", laptops(1).get(0)},
+        };
+
+        System.out.printf("%-18s %10s %10s %12s %12s %12s %12s%n", "svar", "java B", "binary B",
+                "java enc µs", "bin enc µs", "java dec µs", "bin dec µs");
+        for (Object[] response : responses) {
+            Message message = new Message("response", response[1], 0, 1);
+            byte[] javaFrame = FrameCodec.encode(message, java);
+            byte[] binaryFrame = FrameCodec.encode(message, binary);
+
+            System.out.printf("%-18s %10d %10d %12.1f %12.1f %12.1f %12.1f%n", response[0],
+                    javaFrame.length, binaryFrame.length,
+                    encodeMicros(message, java), encodeMicros(message, binary),
+                    decodeMicros(javaFrame), decodeMicros(binaryFrame));
+
+            assertTrue(response[0] + ": binær burde være mindre end Java-serialisering",
+                    binaryFrame.length < javaFrame.length);
+        }
+    }
+
+    private static double encodeMicros(Message message, MessageCodec codec) throws IOException {
+        int iterations = 200;
+        for (int i = 0; i < iterations; i++) {
+            FrameCodec.encode(message, codec);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            FrameCodec.encode(message, codec);
+        }
+        return (System.nanoTime() - start) / 1000.0 / iterations;
+    }
+
+    private static double decodeMicros(byte[] frame) throws IOException {
+        int iterations = 200;
+        for (int i = 0; i < iterations; i++) {
+            FrameCodec.decode(frame, FrameCodec.HEADER_SIZE, frame.length - FrameCodec.HEADER_SIZE);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            FrameCodec.decode(frame, FrameCodec.HEADER_SIZE, frame.length - FrameCodec.HEADER_SIZE);
+        }
+        return (System.nanoTime() - start) / 1000.0 / iterations;
+    }
+}
@@ -0,0 +1,120 @@
+package test;
+
+import database.FaultInjector;
+import database.RequestDeadline;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tester at en forespørgsels deadline og annullering når ned til de sætninger
+ * der udføres. En langsom database simuleres med FaultInjector, så der ikke
+ * kræves en database.
+ */
+public class RequestDeadlineTest {
+
+    /**
+     * En forbindelse hvor hver sætning tager 10 sekunder.
+     */
+    private Connection slowConnection() {
+        Properties properties = new Properties();
+        properties.setProperty("fault.default.latency", "fixed:10000");
+        FaultInjector injector = new FaultInjector(properties::getProperty);
+
+        Connection fake = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("createStatement")) {
+                        int[] timeout = {0};
+                        return Proxy.newProxyInstance(Statement.class.getClassLoader(),
+                                new Class<?>[]{Statement.class}, (p, m, a) -> {
+                                    switch (m.getName()) {
+                                        case "setQueryTimeout":
+                                            timeout[0] = (Integer) a[0];
+                                            return null;
+                                        case "getQueryTimeout":
+                                            return timeout[0];
+                                        case "execute":
+                                            return false;
+                                        case "hashCode":
+                                            return System.identityHashCode(p);
+                                        case "equals":
+                                            return p == a[0];
+                                        default:
+                                            return null;
+                                    }
+                                });
+                    }
+                    return null;
+                });
+        return injector.wrap(fake);
+    }
+
+    @Test
+    public void testDeadlineBecomesQueryTimeout() throws SQLException {
+        try (RequestDeadline deadline = RequestDeadline.start(RequestDeadline.deadlineFromNow(1000))) {
+            Statement stmt = deadline.wrap(slowConnection()).createStatement();
+
+            long start = System.nanoTime();
+            try {
+                stmt.execute("SELECT 1");
+                fail("Sætningen burde time ud");
+            } catch (SQLTimeoutException e) {
+                long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                assertTrue("Sætningen burde stoppe ved deadlinen, ikke efter 10 s", elapsed < 5000);
+            }
+        }
+    }
+
+    @Test
+    public void testCancelStopsRunningStatement() throws Exception {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try (RequestDeadline deadline = RequestDeadline.start(0)) {
+            Statement stmt = deadline.wrap(slowConnection()).createStatement();
+            scheduler.schedule(deadline::cancel, 200, TimeUnit.MILLISECONDS);
+
+            long start = System.nanoTime();
+            try {
+                stmt.execute("SELECT 1");
+                fail("Sætningen burde blive annulleret");
+            } catch (SQLException e) {
+                assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 5000);
+            }
+            assertTrue(deadline.isCancelled());
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void testExpiredDeadlineRejectsNewStatements() throws Exception {
+        try (RequestDeadline deadline = RequestDeadline.start(RequestDeadline.deadlineFromNow(50))) {
+            Thread.sleep(100);
+            assertTrue(deadline.isExpired());
+            try {
+                deadline.check();
+                fail("Udløbet deadline burde afvises");
+            } catch (SQLTimeoutException e) {
+                // Forventet
+            }
+        }
+    }
+
+    @Test
+    public void testDeadlineIsBoundToThread() {
+        assertNull(RequestDeadline.current());
+        try (RequestDeadline deadline = RequestDeadline.start(0)) {
+            assertSame(deadline, RequestDeadline.current());
+        }
+        assertNull(RequestDeadline.current());
+    }
+}
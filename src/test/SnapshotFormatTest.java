@@ -0,0 +1,147 @@
+package test;
+
+import database.SnapshotReader;
+import database.SnapshotTable;
+import database.SnapshotWriter;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tester snapshot-formatet uden database: at rækker kommer uændret tilbage,
+ * og at en ødelagt fil afvises.
+ */
+public class SnapshotFormatTest {
+
+    private byte[] writeSample(int reservations) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (SnapshotWriter writer = new SnapshotWriter(bytes)) {
+            writer.beginTable(SnapshotTable.LAPTOP);
+            writer.writeRow(new Object[]{new UUID(1, 2), "Dell", "XPS", 512, 16, "HIGH", "AvailableState"});
+            writer.endTable();
+
+            writer.beginTable(SnapshotTable.STUDENT);
+            writer.writeRow(new Object[]{123456, "Æble Ørsted", 1_750_000_000_000L, "Software", "a@via.dk",
+                    12345678, "HIGH"});
+            writer.writeRow(new Object[]{-1, null, null, "Software", "b@via.dk", 0, "LOW"});
+            writer.endTable();
+
+            writer.beginTable(SnapshotTable.RESERVATION);
+            for (int i = 0; i < reservations; i++) {
+                writer.writeRow(new Object[]{UUID.randomUUID(), new UUID(1, 2), 123456, "ACTIVE",
+                        1_700_000_000_000L + i});
+            }
+            writer.endTable();
+
+            writer.beginTable(SnapshotTable.QUEUE_ENTRY);
+            writer.endTable();
+            writer.finish();
+        }
+        return bytes.toByteArray();
+    }
+
+    @Test
+    public void testRoundtrip() throws IOException {
+        byte[] data = writeSample(3);
+
+        try (SnapshotReader reader = new SnapshotReader(new ByteArrayInputStream(data))) {
+            assertEquals(SnapshotTable.LAPTOP, reader.nextTable());
+            Object[] laptop = reader.nextRow();
+            assertEquals(new UUID(1, 2), laptop[0]);
+            assertEquals("Dell", laptop[1]);
+            assertEquals(512, laptop[3]);
+            assertEquals("AvailableState", laptop[6]);
+            assertNull(reader.nextRow());
+
+            assertEquals(SnapshotTable.STUDENT, reader.nextTable());
+            Object[] first = reader.nextRow();
+            assertEquals("Æble Ørsted", first[1]);
+            assertEquals(1_750_000_000_000L, first[2]);
+            Object[] second = reader.nextRow();
+            assertEquals(-1, second[0]);
+            assertNull(second[1]);
+            assertNull(second[2]);
+            assertEquals("Software", second[3]);
+
+            assertEquals(SnapshotTable.RESERVATION, reader.nextTable());
+            int count = 0;
+            Object[] row;
+            while ((row = reader.nextRow()) != null) {
+                assertEquals(1_700_000_000_000L + count, row[4]);
+                count++;
+            }
+            assertEquals(3, count);
+
+            assertEquals(SnapshotTable.QUEUE_ENTRY, reader.nextTable());
+            assertNull(reader.nextRow());
+            assertNull(reader.nextTable());
+            assertEquals(6, reader.getRowsRead());
+        }
+    }
+
+    @Test
+    public void testSkipUnreadRows() throws IOException {
+        byte[] data = writeSample(100);
+
+        try (SnapshotReader reader = new SnapshotReader(new ByteArrayInputStream(data))) {
+            int tables = 0;
+            while (reader.nextTable() != null) {
+                tables++;
+            }
+            assertEquals(4, tables);
+            assertEquals(103, reader.getRowsRead());
+        }
+    }
+
+    @Test
+    public void testCorruptedFileIsRejected() throws IOException {
+        byte[] data = writeSample(10);
+        // Vend en bit midt i reservationerne
+        data[data.length / 2] ^= 0x01;
+
+        try (SnapshotReader reader = new SnapshotReader(new ByteArrayInputStream(data))) {
+            while (reader.nextTable() != null) {
+                while (reader.nextRow() != null) {
+                    // Læs alt
+                }
+            }
+            fail("Ødelagt snapshot burde afvises");
+        } catch (IOException e) {
+            // Forventet: enten checksum eller ugyldig struktur
+        }
+    }
+
+    @Test
+    public void testExportThatFailedMidTableIsRejected() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (SnapshotWriter writer = new SnapshotWriter(bytes)) {
+            writer.beginTable(SnapshotTable.LAPTOP);
+            writer.writeRow(new Object[]{new UUID(1, 2), "Dell", "XPS", 512, 16, "HIGH", "AvailableState"});
+            // Som når databasen fejler midt i en tabel
+            throw new IOException("Forbindelsen til databasen blev afbrudt");
+        } catch (IOException expected) {
+            // Eksporten fejler; writeren lukkes uden trailer
+        }
+
+        try (SnapshotReader reader = new SnapshotReader(new ByteArrayInputStream(bytes.toByteArray()))) {
+            while (reader.nextTable() != null) {
+                while (reader.nextRow() != null) {
+                    // Læs alt
+                }
+            }
+            fail("Et afbrudt snapshot burde afvises");
+        } catch (IOException e) {
+            // Forventet: filen slutter før traileren
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testUnknownFileIsRejected() throws IOException {
+        new SnapshotReader(new ByteArrayInputStream(new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13}));
+    }
+}
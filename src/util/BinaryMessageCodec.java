@@ -0,0 +1,531 @@
+package util;
+
+import enums.PerformanceTypeEnum;
+import enums.ReservationStatusEnum;
+import objects.Laptop;
+import objects.Reservation;
+import objects.Student;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.io.StreamCorruptedException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Compact hand-written encoding of messages and the domain objects they carry.
+ *
+ * Message types are sent as one-byte opcodes, UUIDs as two longs, enums as
+ * their ordinal, numbers as varints, and every string is dictionary-encoded
+ * within the frame, so a name or brand repeated across a list is written
+ * once. Values of any other Serializable type fall back to Java serialization
+ * inside the frame.
+ *
+ * Opcodes and value tags are part of the wire format: only ever append.
+ */
+public class BinaryMessageCodec implements MessageCodec {
+    public static final byte ID = 1;
+    public static final String NAME = "binary";
+
+    // Index + 1 is the opcode; 0 means the type follows as a string
+    private static final String[] TYPES = {
+            "response", "welcome", "disconnect", "cancel", "new_client", "initial_sync", "negotiate_codec",
+            "get_all_laptops", "get_available_laptops", "get_loaned_laptops", "get_next_available_laptop",
+            "get_laptop_by_uuid", "create_laptop", "update_laptop_state", "delete_laptop",
+            "get_all_students", "get_student_count", "get_student_by_id", "get_high_power_students",
+            "get_low_power_students", "get_high_power_count", "get_low_power_count", "create_student",
+            "delete_student", "create_reservation", "get_active_reservations", "get_all_reservations",
+            "complete_reservation", "get_students_with_laptop", "get_students_with_laptop_count",
+            "get_high_performance_queue", "get_low_performance_queue", "add_to_high_queue", "add_to_low_queue",
+            "process_queues",
+            "laptop_created", "laptop_updated", "laptop_deleted", "laptop_state_changed",
+            "student_created", "student_updated", "student_deleted",
+            "reservation_created", "reservation_completed", "reservation_cancelled",
+            "queue_updated", "student_added_to_high_queue", "student_added_to_low_queue", "server_error",
+            "resync", "resumed", "event_batch", "batch", "busy", "ping", "pong"
+    };
+    private static final Map<String, Integer> OPCODES = new HashMap<>();
+
+    static {
+        for (int i = 0; i < TYPES.length; i++) {
+            OPCODES.put(TYPES[i], i + 1);
+        }
+    }
+
+    // Value tags
+    private static final int NULL = 0;
+    private static final int FALSE = 1;
+    private static final int TRUE = 2;
+    private static final int INT = 3;
+    private static final int LONG = 4;
+    private static final int STRING = 5;
+    private static final int UUID_VALUE = 6;
+    private static final int DATE = 7;
+    private static final int PERFORMANCE_TYPE = 8;
+    private static final int RESERVATION_STATUS = 9;
+    private static final int LAPTOP = 10;
+    private static final int STUDENT = 11;
+    private static final int RESERVATION = 12;
+    private static final int LIST = 13;
+    private static final int OBJECT_ARRAY = 14;
+    private static final int SYNC_BUNDLE = 15;
+    private static final int DOUBLE = 16;
+    private static final int JAVA_SERIALIZED = 17;
+    private static final int MESSAGE = 18;
+
+    // Message field flags
+    private static final int HAS_TIMEOUT = 1;
+    private static final int HAS_REQUEST_ID = 1 << 1;
+    private static final int HAS_SEQUENCE = 1 << 2;
+
+    private static final PerformanceTypeEnum[] PERFORMANCE_TYPES = PerformanceTypeEnum.values();
+    private static final ReservationStatusEnum[] RESERVATION_STATUSES = ReservationStatusEnum.values();
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public void encode(Message message, OutputStream out) throws IOException {
+        Writer writer = new Writer(out);
+
+        Integer opcode = OPCODES.get(message.getType());
+        if (opcode != null) {
+            writer.out.writeByte(opcode);
+        } else {
+            writer.out.writeByte(0);
+            writer.writeString(message.getType());
+        }
+
+        int flags = (message.getTimeoutMillis() != 0 ? HAS_TIMEOUT : 0) |
+                (message.getRequestId() != 0 ? HAS_REQUEST_ID : 0) |
+                (message.getSequence() != 0 ? HAS_SEQUENCE : 0);
+        writer.out.writeByte(flags);
+        if ((flags & HAS_TIMEOUT) != 0) {
+            VarInts.writeVarLong(writer.out, message.getTimeoutMillis());
+        }
+        if ((flags & HAS_REQUEST_ID) != 0) {
+            VarInts.writeVarLong(writer.out, message.getRequestId());
+        }
+        if ((flags & HAS_SEQUENCE) != 0) {
+            VarInts.writeVarLong(writer.out, message.getSequence());
+        }
+
+        writer.writeValue(message.getArgs());
+        writer.out.flush();
+    }
+
+    @Override
+    public Message decode(byte[] payload, int offset, int length) throws IOException {
+        Reader reader = new Reader(new DataInputStream(new ByteArrayInputStream(payload, offset, length)));
+
+        int opcode = reader.in.readUnsignedByte();
+        String type;
+        if (opcode == 0) {
+            type = reader.readString();
+        } else if (opcode <= TYPES.length) {
+            type = TYPES[opcode - 1];
+        } else {
+            throw new StreamCorruptedException("Unknown opcode: " + opcode);
+        }
+
+        int flags = reader.in.readUnsignedByte();
+        long timeoutMillis = (flags & HAS_TIMEOUT) != 0 ? VarInts.readVarLong(reader.in) : 0;
+        long requestId = (flags & HAS_REQUEST_ID) != 0 ? VarInts.readVarLong(reader.in) : 0;
+        long sequence = (flags & HAS_SEQUENCE) != 0 ? VarInts.readVarLong(reader.in) : 0;
+
+        try {
+            return new Message(type, reader.readValue(), timeoutMillis, requestId, sequence);
+        } catch (IllegalArgumentException e) {
+            // A domain object failed its constructor's validation
+            throw new StreamCorruptedException("Invalid value in frame: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Encoding state for one frame.
+     */
+    private static final class Writer {
+        private final DataOutputStream out;
+        private final Map<String, Integer> dictionary = new HashMap<>();
+
+        Writer(OutputStream out) {
+            this.out = new DataOutputStream(out);
+        }
+
+        /**
+         * 0 = null, 1 = new string follows, n >= 2 = dictionary entry n - 2.
+         */
+        void writeString(String value) throws IOException {
+            if (value == null) {
+                VarInts.writeVarInt(out, 0);
+                return;
+            }
+            Integer index = dictionary.get(value);
+            if (index != null) {
+                VarInts.writeVarInt(out, index + 2);
+                return;
+            }
+            dictionary.put(value, dictionary.size());
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            VarInts.writeVarInt(out, 1);
+            VarInts.writeVarInt(out, bytes.length);
+            out.write(bytes);
+        }
+
+        void writeUuid(UUID value) throws IOException {
+            out.writeLong(value.getMostSignificantBits());
+            out.writeLong(value.getLeastSignificantBits());
+        }
+
+        void writeValue(Object value) throws IOException {
+            if (value == null) {
+                out.writeByte(NULL);
+            } else if (value instanceof EncodedValue) {
+                writeEncoded((EncodedValue) value);
+            } else if (value instanceof Boolean) {
+                out.writeByte((Boolean) value ? TRUE : FALSE);
+            } else if (value instanceof Integer) {
+                out.writeByte(INT);
+                VarInts.writeVarInt(out, VarInts.zigZag((Integer) value));
+            } else if (value instanceof Long) {
+                out.writeByte(LONG);
+                VarInts.writeVarLong(out, VarInts.zigZag((Long) value));
+            } else if (value instanceof String) {
+                out.writeByte(STRING);
+                writeString((String) value);
+            } else if (value instanceof UUID) {
+                out.writeByte(UUID_VALUE);
+                writeUuid((UUID) value);
+            } else if (value instanceof Date && value.getClass() == Date.class) {
+                out.writeByte(DATE);
+                VarInts.writeVarLong(out, VarInts.zigZag(((Date) value).getTime()));
+            } else if (value instanceof PerformanceTypeEnum) {
+                out.writeByte(PERFORMANCE_TYPE);
+                out.writeByte(((PerformanceTypeEnum) value).ordinal());
+            } else if (value instanceof ReservationStatusEnum) {
+                out.writeByte(RESERVATION_STATUS);
+                out.writeByte(((ReservationStatusEnum) value).ordinal());
+            } else if (value instanceof Laptop) {
+                out.writeByte(LAPTOP);
+                writeLaptop((Laptop) value);
+            } else if (value instanceof Student) {
+                out.writeByte(STUDENT);
+                writeStudent((Student) value);
+            } else if (value instanceof Reservation) {
+                out.writeByte(RESERVATION);
+                writeReservation((Reservation) value);
+            } else if (value instanceof List) {
+                List<?> list = (List<?>) value;
+                out.writeByte(LIST);
+                VarInts.writeVarInt(out, list.size());
+                for (Object element : list) {
+                    writeValue(element);
+                }
+            } else if (value instanceof Object[] && value.getClass() == Object[].class) {
+                Object[] array = (Object[]) value;
+                out.writeByte(OBJECT_ARRAY);
+                VarInts.writeVarInt(out, array.length);
+                for (Object element : array) {
+                    writeValue(element);
+                }
+            } else if (value instanceof SyncBundle) {
+                out.writeByte(SYNC_BUNDLE);
+                writeSyncBundle((SyncBundle) value);
+            } else if (value instanceof Double) {
+                out.writeByte(DOUBLE);
+                out.writeDouble((Double) value);
+            } else if (value instanceof Message) {
+                out.writeByte(MESSAGE);
+                writeEvent((Message) value);
+            } else if (value instanceof Serializable) {
+                out.writeByte(JAVA_SERIALIZED);
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                try (ObjectOutputStream objects = new ObjectOutputStream(bytes)) {
+                    objects.writeObject(value);
+                }
+                VarInts.writeVarInt(out, bytes.size());
+                bytes.writeTo(out);
+            } else {
+                throw new IOException("Cannot encode " + value.getClass().getName());
+            }
+        }
+
+        /**
+         * Copies a value's encoding into the frame, encoding it on first use.
+         * The bytes refer to strings by their place in the dictionary, so
+         * they are only copied where the dictionary is still empty, as it is
+         * for the args of a response.
+         */
+        void writeEncoded(EncodedValue encoded) throws IOException {
+            if (!dictionary.isEmpty()) {
+                writeValue(encoded.getValue());
+                return;
+            }
+            byte[] bytes = encoded.getBinary();
+            String[] strings = encoded.getBinaryStrings();
+            if (bytes == null) {
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                Writer writer = new Writer(buffer);
+                writer.writeValue(encoded.getValue());
+                writer.out.flush();
+                bytes = buffer.toByteArray();
+                strings = writer.strings();
+                encoded.setBinary(bytes, strings);
+            }
+            out.write(bytes);
+            // Later strings in the frame are numbered after the copied ones, as the reader numbers them
+            for (String string : strings) {
+                dictionary.put(string, dictionary.size());
+            }
+        }
+
+        /**
+         * @return the strings in the dictionary, in the order they were added
+         */
+        String[] strings() {
+            String[] strings = new String[dictionary.size()];
+            dictionary.forEach((string, index) -> strings[index] = string);
+            return strings;
+        }
+
+        void writeLaptop(Laptop laptop) throws IOException {
+            writeUuid(laptop.getId());
+            writeString(laptop.getBrand());
+            writeString(laptop.getModel());
+            VarInts.writeVarInt(out, laptop.getGigabyte());
+            VarInts.writeVarInt(out, laptop.getRam());
+            out.writeByte(laptop.getPerformanceType().ordinal());
+            out.writeBoolean(laptop.isLoaned());
+        }
+
+        void writeStudent(Student student) throws IOException {
+            VarInts.writeVarInt(out, student.getViaId());
+            writeString(student.getName());
+            VarInts.writeVarLong(out, VarInts.zigZag(student.getDegreeEndDate().getTime()));
+            writeString(student.getDegreeTitle());
+            writeString(student.getEmail());
+            VarInts.writeVarInt(out, student.getPhoneNumber());
+            out.writeByte(student.getPerformanceNeeded().ordinal());
+        }
+
+        void writeReservation(Reservation reservation) throws IOException {
+            writeUuid(reservation.getReservationId());
+            writeStudent(reservation.getStudent());
+            writeLaptop(reservation.getLaptop());
+            out.writeByte(reservation.getStatus().ordinal());
+            VarInts.writeVarLong(out, VarInts.zigZag(reservation.getCreationDate().getTime()));
+        }
+
+        /**
+         * A message nested in another, such as an event in a batch. Only the
+         * type, sequence number and args are kept.
+         */
+        void writeEvent(Message event) throws IOException {
+            writeString(event.getType());
+            VarInts.writeVarLong(out, event.getSequence());
+            writeValue(event.getArgs());
+        }
+
+        void writeSyncBundle(SyncBundle bundle) throws IOException {
+            VarInts.writeVarInt(out, bundle.getFormatVersion());
+            VarInts.writeVarLong(out, bundle.getSnapshotTime());
+            writeValue(bundle.getLaptops());
+            writeValue(bundle.getStudents());
+            writeValue(bundle.getActiveReservations());
+            writeValue(bundle.getHighPerformanceQueue());
+            writeValue(bundle.getLowPerformanceQueue());
+        }
+    }
+
+    /**
+     * Decoding state for one frame.
+     */
+    private static final class Reader {
+        private final DataInputStream in;
+        private final List<String> dictionary = new ArrayList<>();
+
+        Reader(DataInputStream in) {
+            this.in = in;
+        }
+
+        String readString() throws IOException {
+            int reference = VarInts.readVarInt(in);
+            if (reference == 0) {
+                return null;
+            }
+            if (reference == 1) {
+                byte[] bytes = new byte[readLength()];
+                in.readFully(bytes);
+                String value = new String(bytes, StandardCharsets.UTF_8);
+                dictionary.add(value);
+                return value;
+            }
+            int index = reference - 2;
+            if (index >= dictionary.size()) {
+                throw new StreamCorruptedException("Unknown string reference: " + index);
+            }
+            return dictionary.get(index);
+        }
+
+        /**
+         * Reads the length of a string, list or array. Every byte or element
+         * takes at least one byte, so a length beyond the rest of the frame
+         * can only come from a corrupt or hostile frame, and is rejected
+         * before anything is allocated for it.
+         */
+        int readLength() throws IOException {
+            int length = VarInts.readVarInt(in);
+            if (length < 0 || length > in.available()) {
+                throw new StreamCorruptedException("Invalid length in frame: " + length);
+            }
+            return length;
+        }
+
+        UUID readUuid() throws IOException {
+            return new UUID(in.readLong(), in.readLong());
+        }
+
+        <E> E readEnum(E[] values) throws IOException {
+            int ordinal = in.readUnsignedByte();
+            if (ordinal >= values.length) {
+                throw new StreamCorruptedException("Unknown enum ordinal: " + ordinal);
+            }
+            return values[ordinal];
+        }
+
+        Object readValue() throws IOException {
+            int tag = in.readUnsignedByte();
+            switch (tag) {
+                case NULL:
+                    return null;
+                case FALSE:
+                    return Boolean.FALSE;
+                case TRUE:
+                    return Boolean.TRUE;
+                case INT:
+                    return VarInts.unZigZag(VarInts.readVarInt(in));
+                case LONG:
+                    return VarInts.unZigZag(VarInts.readVarLong(in));
+                case STRING:
+                    return readString();
+                case UUID_VALUE:
+                    return readUuid();
+                case DATE:
+                    return new Date(VarInts.unZigZag(VarInts.readVarLong(in)));
+                case PERFORMANCE_TYPE:
+                    return readEnum(PERFORMANCE_TYPES);
+                case RESERVATION_STATUS:
+                    return readEnum(RESERVATION_STATUSES);
+                case LAPTOP:
+                    return readLaptop();
+                case STUDENT:
+                    return readStudent();
+                case RESERVATION:
+                    return readReservation();
+                case LIST: {
+                    int size = readLength();
+                    ArrayList<Object> list = new ArrayList<>(Math.min(size, 1024));
+                    for (int i = 0; i < size; i++) {
+                        list.add(readValue());
+                    }
+                    return list;
+                }
+                case OBJECT_ARRAY: {
+                    Object[] array = new Object[readLength()];
+                    for (int i = 0; i < array.length; i++) {
+                        array[i] = readValue();
+                    }
+                    return array;
+                }
+                case SYNC_BUNDLE:
+                    return readSyncBundle();
+                case DOUBLE:
+                    return in.readDouble();
+                case MESSAGE: {
+                    String type = readString();
+                    long sequence = VarInts.readVarLong(in);
+                    return Message.event(type, readValue(), sequence);
+                }
+                case JAVA_SERIALIZED: {
+                    byte[] bytes = new byte[readLength()];
+                    in.readFully(bytes);
+                    try (ObjectInputStream objects = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+                        return objects.readObject();
+                    } catch (ClassNotFoundException e) {
+                        throw new IOException("Unknown class in frame: " + e.getMessage(), e);
+                    }
+                }
+                default:
+                    throw new StreamCorruptedException("Unknown value tag: " + tag);
+            }
+        }
+
+        Laptop readLaptop() throws IOException {
+            Laptop laptop = new Laptop(readUuid(), readString(), readString(),
+                    VarInts.readVarInt(in), VarInts.readVarInt(in), readEnum(PERFORMANCE_TYPES));
+            if (in.readBoolean()) {
+                laptop.setStateFromDatabase("LoanedState");
+            }
+            return laptop;
+        }
+
+        Student readStudent() throws IOException {
+            int viaId = VarInts.readVarInt(in);
+            String name = readString();
+            Date degreeEndDate = new Date(VarInts.unZigZag(VarInts.readVarLong(in)));
+            String degreeTitle = readString();
+            String email = readString();
+            int phoneNumber = VarInts.readVarInt(in);
+            return new Student(name, degreeEndDate, degreeTitle, viaId, email, phoneNumber,
+                    readEnum(PERFORMANCE_TYPES));
+        }
+
+        Reservation readReservation() throws IOException {
+            UUID id = readUuid();
+            Student student = readStudent();
+            Laptop laptop = readLaptop();
+            ReservationStatusEnum status = readEnum(RESERVATION_STATUSES);
+            Date creationDate = new Date(VarInts.unZigZag(VarInts.readVarLong(in)));
+            return new Reservation(id, student, laptop, status, creationDate);
+        }
+
+        @SuppressWarnings("unchecked")
+        SyncBundle readSyncBundle() throws IOException {
+            int formatVersion = VarInts.readVarInt(in);
+            if (formatVersion != SyncBundle.FORMAT_VERSION) {
+                throw new StreamCorruptedException("Unsupported sync bundle version: " + formatVersion);
+            }
+            long snapshotTime = VarInts.readVarLong(in);
+            return new SyncBundle(snapshotTime,
+                    (List<Laptop>) readList(), (List<Student>) readList(), (List<Reservation>) readList(),
+                    (List<Student>) readList(), (List<Student>) readList());
+        }
+
+        private List<?> readList() throws IOException {
+            Object value = readValue();
+            if (!(value instanceof List)) {
+                throw new StreamCorruptedException("Expected a list in sync bundle");
+            }
+            return (List<?>) value;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package util;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Compression ratio and CPU time per message type, collected by
+ * {@link DeflateCodec}. Only payloads large enough to be compressed are
+ * counted. Responses are keyed by what they carry, e.g.
+ * "response:List&lt;Reservation&gt;".
+ */
+public class CompressionStats {
+    private final Map<String, TypeStats> byType = new ConcurrentHashMap<>();
+
+    void recordDeflate(String type, int rawBytes, int sentBytes, long nanos) {
+        TypeStats stats = byType.computeIfAbsent(type, t -> new TypeStats());
+        stats.compressed.increment();
+        stats.rawBytes.add(rawBytes);
+        stats.sentBytes.add(sentBytes);
+        stats.deflateNanos.add(nanos);
+    }
+
+    void recordInflate(String type, long nanos) {
+        TypeStats stats = byType.computeIfAbsent(type, t -> new TypeStats());
+        stats.inflated.increment();
+        stats.inflateNanos.add(nanos);
+    }
+
+    /**
+     * @param type a message type
+     * @return compressed size as a fraction of the original, or 1 if nothing of the type was compressed
+     */
+    public double getRatio(String type) {
+        TypeStats stats = byType.get(type);
+        long raw = stats != null ? stats.rawBytes.sum() : 0;
+        return raw == 0 ? 1 : (double) stats.sentBytes.sum() / raw;
+    }
+
+    /**
+     * @param type a message type
+     * @return the number of payloads of the type that were compressed
+     */
+    public long getCompressedCount(String type) {
+        TypeStats stats = byType.get(type);
+        return stats != null ? stats.compressed.sum() : 0;
+    }
+
+    /**
+     * @param type a message type
+     * @return the mean time spent deflating a payload of the type, in microseconds
+     */
+    public double getAverageDeflateMicros(String type) {
+        TypeStats stats = byType.get(type);
+        long count = stats != null ? stats.compressed.sum() : 0;
+        return count == 0 ? 0 : stats.deflateNanos.sum() / 1000.0 / count;
+    }
+
+    /**
+     * @param type a message type
+     * @return the mean time spent inflating a payload of the type, in microseconds
+     */
+    public double getAverageInflateMicros(String type) {
+        TypeStats stats = byType.get(type);
+        long count = stats != null ? stats.inflated.sum() : 0;
+        return count == 0 ? 0 : stats.inflateNanos.sum() / 1000.0 / count;
+    }
+
+    /**
+     * @return true if no payload has been compressed or inflated
+     */
+    public boolean isEmpty() {
+        return byType.isEmpty();
+    }
+
+    /**
+     * @return one line per message type: count, bytes before and after, ratio and CPU time
+     */
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder(String.format("%-28s %8s %12s %12s %7s %12s %12s%n",
+                "type", "count", "raw B", "sent B", "ratio", "deflate µs", "inflate µs"));
+        for (Map.Entry<String, TypeStats> entry : new TreeMap<>(byType).entrySet()) {
+            String type = entry.getKey();
+            TypeStats stats = entry.getValue();
+            report.append(String.format("%-28s %8d %12d %12d %7.2f %12.1f %12.1f%n", type,
+                    stats.compressed.sum(), stats.rawBytes.sum(), stats.sentBytes.sum(), getRatio(type),
+                    getAverageDeflateMicros(type), getAverageInflateMicros(type)));
+        }
+        return report.toString();
+    }
+
+    private static final class TypeStats {
+        final LongAdder compressed = new LongAdder();
+        final LongAdder rawBytes = new LongAdder();
+        final LongAdder sentBytes = new LongAdder();
+        final LongAdder deflateNanos = new LongAdder();
+        final LongAdder inflated = new LongAdder();
+        final LongAdder inflateNanos = new LongAdder();
+    }
+}
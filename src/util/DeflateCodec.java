@@ -0,0 +1,218 @@
+package util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Another codec's payload, deflated when it is large enough to be worth it.
+ * Negotiated like any codec, under the other codec's name with "+deflate"
+ * appended, so clients on slow links can ask for it and others don't pay
+ * for it.
+ *
+ * The payload starts with one byte: 0 if the rest is the other codec's
+ * payload as is, 1 if a 4-byte uncompressed length and the deflated
+ * payload follow. Payloads below -Dcodec.compression.threshold bytes
+ * (default 1024) are never deflated.
+ *
+ * Deflaters and inflaters hold native memory, so they are pooled and
+ * reused rather than created per message or kept per connection.
+ */
+public class DeflateCodec implements MessageCodec {
+    /** Set in the id of a deflate codec; the low bits are the wrapped codec's id. */
+    public static final int ID_FLAG = 0x40;
+    public static final String SUFFIX = "+deflate";
+    public static final int THRESHOLD = Integer.getInteger("codec.compression.threshold", 1024);
+
+    private static final int RAW = 0;
+    private static final int DEFLATED = 1;
+    private static final int MAX_POOLED = 16;
+
+    private static final ConcurrentLinkedQueue<Deflater> DEFLATERS = new ConcurrentLinkedQueue<>();
+    private static final ConcurrentLinkedQueue<Inflater> INFLATERS = new ConcurrentLinkedQueue<>();
+    private static final CompressionStats STATS = new CompressionStats();
+
+    private final MessageCodec codec;
+
+    /**
+     * @param codec the codec whose payloads are deflated
+     */
+    public DeflateCodec(MessageCodec codec) {
+        this.codec = codec;
+    }
+
+    /**
+     * @return the compression statistics of every deflate codec in this process
+     */
+    public static CompressionStats getStatistics() {
+        return STATS;
+    }
+
+    /**
+     * @return the codec whose payloads are deflated
+     */
+    public MessageCodec getWrappedCodec() {
+        return codec;
+    }
+
+    @Override
+    public byte getId() {
+        return (byte) (ID_FLAG | codec.getId());
+    }
+
+    @Override
+    public String getName() {
+        return codec.getName() + SUFFIX;
+    }
+
+    @Override
+    public void encode(Message message, OutputStream out) throws IOException {
+        Buffer raw = new Buffer();
+        codec.encode(message, raw);
+        if (raw.size() < THRESHOLD) {
+            out.write(RAW);
+            raw.writeTo(out);
+            return;
+        }
+
+        long start = System.nanoTime();
+        Buffer deflated = new Buffer(raw.size() / 2);
+        Deflater deflater = acquireDeflater();
+        try {
+            deflater.setInput(raw.array(), 0, raw.size());
+            deflater.finish();
+            byte[] chunk = new byte[8192];
+            while (!deflater.finished()) {
+                int count = deflater.deflate(chunk);
+                deflated.write(chunk, 0, count);
+                // Not worth sending deflated; stop early
+                if (deflated.size() >= raw.size()) {
+                    break;
+                }
+            }
+        } finally {
+            release(deflater);
+        }
+        long nanos = System.nanoTime() - start;
+
+        if (deflated.size() >= raw.size()) {
+            STATS.recordDeflate(statsKey(message), raw.size(), raw.size(), nanos);
+            out.write(RAW);
+            raw.writeTo(out);
+            return;
+        }
+        STATS.recordDeflate(statsKey(message), raw.size(), deflated.size(), nanos);
+        out.write(DEFLATED);
+        out.write(ByteBuffer.allocate(4).putInt(raw.size()).array());
+        deflated.writeTo(out);
+    }
+
+    @Override
+    public Message decode(byte[] payload, int offset, int length) throws IOException {
+        if (length < 1) {
+            throw new StreamCorruptedException("Empty payload");
+        }
+        if (payload[offset] == RAW) {
+            return codec.decode(payload, offset + 1, length - 1);
+        }
+        if (payload[offset] != DEFLATED || length < 5) {
+            throw new StreamCorruptedException("Invalid compressed payload");
+        }
+
+        int rawLength = ByteBuffer.wrap(payload, offset + 1, 4).getInt();
+        FrameCodec.checkLength(rawLength);
+        byte[] raw = new byte[rawLength];
+        long start = System.nanoTime();
+        Inflater inflater = acquireInflater();
+        try {
+            inflater.setInput(payload, offset + 5, length - 5);
+            int filled = 0;
+            while (filled < rawLength) {
+                int count = inflater.inflate(raw, filled, rawLength - filled);
+                if (count == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                filled += count;
+            }
+            if (filled != rawLength || !inflater.finished()) {
+                throw new StreamCorruptedException("Compressed payload does not match its length");
+            }
+        } catch (DataFormatException e) {
+            throw new StreamCorruptedException("Invalid compressed payload: " + e.getMessage());
+        } finally {
+            release(inflater);
+        }
+        long nanos = System.nanoTime() - start;
+
+        Message message = codec.decode(raw, 0, rawLength);
+        STATS.recordInflate(statsKey(message), nanos);
+        return message;
+    }
+
+    /**
+     * Responses all share one type, so they are told apart by what they carry.
+     */
+    private static String statsKey(Message message) {
+        if (!"response".equals(message.getType())) {
+            return message.getType();
+        }
+        Object args = EncodedValue.unwrap(message.getArgs());
+        if (args instanceof List && !((List<?>) args).isEmpty() && ((List<?>) args).get(0) != null) {
+            return "response:List<" + ((List<?>) args).get(0).getClass().getSimpleName() + ">";
+        }
+        return "response:" + (args != null ? args.getClass().getSimpleName() : "null");
+    }
+
+    private static Deflater acquireDeflater() {
+        Deflater deflater = DEFLATERS.poll();
+        return deflater != null ? deflater : new Deflater(Deflater.DEFAULT_COMPRESSION);
+    }
+
+    private static void release(Deflater deflater) {
+        deflater.reset();
+        // The pool is only as large as the number of threads compressing at once; extra instances are freed
+        if (DEFLATERS.size() < MAX_POOLED) {
+            DEFLATERS.offer(deflater);
+        } else {
+            deflater.end();
+        }
+    }
+
+    private static Inflater acquireInflater() {
+        Inflater inflater = INFLATERS.poll();
+        return inflater != null ? inflater : new Inflater();
+    }
+
+    private static void release(Inflater inflater) {
+        inflater.reset();
+        if (INFLATERS.size() < MAX_POOLED) {
+            INFLATERS.offer(inflater);
+        } else {
+            inflater.end();
+        }
+    }
+
+    /**
+     * A byte array stream whose buffer can be read without a copy.
+     */
+    private static final class Buffer extends ByteArrayOutputStream {
+        Buffer() {
+            super(1024);
+        }
+
+        Buffer(int size) {
+            super(Math.max(size, 64));
+        }
+
+        byte[] array() {
+            return buf;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package util;
+
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+
+/**
+ * A message value that is sent many times unchanged, such as a cached
+ * response. {@link BinaryMessageCodec} encodes it once and copies the bytes
+ * into every later frame; Java serialization sends the plain value, so the
+ * peer never sees this wrapper.
+ */
+public final class EncodedValue implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final transient Object value;
+    // Filled in by the binary codec the first time the value is written
+    private transient volatile byte[] binary;
+    private transient volatile String[] binaryStrings;
+
+    /**
+     * @param value the value; must not be changed while it is in use
+     */
+    public EncodedValue(Object value) {
+        this.value = value;
+    }
+
+    /**
+     * @return the value
+     */
+    public Object getValue() {
+        return value;
+    }
+
+    /**
+     * @param value a message value
+     * @return the value itself, or the value inside it if it is an EncodedValue
+     */
+    public static Object unwrap(Object value) {
+        return value instanceof EncodedValue ? ((EncodedValue) value).value : value;
+    }
+
+    /**
+     * @return the value's binary encoding, or null if it has not been encoded yet
+     */
+    byte[] getBinary() {
+        return binary;
+    }
+
+    /**
+     * @return the strings the binary encoding adds to the frame's dictionary, in order
+     */
+    String[] getBinaryStrings() {
+        return binaryStrings;
+    }
+
+    void setBinary(byte[] binary, String[] strings) {
+        // Strings first: a reader that sees the bytes must also see their strings
+        this.binaryStrings = strings;
+        this.binary = binary;
+    }
+
+    private Object writeReplace() throws ObjectStreamException {
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return String.valueOf(value);
+    }
+}
@@ -0,0 +1,290 @@
+package util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+
+/**
+ * Length-prefixed framing of messages between client and server.
+ *
+ * Every frame is a 4-byte big-endian length followed by one byte naming the
+ * {@link MessageCodec} that wrote the payload, and the payload itself. Unlike
+ * one long-lived object stream per connection, this lets the server read a
+ * connection without a blocked thread: it only decodes a message once the
+ * whole frame has arrived. Because each frame names its codec, either side
+ * can switch codec after negotiation without the peer losing its place.
+ * Each codec also has a deflate variant, see {@link DeflateCodec}.
+ */
+public final class FrameCodec {
+    /** Size of the length prefix in bytes. */
+    public static final int HEADER_SIZE = 4;
+
+    /** Frames larger than this are rejected as corrupt. */
+    public static final int MAX_FRAME_SIZE = 16 * 1024 * 1024;
+
+    /** The codec every peer understands; used until another has been negotiated. */
+    public static final MessageCodec DEFAULT_CODEC = new JavaSerializationCodec();
+
+    // Indexed by codec id; later codecs are preferred when negotiating
+    private static final MessageCodec[] CODECS = {DEFAULT_CODEC, new BinaryMessageCodec()};
+    // The same codecs with their payloads deflated, indexed by the wrapped codec's id
+    private static final MessageCodec[] DEFLATE_CODECS = new MessageCodec[CODECS.length];
+
+    static {
+        for (int i = 0; i < CODECS.length; i++) {
+            DEFLATE_CODECS[i] = new DeflateCodec(CODECS[i]);
+        }
+    }
+
+    // A server started with -Dserver.compression=false turns down requests for compression
+    private static final boolean COMPRESSION_ALLOWED =
+            Boolean.parseBoolean(System.getProperty("server.compression", "true"));
+
+    private FrameCodec() {
+    }
+
+    /**
+     * Serializes a message with the default codec.
+     *
+     * @param message the message to encode
+     * @return the frame bytes, length prefix included
+     * @throws IOException if the message cannot be serialized
+     */
+    public static byte[] encode(Message message) throws IOException {
+        return encode(message, DEFAULT_CODEC);
+    }
+
+    /**
+     * Serializes a message to a complete frame, length prefix included.
+     *
+     * @param message the message to encode
+     * @param codec the codec to write the payload with
+     * @return the frame bytes
+     * @throws IOException if the message cannot be serialized
+     */
+    public static byte[] encode(Message message, MessageCodec codec) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        // Room for the length, filled in once the payload size is known
+        bytes.write(new byte[HEADER_SIZE]);
+        bytes.write(codec.getId());
+        codec.encode(message, bytes);
+
+        byte[] frame = bytes.toByteArray();
+        int length = frame.length - HEADER_SIZE;
+        if (length > MAX_FRAME_SIZE) {
+            throw new IOException("Message too large to send: " + length + " bytes");
+        }
+        ByteBuffer.wrap(frame).putInt(0, length);
+        return frame;
+    }
+
+    /**
+     * Decodes the body of one frame: the codec id and the payload.
+     *
+     * @param body the buffer holding the frame body
+     * @param offset where the body starts
+     * @param length the body length
+     * @return the message
+     * @throws IOException if the body is not a valid message
+     */
+    public static Message decode(byte[] body, int offset, int length) throws IOException {
+        if (length < 1) {
+            throw new StreamCorruptedException("Empty frame");
+        }
+        return codec(body[offset]).decode(body, offset + 1, length - 1);
+    }
+
+    /**
+     * Writes one frame to a blocking stream. The caller flushes.
+     *
+     * @param out the stream to write to
+     * @param message the message to send
+     * @throws IOException if writing fails
+     */
+    public static void writeFrame(OutputStream out, Message message) throws IOException {
+        out.write(encode(message));
+    }
+
+    /**
+     * Writes one frame to a blocking stream with the given codec. The caller flushes.
+     *
+     * @param out the stream to write to
+     * @param message the message to send
+     * @param codec the codec to write the payload with
+     * @throws IOException if writing fails
+     */
+    public static void writeFrame(OutputStream out, Message message, MessageCodec codec) throws IOException {
+        out.write(encode(message, codec));
+    }
+
+    /**
+     * @param id a codec id read from a frame
+     * @return the codec with that id
+     * @throws StreamCorruptedException if no codec has that id
+     */
+    public static MessageCodec codec(byte id) throws StreamCorruptedException {
+        MessageCodec[] codecs = (id & DeflateCodec.ID_FLAG) != 0 ? DEFLATE_CODECS : CODECS;
+        int index = id & ~DeflateCodec.ID_FLAG;
+        if (index < 0 || index >= codecs.length) {
+            throw new StreamCorruptedException("Unknown codec id: " + id);
+        }
+        return codecs[index];
+    }
+
+    /**
+     * @return the names of all codecs, most preferred first
+     */
+    public static String[] codecNames() {
+        String[] names = new String[CODECS.length];
+        for (int i = 0; i < CODECS.length; i++) {
+            names[CODECS.length - 1 - i] = CODECS[i].getName();
+        }
+        return names;
+    }
+
+    /**
+     * @param compressed whether to offer the deflate codecs, ahead of the others
+     * @return codec names to offer, most preferred first
+     */
+    public static String[] codecNames(boolean compressed) {
+        String[] plain = codecNames();
+        if (!compressed) {
+            return plain;
+        }
+        String[] names = new String[plain.length * 2];
+        for (int i = 0; i < plain.length; i++) {
+            names[i] = plain[i] + DeflateCodec.SUFFIX;
+            names[plain.length + i] = plain[i];
+        }
+        return names;
+    }
+
+    /**
+     * Picks the codec to use from the names a peer offers.
+     *
+     * @param offered codec names in the peer's order of preference
+     * @return the first offered codec known here, or the default codec
+     */
+    public static MessageCodec negotiate(String[] offered) {
+        if (offered != null) {
+            for (String name : offered) {
+                MessageCodec codec = codecNamed(name);
+                if (codec != null && (COMPRESSION_ALLOWED || !(codec instanceof DeflateCodec))) {
+                    return codec;
+                }
+            }
+        }
+        return DEFAULT_CODEC;
+    }
+
+    /**
+     * @param name a codec name
+     * @return the codec with that name, or null
+     */
+    public static MessageCodec codecNamed(String name) {
+        for (int i = 0; i < CODECS.length; i++) {
+            if (CODECS[i].getName().equals(name)) {
+                return CODECS[i];
+            }
+            if (DEFLATE_CODECS[i].getName().equals(name)) {
+                return DEFLATE_CODECS[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads one frame from a blocking stream.
+     *
+     * @param in the stream to read from
+     * @return the message
+     * @throws java.io.EOFException if the stream ends
+     * @throws IOException if reading fails or the frame is invalid
+     */
+    public static Message readFrame(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        checkLength(length);
+        byte[] payload = new byte[length];
+        in.readFully(payload);
+        return decode(payload, 0, length);
+    }
+
+    /**
+     * Wraps a socket stream for {@link #readFrame(DataInputStream)}.
+     */
+    public static DataInputStream input(InputStream in) {
+        return new DataInputStream(new BufferedInputStream(in));
+    }
+
+    /**
+     * Wraps a socket stream for {@link #writeFrame(OutputStream, Message)}.
+     */
+    public static DataOutputStream output(OutputStream out) {
+        return new DataOutputStream(new BufferedOutputStream(out));
+    }
+
+    static void checkLength(int length) throws StreamCorruptedException {
+        if (length < 0 || length > MAX_FRAME_SIZE) {
+            throw new StreamCorruptedException("Invalid frame length: " + length);
+        }
+    }
+
+    /**
+     * Incremental decoder for non-blocking reads. Bytes are fed as they
+     * arrive, in chunks of any size; complete frames come out as messages.
+     * A connection that is between frames holds no payload buffer.
+     */
+    public static final class Decoder {
+        private final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        private byte[] payload;
+        private int filled;
+
+        /**
+         * Consumes bytes from the buffer until it is empty or a frame is complete.
+         *
+         * @param buffer bytes read from the connection, in read mode
+         * @return the next complete message, or null if more bytes are needed
+         * @throws IOException if the frame is invalid
+         */
+        public Message next(ByteBuffer buffer) throws IOException {
+            if (payload == null) {
+                while (header.hasRemaining() && buffer.hasRemaining()) {
+                    header.put(buffer.get());
+                }
+                if (header.hasRemaining()) {
+                    return null;
+                }
+                int length = header.getInt(0);
+                checkLength(length);
+                payload = new byte[length];
+                filled = 0;
+            }
+
+            int count = Math.min(payload.length - filled, buffer.remaining());
+            buffer.get(payload, filled, count);
+            filled += count;
+            if (filled < payload.length) {
+                return null;
+            }
+
+            byte[] complete = payload;
+            payload = null;
+            header.clear();
+            return decode(complete, 0, complete.length);
+        }
+
+        /**
+         * @return true if part of a frame has been read but not yet decoded
+         */
+        public boolean isPartial() {
+            return payload != null || header.position() > 0;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package util;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+
+/**
+ * Default Java serialization of the whole message. Understood by every
+ * client and server, and used until a connection has negotiated something else.
+ *
+ * Every frame is its own serialization session: a new ObjectOutputStream
+ * whose handle table starts empty, the same as calling reset() before each
+ * message. Nothing written to a connection stays referenced by its stream,
+ * and an object sent again after it changed arrives with its new state
+ * rather than as a back-reference to the old one. The price is that class
+ * descriptors are written in every frame; {@link BinaryMessageCodec} avoids them.
+ */
+public class JavaSerializationCodec implements MessageCodec {
+    public static final byte ID = 0;
+    public static final String NAME = "java";
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public void encode(Message message, OutputStream out) throws IOException {
+        ObjectOutputStream objects = new ObjectOutputStream(out);
+        objects.writeObject(message);
+        objects.flush();
+    }
+
+    @Override
+    public Message decode(byte[] payload, int offset, int length) throws IOException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(payload, offset, length))) {
+            Object object = in.readObject();
+            if (!(object instanceof Message)) {
+                throw new StreamCorruptedException("Frame does not contain a Message: " +
+                        (object == null ? "null" : object.getClass().getName()));
+            }
+            return (Message) object;
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Unknown class in frame: " + e.getMessage(), e);
+        }
+    }
+}
@@ -11,6 +11,9 @@ public class Message implements Serializable {
 
     private String type;
     private Object args;
+    private long timeoutMillis;
+    private long requestId;
+    private long sequence;
 
     /**
      * Creates a new message with a type and arguments.
@@ -23,6 +26,61 @@ public class Message implements Serializable {
         this.args = args;
     }
 
+    /**
+     * Creates a new request message with a deadline.
+     *
+     * @param type The message type used for routing and handling
+     * @param args The message arguments/payload (can be null)
+     * @param timeoutMillis How long the sender will wait for a response, measured
+     *                      from when the receiver reads the message (0 = no deadline)
+     */
+    public Message(String type, Object args, long timeoutMillis) {
+        this.type = type;
+        this.args = args;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Creates a new request or response message carrying a request id.
+     *
+     * @param type The message type used for routing and handling
+     * @param args The message arguments/payload (can be null)
+     * @param timeoutMillis How long the sender will wait for a response (0 = no deadline)
+     * @param requestId Id chosen by the client for a request and echoed in its response (0 = none)
+     */
+    public Message(String type, Object args, long timeoutMillis, long requestId) {
+        this.type = type;
+        this.args = args;
+        this.timeoutMillis = timeoutMillis;
+        this.requestId = requestId;
+    }
+
+    /**
+     * Creates a message with every field set.
+     *
+     * @param type The message type used for routing and handling
+     * @param args The message arguments/payload (can be null)
+     * @param timeoutMillis How long the sender will wait for a response (0 = no deadline)
+     * @param requestId Id chosen by the client for a request and echoed in its response (0 = none)
+     * @param sequence The server's event sequence number (0 = none)
+     */
+    public Message(String type, Object args, long timeoutMillis, long requestId, long sequence) {
+        this(type, args, timeoutMillis, requestId);
+        this.sequence = sequence;
+    }
+
+    /**
+     * Creates a server event carrying its sequence number.
+     *
+     * @param type The event type
+     * @param args The event payload (can be null)
+     * @param sequence The event's place in the server's event stream
+     * @return The event message
+     */
+    public static Message event(String type, Object args, long sequence) {
+        return new Message(type, args, 0, 0, sequence);
+    }
+
     /**
      * Gets the message type.
      *
@@ -41,11 +99,45 @@ public class Message implements Serializable {
         return args;
     }
 
+    /**
+     * Gets the request timeout. The server gives up on the request, including
+     * running database statements, once it has expired.
+     *
+     * @return The timeout in milliseconds, or 0 if there is no deadline
+     */
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    /**
+     * Gets the request id. The server echoes a request's id in its response,
+     * so a client with several requests in flight can match them up.
+     *
+     * @return The request id, or 0 if the message is not part of a request
+     */
+    public long getRequestId() {
+        return requestId;
+    }
+
+    /**
+     * Gets the event sequence number. The server numbers every state change
+     * it broadcasts, one higher than the last, so a client can tell when it
+     * has missed an event or received one twice. A snapshot carries the
+     * number of the last event it includes.
+     *
+     * @return The sequence number, or 0 if the message is not a sequenced event
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
     @Override
     public String toString() {
         return "Message{" +
                 "type='" + type + '\'' +
                 ", args=" + (args != null ? args.getClass().getSimpleName() : "null") +
+                (requestId != 0 ? ", requestId=" + requestId : "") +
+                (sequence != 0 ? ", sequence=" + sequence : "") +
                 '}';
     }
 }
\ No newline at end of file
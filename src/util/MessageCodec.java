@@ -0,0 +1,42 @@
+package util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Turns a message into the payload of a frame and back. Each frame names
+ * the codec that wrote it, so the peer can always decode it; which codec a
+ * side writes with is agreed per connection at connect time.
+ */
+public interface MessageCodec {
+
+    /**
+     * @return the id written in front of every payload this codec produces
+     */
+    byte getId();
+
+    /**
+     * @return the name used when negotiating the codec
+     */
+    String getName();
+
+    /**
+     * Writes the message to the stream.
+     *
+     * @param message the message to encode
+     * @param out the stream receiving the payload
+     * @throws IOException if the message cannot be encoded
+     */
+    void encode(Message message, OutputStream out) throws IOException;
+
+    /**
+     * Reads a message written by {@link #encode(Message, OutputStream)}.
+     *
+     * @param payload the buffer holding the payload
+     * @param offset where the payload starts
+     * @param length the payload length
+     * @return the message
+     * @throws IOException if the payload is not a valid message
+     */
+    Message decode(byte[] payload, int offset, int length) throws IOException;
+}
@@ -0,0 +1,69 @@
+package util;
+
+/**
+ * Round-trip times of the heartbeats on one connection, measured from a
+ * "ping" being sent until its "pong" arrives. The smoothed time weighs each
+ * new sample by 1/8, the way TCP estimates its round-trip time.
+ */
+public class RoundTripStats {
+    private long samples;
+    private long lastNanos;
+    private long minNanos = Long.MAX_VALUE;
+    private long maxNanos;
+    private double smoothedNanos;
+
+    /**
+     * @param nanos the round-trip time of one heartbeat
+     */
+    public synchronized void record(long nanos) {
+        if (nanos < 0) {
+            return;
+        }
+        smoothedNanos = samples == 0 ? nanos : smoothedNanos + (nanos - smoothedNanos) / 8;
+        samples++;
+        lastNanos = nanos;
+        minNanos = Math.min(minNanos, nanos);
+        maxNanos = Math.max(maxNanos, nanos);
+    }
+
+    /**
+     * @return the number of heartbeats answered
+     */
+    public synchronized long getSampleCount() {
+        return samples;
+    }
+
+    /**
+     * @return the latest round-trip time in milliseconds, 0 before the first
+     */
+    public synchronized double getLastMillis() {
+        return lastNanos / 1e6;
+    }
+
+    /**
+     * @return the shortest round-trip time in milliseconds, 0 before the first
+     */
+    public synchronized double getMinMillis() {
+        return samples == 0 ? 0 : minNanos / 1e6;
+    }
+
+    /**
+     * @return the longest round-trip time in milliseconds
+     */
+    public synchronized double getMaxMillis() {
+        return maxNanos / 1e6;
+    }
+
+    /**
+     * @return the smoothed round-trip time in milliseconds, 0 before the first
+     */
+    public synchronized double getSmoothedMillis() {
+        return smoothedNanos / 1e6;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("rtt %.2f ms (min %.2f, max %.2f, %d samples)",
+                getSmoothedMillis(), getMinMillis(), getMaxMillis(), samples);
+    }
+}
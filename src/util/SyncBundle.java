@@ -0,0 +1,90 @@
+package util;
+
+import objects.Laptop;
+import objects.Reservation;
+import objects.Student;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Everything a client needs to initialize its state, taken from one
+ * consistent database snapshot and sent as a single "initial_sync" message.
+ */
+public class SyncBundle implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /** Bumped whenever the contents of the bundle change incompatibly. */
+    public static final int FORMAT_VERSION = 1;
+
+    private final int formatVersion;
+    private final long snapshotTime;
+    private final ArrayList<Laptop> laptops;
+    private final ArrayList<Student> students;
+    private final ArrayList<Reservation> activeReservations;
+    private final ArrayList<Student> highPerformanceQueue;
+    private final ArrayList<Student> lowPerformanceQueue;
+
+    /**
+     * Creates a new sync bundle.
+     *
+     * @param snapshotTime When the snapshot was taken (epoch millis)
+     * @param laptops All laptops
+     * @param students All students
+     * @param activeReservations All active reservations
+     * @param highPerformanceQueue Students waiting for a high performance laptop, in queue order
+     * @param lowPerformanceQueue Students waiting for a low performance laptop, in queue order
+     */
+    public SyncBundle(long snapshotTime, List<Laptop> laptops, List<Student> students,
+                      List<Reservation> activeReservations, List<Student> highPerformanceQueue,
+                      List<Student> lowPerformanceQueue) {
+        this.formatVersion = FORMAT_VERSION;
+        this.snapshotTime = snapshotTime;
+        this.laptops = new ArrayList<>(laptops);
+        this.students = new ArrayList<>(students);
+        this.activeReservations = new ArrayList<>(activeReservations);
+        this.highPerformanceQueue = new ArrayList<>(highPerformanceQueue);
+        this.lowPerformanceQueue = new ArrayList<>(lowPerformanceQueue);
+    }
+
+    public int getFormatVersion() {
+        return formatVersion;
+    }
+
+    public long getSnapshotTime() {
+        return snapshotTime;
+    }
+
+    public List<Laptop> getLaptops() {
+        return laptops;
+    }
+
+    public List<Student> getStudents() {
+        return students;
+    }
+
+    public List<Reservation> getActiveReservations() {
+        return activeReservations;
+    }
+
+    public List<Student> getHighPerformanceQueue() {
+        return highPerformanceQueue;
+    }
+
+    public List<Student> getLowPerformanceQueue() {
+        return lowPerformanceQueue;
+    }
+
+    @Override
+    public String toString() {
+        return "SyncBundle{" +
+                "version=" + formatVersion +
+                ", laptops=" + laptops.size() +
+                ", students=" + students.size() +
+                ", activeReservations=" + activeReservations.size() +
+                ", highQueue=" + highPerformanceQueue.size() +
+                ", lowQueue=" + lowPerformanceQueue.size() +
+                '}';
+    }
+}